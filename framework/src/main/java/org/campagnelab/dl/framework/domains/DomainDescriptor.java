@@ -84,6 +84,20 @@ public abstract class DomainDescriptor<RecordType> {
      */
     public abstract Function<String, ? extends Iterable<RecordType>> getRecordIterable();
 
+    /**
+     * Returns a function that converts an input filename to an iterable over the records of a genomic region.
+     * Domains that cannot select records by region only accept a null region.
+     *
+     * @param region region in the format chr, chr:start or chr:start-end, or null to iterate over all records.
+     * @return
+     */
+    public Function<String, ? extends Iterable<RecordType>> getRecordIterable(String region) {
+        if (region == null) {
+            return getRecordIterable();
+        }
+        throw new UnsupportedOperationException("This domain does not support reading the records of a region.");
+    }
+
     /**
      * Return a computational graph assembler. The assembler can build a computational graph ready for training.
      *
@@ -241,6 +255,19 @@ public abstract class DomainDescriptor<RecordType> {
         return getComputationalGraph().getOutputNames().length;
     }
 
+    /**
+     * Indicate whether the predictions of this domain read an output. Outputs that are not read are not calculated
+     * during prediction (see PrunedComputationGraph), their interpreter is not called, and null takes the place of
+     * their prediction in the list of individual predictions, so that other predictions keep their index.
+     * By default, every output is read.
+     *
+     * @param outputName name of a graph output.
+     * @return true when aggregatePredictions, or the tools that consume individual predictions, read this output.
+     */
+    public boolean isOutputRead(String outputName) {
+        return true;
+    }
+
     public boolean hasOutput(String outputName) {
         for (String name : getComputationalGraph().getOutputNames()) {
             if (outputName.equals(name)) {
@@ -276,6 +303,60 @@ public abstract class DomainDescriptor<RecordType> {
         return mappers;
     }
 
+    /**
+     * Create a feature mapper for an input. Mappers keep per-record state between prepareToNormalize and
+     * mapFeatures, so a mapper instance must not be used by several threads at the same time. Unlike
+     * getFeatureMapper, which may return the same instance to every caller, this method must return a new,
+     * independent instance each time it is called. The default implementation delegates to getFeatureMapper.
+     * Domains that cache mappers must override this method.
+     *
+     * @param inputName    name of the graph input.
+     * @param isPredicting true when the mapper is used for prediction.
+     * @return a feature mapper that is not shared with any other caller.
+     */
+    public FeatureMapper newFeatureMapper(String inputName, boolean isPredicting) {
+        return getFeatureMapper(inputName, isPredicting);
+    }
+
+    /**
+     * Create a label mapper for an output. See newFeatureMapper for the contract.
+     *
+     * @param outputName name of the graph output.
+     * @return a label mapper that is not shared with any other caller.
+     */
+    public LabelMapper newLabelMapper(String outputName) {
+        return getLabelMapper(outputName);
+    }
+
+    /**
+     * Create feature mappers for all inputs of the graph, typically one set for each worker thread.
+     *
+     * @param isPredicting true when the mappers are used for prediction.
+     * @return new feature mappers, in the order of the graph inputs.
+     */
+    public FeatureMapper[] newFeatureMappers(boolean isPredicting) {
+        FeatureMapper[] mappers = new FeatureMapper[getNumModelInputs()];
+        int i = 0;
+        for (String inputName : getComputationalGraph().getInputNames()) {
+            mappers[i++] = newFeatureMapper(inputName, isPredicting);
+        }
+        return mappers;
+    }
+
+    /**
+     * Create label mappers for all outputs of the graph, typically one set for each worker thread.
+     *
+     * @return new label mappers, in the order of the graph outputs.
+     */
+    public LabelMapper[] newLabelMappers() {
+        LabelMapper[] mappers = new LabelMapper[getNumModelOutputs()];
+        int i = 0;
+        for (String outputName : getComputationalGraph().getOutputNames()) {
+            mappers[i++] = newLabelMapper(outputName);
+        }
+        return mappers;
+    }
+
     public int[] getNumInputs(String inputName, boolean isPredicting) {
         return getNumInputs(inputName);
     }
@@ -140,6 +140,11 @@ public abstract class PretrainingDomainDescriptor<RecordType> extends DomainDesc
         return delegate.getRecordIterable();
     }
 
+    @Override
+    public Function<String, ? extends Iterable<RecordType>> getRecordIterable(String region) {
+        return delegate.getRecordIterable(region);
+    }
+
     @Override
     public int[] getNumInputs(String inputName) {
         if (!inputName.equals(this.inputName)) {
@@ -25,4 +25,13 @@ public interface PredictionInterpreter<RecordType, PredictionType extends Predic
      * @return Interpreted prediction.
      */
     PredictionType interpret(RecordType record, INDArray output);
+
+    /**
+     * Indicate whether this interpreter reads the model output. Outputs that no interpreter reads are not
+     * calculated during prediction (see PrunedComputationGraph), and such interpreters receive a null output.
+     * @return true when interpret(record, output) uses output.
+     */
+    default boolean usesModelOutput() {
+        return true;
+    }
 }
@@ -4,6 +4,7 @@ import org.campagnelab.dl.framework.mappers.LabelMapper;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
 import org.campagnelab.dl.framework.domains.DomainDescriptor;
+import org.campagnelab.dl.framework.mappers.FeatureContext;
 import org.campagnelab.dl.framework.mappers.FeatureMapper;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
@@ -101,11 +102,14 @@ public abstract class MultiDataSetIteratorAdapter<RecordType> implements MultiDa
             hasLabelMask |= needMask;
         }
         int recordIndexInBatch = 0;
+        final FeatureContext context = FeatureContext.current();
         for (RecordType record : buffer) {
-
+            // values derived from the record are shared by all the mappers of this record:
+            context.reset(record);
             for (int j = 0; j < numInputs; j++) {
                 featureMappers[j].prepareToNormalize(record, recordIndexInBatch);
-                featureMappers[j].mapFeatures(record, inputs[j], recordIndexInBatch);
+                // input arrays are freshly allocated, and therefore zero:
+                featureMappers[j].mapFeaturesToZeroed(record, inputs[j], recordIndexInBatch);
                 if (featureMappers[j].hasMask()) {
                     featureMappers[j].maskFeatures(record, inputMasks[j], recordIndexInBatch);
                 }
@@ -15,6 +15,56 @@ public class ConcatFeatureMapper<RecordType> implements FeatureMapper<RecordType
     protected int numFeatures = 0;
     protected int[] offsets;
     private boolean normalizedCalled;
+    private final OffsetFeatureWriter offsetWriter = new OffsetFeatureWriter();
+    private FeaturePlan<RecordType> plan;
+    /**
+     * System property that determines whether concatenations are mapped with a flattened FeaturePlan (true, the
+     * default), or by visiting each level of nested mappers (false). Both produce the same features. The property
+     * is read once, when the class is loaded, e.g., -Ddlva.mappers.compilePlans=false to measure nested mapping.
+     */
+    public static final String COMPILE_PLANS_PROPERTY = "dlva.mappers.compilePlans";
+    private static boolean compilePlans = Boolean.parseBoolean(System.getProperty(COMPILE_PLANS_PROPERTY, "true"));
+
+    /**
+     * @return true when concatenations are mapped with flattened feature plans.
+     */
+    public static boolean compilesPlans() {
+        return compilePlans;
+    }
+
+    /**
+     * Override the value of COMPILE_PLANS_PROPERTY for all concatenations, so that benchmarks can time nested
+     * mapping and feature plans in the same run. Not thread-safe: call it when no mapping is in progress.
+     *
+     * @param compile true to map with feature plans, false to visit each level of nested mappers.
+     */
+    public static void setCompilePlans(boolean compile) {
+        compilePlans = compile;
+    }
+
+    /**
+     * Return the flattened plan for this concatenation. The plan is compiled on first use, so that mappers can
+     * be configured after the concatenation is constructed.
+     */
+    protected FeaturePlan<RecordType> plan() {
+        if (plan == null) {
+            plan = new FeaturePlan<>(mappers);
+        }
+        return plan;
+    }
+
+    /**
+     * Shifts the feature indices of a delegate to the feature space of the concatenation.
+     */
+    private static class OffsetFeatureWriter implements FeatureWriter {
+        FeatureWriter target;
+        int offset;
+
+        @Override
+        public void put(int featureIndex, float value) {
+            target.put(featureIndex + offset, value);
+        }
+    }
 
     @SafeVarargs
     public ConcatFeatureMapper(FeatureMapper<RecordType>... featureMappers) {
@@ -48,8 +98,12 @@ public class ConcatFeatureMapper<RecordType> implements FeatureMapper<RecordType
 
     @Override
     public void prepareToNormalize(RecordType record, int indexOfRecord) {
-        for (FeatureMapper<RecordType> calculator : mappers) {
-            calculator.prepareToNormalize(record, indexOfRecord);
+        if (compilePlans) {
+            plan().prepareToNormalize(record, indexOfRecord);
+        } else {
+            for (FeatureMapper<RecordType> calculator : mappers) {
+                calculator.prepareToNormalize(record, indexOfRecord);
+            }
         }
         normalizedCalled = true;
     }
@@ -58,6 +112,10 @@ public class ConcatFeatureMapper<RecordType> implements FeatureMapper<RecordType
     @Override
     public void mapFeatures(RecordType record, INDArray inputs, int indexOfRecord) {
         assert normalizedCalled : "prepareToNormalize must be called before mapFeatures.";
+        if (compilePlans) {
+            plan().mapFeatures(record, inputs, indexOfRecord);
+            return;
+        }
         int offset = 0;
         final int[] indicesOuter = {0, 0};
         for (FeatureMapper<RecordType> delegate : mappers) {
@@ -72,6 +130,61 @@ public class ConcatFeatureMapper<RecordType> implements FeatureMapper<RecordType
         }
     }
 
+    /**
+     * Return true when this mapper produces exactly the concatenation of the features of its delegates, so that
+     * feature plans can replace it by its delegates, and sparse features can be written through its delegates.
+     * This is an explicit opt-in: ConcatFeatureMapper opts in, subclasses opt in by overriding this method. Subclasses
+     * that compute features in their own way (e.g., with a delegate configured after construction) must not.
+     *
+     * @return true when the mapper can be flattened.
+     */
+    public boolean isFlattenable() {
+        return getClass() == ConcatFeatureMapper.class;
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord) {
+        if (!isFlattenable()) {
+            mapFeatures(record, inputs, indexOfRecord);
+            return;
+        }
+        mapFeaturesToZeroed(record, inputs, indexOfRecord, 0);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord, int offset) {
+        if (!isFlattenable()) {
+            FeatureMapper.super.mapFeaturesToZeroed(record, inputs, indexOfRecord, offset);
+            return;
+        }
+        assert normalizedCalled : "prepareToNormalize must be called before mapFeatures.";
+        if (compilePlans) {
+            plan().mapFeaturesToZeroed(record, inputs, indexOfRecord, offset);
+            return;
+        }
+        for (int i = 0; i < mappers.length; i++) {
+            mappers[i].mapFeaturesToZeroed(record, inputs, indexOfRecord, offset + offsets[i]);
+        }
+    }
+
+    @Override
+    public void writeNonZeroFeatures(RecordType record, FeatureWriter writer) {
+        if (!isFlattenable()) {
+            FeatureMapper.super.writeNonZeroFeatures(record, writer);
+            return;
+        }
+        if (compilePlans) {
+            plan().writeNonZeroFeatures(record, writer);
+            return;
+        }
+        for (int i = 0; i < mappers.length; i++) {
+            offsetWriter.target = writer;
+            offsetWriter.offset = offsets[i];
+            mappers[i].writeNonZeroFeatures(record, offsetWriter);
+        }
+        offsetWriter.target = null;
+    }
+
     @Override
     public boolean hasMask() {
         boolean requiresMask = false;
@@ -110,6 +223,9 @@ public class ConcatFeatureMapper<RecordType> implements FeatureMapper<RecordType
 
     @Override
     public float produceFeature(RecordType record, int featureIndex) {
+        if (compilePlans) {
+            return plan().produceFeature(record, featureIndex);
+        }
         int indexOfDelegate = Arrays.binarySearch(offsets, featureIndex);
         if (indexOfDelegate < 0) {
             indexOfDelegate = -(indexOfDelegate + 1) - 1;
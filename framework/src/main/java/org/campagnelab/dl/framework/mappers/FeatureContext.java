@@ -0,0 +1,99 @@
+package org.campagnelab.dl.framework.mappers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quantities derived from the record being mapped, shared by all the mappers that map this record. Derived values
+ * (e.g., genotype counts sorted by decreasing count) are computed lazily, the first time a mapper asks for them, and
+ * memoized until the context is reset for the next record. Resetting does not clear or reallocate the values: the
+ * next computation of a key receives the value it produced for the previous record, and can reuse its storage.
+ * <p>
+ * There is one context per thread. Iterators that map records reset it before preparing the mappers of each record.
+ * Mappers obtain it with forRecord(record), which also resets the context if it was last used with another record
+ * (records are compared by identity), so that mappers stay correct when called outside of an iterator.
+ *
+ * @author Fabien Campagne
+ */
+public class FeatureContext {
+    private static final ThreadLocal<FeatureContext> CONTEXTS = ThreadLocal.withInitial(FeatureContext::new);
+    private static final AtomicInteger NUM_KEYS = new AtomicInteger();
+
+    /**
+     * A quantity derived from a record.
+     *
+     * @param <RecordType> type of the record.
+     * @param <T>          type of the derived value.
+     */
+    public static abstract class Key<RecordType, T> {
+        private final int index = NUM_KEYS.getAndIncrement();
+
+        /**
+         * Compute the value for a record.
+         *
+         * @param record   the record in the context.
+         * @param previous value computed for a previous record by this thread, or null. Its storage may be reused.
+         * @return the value for record.
+         */
+        protected abstract T compute(RecordType record, T previous);
+    }
+
+    private Object record;
+    private int generation = 1;
+    private Object[] values = new Object[0];
+    private int[] generations = new int[0];
+
+    /**
+     * Return the context of the current thread, without checking which record it holds.
+     */
+    public static FeatureContext current() {
+        return CONTEXTS.get();
+    }
+
+    /**
+     * Return the context of the current thread for a record, reset if it held another record.
+     */
+    public static FeatureContext forRecord(Object record) {
+        FeatureContext context = CONTEXTS.get();
+        if (context.record != record) {
+            context.reset(record);
+        }
+        return context;
+    }
+
+    /**
+     * Start mapping a new record. Values memoized for the previous record are invalidated.
+     *
+     * @param record the record that will be mapped next.
+     */
+    public void reset(Object record) {
+        this.record = record;
+        generation++;
+    }
+
+    /**
+     * Number of times this context was reset. Mappers that cache results of their own may use it, together with the
+     * context, to determine if their cache is still valid.
+     */
+    public int generation() {
+        return generation;
+    }
+
+    /**
+     * Return the value of a key for the record in this context, computing it if needed.
+     */
+    @SuppressWarnings("unchecked")
+    public <RecordType, T> T get(Key<RecordType, T> key) {
+        final int index = key.index;
+        if (index >= values.length) {
+            final int capacity = Math.max(index + 1, values.length * 2);
+            values = Arrays.copyOf(values, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+        }
+        if (generations[index] != generation) {
+            values[index] = key.compute((RecordType) record, (T) values[index]);
+            generations[index] = generation;
+        }
+        return (T) values[index];
+    }
+}
@@ -76,4 +76,49 @@ public interface FeatureMapper<RecordType> {
     float produceFeature(RecordType record, int featureIndex);
 
 
+    /**
+     * Fill in features into a dataset whose cells for this record are already zero (e.g., a freshly allocated
+     * minibatch array). Mappers that produce sparse features (such as one-hot encodings) only need to write
+     * their non-zero cells. The default implementation calls mapFeatures.
+     *
+     * @param record        The record to convert to features & labels.
+     * @param inputs        The features, zero for the record at indexOfRecord.
+     * @param indexOfRecord Index of the record in the destination dataset.
+     */
+    default void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord) {
+        mapFeatures(record, inputs, indexOfRecord);
+    }
+
+    /**
+     * Fill in features into columns offset to offset + numberOfFeatures() - 1 of a 2D dataset whose cells for this
+     * record are already zero. Concatenations call this method so that their delegates write absolute feature
+     * indices directly into the dataset. The default implementation writes the features reported by
+     * writeNonZeroFeatures; sparse mappers override it to write their non-zero cells without a writer.
+     *
+     * @param record        The record to convert to features, after prepareToNormalize was called.
+     * @param inputs        The features, [record][feature], zero for the record at indexOfRecord.
+     * @param indexOfRecord Index of the record in the destination dataset.
+     * @param offset        Index of the column where the first feature of this mapper is written.
+     */
+    default void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord, int offset) {
+        writeNonZeroFeatures(record, (featureIndex, value) -> inputs.putScalar(indexOfRecord, offset + featureIndex, value));
+    }
+
+    /**
+     * Write the non-zero features of a record. Features that are not written are zero. Features are indexed as
+     * in produceFeature. The default implementation calls produceFeature for every feature; one-hot and
+     * categorical mappers override it to write only their non-zero cells.
+     *
+     * @param record The record to convert to features, after prepareToNormalize was called.
+     * @param writer Where non-zero features are written.
+     */
+    default void writeNonZeroFeatures(RecordType record, FeatureWriter writer) {
+        final int numFeatures = numberOfFeatures();
+        for (int featureIndex = 0; featureIndex < numFeatures; featureIndex++) {
+            final float value = produceFeature(record, featureIndex);
+            if (value != 0) {
+                writer.put(featureIndex, value);
+            }
+        }
+    }
 }
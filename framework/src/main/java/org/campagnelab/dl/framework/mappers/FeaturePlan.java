@@ -0,0 +1,148 @@
+package org.campagnelab.dl.framework.mappers;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A flattened feature plan for a tree of concatenated mappers. The tree is walked once, when the plan is compiled,
+ * and nested ConcatFeatureMapper and NamedWrapper nodes are replaced by their leaf mappers, each with the absolute
+ * offset of its first feature. Preparing and mapping a record then iterate over the leaves in a single loop,
+ * without the dispatch and offset arithmetic of each concatenation level.
+ * <p>
+ * Only nodes whose isFlattenable method returns true are flattened. Subclasses that compute features in their own
+ * way (e.g., mappers that wrap a delegate configured after construction) do not opt in and are kept as leaves.
+ *
+ * @author Fabien Campagne
+ */
+public class FeaturePlan<RecordType> {
+    private final FeatureMapper<RecordType>[] leaves;
+    /**
+     * Offset of the first feature of each leaf, followed by the total number of features.
+     */
+    private final int[] offsets;
+    private final int[] indices = {0, 0};
+    private final OffsetWriter offsetWriter = new OffsetWriter();
+
+    private static class OffsetWriter implements FeatureWriter {
+        FeatureWriter target;
+        int offset;
+
+        @Override
+        public void put(int featureIndex, float value) {
+            target.put(featureIndex + offset, value);
+        }
+    }
+
+    /**
+     * Compile the plan for the concatenation of mappers.
+     *
+     * @param mappers mappers whose features are concatenated, in order.
+     */
+    @SuppressWarnings("unchecked")
+    public FeaturePlan(FeatureMapper<RecordType>[] mappers) {
+        List<FeatureMapper<RecordType>> leafList = new ObjectArrayList<>();
+        IntArrayList offsetList = new IntArrayList();
+        int offset = 0;
+        for (FeatureMapper<RecordType> mapper : mappers) {
+            offset = flatten(mapper, offset, leafList, offsetList);
+        }
+        offsetList.add(offset);
+        leaves = leafList.toArray(new FeatureMapper[leafList.size()]);
+        offsets = offsetList.toIntArray();
+    }
+
+    /**
+     * Compile the plan for a single mapper.
+     *
+     * @param root the mapper to flatten.
+     * @return a plan that produces the same features as root.
+     */
+    @SuppressWarnings("unchecked")
+    public static <RecordType> FeaturePlan<RecordType> compile(FeatureMapper<RecordType> root) {
+        return new FeaturePlan<>(new FeatureMapper[]{root});
+    }
+
+    private static <RecordType> int flatten(FeatureMapper<RecordType> mapper, int offset,
+                                            List<FeatureMapper<RecordType>> leafList, IntArrayList offsetList) {
+        if (mapper instanceof ConcatFeatureMapper && ((ConcatFeatureMapper<RecordType>) mapper).isFlattenable()) {
+            for (FeatureMapper<RecordType> delegate : ((ConcatFeatureMapper<RecordType>) mapper).mappers) {
+                offset = flatten(delegate, offset, leafList, offsetList);
+            }
+            return offset;
+        }
+        if (mapper instanceof NamedWrapper && ((NamedWrapper<RecordType>) mapper).isFlattenable()) {
+            return flatten(((NamedWrapper<RecordType>) mapper).delegate, offset, leafList, offsetList);
+        }
+        final int numFeatures = mapper.numberOfFeatures();
+        if (numFeatures > 0) {
+            leafList.add(mapper);
+            offsetList.add(offset);
+        }
+        return offset + numFeatures;
+    }
+
+    public int numberOfFeatures() {
+        return offsets[leaves.length];
+    }
+
+    public int numberOfLeaves() {
+        return leaves.length;
+    }
+
+    public void prepareToNormalize(RecordType record, int indexOfRecord) {
+        for (FeatureMapper<RecordType> leaf : leaves) {
+            leaf.prepareToNormalize(record, indexOfRecord);
+        }
+    }
+
+    public void mapFeatures(RecordType record, INDArray inputs, int indexOfRecord) {
+        indices[0] = indexOfRecord;
+        for (int l = 0; l < leaves.length; l++) {
+            final FeatureMapper<RecordType> leaf = leaves[l];
+            final int offset = offsets[l];
+            final int numFeatures = offsets[l + 1] - offset;
+            for (int j = 0; j < numFeatures; j++) {
+                indices[1] = offset + j;
+                inputs.putScalar(indices, leaf.produceFeature(record, j));
+            }
+        }
+    }
+
+    /**
+     * Map the features of a record to an array where they are zero.
+     */
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord) {
+        mapFeaturesToZeroed(record, inputs, indexOfRecord, 0);
+    }
+
+    /**
+     * Map the features of a record to an array where they are zero, starting at column offset. Each leaf writes
+     * its features at their absolute column in inputs.
+     */
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord, int offset) {
+        for (int l = 0; l < leaves.length; l++) {
+            leaves[l].mapFeaturesToZeroed(record, inputs, indexOfRecord, offset + offsets[l]);
+        }
+    }
+
+    public void writeNonZeroFeatures(RecordType record, FeatureWriter writer) {
+        offsetWriter.target = writer;
+        for (int l = 0; l < leaves.length; l++) {
+            offsetWriter.offset = offsets[l];
+            leaves[l].writeNonZeroFeatures(record, offsetWriter);
+        }
+        offsetWriter.target = null;
+    }
+
+    public float produceFeature(RecordType record, int featureIndex) {
+        int leafIndex = Arrays.binarySearch(offsets, 0, leaves.length, featureIndex);
+        if (leafIndex < 0) {
+            leafIndex = -(leafIndex + 1) - 1;
+        }
+        return leaves[leafIndex].produceFeature(record, featureIndex - offsets[leafIndex]);
+    }
+}
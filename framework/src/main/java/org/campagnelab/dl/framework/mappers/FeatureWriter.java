@@ -0,0 +1,17 @@
+package org.campagnelab.dl.framework.mappers;
+
+/**
+ * Receives the non-zero features of a record, see FeatureMapper.writeNonZeroFeatures.
+ *
+ * @author Fabien Campagne
+ */
+@FunctionalInterface
+public interface FeatureWriter {
+    /**
+     * Write one feature.
+     *
+     * @param featureIndex index of the feature, in the feature space of the mapper that writes it.
+     * @param value        value of the feature.
+     */
+    void put(int featureIndex, float value);
+}
@@ -1,8 +1,11 @@
 package org.campagnelab.dl.framework.mappers;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+
 /**
  * This mapper normalizes feature value by the absolute value of the maximum value obtained across all the delegate's
  * features. It accepts a single delegate, and normalizes it by dividing all the features by magnitude of the biggest feature.
+ * Delegate features are evaluated once, in prepareToNormalize, and normalized from a reusable buffer.
  *
  * @author Remi Torracinta
  */
@@ -21,14 +24,37 @@ public class MaxNormalizationMapper<RecordType> extends AbstractFeatureMapper1D<
         return delegate.numberOfFeatures();
     }
 
+    /**
+     * Features of the delegate for the current record.
+     */
+    private float[] values = new float[0];
+    private int[] indices = new int[]{0, 0};
+
     public void prepareToNormalize(RecordType record, int indexOfRecord) {
-        for (int i = 0; i < numberOfFeatures(); i++) {
-            absMax = Math.max(Math.abs(delegate.produceFeature(record, i)), absMax);
+        final int numberOfFeatures = numberOfFeatures();
+        if (values.length < numberOfFeatures) {
+            values = new float[numberOfFeatures];
+        }
+        // absMax is not reset between records:
+        for (int i = 0; i < numberOfFeatures; i++) {
+            final float value = delegate.produceFeature(record, i);
+            values[i] = value;
+            absMax = Math.max(Math.abs(value), absMax);
+        }
+    }
+
+    @Override
+    public void mapFeatures(RecordType record, INDArray inputs, int indexOfRecord) {
+        indices[0] = indexOfRecord;
+        final int numberOfFeatures = numberOfFeatures();
+        for (int featureIndex = 0; featureIndex < numberOfFeatures; featureIndex++) {
+            indices[1] = featureIndex;
+            inputs.putScalar(indices, normalize(values[featureIndex], absMax));
         }
     }
 
     public float produceFeature(RecordType record, int featureIndex) {
-        return normalize(produceFeatureInternal(record, featureIndex), absMax);
+        return normalize(values[featureIndex], absMax);
     }
 
     @Override
@@ -46,11 +72,6 @@ public class MaxNormalizationMapper<RecordType> extends AbstractFeatureMapper1D<
         return normalized;
     }
 
-
-    private float produceFeatureInternal(RecordType record, int featureIndex) {
-        return delegate.produceFeature(record, featureIndex);
-    }
-
 }
 
 
@@ -1,10 +1,10 @@
 package org.campagnelab.dl.framework.mappers;
 
-import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 /**
  * This is a normalizing mapper which divides feature values by their mean.
+ * Delegate features are evaluated once, in prepareToNormalize, and normalized from a reusable buffer.
  *
  * @author Fabien Campagne
  */
@@ -32,41 +32,51 @@ public class MeanNormalizationMapper<RecordType> extends AbstractFeatureMapper1D
 
     @Override
     public void mapFeatures(RecordType record, INDArray inputs, int indexOfRecord) {
-        super.mapFeatures(record, inputs, indexOfRecord);
+        assert normalizedCalled == true : "normalized must be called before mapFeatures";
+        indices[0] = indexOfRecord;
+        final int numberOfFeatures = numberOfFeatures();
+        for (int featureIndex = 0; featureIndex < numberOfFeatures; featureIndex++) {
+            indices[1] = featureIndex;
+            inputs.putScalar(indices, normalize(values[featureIndex], mean));
+        }
         normalizedCalled = false;
     }
 
-    private FloatArrayList values = new FloatArrayList();
+    /**
+     * Features of the delegate for the current record. Each delegate feature is evaluated once per record.
+     */
+    private float[] values = new float[0];
+    private int[] indices = new int[]{0, 0};
 
     public void prepareToNormalize(RecordType record, int indexOfRecord) {
         mean = 0;
         stdev = 0;
-        int count = 0;
         delegate.prepareToNormalize(record, indexOfRecord);
-        values.clear();
-        for (int i = 0; i < numberOfFeatures(); i++) {
+        final int numberOfFeatures = numberOfFeatures();
+        if (values.length < numberOfFeatures) {
+            values = new float[numberOfFeatures];
+        }
+        for (int i = 0; i < numberOfFeatures; i++) {
 
             final float v = delegate.produceFeature(record, i);
-            values.add(v);
+            values[i] = v;
             mean += v;
-            count += 1;
         }
-        mean /= count;
+        mean /= numberOfFeatures;
         double variance = 0;
-        for (double value : values) {
-            final double difference = value - mean;
+        for (int i = 0; i < numberOfFeatures; i++) {
+            final double difference = (double) values[i] - mean;
             variance += difference * difference;
         }
         stdev = Math.sqrt(variance);
 
-        delegate.prepareToNormalize(record, indexOfRecord);
         normalizedCalled = true;
     }
 
 
     public float produceFeature(RecordType record, int featureIndex) {
         assert normalizedCalled == true : "normalized must be called before produceFeature";
-        return normalize(produceFeatureInternal(record, featureIndex), mean);
+        return normalize(values[featureIndex], mean);
     }
 
     @Override
@@ -87,11 +97,6 @@ public class MeanNormalizationMapper<RecordType> extends AbstractFeatureMapper1D
         return normalized;
     }
 
-
-    private float produceFeatureInternal(RecordType record, int featureIndex) {
-        return delegate.produceFeature(record, featureIndex);
-    }
-
 }
 
 
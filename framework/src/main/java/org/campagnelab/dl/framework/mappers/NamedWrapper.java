@@ -52,5 +52,15 @@ public abstract class NamedWrapper<RecordType> implements FeatureNameMapper<Reco
         return delegate.produceFeature(record, featureIndex);
     }
 
+    /**
+     * Return true when this wrapper only names the features of its delegate, so that feature plans can replace it
+     * by its delegate. Subclasses that change how features are prepared or produced must return false.
+     *
+     * @return true when the wrapper can be flattened.
+     */
+    public boolean isFlattenable() {
+        return true;
+    }
+
     FeatureMapper<RecordType> delegate;
 }
@@ -61,7 +61,7 @@ public class OneHotBaseFeatureMapper<RecordType> implements FeatureMapper<Record
 
     }
 
-    private static final int[] indices = new int[]{0, 0};
+    private final int[] indices = new int[]{0, 0};
 
     public int numberOfFeatures() {
         return numFeatures;
@@ -83,6 +83,29 @@ public class OneHotBaseFeatureMapper<RecordType> implements FeatureMapper<Record
         }
     }
 
+    @Override
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord) {
+        mapFeaturesToZeroed(record, inputs, indexOfRecord, 0);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord, int offset) {
+        final int value = recordStringAtBaseToInteger.apply(cachedString, baseIndex);
+        if (value >= 0 && value < numFeatures) {
+            indices[0] = indexOfRecord;
+            indices[1] = offset + value;
+            inputs.putScalar(indices, 1F);
+        }
+    }
+
+    @Override
+    public void writeNonZeroFeatures(RecordType record, FeatureWriter writer) {
+        final int value = recordStringAtBaseToInteger.apply(cachedString, baseIndex);
+        if (value >= 0 && value < numFeatures) {
+            writer.put(value, 1F);
+        }
+    }
+
     @Override
     public float produceFeature(RecordType record, int featureIndex) {
         int value = recordStringAtBaseToInteger.apply(cachedString, baseIndex);
@@ -27,7 +27,7 @@ public class OneHotHashModuloMapper<RecordType> extends NoMaskFeatureMapper<Reco
         this.recordToString = recordToString;
     }
 
-    private static final int[] indices = new int[]{0, 0};
+    private final int[] indices = new int[]{0, 0};
 
     public int numberOfFeatures() {
         return vectorNumElements;
@@ -54,6 +54,29 @@ public class OneHotHashModuloMapper<RecordType> extends NoMaskFeatureMapper<Reco
         }
     }
 
+    @Override
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord) {
+        mapFeaturesToZeroed(record, inputs, indexOfRecord, 0);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(RecordType record, INDArray inputs, int indexOfRecord, int offset) {
+        assert reducedValue >= 0 : "prepareToNormalize must be called before mapFeatures.";
+        if (reducedValue >= 0) {
+            indices[0] = indexOfRecord;
+            indices[1] = offset + reducedValue;
+            inputs.putScalar(indices, 1F);
+        }
+    }
+
+    @Override
+    public void writeNonZeroFeatures(RecordType record, FeatureWriter writer) {
+        assert reducedValue >= 0 : "prepareToNormalize must be called before writeNonZeroFeatures.";
+        if (reducedValue >= 0) {
+            writer.put(reducedValue, 1F);
+        }
+    }
+
     @Override
     public float produceFeature(RecordType record, int featureIndex) {
         assert reducedValue >= 0: "prepareToNormalize must be called before produceFeature.";
@@ -35,11 +35,24 @@ public class RNNFeatureMapper<RecordType> implements FeatureMapper<RecordType> {
     private FeatureMapper<RecordType>[] delegates;
     private Function<RecordType, Integer> recordToSequenceLength;
 
-    private int[] indicesMapper = new int[]{0, 0, 0};
-    private int[] indicesMasker = new int[]{0, 0};
+    private TimeSeriesBlock block;
+    private final OffsetWriter offsetWriter = new OffsetWriter();
 
     int sequenceLength;
 
+    /**
+     * Places the features of the delegate for one time step in the block.
+     */
+    private static class OffsetWriter implements FeatureWriter {
+        TimeSeriesBlock block;
+        int offset;
+
+        @Override
+        public void put(int featureIndex, float value) {
+            block.put(offset + featureIndex, value);
+        }
+    }
+
     private MappedDimensions dim;
 
     /**
@@ -79,6 +92,8 @@ public class RNNFeatureMapper<RecordType> implements FeatureMapper<RecordType> {
         this.featuresPerTimeStep = dimensions.numElements();
         this.delegates = delegates;
         dim = new MappedDimensions(featuresPerTimeStep, delegates.length);
+        block = new TimeSeriesBlock(featuresPerTimeStep, delegates.length);
+        offsetWriter.block = block;
     }
 
     @Override
@@ -98,23 +113,24 @@ public class RNNFeatureMapper<RecordType> implements FeatureMapper<RecordType> {
         for (FeatureMapper<RecordType> delegate : delegates) {
             delegate.prepareToNormalize(record, indexOfRecord);
         }
+        // encode the features and mask of the whole record, time steps past the sequence remain zero:
+        block.clear();
+        final int numTimeSteps = Math.min(sequenceLength, delegates.length);
+        for (int i = 0; i < numTimeSteps; i++) {
+            offsetWriter.offset = i * featuresPerTimeStep;
+            delegates[i].writeNonZeroFeatures(record, offsetWriter);
+        }
+        block.setSequenceLength(sequenceLength);
     }
 
     @Override
     public void mapFeatures(RecordType record, INDArray inputs, int indexOfRecord) {
-        indicesMapper[0] = indexOfRecord;
-        for (int i = 0; i < delegates.length; i++) {
-            indicesMapper[2] = i;
-            final FeatureMapper<RecordType> delegate = delegates[i];
-            for (int j = 0; j < delegate.numberOfFeatures(); j++) {
-                indicesMapper[1] = j;
-                if (i < sequenceLength) {
-                    inputs.putScalar(indicesMapper, delegate.produceFeature(record, j));
-                } else {
-                    inputs.putScalar(indicesMapper, 0);
-                }
-            }
-        }
+        block.copyFeaturesTo(inputs, indexOfRecord);
+    }
+
+    @Override
+    public void writeNonZeroFeatures(RecordType record, FeatureWriter writer) {
+        block.writeNonZeroFeatures(writer);
     }
 
     @Override
@@ -124,21 +140,12 @@ public class RNNFeatureMapper<RecordType> implements FeatureMapper<RecordType> {
 
     @Override
     public void maskFeatures(RecordType record, INDArray mask, int indexOfRecord) {
-        indicesMasker[0] = indexOfRecord;
-        for (int i = 0; i < delegates.length; i++) {
-            indicesMasker[1] = i;
-            mask.putScalar(indicesMasker, i < sequenceLength ? 1F : 0F);
-        }
+        block.copyMaskTo(mask, indexOfRecord);
     }
 
     @Override
     public float produceFeature(RecordType record, int featureIndex) {
-        int delegateIdx = featureIndex / featuresPerTimeStep;
-        if (delegateIdx >= sequenceLength) {
-            return 0F;
-        }
-        int featureInDelegateIdx = featureIndex % featuresPerTimeStep;
-        return delegates[delegateIdx].produceFeature(record, featureInDelegateIdx);
+        return block.get(featureIndex);
     }
 
     @Override
@@ -0,0 +1,123 @@
+package org.campagnelab.dl.framework.mappers;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * The features and mask of one record for a recurrent input. Features are stored in a contiguous float[] in 'f'
+ * order for the shape [featuresPerTimeStep, numTimeSteps], so that the index of a feature in the block is
+ * timeStep * featuresPerTimeStep + feature, the feature index used by recurrent mappers. Mappers encode a whole
+ * record in the block, then copy the block to the minibatch with one bulk assignment, instead of one putScalar
+ * per feature and time step.
+ *
+ * @author Fabien Campagne
+ */
+public class TimeSeriesBlock implements FeatureWriter {
+    private final int featuresPerTimeStep;
+    private final int numTimeSteps;
+    private final float[] features;
+    private final float[] mask;
+    private INDArray featureView;
+    private INDArray maskView;
+
+    public TimeSeriesBlock(int featuresPerTimeStep, int numTimeSteps) {
+        this.featuresPerTimeStep = featuresPerTimeStep;
+        this.numTimeSteps = numTimeSteps;
+        this.features = new float[featuresPerTimeStep * numTimeSteps];
+        this.mask = new float[numTimeSteps];
+    }
+
+    public int featuresPerTimeStep() {
+        return featuresPerTimeStep;
+    }
+
+    public int numTimeSteps() {
+        return numTimeSteps;
+    }
+
+    /**
+     * Set all features and mask values to zero.
+     */
+    public void clear() {
+        Arrays.fill(features, 0F);
+        Arrays.fill(mask, 0F);
+    }
+
+    /**
+     * Write a feature, given its index in the block (timeStep * featuresPerTimeStep + feature).
+     */
+    @Override
+    public void put(int featureIndex, float value) {
+        features[featureIndex] = value;
+    }
+
+    public void put(int feature, int timeStep, float value) {
+        features[timeStep * featuresPerTimeStep + feature] = value;
+    }
+
+    public float get(int featureIndex) {
+        return features[featureIndex];
+    }
+
+    /**
+     * Unmask the first length time steps and mask the others.
+     *
+     * @param length number of time steps that hold the sequence.
+     */
+    public void setSequenceLength(int length) {
+        final int unmasked = Math.max(0, Math.min(length, numTimeSteps));
+        Arrays.fill(mask, 0, unmasked, 1F);
+        Arrays.fill(mask, unmasked, numTimeSteps, 0F);
+    }
+
+    public void setMask(int timeStep, boolean unmasked) {
+        mask[timeStep] = unmasked ? 1F : 0F;
+    }
+
+    public boolean isMasked(int timeStep) {
+        return mask[timeStep] != 0;
+    }
+
+    /**
+     * Write the non-zero features of the block.
+     *
+     * @param writer receives features indexed timeStep * featuresPerTimeStep + feature.
+     */
+    public void writeNonZeroFeatures(FeatureWriter writer) {
+        for (int i = 0; i < features.length; i++) {
+            if (features[i] != 0) {
+                writer.put(i, features[i]);
+            }
+        }
+    }
+
+    /**
+     * Copy the features to a minibatch.
+     *
+     * @param inputs        minibatch features, with shape [minibatch, featuresPerTimeStep, numTimeSteps].
+     * @param indexOfRecord index of the record in the minibatch.
+     */
+    public void copyFeaturesTo(INDArray inputs, int indexOfRecord) {
+        if (featureView == null) {
+            featureView = Nd4j.create(new int[]{featuresPerTimeStep, numTimeSteps}, 'f');
+        }
+        featureView.data().setData(features);
+        inputs.tensorAlongDimension(indexOfRecord, 1, 2).assign(featureView);
+    }
+
+    /**
+     * Copy the mask to a minibatch.
+     *
+     * @param masks         minibatch mask, with shape [minibatch, numTimeSteps].
+     * @param indexOfRecord index of the record in the minibatch.
+     */
+    public void copyMaskTo(INDArray masks, int indexOfRecord) {
+        if (maskView == null) {
+            maskView = Nd4j.create(new int[]{1, numTimeSteps}, 'f');
+        }
+        maskView.data().setData(mask);
+        masks.getRow(indexOfRecord).assign(maskView);
+    }
+}
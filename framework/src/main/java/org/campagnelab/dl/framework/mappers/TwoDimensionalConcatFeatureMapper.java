@@ -40,10 +40,26 @@ public class TwoDimensionalConcatFeatureMapper<RecordType> implements FeatureMap
     private int[] timeStepOffsets;
     private int[] numFeaturesOffsets;
     private MappedDimensions dim;
-    private int[] mapperIndices = new int[]{0, 0, 0};
-    private int[] maskerIndices = new int[]{0, 0};
+    private TimeSeriesBlock block;
     private int zeroPaddingWidth;
     private int totalTimeSteps;
+    private final TimeStepFeatureWriter timeStepWriter = new TimeStepFeatureWriter();
+
+    /**
+     * Places the features of a delegate (indexed timeStep * featuresPerTimeStep + feature) at their time step in
+     * the feature space of this mapper.
+     */
+    private class TimeStepFeatureWriter implements FeatureWriter {
+        FeatureWriter target;
+        int timeStepOffset;
+
+        @Override
+        public void put(int featureIndex, float value) {
+            final int timeStep = timeStepOffset + featureIndex / featuresPerTimeStep;
+            final int featureInTimeStep = featureIndex % featuresPerTimeStep;
+            target.put(timeStep * (featuresPerTimeStep + zeroPaddingWidth) + featureInTimeStep, value);
+        }
+    }
 
     /**
      * Creates a concatenating feature mapper from a set of delegate mappers with padding zeros ended
@@ -80,6 +96,8 @@ public class TwoDimensionalConcatFeatureMapper<RecordType> implements FeatureMap
         featuresPerTimeStep = dimensions.numElements(1);
         this.delegates = delegates;
         dim = new MappedDimensions(featuresPerTimeStep + zeroPaddingWidth, totalTimeSteps);
+        block = new TimeSeriesBlock(featuresPerTimeStep + zeroPaddingWidth, totalTimeSteps);
+        timeStepWriter.target = block;
     }
 
     /**
@@ -106,25 +124,26 @@ public class TwoDimensionalConcatFeatureMapper<RecordType> implements FeatureMap
         for (FeatureMapper<RecordType> delegate : delegates) {
             delegate.prepareToNormalize(record, indexOfRecord);
         }
+        // encode features and mask of the whole record, padding features remain zero:
+        block.clear();
+        for (int i = 0; i < delegates.length; i++) {
+            timeStepWriter.timeStepOffset = timeStepOffsets[i];
+            delegates[i].writeNonZeroFeatures(record, timeStepWriter);
+            final int numTimeSteps = timeStepOffsets[i + 1] - timeStepOffsets[i];
+            for (int t = 0; t < numTimeSteps; t++) {
+                block.setMask(timeStepOffsets[i] + t, delegates[i].isMasked(record, t * featuresPerTimeStep));
+            }
+        }
     }
 
     @Override
     public void mapFeatures(RecordType record, INDArray inputs, int indexOfRecord) {
-        mapperIndices[0] = indexOfRecord;
-        int offset = 0;
-        for (FeatureMapper<RecordType> delegate : delegates) {
-            int numTimeSteps = delegate.dimensions().numElements(2);
-            for (int i = 0; i < numTimeSteps; i++) {
-                mapperIndices[2] = offset;
-                for (int j = 0; j < featuresPerTimeStep + zeroPaddingWidth; j++) {
-                    mapperIndices[1] = j;
-                    int featureIndex = i * featuresPerTimeStep + j;
-                    float feature = j < featuresPerTimeStep ? delegate.produceFeature(record, featureIndex) : 0F;
-                    inputs.putScalar(mapperIndices, feature);
-                }
-                offset++;
-            }
-        }
+        block.copyFeaturesTo(inputs, indexOfRecord);
+    }
+
+    @Override
+    public void writeNonZeroFeatures(RecordType record, FeatureWriter writer) {
+        block.writeNonZeroFeatures(writer);
     }
 
     @Override
@@ -134,16 +153,7 @@ public class TwoDimensionalConcatFeatureMapper<RecordType> implements FeatureMap
 
     @Override
     public void maskFeatures(RecordType record, INDArray mask, int indexOfRecord) {
-        maskerIndices[0] = indexOfRecord;
-        int offset = 0;
-        for (FeatureMapper<RecordType> delegate : delegates) {
-            int numTimeSteps = delegate.dimensions().numElements(2);
-            for (int i = 0; i < numTimeSteps; i++) {
-                maskerIndices[1] = offset;
-                mask.putScalar(maskerIndices, delegate.isMasked(record, i * featuresPerTimeStep) ? 1F : 0F);
-                offset++;
-            }
-        }
+        block.copyMaskTo(mask, indexOfRecord);
     }
 
     @Override
@@ -161,15 +171,6 @@ public class TwoDimensionalConcatFeatureMapper<RecordType> implements FeatureMap
 
     @Override
     public float produceFeature(RecordType record, int featureIndex) {
-        int timeStepIndex = featureIndex / (featuresPerTimeStep + zeroPaddingWidth);
-        int featureInTimeStepIndex = featureIndex % (featuresPerTimeStep + zeroPaddingWidth);
-        int newFeatureIndex = timeStepIndex * featuresPerTimeStep + featureInTimeStepIndex;
-        int indexOfDelegate = Arrays.binarySearch(timeStepOffsets, timeStepIndex);
-        if (indexOfDelegate < 0) {
-            indexOfDelegate = -(indexOfDelegate + 1) - 1;
-        }
-        boolean validFeature = featureInTimeStepIndex < featuresPerTimeStep;
-        return validFeature ? delegates[indexOfDelegate].produceFeature(record,
-                newFeatureIndex - numFeaturesOffsets[indexOfDelegate]) : 0F;
+        return block.get(featureIndex);
     }
 }
@@ -0,0 +1,179 @@
+package org.campagnelab.dl.framework.models;
+
+import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+/**
+ * A preprocessed, inference-only layout for a trained computation graph. A bundle is a directory
+ * (modelPath/prefix-bundle) with three uncompressed files:
+ * <ul>
+ * <li>graph.json: the computation graph configuration,</li>
+ * <li>params.bin: the flat parameter vector, stored as raw floats in the byte order of the machine that wrote it,</li>
+ * <li>bundle.properties: the bundle metadata (number of parameters, byte order, and the modification time and
+ * length of the serialized graph the bundle was written from).</li>
+ * </ul>
+ * Loading a bundle memory-maps params.bin and hands the mapped buffer to the graph, which avoids unzipping
+ * and copying parameters as ModelSerializer does. Updater state is not stored: bundles are only read for inference
+ * (see ModelLoader.loadModelForInference), and cannot resume training. Feature mappers are still configured from
+ * config.properties and domain.properties in the model directory.
+ *
+ * @author Fabien Campagne
+ */
+public class ModelBundle {
+    static private Logger LOG = LoggerFactory.getLogger(ModelBundle.class);
+    public static final String BUNDLE_SUFFIX = "-bundle";
+    private static final String GRAPH_FILENAME = "graph.json";
+    private static final String PARAMS_FILENAME = "params.bin";
+    private static final String PROPERTIES_FILENAME = "bundle.properties";
+    private static final int BUNDLE_VERSION = 1;
+
+    private final String bundleDirectory;
+
+    /**
+     * Create a bundle handle for a model.
+     *
+     * @param modelPath         model directory.
+     * @param modelNamePrefix   model prefix/label (e.g., best, latest, bestAUC).
+     */
+    public ModelBundle(String modelPath, String modelNamePrefix) {
+        this.bundleDirectory = getBundleDirectory(modelPath, modelNamePrefix);
+    }
+
+    public static String getBundleDirectory(String modelPath, String modelNamePrefix) {
+        return modelPath + "/" + modelNamePrefix + BUNDLE_SUFFIX;
+    }
+
+    /**
+     * Determine if a bundle was written for the model.
+     *
+     * @return true when the bundle directory contains the graph, parameters and properties.
+     */
+    public boolean exists() {
+        return new File(bundleDirectory, GRAPH_FILENAME).exists() &&
+                new File(bundleDirectory, PARAMS_FILENAME).exists() &&
+                new File(bundleDirectory, PROPERTIES_FILENAME).exists();
+    }
+
+    /**
+     * Write the bundle for a computation graph.
+     *
+     * @param graph  the trained graph.
+     * @param source serialized graph the bundle is written from, or null. Recorded to detect stale bundles.
+     * @throws IOException when the bundle cannot be written.
+     */
+    public void write(ComputationGraph graph, File source) throws IOException {
+        FileUtils.forceMkdir(new File(bundleDirectory));
+        FileUtils.writeStringToFile(new File(bundleDirectory, GRAPH_FILENAME),
+                graph.getConfiguration().toJson(), Charset.forName("UTF-8"));
+
+        INDArray params = graph.params();
+        final int numParams = params.length();
+        ByteBuffer bytes = ByteBuffer.allocate(numParams * 4).order(ByteOrder.nativeOrder());
+        FloatBuffer floats = bytes.asFloatBuffer();
+        for (int i = 0; i < numParams; i++) {
+            floats.put(params.getFloat(i));
+        }
+        try (FileChannel channel = new FileOutputStream(new File(bundleDirectory, PARAMS_FILENAME)).getChannel()) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        Properties bundleProperties = new Properties();
+        bundleProperties.setProperty("bundle.version", Integer.toString(BUNDLE_VERSION));
+        bundleProperties.setProperty("bundle.numParams", Integer.toString(numParams));
+        bundleProperties.setProperty("bundle.byteOrder", ByteOrder.nativeOrder().toString());
+        if (source != null) {
+            bundleProperties.setProperty("bundle.source.lastModified", Long.toString(source.lastModified()));
+            bundleProperties.setProperty("bundle.source.length", Long.toString(source.length()));
+        }
+        try (FileWriter writer = new FileWriter(new File(bundleDirectory, PROPERTIES_FILENAME))) {
+            bundleProperties.store(writer, "Model bundle, inference only.");
+        }
+    }
+
+    /**
+     * Determine if the serialized graph the bundle was written from has changed since (e.g., latest was overwritten).
+     * Bundles that did not record their source are stale when the source is newer than their parameters.
+     *
+     * @param source serialized graph of the model.
+     * @return true when the bundle no longer matches the source.
+     * @throws IOException when the bundle properties cannot be read.
+     */
+    public boolean isStale(File source) throws IOException {
+        if (!source.exists()) {
+            return false;
+        }
+        Properties properties = getProperties();
+        String lastModified = properties.getProperty("bundle.source.lastModified");
+        String length = properties.getProperty("bundle.source.length");
+        if (lastModified == null || length == null) {
+            return source.lastModified() > new File(bundleDirectory, PARAMS_FILENAME).lastModified();
+        }
+        return source.lastModified() != Long.parseLong(lastModified) || source.length() != Long.parseLong(length);
+    }
+
+    /**
+     * Return the properties stored with the bundle.
+     *
+     * @return bundle properties.
+     * @throws IOException when the properties cannot be read.
+     */
+    public Properties getProperties() throws IOException {
+        Properties properties = new Properties();
+        try (FileReader reader = new FileReader(new File(bundleDirectory, PROPERTIES_FILENAME))) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    /**
+     * Load the computation graph from the bundle. Parameters are memory-mapped when the bundle byte order
+     * matches the byte order of this machine, and copied otherwise.
+     *
+     * @return an initialized computation graph, ready for inference.
+     * @throws IOException when the bundle cannot be read.
+     */
+    public ComputationGraph load() throws IOException {
+        long start = System.nanoTime();
+        Properties properties = getProperties();
+        final int numParams = Integer.parseInt(properties.getProperty("bundle.numParams"));
+        final String byteOrderName = properties.getProperty("bundle.byteOrder");
+        ComputationGraphConfiguration conf = ComputationGraphConfiguration.fromJson(
+                FileUtils.readFileToString(new File(bundleDirectory, GRAPH_FILENAME), Charset.forName("UTF-8")));
+
+        INDArray params;
+        try (FileChannel channel = new RandomAccessFile(new File(bundleDirectory, PARAMS_FILENAME), "r").getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, numParams * 4L);
+            if (ByteOrder.nativeOrder().toString().equals(byteOrderName) &&
+                    Nd4j.dataType() == DataBuffer.Type.FLOAT) {
+                mapped.order(ByteOrder.nativeOrder());
+                DataBuffer buffer = Nd4j.createBuffer(mapped, DataBuffer.Type.FLOAT, numParams);
+                params = Nd4j.create(buffer, new int[]{1, numParams});
+            } else {
+                mapped.order(ByteOrder.BIG_ENDIAN.toString().equals(byteOrderName) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                float[] values = new float[numParams];
+                mapped.asFloatBuffer().get(values);
+                params = Nd4j.create(values);
+            }
+        }
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init(params, false);
+        LOG.info(String.format("Loaded model bundle %s in %d ms", bundleDirectory, (System.nanoTime() - start) / 1000000));
+        return graph;
+    }
+}
@@ -146,10 +146,25 @@ public class ModelLoader {
         }
     }
 
+    /**
+     * Load a model to predict with. Reads the model bundle (see ModelBundle) when one was written for the model and
+     * is not stale, and the serialized model otherwise. Bundles have no updater state, so models loaded this way
+     * must not be trained further: use loadModel to resume training or transfer parameters.
+     *
+     * @param modelNamePrefix model prefix/label (e.g., best, latest, bestAUC).
+     * @return the model, or null if no model with this prefix exists.
+     */
+    public Model loadModelForInference(String modelNamePrefix) throws IOException {
+        ModelBundle bundle = new ModelBundle(modelPath, modelNamePrefix);
+        if (bundle.exists() && !bundleIsStale(bundle, modelNamePrefix)) {
+            return bundle.load();
+        }
+        return loadModel(modelNamePrefix);
+    }
+
     public Model loadModel(String modelNamePrefix) throws IOException {
 
         Model model = null;
-
         String pathname = getPath(modelNamePrefix, "/%sModel.bin");
         if (new File(pathname).exists()) {
             model = ModelSerializer.restoreMultiLayerNetwork(pathname);
@@ -185,6 +200,17 @@ public class ModelLoader {
     }
 
 
+    /**
+     * A bundle is stale when the serialized graph it was created from has been overwritten since (e.g., latest).
+     */
+    private boolean bundleIsStale(ModelBundle bundle, String modelNamePrefix) throws IOException {
+        if (bundle.isStale(new File(getPath(modelNamePrefix, "/%s-ComputationGraph.bin")))) {
+            LOG.warn("Ignoring stale model bundle " + ModelBundle.getBundleDirectory(modelPath, modelNamePrefix));
+            return true;
+        }
+        return false;
+    }
+
     private String getPath(String modelNamePrefix, String format) {
         return modelPath + String.format(format, modelNamePrefix);
     }
@@ -2,6 +2,8 @@
 package org.campagnelab.dl.framework.models;
 
 import org.campagnelab.dl.framework.domains.DomainDescriptor;
+import org.campagnelab.dl.framework.domains.prediction.PredictionInterpreter;
+import org.campagnelab.dl.framework.mappers.FeatureContext;
 import org.campagnelab.dl.framework.mappers.FeatureMapper;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -23,10 +25,71 @@ public class ModelOutputHelper<RecordType> {
     private INDArray[] resultGraph;
     private DomainDescriptor<RecordType> domainDescriptor;
 
+    private PredictionCache predictionCache;
+    private long[] key = new long[2];
+    private boolean[] requiredOutputs;
+    private PrunedComputationGraph pruned;
+
     public ModelOutputHelper(DomainDescriptor<RecordType> domainDescriptor) {
         this.domainDescriptor = domainDescriptor;
     }
 
+    /**
+     * Reuse model outputs for records whose mapped features were seen before. Only used with computation graphs.
+     *
+     * @param predictionCache cache, or null to always run the model.
+     */
+    public void setPredictionCache(PredictionCache predictionCache) {
+        this.predictionCache = predictionCache;
+    }
+
+    /**
+     * Only calculate some of the outputs of computation graphs. Outputs that are not required are returned as null.
+     *
+     * @param requiredOutputs one element per graph output, true when the output must be calculated, or null to
+     *                        calculate every output.
+     */
+    public void setRequiredOutputs(boolean[] requiredOutputs) {
+        this.requiredOutputs = requiredOutputs;
+        this.pruned = null;
+    }
+
+    /**
+     * Determine the outputs that the domain reads (see DomainDescriptor.isOutputRead).
+     *
+     * @return one element per graph output, true when predictions read the output.
+     */
+    public static boolean[] readOutputs(DomainDescriptor<?> domainDescriptor) {
+        String[] outputNames = domainDescriptor.getComputationalGraph().getOutputNames();
+        boolean[] read = new boolean[outputNames.length];
+        for (int i = 0; i < outputNames.length; i++) {
+            read[i] = domainDescriptor.isOutputRead(outputNames[i]);
+        }
+        return read;
+    }
+
+    /**
+     * Determine the outputs that must be calculated: outputs that the domain reads, and whose interpreter reads the
+     * model output.
+     *
+     * @param interpreters one interpreter per graph output (null when the output is not interpreted).
+     * @return one element per graph output, true when the output must be calculated.
+     */
+    public static boolean[] requiredOutputs(DomainDescriptor<?> domainDescriptor, PredictionInterpreter[] interpreters) {
+        boolean[] required = readOutputs(domainDescriptor);
+        for (int i = 0; i < interpreters.length; i++) {
+            required[i] &= interpreters[i] != null && interpreters[i].usesModelOutput();
+        }
+        return required;
+    }
+
+    private PrunedComputationGraph prune(ComputationGraph graph) {
+        if (pruned == null || pruned.getOriginal() != graph) {
+            pruned = new PrunedComputationGraph(graph, requiredOutputs);
+        }
+        return pruned;
+    }
+
     /**
      * @param model
      * @param iterator Must be of type Iterator<DataSet> or Iterator<MultiDataSet>.
@@ -42,13 +105,14 @@ public class ModelOutputHelper<RecordType> {
     }
 
     public void predictForNextRecord(Model model, RecordType record, FeatureMapper... featureMappers) {
+        FeatureContext.current().reset(record);
 
         if (model instanceof MultiLayerNetwork) {
             MultiLayerNetwork network = (MultiLayerNetwork) model;
             String inputName = domainDescriptor.getComputationalGraph().getInputNames()[0];
             INDArray testFeatures = Nd4j.zeros(domainDescriptor.getInputShape(1, inputName));
             featureMappers[0].prepareToNormalize(record, 0);
-            featureMappers[0].mapFeatures(record, testFeatures, 0);
+            featureMappers[0].mapFeaturesToZeroed(record, testFeatures, 0);
             Arrays.fill(resultGraph, null);
             resultGraph[0] = network.output(testFeatures, false);
         } else if (model instanceof ComputationGraph) {
@@ -58,17 +122,31 @@ public class ModelOutputHelper<RecordType> {
                 String inputName = domainDescriptor.getComputationalGraph().getInputNames()[i];
                 testFeatures[i] = Nd4j.zeros(domainDescriptor.getInputShape(1, inputName));
                 featureMappers[i].prepareToNormalize(record, 0);
-                featureMappers[i].mapFeatures(record, testFeatures[i], 0);
+                featureMappers[i].mapFeaturesToZeroed(record, testFeatures[i], 0);
             }
 
-            resultGraph = graph.output(false, testFeatures);
+            PrunedComputationGraph prunedGraph = requiredOutputs == null ? null : prune(graph);
+            if (predictionCache != null) {
+                predictionCache.fingerprint(testFeatures, null, 0, key);
+                INDArray[] cached = predictionCache.getAsMinibatch(key);
+                if (cached != null && !predictionCache.isVerifying()) {
+                    resultGraph = prunedGraph == null ? cached : prunedGraph.expand(cached);
+                    return;
+                }
+            }
+            INDArray[] outputs = (prunedGraph == null ? graph : prunedGraph.getGraph()).output(false, testFeatures);
+            if (predictionCache != null) {
+                predictionCache.put(key, outputs, 0);
+            }
+            resultGraph = prunedGraph == null ? outputs : prunedGraph.expand(outputs);
         } else {
             throw new IllegalArgumentException("model is not of supported type: " + model.getClass().getCanonicalName());
         }
     }
 
     public void predictForNext(ComputationGraph graph, Iterator<MultiDataSet> iterator) {
-        resultGraph = graph.output(false, iterator.next().getFeatures());
+        INDArray[] features = iterator.next().getFeatures();
+        resultGraph = requiredOutputs == null ? graph.output(false, features) : prune(graph).output(features);
     }
 
     public void predictForNext(MultiLayerNetwork network, Iterator<DataSet> iterator) {
@@ -0,0 +1,314 @@
+package org.campagnelab.dl.framework.models;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A bounded, off-heap memo of model outputs keyed by a fingerprint of the mapped features of one example.
+ * Many sites (e.g., homozygous reference sites with typical coverage) map to exactly the same features, so
+ * the model output for these sites can be reused instead of running another forward pass.
+ * <p>
+ * The fingerprint is a pair of 64 bit hashes of the feature (and mask) values. When quantum is larger than zero,
+ * feature values are rounded to a multiple of quantum before hashing, so that nearly identical feature vectors share
+ * a key. Entries are stored in a direct buffer with a fixed number of slots. Collisions are resolved by linear probing
+ * over a small window, after which the home slot is overwritten.
+ * <p>
+ * In verify mode, the model is run for every example and cached outputs are compared to the fresh outputs. This mode
+ * is used to check that a quantum is safe for a given model.
+ *
+ * @author Fabien Campagne
+ */
+public class PredictionCache {
+    static private Logger LOG = LoggerFactory.getLogger(PredictionCache.class);
+    private static final int PROBE_WINDOW = 8;
+    private static final int KEY_BYTES = 16;
+    private static final long EMPTY = 0;
+
+    private final int requestedCapacity;
+    private final float quantum;
+    private final boolean verify;
+    private int capacity;
+    private ByteBuffer slots;
+    private int slotBytes;
+    private int[][] exampleShapes;
+    private int[] outputRanks;
+    private int valuesPerExample;
+
+    private long lookups;
+    private long hits;
+    private long verified;
+    private long mismatches;
+    private float maxDifference;
+
+    /**
+     * Create a prediction cache.
+     *
+     * @param capacity Maximum number of examples whose outputs are kept.
+     * @param quantum  When larger than zero, features are quantized to multiples of quantum before hashing.
+     * @param verify   When true, outputs are always computed and compared to cached outputs.
+     */
+    public PredictionCache(int capacity, float quantum, boolean verify) {
+        this.requestedCapacity = capacity;
+        this.quantum = quantum;
+        this.verify = verify;
+    }
+
+    public boolean isVerifying() {
+        return verify;
+    }
+
+    /**
+     * Calculate the fingerprint of one example in a minibatch.
+     *
+     * @param features     features of the minibatch, one INDArray per graph input.
+     * @param masks        feature masks, or null.
+     * @param exampleIndex index of the example in the minibatch.
+     * @param key          array of two longs where the fingerprint is written.
+     */
+    public void fingerprint(INDArray[] features, INDArray[] masks, int exampleIndex, long[] key) {
+        long h1 = 0x9E3779B97F4A7C15L;
+        long h2 = 0xC2B2AE3D27D4EB4FL;
+        for (int k = 0; k < 2; k++) {
+            INDArray[] arrays = k == 0 ? features : masks;
+            if (arrays == null) {
+                continue;
+            }
+            for (INDArray array : arrays) {
+                if (array == null) {
+                    continue;
+                }
+                float[] values = array.slice(exampleIndex).dup('c').data().asFloat();
+                for (float value : values) {
+                    long bits = quantum > 0 ? Math.round(value / quantum) : Float.floatToIntBits(value);
+                    h1 = mix(h1 ^ bits);
+                    h2 = mix(h2 + bits * 0xFF51AFD7ED558CCDL);
+                }
+                // separate inputs so that shifting values between inputs changes the key:
+                h1 = mix(h1 ^ values.length);
+                h2 = mix(h2 + values.length);
+            }
+        }
+        if (h1 == EMPTY) {
+            h1 = 1;
+        }
+        key[0] = h1;
+        key[1] = h2;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Look up the outputs for an example.
+     *
+     * @param key fingerprint of the example.
+     * @return the outputs of the model for the example, one INDArray per graph output, or null if the key is not cached.
+     */
+    public INDArray[] get(long[] key) {
+        lookups++;
+        if (slots == null) {
+            return null;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        hits++;
+        INDArray[] outputs = new INDArray[exampleShapes.length];
+        int position = slot * slotBytes + KEY_BYTES;
+        for (int outputIndex = 0; outputIndex < exampleShapes.length; outputIndex++) {
+            int[] shape = exampleShapes[outputIndex];
+            float[] values = new float[numElements(shape)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = slots.getFloat(position);
+                position += 4;
+            }
+            outputs[outputIndex] = Nd4j.create(values, shape, 'c');
+        }
+        return outputs;
+    }
+
+    /**
+     * Look up the outputs for an example, shaped as the outputs of a minibatch with a single example.
+     *
+     * @param key fingerprint of the example.
+     * @return the outputs of the model for the example, or null if the key is not cached.
+     */
+    public INDArray[] getAsMinibatch(long[] key) {
+        INDArray[] outputs = get(key);
+        if (outputs != null) {
+            for (int outputIndex = 0; outputIndex < outputs.length; outputIndex++) {
+                int[] shape = exampleShapes[outputIndex];
+                if (shape.length < outputRanks[outputIndex]) {
+                    int[] minibatchShape = new int[shape.length + 1];
+                    minibatchShape[0] = 1;
+                    System.arraycopy(shape, 0, minibatchShape, 1, shape.length);
+                    outputs[outputIndex] = outputs[outputIndex].reshape(minibatchShape);
+                }
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Store the outputs of the model for one example of a minibatch. In verify mode, outputs already cached under
+     * the same key are compared to the new outputs first.
+     *
+     * @param key          fingerprint of the example.
+     * @param outputs      outputs of the model for the whole minibatch.
+     * @param exampleIndex index of the example in the minibatch.
+     */
+    public void put(long[] key, INDArray[] outputs, int exampleIndex) {
+        if (slots == null) {
+            allocate(outputs, exampleIndex);
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            if (verify) {
+                compare(slot, outputs, exampleIndex);
+            }
+            return;
+        }
+        slot = freeSlot(key);
+        int position = slot * slotBytes;
+        slots.putLong(position, key[0]);
+        slots.putLong(position + 8, key[1]);
+        position += KEY_BYTES;
+        for (INDArray output : outputs) {
+            float[] values = output.slice(exampleIndex).dup('c').data().asFloat();
+            for (float value : values) {
+                slots.putFloat(position, value);
+                position += 4;
+            }
+        }
+    }
+
+    private void allocate(INDArray[] outputs, int exampleIndex) {
+        exampleShapes = new int[outputs.length][];
+        outputRanks = new int[outputs.length];
+        valuesPerExample = 0;
+        for (int outputIndex = 0; outputIndex < outputs.length; outputIndex++) {
+            outputRanks[outputIndex] = outputs[outputIndex].rank();
+            INDArray slice = outputs[outputIndex].slice(exampleIndex);
+            exampleShapes[outputIndex] = slice.shape().clone();
+            valuesPerExample += slice.length();
+        }
+        slotBytes = KEY_BYTES + valuesPerExample * 4;
+        capacity = (int) Math.min(requestedCapacity, Integer.MAX_VALUE / slotBytes);
+        if (capacity < requestedCapacity) {
+            LOG.warn(String.format("Prediction cache capacity reduced to %d entries.", capacity));
+        }
+        slots = ByteBuffer.allocateDirect(capacity * slotBytes).order(ByteOrder.nativeOrder());
+    }
+
+    private int find(long[] key) {
+        int home = home(key);
+        for (int probe = 0; probe < PROBE_WINDOW; probe++) {
+            int slot = (home + probe) % capacity;
+            int position = slot * slotBytes;
+            long k1 = slots.getLong(position);
+            if (k1 == EMPTY) {
+                return -1;
+            }
+            if (k1 == key[0] && slots.getLong(position + 8) == key[1]) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int freeSlot(long[] key) {
+        int home = home(key);
+        for (int probe = 0; probe < PROBE_WINDOW; probe++) {
+            int slot = (home + probe) % capacity;
+            if (slots.getLong(slot * slotBytes) == EMPTY) {
+                return slot;
+            }
+        }
+        // the probe window is full, replace the entry at the home slot:
+        return home;
+    }
+
+    private int home(long[] key) {
+        return (int) ((key[0] >>> 1) % capacity);
+    }
+
+    private void compare(int slot, INDArray[] outputs, int exampleIndex) {
+        verified++;
+        int position = slot * slotBytes + KEY_BYTES;
+        float difference = 0;
+        for (INDArray output : outputs) {
+            float[] values = output.slice(exampleIndex).dup('c').data().asFloat();
+            for (float value : values) {
+                difference = Math.max(difference, Math.abs(slots.getFloat(position) - value));
+                position += 4;
+            }
+        }
+        if (difference > 0) {
+            mismatches++;
+            maxDifference = Math.max(maxDifference, difference);
+        }
+    }
+
+    /**
+     * Select a subset of the examples of a minibatch.
+     *
+     * @param array          features or mask of a minibatch (examples along the first dimension).
+     * @param exampleIndices indices of the examples to keep, in order.
+     * @return a new array with exampleIndices.length examples.
+     */
+    public static INDArray selectExamples(INDArray array, int[] exampleIndices) {
+        if (array == null) {
+            return null;
+        }
+        INDArray[] parts = new INDArray[exampleIndices.length];
+        for (int i = 0; i < exampleIndices.length; i++) {
+            INDArrayIndex[] indices = new INDArrayIndex[array.rank()];
+            indices[0] = NDArrayIndex.interval(exampleIndices[i], exampleIndices[i] + 1);
+            for (int dim = 1; dim < indices.length; dim++) {
+                indices[dim] = NDArrayIndex.all();
+            }
+            parts[i] = array.get(indices);
+        }
+        return Nd4j.concat(0, parts);
+    }
+
+    private static int numElements(int[] shape) {
+        int n = 1;
+        for (int dim : shape) {
+            n *= dim;
+        }
+        return n;
+    }
+
+    public double hitRate() {
+        return lookups == 0 ? 0 : ((double) hits) / lookups;
+    }
+
+    /**
+     * Summarize cache usage (and verification results in verify mode).
+     *
+     * @return a human readable report.
+     */
+    public String report() {
+        String report = String.format("Prediction cache: %d lookups, %d hits (hit rate=%.4f), capacity=%d, quantum=%g",
+                lookups, hits, hitRate(), capacity, quantum);
+        if (verify) {
+            report += String.format(", verified=%d, mismatches=%d, max abs difference=%g", verified, mismatches, maxDifference);
+        }
+        return report;
+    }
+}
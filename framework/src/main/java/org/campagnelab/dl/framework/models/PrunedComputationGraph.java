@@ -0,0 +1,154 @@
+package org.campagnelab.dl.framework.models;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A computation graph restricted to the vertices needed to calculate a subset of its outputs. Pruning the graph
+ * ahead of time avoids computing the layers that only lead to unused outputs. Parameters are copied from the
+ * original graph.
+ * <p>
+ * During prediction, outputs are pruned when the domain does not read them (see DomainDescriptor.isOutputRead),
+ * when they have no interpreter, or when their interpreter does not read the model output (see
+ * PredictionInterpreter.usesModelOutput). For instance, genotype models trained with true genotype labels only
+ * calculate their trueGenotype output.
+ * <p>
+ * Outputs are returned in the order of the original graph, with null for the outputs that were pruned, so that
+ * callers can keep indexing outputs as before.
+ *
+ * @author Fabien Campagne
+ */
+public class PrunedComputationGraph {
+    private final ComputationGraph original;
+    private final ComputationGraph graph;
+    private final int[] outputIndices;
+    private final int numOutputs;
+
+    /**
+     * Prune a graph.
+     *
+     * @param original        the trained graph.
+     * @param requiredOutputs one element per output of the original graph, true when the output must be calculated.
+     *                        When no output is required, the graph is not pruned.
+     */
+    public PrunedComputationGraph(ComputationGraph original, boolean[] requiredOutputs) {
+        this.original = original;
+        ComputationGraphConfiguration conf = original.getConfiguration();
+        List<String> outputNames = conf.getNetworkOutputs();
+        this.numOutputs = outputNames.size();
+        IntArrayList indices = new IntArrayList();
+        List<String> keptOutputs = new ObjectArrayList<>();
+        for (int i = 0; i < numOutputs; i++) {
+            if (requiredOutputs[i]) {
+                indices.add(i);
+                keptOutputs.add(outputNames.get(i));
+            }
+        }
+        if (keptOutputs.isEmpty()) {
+            // nothing to calculate, but callers still expect the graph to run:
+            for (int i = 0; i < numOutputs; i++) {
+                indices.add(i);
+                keptOutputs.add(outputNames.get(i));
+            }
+        }
+        this.outputIndices = indices.toIntArray();
+        if (keptOutputs.size() == numOutputs) {
+            graph = original;
+            return;
+        }
+        // find the vertices that the kept outputs depend on:
+        Set<String> needed = new ObjectOpenHashSet<>();
+        List<String> toVisit = new ObjectArrayList<>(keptOutputs);
+        while (!toVisit.isEmpty()) {
+            String name = toVisit.remove(toVisit.size() - 1);
+            if (needed.add(name)) {
+                List<String> inputs = conf.getVertexInputs().get(name);
+                if (inputs != null) {
+                    toVisit.addAll(inputs);
+                }
+            }
+        }
+        ComputationGraphConfiguration prunedConf = ComputationGraphConfiguration.fromJson(conf.toJson());
+        prunedConf.getVertices().keySet().retainAll(needed);
+        prunedConf.getVertexInputs().keySet().retainAll(needed);
+        // graph inputs are all kept, so that callers provide the same features to the pruned graph:
+        prunedConf.setNetworkOutputs(keptOutputs);
+        graph = new ComputationGraph(prunedConf);
+        graph.init();
+        for (Layer layer : graph.getLayers()) {
+            String name = layer.conf().getLayer().getLayerName();
+            layer.setParams(original.getLayer(name).params());
+        }
+    }
+
+    /**
+     * Prune a graph to the outputs with the given names.
+     */
+    public static PrunedComputationGraph keepOutputs(ComputationGraph original, String... outputNames) {
+        List<String> graphOutputs = original.getConfiguration().getNetworkOutputs();
+        boolean[] required = new boolean[graphOutputs.size()];
+        for (String name : outputNames) {
+            int index = graphOutputs.indexOf(name);
+            if (index == -1) {
+                throw new IllegalArgumentException("Graph has no output named " + name);
+            }
+            required[index] = true;
+        }
+        return new PrunedComputationGraph(original, required);
+    }
+
+    public ComputationGraph getOriginal() {
+        return original;
+    }
+
+    /**
+     * @return the pruned graph, or the original graph when every output is required.
+     */
+    public ComputationGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isPruned() {
+        return graph != original;
+    }
+
+    /**
+     * Calculate the required outputs.
+     *
+     * @param features one INDArray per graph input.
+     * @return one element per output of the original graph, null for pruned outputs.
+     */
+    public INDArray[] output(INDArray... features) {
+        return expand(graph.output(false, features));
+    }
+
+    /**
+     * Place the outputs of the pruned graph at the index of the corresponding outputs of the original graph.
+     *
+     * @param outputs outputs calculated with getGraph().
+     * @return one element per output of the original graph, null for pruned outputs.
+     */
+    public INDArray[] expand(INDArray[] outputs) {
+        if (!isPruned()) {
+            return outputs;
+        }
+        INDArray[] result = new INDArray[numOutputs];
+        for (int i = 0; i < outputIndices.length; i++) {
+            result[outputIndices[i]] = outputs[i];
+        }
+        return result;
+    }
+
+    public String report() {
+        return String.format("Pruned graph: %d of %d outputs, %d of %d parameters.", outputIndices.length, numOutputs,
+                graph.numParams(), original.numParams());
+    }
+}
@@ -0,0 +1,854 @@
+package org.campagnelab.dl.framework.models;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.graph.rnn.DuplicateToTimeSeriesVertex;
+import org.deeplearning4j.nn.conf.graph.rnn.LastTimeStepVertex;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
+import org.deeplearning4j.nn.conf.layers.GravesLSTM;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reduced-precision, CPU-only representation of a trained computation graph, with its own inference engine.
+ * Weights of dense, output, RNN output and GravesLSTM layers are stored either as int8 with one scale per layer, or
+ * as bfloat16. In INT8 mode, the inputs of dense and output layers are also quantized to int8, using a per layer scale
+ * calibrated on example minibatches (see calibrate), so that matrix products accumulate in integers. LSTM layers
+ * quantize their weights only and keep float activations.
+ * <p>
+ * Supported vertices: inputs, DenseLayer, OutputLayer, RnnOutputLayer, GravesLSTM (with its configured gate
+ * activation), MergeVertex, LastTimeStepVertex and DuplicateToTimeSeriesVertex, without preprocessors. Layers with
+ * several inputs see their inputs concatenated, as a MergeVertex would. This covers the genotype models with the LSTM
+ * true genotype decoder. Feature masks are only used by LastTimeStepVertex, as in DL4J: LSTM and RNN output layers
+ * also calculate the masked time steps. Activation functions must be relu, sigmoid, hardsigmoid, tanh, softsign,
+ * identity or softmax. Other graphs are rejected with an UnsupportedOperationException.
+ *
+ * @author Fabien Campagne
+ */
+public class QuantizedGraph {
+    public enum Precision {
+        INT8,
+        BF16
+    }
+
+    /**
+     * Version 2 stores the gate activation of LSTM nodes. Version 1 files had sigmoid gates.
+     */
+    private static final int FORMAT_VERSION = 2;
+    private static final int DENSE = 1;
+    private static final int LSTM = 2;
+    private static final int MERGE = 3;
+    private static final int LAST_TIME_STEP = 4;
+    private static final int RNN_OUTPUT = 5;
+    private static final int DUPLICATE_TO_TIME_SERIES = 6;
+
+    private final Precision precision;
+    private final String[] inputNames;
+    private final String[] outputNames;
+    private final List<Node> nodes;
+    private boolean calibrating;
+
+    private QuantizedGraph(Precision precision, String[] inputNames, String[] outputNames, List<Node> nodes) {
+        this.precision = precision;
+        this.inputNames = inputNames;
+        this.outputNames = outputNames;
+        this.nodes = nodes;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Convert a trained computation graph.
+     *
+     * @param graph     the trained graph.
+     * @param precision reduced precision to use for weights.
+     * @return the reduced-precision graph. In INT8 mode, calibrate must be called before output.
+     */
+    public static QuantizedGraph fromGraph(ComputationGraph graph, Precision precision) {
+        ComputationGraphConfiguration conf = graph.getConfiguration();
+        String[] inputNames = conf.getNetworkInputs().toArray(new String[0]);
+        String[] outputNames = conf.getNetworkOutputs().toArray(new String[0]);
+        List<Node> nodes = new ObjectArrayList<>();
+        for (int vertexIndex : graph.topologicalSortOrder()) {
+            org.deeplearning4j.nn.graph.vertex.GraphVertex vertex = graph.getVertices()[vertexIndex];
+            if (vertex.isInputVertex()) {
+                continue;
+            }
+            String name = vertex.getVertexName();
+            String[] inputs = conf.getVertexInputs().get(name).toArray(new String[0]);
+            GraphVertex vertexConf = conf.getVertices().get(name);
+            Node node;
+            if (vertexConf instanceof LayerVertex) {
+                LayerVertex layerVertex = (LayerVertex) vertexConf;
+                if (layerVertex.getPreProcessor() != null) {
+                    throw new UnsupportedOperationException("Preprocessors are not supported, found one on " + name);
+                }
+                Layer layer = layerVertex.getLayerConf().getLayer();
+                org.deeplearning4j.nn.api.Layer runtimeLayer = graph.getLayer(name);
+                if (layer instanceof DenseLayer || layer instanceof OutputLayer || layer instanceof RnnOutputLayer) {
+                    node = new DenseNode(name, inputs, activationName(((FeedForwardLayer) layer).getActivationFn()),
+                            new ReducedMatrix(runtimeLayer.getParam("W"), precision),
+                            runtimeLayer.getParam("b").dup().data().asFloat(), layer instanceof RnnOutputLayer);
+                } else if (layer instanceof GravesLSTM) {
+                    GravesLSTM lstm = (GravesLSTM) layer;
+                    node = new LstmNode(name, inputs, activationName(lstm.getActivationFn()),
+                            activationName(lstm.getGateActivationFn()), lstm.getNOut(),
+                            new ReducedMatrix(runtimeLayer.getParam("W"), precision),
+                            runtimeLayer.getParam("RW"), precision,
+                            runtimeLayer.getParam("b").dup().data().asFloat());
+                } else {
+                    throw new UnsupportedOperationException("Layer type not supported: " + layer.getClass().getSimpleName());
+                }
+            } else if (vertexConf instanceof MergeVertex) {
+                node = new MergeNode(name, inputs);
+            } else if (vertexConf instanceof LastTimeStepVertex) {
+                node = new LastTimeStepNode(name, inputs, ((LastTimeStepVertex) vertexConf).getMaskArrayInputName());
+            } else if (vertexConf instanceof DuplicateToTimeSeriesVertex) {
+                // the graph input that provides the number of time steps is read as a second input:
+                node = new DuplicateToTimeSeriesNode(name, new String[]{inputs[0],
+                        ((DuplicateToTimeSeriesVertex) vertexConf).getInputName()});
+            } else {
+                throw new UnsupportedOperationException("Vertex type not supported: " + vertexConf.getClass().getSimpleName());
+            }
+            nodes.add(node);
+        }
+        return new QuantizedGraph(precision, inputNames, outputNames, nodes);
+    }
+
+    private static String activationName(IActivation activation) {
+        String name = activation.getClass().getSimpleName().toLowerCase();
+        return name.startsWith("activation") ? name.substring("activation".length()) : name;
+    }
+
+    /**
+     * Observe the range of the inputs of each dense layer on a minibatch. Call finishCalibration after the
+     * calibration minibatches have been observed.
+     */
+    public void calibrate(INDArray[] features, INDArray[] masks) {
+        calibrating = true;
+        try {
+            output(features, masks);
+        } finally {
+            calibrating = false;
+        }
+    }
+
+    public void finishCalibration() {
+        for (Node node : nodes) {
+            if (node instanceof DenseNode) {
+                ((DenseNode) node).finishCalibration();
+            }
+        }
+    }
+
+    /**
+     * Run inference on a minibatch.
+     *
+     * @param features one INDArray per graph input, in the order of the graph inputs.
+     * @param masks    feature masks, or null.
+     * @return one INDArray per graph output, in the order of the graph outputs.
+     */
+    public INDArray[] output(INDArray[] features, INDArray[] masks) {
+        Object2IntOpenHashMap<String> inputIndices = new Object2IntOpenHashMap<>();
+        inputIndices.defaultReturnValue(-1);
+        Activations[] activations = new Activations[inputNames.length + nodes.size()];
+        Object2IntOpenHashMap<String> activationIndex = new Object2IntOpenHashMap<>();
+        float[][] maskValues = new float[inputNames.length][];
+        for (int i = 0; i < inputNames.length; i++) {
+            inputIndices.put(inputNames[i], i);
+            activations[i] = new Activations(features[i]);
+            activationIndex.put(inputNames[i], i);
+            maskValues[i] = masks == null || masks[i] == null ? null : masks[i].dup('c').data().asFloat();
+        }
+        int index = inputNames.length;
+        for (Node node : nodes) {
+            Activations[] in = new Activations[node.inputs.length];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = activations[activationIndex.getInt(node.inputs[i])];
+            }
+            float[] mask = null;
+            if (node instanceof LastTimeStepNode) {
+                int maskIndex = inputIndices.getInt(((LastTimeStepNode) node).maskInput);
+                mask = maskIndex == -1 ? null : maskValues[maskIndex];
+            }
+            activations[index] = node.forward(in, mask, calibrating);
+            activationIndex.put(node.name, index);
+            index++;
+        }
+        INDArray[] outputs = new INDArray[outputNames.length];
+        for (int i = 0; i < outputNames.length; i++) {
+            Activations a = activations[activationIndex.getInt(outputNames[i])];
+            outputs[i] = Nd4j.create(a.data, a.timeSeries ? new int[]{a.miniBatchSize, a.size, a.timeSteps} :
+                    new int[]{a.miniBatchSize, a.size}, 'c');
+        }
+        return outputs;
+    }
+
+    /**
+     * Write the reduced-precision graph to a file.
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(precision.name());
+            writeStrings(out, inputNames);
+            writeStrings(out, outputNames);
+            out.writeInt(nodes.size());
+            for (Node node : nodes) {
+                out.writeInt(node.type());
+                out.writeUTF(node.name);
+                writeStrings(out, node.inputs);
+                node.write(out);
+            }
+        }
+    }
+
+    /**
+     * Read a reduced-precision graph written with save.
+     */
+    public static QuantizedGraph load(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            int version = in.readInt();
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IOException("Unsupported quantized graph format version: " + version);
+            }
+            Precision precision = Precision.valueOf(in.readUTF());
+            String[] inputNames = readStrings(in);
+            String[] outputNames = readStrings(in);
+            int numNodes = in.readInt();
+            List<Node> nodes = new ObjectArrayList<>(numNodes);
+            for (int i = 0; i < numNodes; i++) {
+                int type = in.readInt();
+                String name = in.readUTF();
+                String[] inputs = readStrings(in);
+                switch (type) {
+                    case DENSE:
+                        nodes.add(DenseNode.read(name, inputs, in, false));
+                        break;
+                    case RNN_OUTPUT:
+                        nodes.add(DenseNode.read(name, inputs, in, true));
+                        break;
+                    case LSTM:
+                        nodes.add(LstmNode.read(name, inputs, in, version));
+                        break;
+                    case MERGE:
+                        nodes.add(new MergeNode(name, inputs));
+                        break;
+                    case LAST_TIME_STEP:
+                        nodes.add(new LastTimeStepNode(name, inputs, in.readUTF()));
+                        break;
+                    case DUPLICATE_TO_TIME_SERIES:
+                        nodes.add(new DuplicateToTimeSeriesNode(name, inputs));
+                        break;
+                    default:
+                        throw new IOException("Unknown node type: " + type);
+                }
+            }
+            return new QuantizedGraph(precision, inputNames, outputNames, nodes);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    /**
+     * Activations of a vertex for a minibatch, in c order: [example][feature] or [example][feature][timeStep].
+     */
+    private static class Activations {
+        final int miniBatchSize;
+        final int size;
+        final int timeSteps;
+        final boolean timeSeries;
+        final float[] data;
+
+        Activations(int miniBatchSize, int size) {
+            this(miniBatchSize, size, 1, false);
+        }
+
+        Activations(int miniBatchSize, int size, int timeSteps, boolean timeSeries) {
+            this.miniBatchSize = miniBatchSize;
+            this.size = size;
+            this.timeSteps = timeSteps;
+            this.timeSeries = timeSeries;
+            this.data = new float[miniBatchSize * size * timeSteps];
+        }
+
+        Activations(INDArray array) {
+            int[] shape = array.shape();
+            this.miniBatchSize = shape[0];
+            this.size = shape[1];
+            this.timeSeries = shape.length == 3;
+            this.timeSteps = timeSeries ? shape[2] : 1;
+            this.data = array.dup('c').data().asFloat();
+        }
+    }
+
+    /**
+     * Concatenate activations along the feature dimension, as a MergeVertex does.
+     */
+    private static Activations concatenate(String name, Activations[] in) {
+        if (in.length == 1) {
+            return in[0];
+        }
+        int size = 0;
+        for (Activations a : in) {
+            if (a.timeSteps != in[0].timeSteps || a.timeSeries != in[0].timeSeries) {
+                throw new UnsupportedOperationException("Inputs of " + name + " differ in time steps.");
+            }
+            size += a.size;
+        }
+        final int T = in[0].timeSteps;
+        Activations result = new Activations(in[0].miniBatchSize, size, T, in[0].timeSeries);
+        for (int b = 0; b < result.miniBatchSize; b++) {
+            int offset = b * size * T;
+            for (Activations a : in) {
+                System.arraycopy(a.data, b * a.size * T, result.data, offset, a.size * T);
+                offset += a.size * T;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A weight matrix stored [row][column] in int8 (with one scale) or bfloat16.
+     */
+    private static class ReducedMatrix {
+        final int rows;
+        final int columns;
+        final Precision precision;
+        float scale;
+        byte[] int8;
+        short[] bf16;
+
+        ReducedMatrix(INDArray matrix, Precision precision) {
+            this(matrix.rows(), matrix.columns(), matrix.dup('c').data().asFloat(), precision);
+        }
+
+        ReducedMatrix(int rows, int columns, float[] values, Precision precision) {
+            this.rows = rows;
+            this.columns = columns;
+            this.precision = precision;
+            switch (precision) {
+                case INT8:
+                    float maxAbs = 0;
+                    for (float value : values) {
+                        maxAbs = Math.max(maxAbs, Math.abs(value));
+                    }
+                    scale = maxAbs == 0 ? 1 : maxAbs / 127f;
+                    int8 = new byte[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        int8[i] = (byte) Math.max(-127, Math.min(127, Math.round(values[i] / scale)));
+                    }
+                    break;
+                case BF16:
+                    bf16 = new short[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        bf16[i] = toBF16(values[i]);
+                    }
+                    break;
+            }
+        }
+
+        private ReducedMatrix(int rows, int columns, Precision precision) {
+            this.rows = rows;
+            this.columns = columns;
+            this.precision = precision;
+        }
+
+        /**
+         * Round to nearest even, keeping the top 16 bits of the float.
+         */
+        static short toBF16(float value) {
+            int bits = Float.floatToIntBits(value);
+            int rounding = 0x7FFF + ((bits >>> 16) & 1);
+            return (short) ((bits + rounding) >>> 16);
+        }
+
+        static float fromBF16(short value) {
+            return Float.intBitsToFloat((value & 0xFFFF) << 16);
+        }
+
+        /**
+         * Accumulate x * this into out, for a float row vector x.
+         */
+        void multiplyAdd(float[] x, int xOffset, float[] out, int outOffset) {
+            for (int i = 0; i < rows; i++) {
+                final float xi = x[xOffset + i];
+                if (xi == 0) {
+                    continue;
+                }
+                final int rowStart = i * columns;
+                if (precision == Precision.INT8) {
+                    final float xs = xi * scale;
+                    for (int j = 0; j < columns; j++) {
+                        out[outOffset + j] += xs * int8[rowStart + j];
+                    }
+                } else {
+                    for (int j = 0; j < columns; j++) {
+                        out[outOffset + j] += xi * fromBF16(bf16[rowStart + j]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Accumulate q * this into acc, for an int8 row vector q (INT8 precision only).
+         */
+        void multiplyAdd(byte[] q, int[] acc) {
+            for (int i = 0; i < rows; i++) {
+                final int qi = q[i];
+                if (qi == 0) {
+                    continue;
+                }
+                final int rowStart = i * columns;
+                for (int j = 0; j < columns; j++) {
+                    acc[j] += qi * int8[rowStart + j];
+                }
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(rows);
+            out.writeInt(columns);
+            out.writeUTF(precision.name());
+            if (precision == Precision.INT8) {
+                out.writeFloat(scale);
+                out.write(int8);
+            } else {
+                for (short value : bf16) {
+                    out.writeShort(value);
+                }
+            }
+        }
+
+        static ReducedMatrix read(DataInputStream in) throws IOException {
+            ReducedMatrix matrix = new ReducedMatrix(in.readInt(), in.readInt(), Precision.valueOf(in.readUTF()));
+            if (matrix.precision == Precision.INT8) {
+                matrix.scale = in.readFloat();
+                matrix.int8 = new byte[matrix.rows * matrix.columns];
+                in.readFully(matrix.int8);
+            } else {
+                matrix.bf16 = new short[matrix.rows * matrix.columns];
+                for (int i = 0; i < matrix.bf16.length; i++) {
+                    matrix.bf16[i] = in.readShort();
+                }
+            }
+            return matrix;
+        }
+    }
+
+    private static abstract class Node {
+        final String name;
+        final String[] inputs;
+
+        Node(String name, String[] inputs) {
+            this.name = name;
+            this.inputs = inputs;
+        }
+
+        abstract int type();
+
+        abstract Activations forward(Activations[] in, float[] mask, boolean calibrating);
+
+        void write(DataOutputStream out) throws IOException {
+        }
+    }
+
+    /**
+     * Dense and output layers. RNN output layers are the same calculation applied to each time step of a time
+     * series, with softmax over the features of each time step.
+     */
+    private static class DenseNode extends Node {
+        final String activation;
+        final ReducedMatrix weights;
+        final float[] bias;
+        final boolean perTimeStep;
+        float inputScale = 0;
+        float observedMaxAbs = 0;
+
+        DenseNode(String name, String[] inputs, String activation, ReducedMatrix weights, float[] bias,
+                  boolean perTimeStep) {
+            super(name, inputs);
+            this.activation = activation;
+            this.weights = weights;
+            this.bias = bias;
+            this.perTimeStep = perTimeStep;
+            checkActivation(activation);
+        }
+
+        @Override
+        int type() {
+            return perTimeStep ? RNN_OUTPUT : DENSE;
+        }
+
+        void finishCalibration() {
+            inputScale = observedMaxAbs == 0 ? 1 : observedMaxAbs / 127f;
+        }
+
+        @Override
+        Activations forward(Activations[] in, float[] mask, boolean calibrating) {
+            Activations x = concatenate(name, in);
+            if (x.timeSeries && !perTimeStep) {
+                throw new UnsupportedOperationException("Dense layer " + name + " received a time series.");
+            }
+            final int T = x.timeSteps;
+            Activations result = new Activations(x.miniBatchSize, weights.columns, T, x.timeSeries);
+            final boolean quantizeInputs = weights.precision == Precision.INT8 && !calibrating;
+            if (quantizeInputs && inputScale == 0) {
+                throw new IllegalStateException("INT8 graphs must be calibrated before use.");
+            }
+            byte[] q = quantizeInputs ? new byte[weights.rows] : null;
+            int[] acc = quantizeInputs ? new int[weights.columns] : null;
+            final float accScale = inputScale * weights.scale;
+            // features of one example at one time step, and the layer output for them:
+            float[] xt = new float[x.size];
+            float[] yt = new float[result.size];
+            for (int b = 0; b < x.miniBatchSize; b++) {
+                for (int t = 0; t < T; t++) {
+                    for (int f = 0; f < x.size; f++) {
+                        xt[f] = x.data[(b * x.size + f) * T + t];
+                    }
+                    if (calibrating) {
+                        for (int i = 0; i < x.size; i++) {
+                            observedMaxAbs = Math.max(observedMaxAbs, Math.abs(xt[i]));
+                        }
+                    }
+                    if (quantizeInputs) {
+                        for (int i = 0; i < weights.rows; i++) {
+                            q[i] = (byte) Math.max(-127, Math.min(127, Math.round(xt[i] / inputScale)));
+                        }
+                        Arrays.fill(acc, 0);
+                        weights.multiplyAdd(q, acc);
+                        for (int j = 0; j < result.size; j++) {
+                            yt[j] = acc[j] * accScale + bias[j];
+                        }
+                    } else {
+                        System.arraycopy(bias, 0, yt, 0, result.size);
+                        weights.multiplyAdd(xt, 0, yt, 0);
+                    }
+                    activate(activation, yt, 0, result.size);
+                    for (int j = 0; j < result.size; j++) {
+                        result.data[(b * result.size + j) * T + t] = yt[j];
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(activation);
+            weights.write(out);
+            writeFloats(out, bias);
+            out.writeFloat(inputScale);
+        }
+
+        static DenseNode read(String name, String[] inputs, DataInputStream in, boolean perTimeStep) throws IOException {
+            DenseNode node = new DenseNode(name, inputs, in.readUTF(), ReducedMatrix.read(in), readFloats(in),
+                    perTimeStep);
+            node.inputScale = in.readFloat();
+            return node;
+        }
+    }
+
+    /**
+     * GravesLSTM with peephole connections. Gate layout of the DL4J parameters (blocks of nOut columns):
+     * block input, forget gate, output gate, input modulation gate. The three extra columns of the recurrent
+     * weights hold the peephole weights of the forget, output and input modulation gates. The three gates use the
+     * gate activation of the layer, the block input and the cell output use its activation.
+     */
+    private static class LstmNode extends Node {
+        final String activation;
+        final String gateActivation;
+        final int nOut;
+        final ReducedMatrix inputWeights;
+        final ReducedMatrix recurrentWeights;
+        final float[] peepholeForget;
+        final float[] peepholeOutput;
+        final float[] peepholeInputMod;
+        final float[] bias;
+
+        LstmNode(String name, String[] inputs, String activation, String gateActivation, int nOut,
+                 ReducedMatrix inputWeights, INDArray recurrentWeights, Precision precision, float[] bias) {
+            super(name, inputs);
+            this.activation = activation;
+            this.gateActivation = gateActivation;
+            this.nOut = nOut;
+            this.inputWeights = inputWeights;
+            float[] rw = recurrentWeights.dup('c').data().asFloat();
+            final int rwColumns = 4 * nOut + 3;
+            float[] gates = new float[nOut * 4 * nOut];
+            peepholeForget = new float[nOut];
+            peepholeOutput = new float[nOut];
+            peepholeInputMod = new float[nOut];
+            for (int i = 0; i < nOut; i++) {
+                System.arraycopy(rw, i * rwColumns, gates, i * 4 * nOut, 4 * nOut);
+                peepholeForget[i] = rw[i * rwColumns + 4 * nOut];
+                peepholeOutput[i] = rw[i * rwColumns + 4 * nOut + 1];
+                peepholeInputMod[i] = rw[i * rwColumns + 4 * nOut + 2];
+            }
+            this.recurrentWeights = new ReducedMatrix(nOut, 4 * nOut, gates, precision);
+            this.bias = bias;
+            checkActivation(activation);
+            checkActivation(gateActivation);
+        }
+
+        private LstmNode(String name, String[] inputs, String activation, String gateActivation, int nOut,
+                         ReducedMatrix inputWeights, ReducedMatrix recurrentWeights, float[] peepholeForget,
+                         float[] peepholeOutput, float[] peepholeInputMod, float[] bias) {
+            super(name, inputs);
+            this.activation = activation;
+            this.gateActivation = gateActivation;
+            this.nOut = nOut;
+            this.inputWeights = inputWeights;
+            this.recurrentWeights = recurrentWeights;
+            this.peepholeForget = peepholeForget;
+            this.peepholeOutput = peepholeOutput;
+            this.peepholeInputMod = peepholeInputMod;
+            this.bias = bias;
+        }
+
+        @Override
+        int type() {
+            return LSTM;
+        }
+
+        @Override
+        Activations forward(Activations[] in, float[] mask, boolean calibrating) {
+            Activations x = concatenate(name, in);
+            final int T = x.timeSteps;
+            Activations result = new Activations(x.miniBatchSize, nOut, T, true);
+            float[] xt = new float[x.size];
+            float[] ifog = new float[4 * nOut];
+            float[] h = new float[nOut];
+            float[] c = new float[nOut];
+            float[] a = new float[nOut];
+            for (int b = 0; b < x.miniBatchSize; b++) {
+                Arrays.fill(h, 0);
+                Arrays.fill(c, 0);
+                for (int t = 0; t < T; t++) {
+                    for (int f = 0; f < x.size; f++) {
+                        xt[f] = x.data[(b * x.size + f) * T + t];
+                    }
+                    System.arraycopy(bias, 0, ifog, 0, 4 * nOut);
+                    inputWeights.multiplyAdd(xt, 0, ifog, 0);
+                    recurrentWeights.multiplyAdd(h, 0, ifog, 0);
+                    System.arraycopy(ifog, 0, a, 0, nOut);
+                    activate(activation, a, 0, nOut);
+                    for (int j = 0; j < nOut; j++) {
+                        float forget = activate(gateActivation, ifog[nOut + j] + c[j] * peepholeForget[j]);
+                        float inputMod = activate(gateActivation, ifog[3 * nOut + j] + c[j] * peepholeInputMod[j]);
+                        c[j] = forget * c[j] + inputMod * a[j];
+                        float output = activate(gateActivation, ifog[2 * nOut + j] + c[j] * peepholeOutput[j]);
+                        h[j] = output * activate(activation, c[j]);
+                        result.data[(b * nOut + j) * T + t] = h[j];
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(activation);
+            out.writeUTF(gateActivation);
+            out.writeInt(nOut);
+            inputWeights.write(out);
+            recurrentWeights.write(out);
+            writeFloats(out, peepholeForget);
+            writeFloats(out, peepholeOutput);
+            writeFloats(out, peepholeInputMod);
+            writeFloats(out, bias);
+        }
+
+        static LstmNode read(String name, String[] inputs, DataInputStream in, int version) throws IOException {
+            String activation = in.readUTF();
+            String gateActivation = version == 1 ? "sigmoid" : in.readUTF();
+            int nOut = in.readInt();
+            ReducedMatrix inputWeights = ReducedMatrix.read(in);
+            ReducedMatrix recurrentWeights = ReducedMatrix.read(in);
+            return new LstmNode(name, inputs, activation, gateActivation, nOut, inputWeights, recurrentWeights,
+                    readFloats(in), readFloats(in), readFloats(in), readFloats(in));
+        }
+    }
+
+    private static class MergeNode extends Node {
+        MergeNode(String name, String[] inputs) {
+            super(name, inputs);
+        }
+
+        @Override
+        int type() {
+            return MERGE;
+        }
+
+        @Override
+        Activations forward(Activations[] in, float[] mask, boolean calibrating) {
+            return concatenate(name, in);
+        }
+    }
+
+    private static class LastTimeStepNode extends Node {
+        final String maskInput;
+
+        LastTimeStepNode(String name, String[] inputs, String maskInput) {
+            super(name, inputs);
+            this.maskInput = maskInput;
+        }
+
+        @Override
+        int type() {
+            return LAST_TIME_STEP;
+        }
+
+        @Override
+        Activations forward(Activations[] in, float[] mask, boolean calibrating) {
+            Activations x = in[0];
+            final int T = x.timeSteps;
+            Activations result = new Activations(x.miniBatchSize, x.size);
+            for (int b = 0; b < x.miniBatchSize; b++) {
+                int last = T - 1;
+                if (mask != null) {
+                    // masks are [example][timeStep], last is the last time step with a non-zero mask:
+                    while (last > 0 && mask[b * T + last] == 0) {
+                        last--;
+                    }
+                }
+                for (int f = 0; f < x.size; f++) {
+                    result.data[b * x.size + f] = x.data[(b * x.size + f) * T + last];
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(maskInput == null ? "" : maskInput);
+        }
+    }
+
+    /**
+     * Repeat the features of each example at every time step of a graph input, read as the second input.
+     */
+    private static class DuplicateToTimeSeriesNode extends Node {
+        DuplicateToTimeSeriesNode(String name, String[] inputs) {
+            super(name, inputs);
+        }
+
+        @Override
+        int type() {
+            return DUPLICATE_TO_TIME_SERIES;
+        }
+
+        @Override
+        Activations forward(Activations[] in, float[] mask, boolean calibrating) {
+            Activations x = in[0];
+            final int T = in[1].timeSteps;
+            Activations result = new Activations(x.miniBatchSize, x.size, T, true);
+            for (int i = 0; i < x.miniBatchSize * x.size; i++) {
+                Arrays.fill(result.data, i * T, (i + 1) * T, x.data[i]);
+            }
+            return result;
+        }
+    }
+
+    private static void checkActivation(String activation) {
+        switch (activation) {
+            case "relu":
+            case "sigmoid":
+            case "hardsigmoid":
+            case "tanh":
+            case "softsign":
+            case "identity":
+            case "softmax":
+                return;
+            default:
+                throw new UnsupportedOperationException("Activation function not supported: " + activation);
+        }
+    }
+
+    private static float sigmoid(float x) {
+        return (float) (1.0 / (1.0 + Math.exp(-x)));
+    }
+
+    private static float activate(String activation, float x) {
+        switch (activation) {
+            case "relu":
+                return Math.max(0, x);
+            case "sigmoid":
+                return sigmoid(x);
+            case "hardsigmoid":
+                return Math.min(1, Math.max(0, 0.2f * x + 0.5f));
+            case "tanh":
+                return (float) Math.tanh(x);
+            case "softsign":
+                return x / (1 + Math.abs(x));
+            default:
+                return x;
+        }
+    }
+
+    private static void activate(String activation, float[] values, int offset, int length) {
+        if ("softmax".equals(activation)) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = offset; i < offset + length; i++) {
+                max = Math.max(max, values[i]);
+            }
+            float sum = 0;
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = (float) Math.exp(values[i] - max);
+                sum += values[i];
+            }
+            for (int i = offset; i < offset + length; i++) {
+                values[i] /= sum;
+            }
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = activate(activation, values[i]);
+            }
+        }
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in) throws IOException {
+        float[] values = new float[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,77 @@
+package org.campagnelab.dl.framework.tools;
+
+import org.campagnelab.dl.framework.domains.DomainDescriptor;
+import org.campagnelab.dl.framework.domains.DomainDescriptorLoader;
+import org.campagnelab.dl.framework.models.ModelBundle;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Write a model bundle (see ModelBundle) next to a serialized computation graph. Bundles load without
+ * unzipping or copying parameters, which matters for short jobs where loading the model dominates. Only inference
+ * reads bundles: training resumes from the serialized graph, which holds the updater state.
+ *
+ * @author Fabien Campagne
+ */
+public class BundleModel extends AbstractTool<BundleModelArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(BundleModel.class);
+
+    public static void main(String[] args) {
+
+        BundleModel tool = new BundleModel();
+        tool.parseArguments(args, "BundleModel", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public BundleModelArguments createArguments() {
+        return new BundleModelArguments();
+    }
+
+    @Override
+    public void execute() {
+        String graphFilename = String.format("%s/%s-ComputationGraph.bin", args().modelPath, args().modelName);
+        if (!new File(graphFilename).exists()) {
+            System.err.println("Bundles can only be created for computation graphs. Cannot find " + graphFilename);
+            System.exit(1);
+        }
+        try {
+            ComputationGraph graph = ModelSerializer.restoreComputationGraph(graphFilename);
+            ModelBundle bundle = new ModelBundle(args().modelPath, args().modelName);
+            bundle.write(graph, new File(graphFilename));
+            System.out.println("Wrote model bundle to " + ModelBundle.getBundleDirectory(args().modelPath, args().modelName));
+            if (args().check) {
+                DomainDescriptor domainDescriptor = DomainDescriptorLoader.load(args().modelPath);
+                long serialized = timeToFirstPrediction(domainDescriptor, () -> ModelSerializer.restoreComputationGraph(graphFilename));
+                long bundled = timeToFirstPrediction(domainDescriptor, bundle::load);
+                System.out.printf("Time to first prediction: serialized model %d ms, bundle %d ms%n", serialized, bundled);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to bundle model " + graphFilename, e);
+        }
+    }
+
+    private interface GraphSupplier {
+        ComputationGraph get() throws IOException;
+    }
+
+    private long timeToFirstPrediction(DomainDescriptor domainDescriptor, GraphSupplier supplier) throws IOException {
+        long start = System.currentTimeMillis();
+        ComputationGraph graph = supplier.get();
+        String[] inputNames = domainDescriptor.getComputationalGraph().getInputNames();
+        INDArray[] inputs = new INDArray[inputNames.length];
+        for (int i = 0; i < inputNames.length; i++) {
+            inputs[i] = Nd4j.zeros(domainDescriptor.getInputShape(1, inputNames[i]));
+        }
+        graph.output(false, inputs);
+        return System.currentTimeMillis() - start;
+    }
+}
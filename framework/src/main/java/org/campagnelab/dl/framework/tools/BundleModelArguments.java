@@ -0,0 +1,21 @@
+package org.campagnelab.dl.framework.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+/**
+ * Arguments for the BundleModel tool.
+ */
+@Parameters(commandDescription = "Write a trained model as an uncompressed, memory-mappable bundle for fast startup.")
+
+public class BundleModelArguments implements ToolArguments {
+    @Parameter(required = true, names = {"-m", "--model-path"}, description = "directory containing the model to bundle.")
+    public String modelPath;
+
+    @Parameter(names = {"-l", "--model-name"}, description = "keyword specifying which specific model to bundle (ie bestAUC, latest)")
+    public String modelName = "best";
+
+    @Parameter(names = {"--check"}, arity = 1, description = "When true, load the model both ways and report time to first prediction for the serialized model and the bundle. Use --check false to skip.")
+    public boolean check = true;
+}
@@ -12,6 +12,8 @@ import org.campagnelab.dl.framework.iterators.MultiDataSetIteratorAdapter;
 import org.campagnelab.dl.framework.iterators.cache.CacheHelper;
 import org.campagnelab.dl.framework.mappers.FeatureMapper;
 import org.campagnelab.dl.framework.models.ModelLoader;
+import org.campagnelab.dl.framework.models.PredictionCache;
+import org.campagnelab.dl.framework.models.QuantizedGraph;
 import org.campagnelab.dl.framework.tools.arguments.ConditionRecordingTool;
 import org.deeplearning4j.nn.api.Model;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
@@ -24,9 +26,14 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.*;
 
 /**
  * A generic Predict tool. Sub-class this abstract class and define a few methods in order to make predictions and
@@ -57,9 +64,46 @@ public abstract class Predict<RecordType> extends ConditionRecordingTool<Predict
         if (args().deviceIndex != null) {
             Nd4j.getAffinityManager().attachThreadToDevice(Thread.currentThread(), args().deviceIndex);
         }
-        PrintWriter resultWriter;
-        PrintWriter outputWriter;
-        boolean outputFileExists;
+        List<Predict<RecordType>> evaluators = new ObjectArrayList<>();
+        evaluators.add(this);
+        if (args().additionalModels != null) {
+            for (String modelSpec : args().additionalModels) {
+                evaluators.add(createEvaluator(modelSpec));
+            }
+        }
+        for (Predict<RecordType> evaluator : evaluators) {
+            evaluator.openWriters();
+            if (evaluator != this) {
+                // the first evaluator writes the header of the shared statistics file, and the header of the
+                // predictions when all evaluators write them to the standard output:
+                evaluator.outputFileExists = true;
+                evaluator.resultHeaderWritten = !args().toFile;
+            }
+            if (args().parallelModels && evaluators.size() > 1 && !args().toFile) {
+                // evaluators predict from their own threads, their predictions must not interleave on stdout:
+                evaluator.bufferResults();
+            }
+        }
+        try {
+            printPredictions(evaluators);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to perform predictions", e);
+        }
+
+
+    }
+
+    private PrintWriter resultWriter;
+    private PrintWriter outputWriter;
+    /**
+     * Predictions written by this evaluator since they were last printed, when predictions of evaluators that run in
+     * parallel are printed to the standard output. Null otherwise.
+     */
+    private StringWriter bufferedResults;
+    private boolean outputFileExists;
+    private boolean resultHeaderWritten;
+
+    private void openWriters() {
         try {
             File modelPath = new File(args().modelPath);
             String modelTime = modelPath.getName();
@@ -87,25 +131,80 @@ public abstract class Predict<RecordType> extends ConditionRecordingTool<Predict
         } catch (IOException e) {
             throw new RuntimeException("Unable to create result writer", e);
         }
-        try {
-            printPredictions(args().modelName, args().modelPath, args().testSet, resultWriter, outputWriter,
-                    outputFileExists);
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to perform predictions", e);
-        }
+    }
+
+    /**
+     * Write predictions to a buffer instead of the standard output. The buffer is printed by printBufferedResults.
+     */
+    private void bufferResults() {
+        bufferedResults = new StringWriter();
+        resultWriter = new PrintWriter(bufferedResults);
+    }
 
+    /**
+     * Print the predictions buffered since the last call to the standard output.
+     */
+    private void printBufferedResults() {
+        if (bufferedResults != null) {
+            resultWriter.flush();
+            System.out.print(bufferedResults.getBuffer());
+            System.out.flush();
+            bufferedResults.getBuffer().setLength(0);
+        }
+    }
 
+    /**
+     * Create a copy of this tool that evaluates another model. The copy has its own arguments (identical
+     * except for the model path and name), statistics and writers.
+     *
+     * @param modelSpec model prefix (e.g., bestAUC), or modelPath:prefix for a model in another directory.
+     * @return the new evaluator.
+     */
+    private Predict<RecordType> createEvaluator(String modelSpec) {
+        try {
+            Predict<RecordType> evaluator = getClass().newInstance();
+            PredictArguments copy = evaluator.createArguments();
+            for (Field field : args().getClass().getFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                    field.set(copy, field.get(args()));
+                }
+            }
+            copy.additionalModels = null;
+            int separator = modelSpec.lastIndexOf(':');
+            if (separator >= 0) {
+                copy.modelPath = modelSpec.substring(0, separator);
+                copy.modelName = modelSpec.substring(separator + 1);
+            } else {
+                copy.modelName = modelSpec;
+            }
+            evaluator.arguments = copy;
+            evaluator.copyFieldValues(this);
+            evaluator.setFieldValues().put("--model-path", copy.modelPath);
+            evaluator.setFieldValues().put("--model-name", copy.modelName);
+            return evaluator;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException("Unable to create an evaluator for model " + modelSpec, e);
+        }
     }
+
     private CacheHelper<RecordType> cacheHelper = new CacheHelper<>();
     protected DomainDescriptor<RecordType> domainDescriptor;
 
-    private void printPredictions(String prefix, String modelPath, String evaluationDataFilename,
-                                  PrintWriter resutsWriter, PrintWriter outputWriter,
-                                  boolean outputFileExists) throws IOException {
+    private ModelLoader modelLoader;
+    private String modelTag;
+    private Model model;
+    private PredictWithModel<RecordType> predictor;
+    private PredictionCache predictionCache;
+    private int index;
 
-
-        ModelLoader modelLoader = new ModelLoader(modelPath);
-        String modelTag = modelLoader.getModelProperties().getProperty("tag");
+    /**
+     * Load the model of this evaluator and prepare statistics and writers.
+     */
+    private void prepareModel() throws IOException {
+        String prefix = args().modelName;
+        String modelPath = args().modelPath;
+        modelLoader = new ModelLoader(modelPath);
+        modelTag = modelLoader.getModelProperties().getProperty("tag");
         if (!outputFileExists) {
             outputWriter.append("tag\tprefix");
             for (String metricName : createOutputHeader()) {
@@ -121,21 +220,101 @@ public abstract class Predict<RecordType> extends ConditionRecordingTool<Predict
             isTrio = true;
             System.out.println("setting output to trio mode");
         }
-        Model model = modelLoader.loadModel(prefix);
+        model = modelLoader.loadModelForInference(prefix);
         if (model == null) {
             System.err.println("Cannot load model with prefix: " + prefix);
             System.exit(1);
         }
         domainDescriptor = DomainDescriptorLoader.load(modelPath);
 
-        PredictWithModel<RecordType> predictor = new PredictWithModel<RecordType>(domainDescriptor);
+        predictor = new PredictWithModel<RecordType>(domainDescriptor);
+        if (args().quantized != null) {
+            String quantizedFilename = QuantizeModel.getQuantizedFilename(modelPath, prefix, args().quantized);
+            if (!new File(quantizedFilename).exists()) {
+                System.err.println("Cannot find quantized model " + quantizedFilename + ". Export it with quantize-model.sh.");
+                System.exit(1);
+            }
+            predictor.setQuantizedGraph(QuantizedGraph.load(quantizedFilename));
+        } else if (args().predictionCacheEntries > 0) {
+            predictionCache = new PredictionCache(args().predictionCacheEntries, args().predictionCacheQuantum,
+                    args().predictionCacheVerify);
+            predictor.setPredictionCache(predictionCache);
+        }
+        initializeStats(prefix);
+        if (!resultHeaderWritten) {
+            writeHeader(resultWriter);
+        }
+        index = 0;
+    }
+
+    /**
+     * Check that the features mapped for the first evaluator can be used as input of this evaluator's model.
+     */
+    private void checkSameFeatures(Predict<RecordType> first) {
+        String mapper = modelLoader.getModelProperties().getProperty("mapper");
+        String firstMapper = first.modelLoader.getModelProperties().getProperty("mapper");
+        if (mapper != null && !mapper.equals(firstMapper) ||
+                !Arrays.equals(domainDescriptor.getComputationalGraph().getInputNames(),
+                        first.domainDescriptor.getComputationalGraph().getInputNames())) {
+            throw new IllegalArgumentException(String.format(
+                    "Model %s/%s does not use the same feature mapper and inputs as model %s/%s. Such models must be evaluated in separate runs.",
+                    args().modelPath, args().modelName, first.args().modelPath, first.args().modelName));
+        }
+    }
+
+    private void predictMinibatch(MultiDataSet dataset, List<RecordType> records) {
+        index = predictor.makePredictions(dataset,
+                records, model,
+                recordPredictions -> {
+                    processPredictions(resultWriter, recordPredictions.record,
+                            recordPredictions.predictions);
+                },
+                /* stop if */ nProcessed -> nProcessed > args().scoreN, index
+        );
+    }
+
+    private void finishModel(long totalRecords) {
+        if (args().toFile) {
+            resultWriter.close();
+        } else {
+            resultWriter.flush();
+            printBufferedResults();
+        }
+        outputWriter.append(String.format("%s\t%s", modelTag, args().modelName));
+        for (double metric : createOutputStatistics()) {
+            outputWriter.append(String.format("\t%f", metric));
+        }
+        outputWriter.append("\t" + getAllCommandLineArguments());
+        outputWriter.append("\n");
+        if (args().toFile) {
+            outputWriter.close();
+        } else {
+            outputWriter.flush();
+        }
+        if (predictionCache != null) {
+            System.out.println(predictionCache.report());
+        }
+        reportStatistics(args().modelName);
+        System.out.println("Model: " + args().modelPath + " tag:" + modelTag);
+        modelLoader.writeTestCount(totalRecords);
+    }
 
-        Iterable<RecordType> apply = domainDescriptor.getRecordIterable().apply(evaluationDataFilename);
+    /**
+     * Map the test set once and run every evaluator's model on each minibatch. Each evaluator feeds the
+     * predictions of its model to its own statistics and writers.
+     */
+    private void printPredictions(List<Predict<RecordType>> evaluators) throws IOException {
+        for (Predict<RecordType> evaluator : evaluators) {
+            evaluator.prepareModel();
+            if (evaluator != this) {
+                evaluator.checkSameFeatures(this);
+            }
+        }
+        String evaluationDataFilename = args().testSet;
+        Iterable<RecordType> apply = domainDescriptor.getRecordIterable(args().region).apply(evaluationDataFilename);
         Iterable<RecordType> itAdapter = Iterables.limit(apply, args().scoreN);
-        Iterable<RecordType> recordsIterable = Iterables.limit(domainDescriptor.getRecordIterable().apply(evaluationDataFilename), args().scoreN);
+        Iterable<RecordType> recordsIterable = Iterables.limit(domainDescriptor.getRecordIterable(args().region).apply(evaluationDataFilename), args().scoreN);
 
-        initializeStats(prefix);
-        writeHeader(resutsWriter);
         final int miniBatchSize = args().miniBatchSize;
         MultiDataSetIteratorAdapter<RecordType> adapter = new MultiDataSetIteratorAdapter<RecordType>(itAdapter,
                 miniBatchSize, domainDescriptor, false, null) {
@@ -144,12 +323,14 @@ public abstract class Predict<RecordType> extends ConditionRecordingTool<Predict
                 return FilenameUtils.getBaseName(args().testSet);
             }
         };
-        MultiDataSetIterator adapterCached = cacheHelper.cache(domainDescriptor,
+        // the cache is named after the whole dataset, a region must not read or replace it:
+        MultiDataSetIterator adapterCached = args().region != null ? adapter : cacheHelper.cache(domainDescriptor,
                 adapter, adapter.getBasename(),
                 args().scoreN, args().miniBatchSize);
         List<RecordType> records = new ObjectArrayList<RecordType>(miniBatchSize);
         Iterator<RecordType> recordIterator = recordsIterable.iterator();
-        int index = 0;
+        ExecutorService executor = args().parallelModels && evaluators.size() > 1 ?
+                Executors.newFixedThreadPool(evaluators.size()) : null;
         int adapterIndex=0;
         ProgressLogger pgReadWrite = new ProgressLogger(LOG);
         pgReadWrite.itemsName = "sites";
@@ -159,50 +340,63 @@ public abstract class Predict<RecordType> extends ConditionRecordingTool<Predict
         pgReadWrite.displayFreeMemory = false;
         pgReadWrite.displayLocalSpeed=true;
         pgReadWrite.start();
-        while (adapterCached.hasNext() && recordIterator.hasNext()) {
-
-            MultiDataSet dataset = adapterCached.next();
-            final int datasetSize = dataset.getFeatures(0).size(0);
-            adapterIndex++;
-            records.clear();
-            for (int exampleIndex = 0; exampleIndex < datasetSize; exampleIndex++) {
-                if (!recordIterator.hasNext()) {
+        try {
+            while (adapterCached.hasNext() && recordIterator.hasNext()) {
+
+                MultiDataSet dataset = adapterCached.next();
+                final int datasetSize = dataset.getFeatures(0).size(0);
+                adapterIndex++;
+                records.clear();
+                for (int exampleIndex = 0; exampleIndex < datasetSize; exampleIndex++) {
+                    if (!recordIterator.hasNext()) {
+                        break;
+                    }
+                    records.add(recordIterator.next());
+                }
+
+                if (records.size()==datasetSize) {
+                    if (executor == null) {
+                        for (Predict<RecordType> evaluator : evaluators) {
+                            evaluator.predictMinibatch(dataset, records);
+                        }
+                    } else {
+                        List<Callable<Void>> tasks = new ArrayList<>();
+                        for (Predict<RecordType> evaluator : evaluators) {
+                            tasks.add(() -> {
+                                if (args().deviceIndex != null) {
+                                    Nd4j.getAffinityManager().attachThreadToDevice(Thread.currentThread(), args().deviceIndex);
+                                }
+                                evaluator.predictMinibatch(dataset, records);
+                                return null;
+                            });
+                        }
+                        for (Future<Void> future : executor.invokeAll(tasks)) {
+                            future.get();
+                        }
+                        // print the predictions of this minibatch in evaluator order:
+                        for (Predict<RecordType> evaluator : evaluators) {
+                            evaluator.printBufferedResults();
+                        }
+                    }
+                    pgReadWrite.update(records.size());
+                } else{
+                    System.out.printf("dataset #examples %d and # records (%d) must match. Unable to obtain records for some examples in minibatch. Aborting. ",
+                            datasetSize, records.size());
                     break;
                 }
-                records.add(recordIterator.next());
-            }
 
-            if (records.size()==datasetSize) {
-                index = predictor.makePredictions(dataset,
-                        records, model,
-                        recordPredictions -> {
-                            processPredictions(resutsWriter, recordPredictions.record,
-                                    recordPredictions.predictions);
-                        },
-                /* stop if */ nProcessed -> nProcessed > args().scoreN, index
-                );
-                pgReadWrite.update(records.size());
-            } else{
-                System.out.printf("dataset #examples %d and # records (%d) must match. Unable to obtain records for some examples in minibatch. Aborting. ",
-                        datasetSize, records.size());
-                break;
             }
-
-        }
-
-
-        resutsWriter.close();
-        outputWriter.append(String.format("%s\t%s", modelTag, prefix));
-        for (double metric : createOutputStatistics()) {
-            outputWriter.append(String.format("\t%f", metric));
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Unable to run models in parallel", e);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
         }
-        outputWriter.append("\t" + getAllCommandLineArguments());
-        outputWriter.append("\n");
-        outputWriter.close();
         pgReadWrite.stop();
-        reportStatistics(prefix);
-        System.out.println("Model: " + modelPath + " tag:" + modelTag);
-        modelLoader.writeTestCount(totalRecords);
+        for (Predict<RecordType> evaluator : evaluators) {
+            evaluator.finishModel(totalRecords);
+        }
     }
 
     /**
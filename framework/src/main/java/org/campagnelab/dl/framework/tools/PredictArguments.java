@@ -2,8 +2,12 @@ package org.campagnelab.dl.framework.tools;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.models.QuantizedGraph;
 import org.campagnelab.dl.framework.tools.arguments.RecordingToolArguments;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Arguments for the Predict Tool.
  */
@@ -26,6 +30,9 @@ public class PredictArguments extends RecordingToolArguments {
     @Parameter(names = {"-n", "--num-examples"}, description = "number of examples to iterate over in the test set. useful for quickly approximating performance with fewer examples.")
     public int scoreN = Integer.MAX_VALUE;
 
+    @Parameter(names = {"--region"}, description = "Only predict records of this region, in the format chr, chr:start or chr:start-end. The dataset must have been indexed with index-sbi.sh. Features of the region are mapped without using the feature cache.")
+    public String region = null;
+
     @Parameter(names = {"--mini-batch-size"}, description = "Number of records in minibatch.")
     public int miniBatchSize = 512;
 
@@ -53,6 +60,24 @@ public class PredictArguments extends RecordingToolArguments {
     @Parameter(names = {"--predict-statistics"}, description = "Filename where predict statistics will be written (one invocation of predict is one line). ")
     public String outputFile = "predict-statistics.tsv";
 
+    @Parameter(names = {"--prediction-cache-entries"}, description = "When larger than zero, reuse model outputs for examples whose mapped features were already predicted. Number of examples kept in the (off-heap) cache.")
+    public int predictionCacheEntries = 0;
+
+    @Parameter(names = {"--prediction-cache-quantum"}, description = "Quantize features to multiples of this value before looking up the prediction cache. Zero requires features to match exactly.")
+    public float predictionCacheQuantum = 0;
+
+    @Parameter(names = {"--prediction-cache-verify"}, description = "When true, run the model on every example and report differences between cached and freshly computed outputs.")
+    public boolean predictionCacheVerify = false;
+
+    @Parameter(names = {"--quantized"}, description = "Predict with the reduced-precision export of the model (INT8 or BF16), written by quantize-model.sh, instead of the float model. The prediction cache is not used with quantized models.")
+    public QuantizedGraph.Precision quantized = null;
+
+    @Parameter(names = {"--models"}, variableArity = true, description = "Additional models to evaluate in the same pass over the dataset, given as a model prefix (ie bestAUC, latest) for models in --model-path, or as path:prefix. Models must share the feature mapper of the main model. Each model writes its own predictions and statistics.")
+    public List<String> additionalModels = new ArrayList<>();
+
+    @Parameter(names = {"--parallel-models"}, description = "When true and several models are evaluated, run the models on each minibatch in parallel threads. Predictions printed to the standard output are buffered and printed in model order after each minibatch.")
+    public boolean parallelModels = false;
+
     @Parameter(names = "--gpu-device", description = "Index of the GPU to use for training (0,1, up to the number of GPUs in the server).")
     public Integer deviceIndex=null;
 
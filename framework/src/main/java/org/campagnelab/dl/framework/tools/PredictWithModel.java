@@ -2,7 +2,11 @@ package org.campagnelab.dl.framework.tools;
 
 import org.campagnelab.dl.framework.domains.prediction.Prediction;
 import org.campagnelab.dl.framework.domains.prediction.RecordPredictions;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.campagnelab.dl.framework.models.ModelOutputHelper;
+import org.campagnelab.dl.framework.models.PredictionCache;
+import org.campagnelab.dl.framework.models.PrunedComputationGraph;
+import org.campagnelab.dl.framework.models.QuantizedGraph;
 import org.campagnelab.dl.framework.domains.DomainDescriptor;
 import org.campagnelab.dl.framework.domains.prediction.PredictionInterpreter;
 import org.deeplearning4j.nn.api.Model;
@@ -23,6 +27,31 @@ public class PredictWithModel<RecordType> {
     protected DomainDescriptor<RecordType> domainDescriptor;
     ModelOutputHelper outputHelper;
     protected PredictionInterpreter[] interpretors;
+    private boolean[] readOutputs;
+
+    private PredictionCache predictionCache;
+    private boolean[] requiredOutputs;
+    private PrunedComputationGraph pruned;
+    private QuantizedGraph quantizedGraph;
+
+    /**
+     * Reuse model outputs for examples whose mapped features were seen before.
+     *
+     * @param predictionCache cache, or null to run the model on every example.
+     */
+    public void setPredictionCache(PredictionCache predictionCache) {
+        this.predictionCache = predictionCache;
+        outputHelper.setPredictionCache(predictionCache);
+    }
+
+    /**
+     * Run minibatches through a reduced-precision graph instead of the model given to makePredictions.
+     *
+     * @param quantizedGraph reduced-precision export of the model, or null to use the model.
+     */
+    public void setQuantizedGraph(QuantizedGraph quantizedGraph) {
+        this.quantizedGraph = quantizedGraph;
+    }
 
     public PredictWithModel(DomainDescriptor<RecordType> domainDescriptor) {
         this.domainDescriptor = domainDescriptor;
@@ -34,6 +63,17 @@ public class PredictWithModel<RecordType> {
         for (String outputName : outputNames) {
             interpretors[outputIndex++] = domainDescriptor.getPredictionInterpreter(outputName);
         }
+        // only calculate the outputs that the domain and interpreters read:
+        readOutputs = ModelOutputHelper.readOutputs(domainDescriptor);
+        requiredOutputs = ModelOutputHelper.requiredOutputs(domainDescriptor, interpretors);
+        outputHelper.setRequiredOutputs(requiredOutputs);
+    }
+
+    private PrunedComputationGraph prune(ComputationGraph graph) {
+        if (pruned == null || pruned.getOriginal() != graph) {
+            pruned = new PrunedComputationGraph(graph, requiredOutputs);
+        }
+        return pruned;
     }
 
     public void makePredictions(Iterator<RecordType> iterator,
@@ -52,8 +92,15 @@ public class PredictWithModel<RecordType> {
                                 Consumer<RecordPredictions<RecordType>> doForEachPrediction,
                                 Predicate<Integer> stopIfTrue, int index) {
         assert model instanceof ComputationGraph : "MultiDataSet only work with ComputationGraph";
-        ComputationGraph graph=(ComputationGraph)model;
-        INDArray[] outputPredictions = graph.output(false,dataSet.getFeatures());
+        INDArray[][] exampleOutputs = null;
+        INDArray[] outputPredictions;
+        if (quantizedGraph != null) {
+            outputPredictions = quantizedGraph.output(dataSet.getFeatures(), dataSet.getFeaturesMaskArrays());
+        } else {
+            PrunedComputationGraph graph = prune((ComputationGraph) model);
+            exampleOutputs = predictionCache == null ? null : outputsWithCache(graph, dataSet, records.size());
+            outputPredictions = exampleOutputs == null ? graph.output(dataSet.getFeatures()) : null;
+        }
         List<Prediction> predictions = new ArrayList<>();
 
         RecordType currentRecord;
@@ -64,7 +111,13 @@ public class PredictWithModel<RecordType> {
 
 
                 if (interpretors[outputIndex] != null) {
+                    if (!readOutputs[outputIndex]) {
+                        predictions.add(null);
+                        continue;
+                    }
                     Prediction prediction = interpretors[outputIndex].interpret(currentRecord,
+                            exampleOutputs != null ? exampleOutputs[exampleIndex][outputIndex] :
+                                    outputPredictions[outputIndex] == null ? null :
                                                     outputPredictions[outputIndex].slice(exampleIndex));
                     prediction.outputIndex = outputIndex;
                     prediction.index = index;
@@ -81,6 +134,47 @@ public class PredictWithModel<RecordType> {
 
     }
 
+    /**
+     * Obtain the outputs of each example of a minibatch, running the graph only on examples whose outputs are not
+     * in the prediction cache (or on all examples when the cache verifies its content).
+     *
+     * @return outputs indexed by example, then by graph output.
+     */
+    private INDArray[][] outputsWithCache(PrunedComputationGraph graph, MultiDataSet dataSet, int numExamples) {
+        INDArray[] features = dataSet.getFeatures();
+        INDArray[] masks = dataSet.getFeaturesMaskArrays();
+        INDArray[][] exampleOutputs = new INDArray[numExamples][];
+        long[][] keys = new long[numExamples][2];
+        IntArrayList missing = new IntArrayList();
+        for (int exampleIndex = 0; exampleIndex < numExamples; exampleIndex++) {
+            predictionCache.fingerprint(features, masks, exampleIndex, keys[exampleIndex]);
+            INDArray[] cached = predictionCache.get(keys[exampleIndex]);
+            exampleOutputs[exampleIndex] = cached == null ? null : graph.expand(cached);
+            if (exampleOutputs[exampleIndex] == null || predictionCache.isVerifying()) {
+                missing.add(exampleIndex);
+            }
+        }
+        if (!missing.isEmpty()) {
+            final int[] missingIndices = missing.toIntArray();
+            INDArray[] missingFeatures = new INDArray[features.length];
+            for (int i = 0; i < features.length; i++) {
+                missingFeatures[i] = missingIndices.length == features[i].size(0) ? features[i] :
+                        PredictionCache.selectExamples(features[i], missingIndices);
+            }
+            INDArray[] outputs = graph.getGraph().output(false, missingFeatures);
+            for (int j = 0; j < missingIndices.length; j++) {
+                final int exampleIndex = missingIndices[j];
+                predictionCache.put(keys[exampleIndex], outputs, j);
+                INDArray[] example = new INDArray[outputs.length];
+                for (int outputIndex = 0; outputIndex < outputs.length; outputIndex++) {
+                    example[outputIndex] = outputs[outputIndex].slice(j);
+                }
+                exampleOutputs[exampleIndex] = graph.expand(example);
+            }
+        }
+        return exampleOutputs;
+    }
+
     public void makePredictions(Iterator<RecordType> iterator,
                                 Model model,
                                 Consumer<RecordType> observeRecord,
@@ -98,6 +192,10 @@ public class PredictWithModel<RecordType> {
                 INDArray outputPredictions = outputHelper.getOutput(outputIndex);
 
                 if (interpretors[outputIndex] != null) {
+                    if (!readOutputs[outputIndex]) {
+                        predictions.add(null);
+                        continue;
+                    }
                     Prediction prediction = interpretors[outputIndex].interpret(currentRecord, outputPredictions);
                     prediction.outputIndex = outputIndex;
                     prediction.index = index;
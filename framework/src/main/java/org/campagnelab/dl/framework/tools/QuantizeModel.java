@@ -0,0 +1,147 @@
+package org.campagnelab.dl.framework.tools;
+
+import com.google.common.collect.Iterables;
+import org.apache.commons.io.FilenameUtils;
+import org.campagnelab.dl.framework.domains.DomainDescriptor;
+import org.campagnelab.dl.framework.domains.DomainDescriptorLoader;
+import org.campagnelab.dl.framework.iterators.MultiDataSetIteratorAdapter;
+import org.campagnelab.dl.framework.models.QuantizedGraph;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Export a computation graph with reduced-precision weights (see QuantizedGraph) and compare it to the float
+ * model on a held-out dataset. The report lists, for each output, the fraction of examples where both models
+ * agree on the most probable class and the largest absolute difference between probabilities, followed by the
+ * throughput of both models. Predict uses the exported model when given --quantized with the same precision.
+ *
+ * @author Fabien Campagne
+ */
+public class QuantizeModel extends AbstractTool<QuantizeModelArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(QuantizeModel.class);
+
+    public static void main(String[] args) {
+
+        QuantizeModel tool = new QuantizeModel();
+        tool.parseArguments(args, "QuantizeModel", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public QuantizeModelArguments createArguments() {
+        return new QuantizeModelArguments();
+    }
+
+    public static String getQuantizedFilename(String modelPath, String modelName, QuantizedGraph.Precision precision) {
+        return String.format("%s/%s-Quantized-%s.bin", modelPath, modelName, precision.name());
+    }
+
+    @Override
+    public void execute() {
+        String graphFilename = String.format("%s/%s-ComputationGraph.bin", args().modelPath, args().modelName);
+        if (!new File(graphFilename).exists()) {
+            System.err.println("Only computation graphs can be quantized. Cannot find " + graphFilename);
+            System.exit(1);
+        }
+        try {
+            ComputationGraph graph = ModelSerializer.restoreComputationGraph(graphFilename);
+            DomainDescriptor domainDescriptor = DomainDescriptorLoader.load(args().modelPath);
+            QuantizedGraph quantized = QuantizedGraph.fromGraph(graph, args().precision);
+            if (args().precision == QuantizedGraph.Precision.INT8) {
+                String calibrationSet = args().calibrationSet != null ? args().calibrationSet : args().testSet;
+                for (MultiDataSet dataSet : minibatches(domainDescriptor, calibrationSet, args().calibrationExamples)) {
+                    quantized.calibrate(dataSet.getFeatures(), dataSet.getFeaturesMaskArrays());
+                }
+                quantized.finishCalibration();
+            }
+            String quantizedFilename = getQuantizedFilename(args().modelPath, args().modelName, args().precision);
+            quantized.save(quantizedFilename);
+            System.out.println("Wrote quantized model to " + quantizedFilename);
+            // reload, so that the comparison uses the exported weights:
+            compare(graph, QuantizedGraph.load(quantizedFilename), domainDescriptor);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to quantize model " + graphFilename, e);
+        }
+    }
+
+    private void compare(ComputationGraph graph, QuantizedGraph quantized, DomainDescriptor domainDescriptor) throws IOException {
+        String[] outputNames = domainDescriptor.getComputationalGraph().getOutputNames();
+        long[] agreements = new long[outputNames.length];
+        float[] maxDifferences = new float[outputNames.length];
+        long floatTime = 0;
+        long quantizedTime = 0;
+        long numExamples = 0;
+        for (MultiDataSet dataSet : minibatches(domainDescriptor, args().testSet, args().numExamples)) {
+            INDArray[] features = dataSet.getFeatures();
+            INDArray[] masks = dataSet.getFeaturesMaskArrays();
+            long start = System.nanoTime();
+            graph.setLayerMaskArrays(masks, null);
+            INDArray[] expected = graph.output(false, features);
+            graph.clearLayerMaskArrays();
+            floatTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            INDArray[] observed = quantized.output(features, masks);
+            quantizedTime += System.nanoTime() - start;
+
+            final int miniBatchSize = features[0].size(0);
+            for (int outputIndex = 0; outputIndex < outputNames.length; outputIndex++) {
+                for (int exampleIndex = 0; exampleIndex < miniBatchSize; exampleIndex++) {
+                    INDArray e = expected[outputIndex].getRow(exampleIndex);
+                    INDArray o = observed[outputIndex].getRow(exampleIndex);
+                    if (argmax(e) == argmax(o)) {
+                        agreements[outputIndex]++;
+                    }
+                    for (int j = 0; j < e.length(); j++) {
+                        maxDifferences[outputIndex] = Math.max(maxDifferences[outputIndex],
+                                Math.abs(e.getFloat(j) - o.getFloat(j)));
+                    }
+                }
+            }
+            numExamples += miniBatchSize;
+        }
+        if (numExamples == 0) {
+            System.err.println("No examples found in " + args().testSet);
+            return;
+        }
+        System.out.printf("Precision: %s, %d held-out examples%n", quantized.getPrecision(), numExamples);
+        System.out.println("output\tagreement\tmaxAbsDifference");
+        for (int outputIndex = 0; outputIndex < outputNames.length; outputIndex++) {
+            System.out.printf("%s\t%.4f\t%g%n", outputNames[outputIndex],
+                    ((double) agreements[outputIndex]) / numExamples, maxDifferences[outputIndex]);
+        }
+        System.out.printf("Throughput: float model %.1f examples/s, quantized model %.1f examples/s%n",
+                examplesPerSecond(numExamples, floatTime), examplesPerSecond(numExamples, quantizedTime));
+    }
+
+    private Iterable<MultiDataSet> minibatches(DomainDescriptor domainDescriptor, String filename, int n) throws IOException {
+        Iterable records = Iterables.limit((Iterable) domainDescriptor.getRecordIterable().apply(filename), n);
+        return new MultiDataSetIteratorAdapter(records, args().miniBatchSize, domainDescriptor) {
+            @Override
+            public String getBasename() {
+                return FilenameUtils.getBaseName(filename);
+            }
+        };
+    }
+
+    private static int argmax(INDArray row) {
+        int best = 0;
+        for (int j = 1; j < row.length(); j++) {
+            if (row.getFloat(j) > row.getFloat(best)) {
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    private static double examplesPerSecond(long numExamples, long nanoseconds) {
+        return nanoseconds == 0 ? 0 : numExamples * 1E9 / nanoseconds;
+    }
+}
@@ -0,0 +1,37 @@
+package org.campagnelab.dl.framework.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.models.QuantizedGraph;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+/**
+ * Arguments for the QuantizeModel tool.
+ */
+@Parameters(commandDescription = "Export a trained model with int8 or bfloat16 weights for CPU inference, and report accuracy and throughput against the float model on a held-out dataset.")
+
+public class QuantizeModelArguments implements ToolArguments {
+    @Parameter(required = true, names = {"-m", "--model-path"}, description = "directory containing the model to quantize.")
+    public String modelPath;
+
+    @Parameter(names = {"-l", "--model-name"}, description = "keyword specifying which specific model to quantize (ie bestAUC, latest)")
+    public String modelName = "best";
+
+    @Parameter(names = {"--precision"}, description = "Reduced precision for weights, one of INT8 or BF16. INT8 also quantizes the inputs of dense layers.")
+    public QuantizedGraph.Precision precision = QuantizedGraph.Precision.INT8;
+
+    @Parameter(required = true, names = {"-i", "--test-set"}, description = "Held-out dataset (.sbi) used to compare the quantized model to the float model.")
+    public String testSet;
+
+    @Parameter(names = {"--calibration-set"}, description = "Dataset used to calibrate int8 activation ranges. Defaults to the test set.")
+    public String calibrationSet;
+
+    @Parameter(names = {"--calibration-examples"}, description = "Number of examples used to calibrate int8 activation ranges.")
+    public int calibrationExamples = 2000;
+
+    @Parameter(names = {"-n", "--num-examples"}, description = "Number of held-out examples to compare.")
+    public int numExamples = 10000;
+
+    @Parameter(names = {"--mini-batch-size"}, description = "Minibatch size used for inference.")
+    public int miniBatchSize = 32;
+}
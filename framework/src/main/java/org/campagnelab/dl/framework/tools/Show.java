@@ -44,7 +44,7 @@ public abstract class Show<RecordType, Args extends ShowArguments> extends Abstr
         int selectedIndex = -1;
 
         Function<RecordType, String> converter = getConverter(args().reportType.toUpperCase());
-        Iterable input = domainDescriptor().getRecordIterable().apply(args().datasetFilename);
+        Iterable input = domainDescriptor().getRecordIterable(args().region).apply(args().datasetFilename);
         Iterator<RecordType> reader = input.iterator();
         while (reader.hasNext()) {
             selectedIndex = getNextIndex(predictionLine, selectedIndex, index);
@@ -32,6 +32,9 @@ public abstract class ShowArguments  implements ToolArguments {
     @Parameter(names = {"-p", "--predictions"}, description = "BinaryClassPrediction file with indices to show. Set to - to read from standard input.")
     public String predictionFilter = null;
 
+    @Parameter(names = {"--region"}, description = "Only show records of this region, in the format chr, chr:start or chr:start-end. The dataset must have been indexed with index-sbi.sh.")
+    public String region = null;
+
 
 
 }
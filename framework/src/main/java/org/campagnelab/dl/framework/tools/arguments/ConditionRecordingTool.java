@@ -57,6 +57,16 @@ public abstract class ConditionRecordingTool<T extends RecordingToolArguments> e
         }
     }
 
+    /**
+     * Copy the field values recorded by another tool, for instance when a tool delegates work to copies of itself.
+     *
+     * @param other tool whose field values are copied.
+     */
+    public void copyFieldValues(ConditionRecordingTool<?> other) {
+        setFieldValues = new Object2ObjectAVLTreeMap<>(other.setFieldValues);
+        defaultFieldValues = new Object2ObjectAVLTreeMap<>(other.defaultFieldValues);
+    }
+
     /**
      * Get the command-line strings for fields with their set values if they were specified on the command line
      *
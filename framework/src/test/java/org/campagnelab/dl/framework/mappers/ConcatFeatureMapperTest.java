@@ -27,4 +27,139 @@ public class ConcatFeatureMapperTest {
         concatCalculator.mapFeatures(record, labels, 0);
         assertEquals(labels.toString(), expectedLabels);
     }
+
+    @Test
+    public void concatFeaturesToZeroed() {
+        String record = "201";
+        FeatureMapper<String>[] calculators = new FeatureMapper[record.length()];
+        for (int i = 0; i < record.length(); i++) {
+            calculators[i] = new OneHotBaseFeatureMapper<>(i, Function.identity(),
+                    (r, idx) -> Character.getNumericValue(r.charAt(idx)), 3);
+        }
+        FeatureMapper<String> concatCalculator = new ConcatFeatureMapper<>(calculators);
+        INDArray dense = Nd4j.zeros(1, concatCalculator.numberOfFeatures());
+        INDArray sparse = Nd4j.zeros(1, concatCalculator.numberOfFeatures());
+        concatCalculator.prepareToNormalize(record, 0);
+        concatCalculator.mapFeatures(record, dense, 0);
+        concatCalculator.mapFeaturesToZeroed(record, sparse, 0);
+        assertEquals(dense.toString(), sparse.toString());
+
+        float[] written = new float[concatCalculator.numberOfFeatures()];
+        concatCalculator.writeNonZeroFeatures(record, (featureIndex, value) -> written[featureIndex] = value);
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(concatCalculator.produceFeature(record, i), written[i], 0);
+        }
+    }
+
+    /**
+     * Delegates that override mapFeaturesToZeroed, dense delegates and subclasses that compute features in their own
+     * way must map the same features to a zeroed array as mapFeatures.
+     */
+    @Test
+    public void concatMixedDelegatesToZeroed() {
+        String record = "120";
+        FeatureMapper<String> oneHot = new OneHotBaseFeatureMapper<>(1, Function.identity(),
+                (r, idx) -> Character.getNumericValue(r.charAt(idx)), 3);
+        FeatureMapper<String> wrapper = new WrappingConcatFeatureMapper(new DenseFeatureMapper(2),
+                new OneHotBaseFeatureMapper<>(0, Function.identity(), (r, idx) -> Character.getNumericValue(r.charAt(idx)), 3));
+        FeatureMapper<String> concatCalculator = new ConcatFeatureMapper<>(new DenseFeatureMapper(3), oneHot, wrapper);
+        INDArray dense = Nd4j.zeros(2, concatCalculator.numberOfFeatures());
+        INDArray sparse = Nd4j.zeros(2, concatCalculator.numberOfFeatures());
+        concatCalculator.prepareToNormalize(record, 1);
+        concatCalculator.mapFeatures(record, dense, 1);
+        concatCalculator.mapFeaturesToZeroed(record, sparse, 1);
+        assertEquals("[[0.00, 0.00, 0.00, 0.00, 0.00, 0.00, 0.00, 0.00, 0.00, 0.00, 0.00],\n" +
+                " [1.00, 2.00, 3.00, 0.00, 0.00, 1.00, 1.00, 2.00, 0.00, 1.00, 0.00]]", dense.toString());
+        assertEquals(dense.toString(), sparse.toString());
+
+        float[] written = new float[concatCalculator.numberOfFeatures()];
+        concatCalculator.writeNonZeroFeatures(record, (featureIndex, value) -> written[featureIndex] = value);
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(concatCalculator.produceFeature(record, i), written[i], 0);
+        }
+    }
+
+    /**
+     * A mapper that does not override mapFeaturesToZeroed, with features 1, 2, ..., numFeatures.
+     */
+    private static class DenseFeatureMapper implements FeatureMapper<String> {
+        private final int numFeatures;
+
+        DenseFeatureMapper(int numFeatures) {
+            this.numFeatures = numFeatures;
+        }
+
+        @Override
+        public int numberOfFeatures() {
+            return numFeatures;
+        }
+
+        @Override
+        public MappedDimensions dimensions() {
+            return new MappedDimensions(numFeatures);
+        }
+
+        @Override
+        public void prepareToNormalize(String record, int indexOfRecord) {
+        }
+
+        @Override
+        public void mapFeatures(String record, INDArray inputs, int indexOfRecord) {
+            for (int i = 0; i < numFeatures; i++) {
+                inputs.putScalar(new int[]{indexOfRecord, i}, produceFeature(record, i));
+            }
+        }
+
+        @Override
+        public boolean hasMask() {
+            return false;
+        }
+
+        @Override
+        public void maskFeatures(String record, INDArray mask, int indexOfRecord) {
+        }
+
+        @Override
+        public boolean isMasked(String record, int featureIndex) {
+            return false;
+        }
+
+        @Override
+        public float produceFeature(String record, int featureIndex) {
+            return featureIndex + 1;
+        }
+    }
+
+    /**
+     * A concatenation that computes features with a delegate configured after construction, as versioned feature
+     * mappers do.
+     */
+    private static class WrappingConcatFeatureMapper extends ConcatFeatureMapper<String> {
+        private final ConcatFeatureMapper<String> delegate;
+
+        @SafeVarargs
+        WrappingConcatFeatureMapper(FeatureMapper<String>... mappers) {
+            delegate = new ConcatFeatureMapper<>(mappers);
+        }
+
+        @Override
+        public int numberOfFeatures() {
+            return delegate.numberOfFeatures();
+        }
+
+        @Override
+        public void prepareToNormalize(String record, int indexOfRecord) {
+            delegate.prepareToNormalize(record, indexOfRecord);
+        }
+
+        @Override
+        public void mapFeatures(String record, INDArray inputs, int indexOfRecord) {
+            delegate.mapFeatures(record, inputs, indexOfRecord);
+        }
+
+        @Override
+        public float produceFeature(String record, int featureIndex) {
+            return delegate.produceFeature(record, featureIndex);
+        }
+    }
 }
@@ -0,0 +1,79 @@
+package org.campagnelab.dl.framework.mappers;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that feature plans flatten nested concatenations and produce the same features as nested mappers.
+ */
+public class FeaturePlanTest {
+
+    @Test
+    public void flattenNestedConcatenations() {
+        FeatureMapper<String> inner1 = new ConcatFeatureMapper<>(oneHot(0), oneHot(1));
+        FeatureMapper<String> inner2 = new ConcatFeatureMapper<>(oneHot(2), new ConcatFeatureMapper<>(oneHot(3)));
+        // a subclass that changes how features are produced must be kept as a leaf:
+        FeatureMapper<String> inverted = new ConcatFeatureMapper<String>(oneHot(0), oneHot(4)) {
+            @Override
+            public float produceFeature(String record, int featureIndex) {
+                return 1 - super.produceFeature(record, featureIndex);
+            }
+        };
+        ConcatFeatureMapper<String> root = new ConcatFeatureMapper<>(inner1, inner2, inverted);
+        FeaturePlan<String> plan = FeaturePlan.compile(root);
+        assertEquals(5, plan.numberOfLeaves());
+        assertEquals(root.numberOfFeatures(), plan.numberOfFeatures());
+
+        for (String record : new String[]{"01234", "43210", "22222"}) {
+            // visiting nested mappers maps each feature of the root with produceFeature:
+            INDArray nested = Nd4j.zeros(1, root.numberOfFeatures());
+            INDArray planned = Nd4j.zeros(1, root.numberOfFeatures());
+            root.prepareToNormalize(record, 0);
+            for (int i = 0; i < root.numberOfFeatures(); i++) {
+                nested.putScalar(0, i, root.produceFeature(record, i));
+            }
+            plan.prepareToNormalize(record, 0);
+            plan.mapFeatures(record, planned, 0);
+            assertEquals(nested.toString(), planned.toString());
+            root.prepareToNormalize(record, 0);
+            root.mapFeatures(record, planned, 0);
+            assertEquals(nested.toString(), planned.toString());
+        }
+    }
+
+    /**
+     * Subclasses are flattened when they opt in, and every leaf writes its features at its absolute column.
+     */
+    @Test
+    public void flattenSubclassesThatOptIn() {
+        FeatureMapper<String> optedIn = new ConcatFeatureMapper<String>(oneHot(1), oneHot(2)) {
+            @Override
+            public boolean isFlattenable() {
+                return true;
+            }
+        };
+        ConcatFeatureMapper<String> root = new ConcatFeatureMapper<>(oneHot(0), optedIn, oneHot(3));
+        FeaturePlan<String> plan = FeaturePlan.compile(root);
+        assertEquals(4, plan.numberOfLeaves());
+
+        String record = "01234";
+        INDArray dense = Nd4j.zeros(2, root.numberOfFeatures() + 2);
+        INDArray sparse = Nd4j.zeros(2, root.numberOfFeatures() + 2);
+        plan.prepareToNormalize(record, 1);
+        for (int i = 0; i < root.numberOfFeatures(); i++) {
+            dense.putScalar(1, i + 2, plan.produceFeature(record, i));
+        }
+        plan.mapFeaturesToZeroed(record, sparse, 1, 2);
+        assertEquals(dense.toString(), sparse.toString());
+    }
+
+    private FeatureMapper<String> oneHot(int baseIndex) {
+        return new OneHotBaseFeatureMapper<>(baseIndex, Function.identity(),
+                (r, idx) -> Character.getNumericValue(r.charAt(idx)), 5);
+    }
+}
@@ -0,0 +1,127 @@
+package org.campagnelab.dl.framework.mappers;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that normalization mappers evaluate each delegate feature once per record, and produce the same bits as
+ * the former implementation, which evaluated delegate features for the statistics and again for each feature.
+ */
+public class NormalizationMapperTest {
+
+    @Test
+    public void meanNormalization() {
+        for (boolean divideByStdev : new boolean[]{false, true}) {
+            CountingMapper delegate = new CountingMapper(37);
+            MeanNormalizationMapper<float[]> mapper = new MeanNormalizationMapper<>(delegate, divideByStdev);
+            Random random = new Random(2323);
+            for (int r = 0; r < 20; r++) {
+                float[] record = randomRecord(random, delegate.numberOfFeatures());
+                INDArray inputs = Nd4j.zeros(1, mapper.numberOfFeatures());
+                delegate.calls = 0;
+                mapper.prepareToNormalize(record, 0);
+                mapper.mapFeatures(record, inputs, 0);
+                assertEquals(delegate.numberOfFeatures(), delegate.calls);
+                float[] expected = formerMeanNormalization(record, divideByStdev);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(Float.floatToIntBits(expected[i]), Float.floatToIntBits(inputs.getFloat(0, i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void maxNormalization() {
+        CountingMapper delegate = new CountingMapper(23);
+        MaxNormalizationMapper<float[]> mapper = new MaxNormalizationMapper<>(delegate);
+        Random random = new Random(2323);
+        float absMax = Float.NEGATIVE_INFINITY;
+        for (int r = 0; r < 20; r++) {
+            float[] record = randomRecord(random, delegate.numberOfFeatures());
+            INDArray inputs = Nd4j.zeros(1, mapper.numberOfFeatures());
+            delegate.calls = 0;
+            mapper.prepareToNormalize(record, 0);
+            mapper.mapFeatures(record, inputs, 0);
+            assertEquals(delegate.numberOfFeatures(), delegate.calls);
+            for (float value : record) {
+                absMax = Math.max(Math.abs(value), absMax);
+            }
+            for (int i = 0; i < record.length; i++) {
+                float expected = absMax == 0 ? 0 : record[i] / absMax;
+                assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(inputs.getFloat(0, i)));
+                assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(mapper.produceFeature(record, i)));
+            }
+        }
+    }
+
+    private float[] formerMeanNormalization(float[] record, boolean divideByStdev) {
+        float mean = 0;
+        int count = 0;
+        for (float value : record) {
+            mean += value;
+            count += 1;
+        }
+        mean /= count;
+        double variance = 0;
+        for (float value : record) {
+            final double difference = (double) value - mean;
+            variance += difference * difference;
+        }
+        double stdev = Math.sqrt(variance);
+        float[] result = new float[record.length];
+        for (int i = 0; i < record.length; i++) {
+            if (mean == 0) {
+                result[i] = 0;
+                continue;
+            }
+            float normalized = record[i] - mean;
+            if (divideByStdev) {
+                normalized /= stdev;
+            }
+            result[i] = normalized;
+        }
+        return result;
+    }
+
+    private float[] randomRecord(Random random, int numFeatures) {
+        float[] record = new float[numFeatures];
+        for (int i = 0; i < numFeatures; i++) {
+            record[i] = random.nextInt(5) == 0 ? 0 : random.nextFloat() * 100 - 20;
+        }
+        return record;
+    }
+
+    private static class CountingMapper extends AbstractFeatureMapper1D<float[]> {
+        private final int numFeatures;
+        int calls;
+
+        CountingMapper(int numFeatures) {
+            this.numFeatures = numFeatures;
+        }
+
+        @Override
+        public int numberOfFeatures() {
+            return numFeatures;
+        }
+
+        @Override
+        public void prepareToNormalize(float[] record, int indexOfRecord) {
+        }
+
+        @Override
+        public float produceFeature(float[] record, int featureIndex) {
+            calls++;
+            return record[featureIndex];
+        }
+
+        @Override
+        public String getFeatureName(int featureIndex) {
+            return "feature" + featureIndex;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.campagnelab.dl.framework.mappers;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Map minibatches in parallel, with one mapper instance per thread, and check that the features are exactly
+ * those obtained when mapping the minibatches sequentially.
+ */
+public class ParallelMappingTest {
+    private static final int RECORD_LENGTH = 8;
+    private static final int MINIBATCH_SIZE = 50;
+
+    @Test
+    public void parallelMatchesSequential() throws Exception {
+        Supplier<FeatureMapper<String>> factory = ParallelMappingTest::newMapper;
+        List<String[]> minibatches = new ObjectArrayList<>();
+        Random random = new Random(2323);
+        for (int b = 0; b < 80; b++) {
+            String[] minibatch = new String[MINIBATCH_SIZE];
+            for (int r = 0; r < MINIBATCH_SIZE; r++) {
+                StringBuilder record = new StringBuilder();
+                for (int i = 0; i < RECORD_LENGTH; i++) {
+                    record.append(random.nextInt(6));
+                }
+                minibatch[r] = record.toString();
+            }
+            minibatches.add(minibatch);
+        }
+        FeatureMapper<String> sequentialMapper = factory.get();
+        List<float[]> expected = new ObjectArrayList<>();
+        for (String[] minibatch : minibatches) {
+            expected.add(map(sequentialMapper, minibatch));
+        }
+
+        ThreadLocal<FeatureMapper<String>> mappers = ThreadLocal.withInitial(factory);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 5; round++) {
+                List<Future<float[]>> results = new ObjectArrayList<>();
+                for (String[] minibatch : minibatches) {
+                    results.add(executor.submit(() -> map(mappers.get(), minibatch)));
+                }
+                for (int b = 0; b < minibatches.size(); b++) {
+                    assertArrayEquals(expected.get(b), results.get(b).get(), 0);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static float[] map(FeatureMapper<String> mapper, String[] minibatch) {
+        INDArray inputs = Nd4j.zeros(minibatch.length, mapper.numberOfFeatures());
+        for (int r = 0; r < minibatch.length; r++) {
+            mapper.prepareToNormalize(minibatch[r], r);
+            mapper.mapFeatures(minibatch[r], inputs, r);
+        }
+        return inputs.dup('c').data().asFloat();
+    }
+
+    private static FeatureMapper<String> newMapper() {
+        FeatureMapper<String>[] mappers = new FeatureMapper[RECORD_LENGTH + 2];
+        for (int i = 0; i < RECORD_LENGTH; i++) {
+            mappers[i] = new OneHotBaseFeatureMapper<>(i, Function.identity(),
+                    (r, idx) -> Character.getNumericValue(r.charAt(idx)), 6);
+        }
+        mappers[RECORD_LENGTH] = new OneHotHashModuloMapper<>(16, record -> record);
+        mappers[RECORD_LENGTH + 1] = new MeanNormalizationMapper<>(new DigitMapper(), true);
+        return new ConcatFeatureMapper<>(mappers);
+    }
+
+    private static class DigitMapper extends AbstractFeatureMapper1D<String> {
+        @Override
+        public int numberOfFeatures() {
+            return RECORD_LENGTH;
+        }
+
+        @Override
+        public void prepareToNormalize(String record, int indexOfRecord) {
+        }
+
+        @Override
+        public float produceFeature(String record, int featureIndex) {
+            return Character.getNumericValue(record.charAt(featureIndex));
+        }
+
+        @Override
+        public String getFeatureName(int featureIndex) {
+            return "digit" + featureIndex;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.campagnelab.dl.framework.mappers;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that recurrent mappers, which copy a TimeSeriesBlock to the minibatch, produce exactly the features and
+ * masks that one putScalar per feature and time step produced.
+ *
+ * @author Fabien Campagne
+ */
+public class TimeSeriesBlockTest {
+    private static final String[] SEQUENCES = {"ATCGNJ", "GN", "", "ACGTACGTAC", "T"};
+    private static final int MAX_SEQUENCE_LENGTH = 6;
+    private static final int FEATURES_PER_BASE = 6;
+    private static final float SENTINEL = -7F;
+
+    @Test
+    public void testBlockLayout() {
+        for (char order : new char[]{'c', 'f'}) {
+            TimeSeriesBlock block = new TimeSeriesBlock(3, 4);
+            INDArray inputs = Nd4j.create(new int[]{3, 3, 4}, order).assign(SENTINEL);
+            INDArray masks = Nd4j.create(new int[]{3, 4}, order).assign(SENTINEL);
+            for (int t = 0; t < 4; t++) {
+                for (int f = 0; f < 3; f++) {
+                    block.put(f, t, 10 * t + f + 1);
+                }
+            }
+            block.setSequenceLength(2);
+            block.copyFeaturesTo(inputs, 1);
+            block.copyMaskTo(masks, 1);
+            for (int t = 0; t < 4; t++) {
+                for (int f = 0; f < 3; f++) {
+                    assertEquals(10 * t + f + 1, block.get(t * 3 + f), 0);
+                    assertEquals(10 * t + f + 1, inputs.getFloat(new int[]{1, f, t}), 0);
+                    assertEquals(SENTINEL, inputs.getFloat(new int[]{0, f, t}), 0);
+                    assertEquals(SENTINEL, inputs.getFloat(new int[]{2, f, t}), 0);
+                }
+                assertEquals(t < 2 ? 1F : 0F, masks.getFloat(1, t), 0);
+                assertEquals(SENTINEL, masks.getFloat(0, t), 0);
+                assertEquals(SENTINEL, masks.getFloat(2, t), 0);
+            }
+            // the views are reused for the next record, which must not change the previous one:
+            block.clear();
+            block.put(2, 3, 5F);
+            block.setSequenceLength(4);
+            block.copyFeaturesTo(inputs, 2);
+            block.copyMaskTo(masks, 2);
+            assertEquals(5F, inputs.getFloat(new int[]{2, 2, 3}), 0);
+            assertEquals(0F, inputs.getFloat(new int[]{2, 0, 0}), 0);
+            assertEquals(31F, inputs.getFloat(new int[]{1, 0, 3}), 0);
+            assertEquals(1F, masks.getFloat(2, 3), 0);
+            assertEquals(0F, masks.getFloat(1, 3), 0);
+        }
+    }
+
+    @Test
+    public void testRNNMatchesPutScalar() {
+        for (char order : new char[]{'c', 'f'}) {
+            RNNFeatureMapper<String> mapper = new RNNFeatureMapper<>(MAX_SEQUENCE_LENGTH, Function.identity(), String::length);
+            FeatureMapper<String>[] delegates = oneHotDelegates(MAX_SEQUENCE_LENGTH);
+            INDArray[] observed = minibatch(order, FEATURES_PER_BASE, MAX_SEQUENCE_LENGTH);
+            INDArray[] expected = minibatch(order, FEATURES_PER_BASE, MAX_SEQUENCE_LENGTH);
+            for (int b = 0; b < SEQUENCES.length; b++) {
+                final String sequence = SEQUENCES[b];
+                mapper.prepareToNormalize(sequence, b);
+                mapper.mapFeatures(sequence, observed[0], b);
+                mapper.maskFeatures(sequence, observed[1], b);
+                for (int t = 0; t < MAX_SEQUENCE_LENGTH; t++) {
+                    delegates[t].prepareToNormalize(sequence, b);
+                    for (int f = 0; f < FEATURES_PER_BASE; f++) {
+                        final float feature = putScalarRNNFeature(delegates, sequence.length(), sequence, t * FEATURES_PER_BASE + f);
+                        expected[0].putScalar(new int[]{b, f, t}, feature);
+                        assertEquals(feature, mapper.produceFeature(sequence, t * FEATURES_PER_BASE + f), 0);
+                    }
+                    expected[1].putScalar(new int[]{b, t}, t < sequence.length() ? 1F : 0F);
+                }
+            }
+            assertSame(expected, observed);
+        }
+    }
+
+    @Test
+    public void testTwoDimensionalConcatMatchesPutScalar() {
+        final int paddingWidth = 2;
+        final int[] delegateLengths = {3, 4};
+        for (char order : new char[]{'c', 'f'}) {
+            TwoDimensionalConcatFeatureMapper<String> mapper = new TwoDimensionalConcatFeatureMapper<>(paddingWidth,
+                    new RNNFeatureMapper<>(delegateLengths[0], Function.identity(), String::length),
+                    new RNNFeatureMapper<>(delegateLengths[1], Function.identity(), String::length));
+            FeatureMapper<String>[][] delegates = new FeatureMapper[][]{
+                    oneHotDelegates(delegateLengths[0]), oneHotDelegates(delegateLengths[1])};
+            final int width = FEATURES_PER_BASE + paddingWidth;
+            final int numTimeSteps = delegateLengths[0] + delegateLengths[1];
+            INDArray[] observed = minibatch(order, width, numTimeSteps);
+            INDArray[] expected = minibatch(order, width, numTimeSteps);
+            for (int b = 0; b < SEQUENCES.length; b++) {
+                final String sequence = SEQUENCES[b];
+                mapper.prepareToNormalize(sequence, b);
+                mapper.mapFeatures(sequence, observed[0], b);
+                mapper.maskFeatures(sequence, observed[1], b);
+                int timeStep = 0;
+                for (int d = 0; d < delegates.length; d++) {
+                    for (int t = 0; t < delegateLengths[d]; t++) {
+                        delegates[d][t].prepareToNormalize(sequence, b);
+                        for (int f = 0; f < width; f++) {
+                            final float feature = f < FEATURES_PER_BASE ?
+                                    putScalarRNNFeature(delegates[d], sequence.length(), sequence, t * FEATURES_PER_BASE + f) : 0F;
+                            expected[0].putScalar(new int[]{b, f, timeStep}, feature);
+                            assertEquals(feature, mapper.produceFeature(sequence, timeStep * width + f), 0);
+                        }
+                        expected[1].putScalar(new int[]{b, timeStep}, t < sequence.length() ? 1F : 0F);
+                        timeStep++;
+                    }
+                }
+            }
+            assertSame(expected, observed);
+        }
+    }
+
+    /**
+     * The feature that RNNFeatureMapper produced before it encoded records in blocks.
+     */
+    private static float putScalarRNNFeature(FeatureMapper<String>[] delegates, int sequenceLength, String record,
+                                             int featureIndex) {
+        final int delegateIndex = featureIndex / FEATURES_PER_BASE;
+        if (delegateIndex >= sequenceLength) {
+            return 0F;
+        }
+        return delegates[delegateIndex].produceFeature(record, featureIndex % FEATURES_PER_BASE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FeatureMapper<String>[] oneHotDelegates(int maxSequenceLength) {
+        FeatureMapper<String>[] delegates = new FeatureMapper[maxSequenceLength];
+        for (int i = 0; i < maxSequenceLength; i++) {
+            delegates[i] = new OneHotBaseFeatureMapper<>(i, Function.identity());
+        }
+        return delegates;
+    }
+
+    /**
+     * Features and mask of a minibatch, filled with a value mappers never produce, so that cells a mapper does not
+     * write are detected.
+     */
+    private static INDArray[] minibatch(char order, int featuresPerTimeStep, int numTimeSteps) {
+        return new INDArray[]{
+                Nd4j.create(new int[]{SEQUENCES.length, featuresPerTimeStep, numTimeSteps}, order).assign(SENTINEL),
+                Nd4j.create(new int[]{SEQUENCES.length, numTimeSteps}, order).assign(SENTINEL)};
+    }
+
+    private static void assertSame(INDArray[] expected, INDArray[] observed) {
+        final int[] shape = expected[0].shape();
+        for (int b = 0; b < shape[0]; b++) {
+            for (int t = 0; t < shape[2]; t++) {
+                for (int f = 0; f < shape[1]; f++) {
+                    assertEquals("record " + b + " feature " + f + " time step " + t,
+                            expected[0].getFloat(new int[]{b, f, t}), observed[0].getFloat(new int[]{b, f, t}), 0);
+                }
+                assertEquals("mask of record " + b + " time step " + t,
+                        expected[1].getFloat(b, t), observed[1].getFloat(b, t), 0);
+            }
+        }
+    }
+}
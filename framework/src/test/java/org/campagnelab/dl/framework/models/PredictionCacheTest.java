@@ -0,0 +1,62 @@
+package org.campagnelab.dl.framework.models;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the prediction cache hits on identical features, that quantized features share keys, and that
+ * verification reports mismatches.
+ */
+public class PredictionCacheTest {
+
+    @Test
+    public void testHitsOnIdenticalFeatures() {
+        PredictionCache cache = new PredictionCache(100, 0, false);
+        INDArray[] features = {Nd4j.create(new float[][]{{1, 2, 3}, {4, 5, 6}, {1, 2, 3}})};
+        INDArray[] outputs = {Nd4j.create(new float[][]{{0.1f, 0.9f}, {0.7f, 0.3f}, {0.1f, 0.9f}})};
+        long[] first = new long[2];
+        long[] second = new long[2];
+        long[] third = new long[2];
+        cache.fingerprint(features, null, 0, first);
+        cache.fingerprint(features, null, 1, second);
+        cache.fingerprint(features, null, 2, third);
+        assertArrayEquals(first, third);
+        assertFalse(first[0] == second[0] && first[1] == second[1]);
+
+        assertNull(cache.get(first));
+        cache.put(first, outputs, 0);
+        INDArray[] cached = cache.get(third);
+        assertNotNull(cached);
+        assertEquals(0.1f, cached[0].getFloat(0), 0);
+        assertEquals(0.9f, cached[0].getFloat(1), 0);
+        assertNull(cache.get(second));
+        assertEquals(1 / 3.0, cache.hitRate(), 1E-6);
+    }
+
+    @Test
+    public void testQuantizedFeaturesShareKeys() {
+        PredictionCache cache = new PredictionCache(100, 0.1f, false);
+        INDArray[] features = {Nd4j.create(new float[][]{{1.01f, 2}, {0.99f, 2}})};
+        long[] first = new long[2];
+        long[] second = new long[2];
+        cache.fingerprint(features, null, 0, first);
+        cache.fingerprint(features, null, 1, second);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testVerifyReportsMismatches() {
+        PredictionCache cache = new PredictionCache(100, 0.1f, true);
+        INDArray[] features = {Nd4j.create(new float[][]{{1.01f, 2}, {0.99f, 2}})};
+        INDArray[] outputs = {Nd4j.create(new float[][]{{0.5f, 0.5f}, {0.6f, 0.4f}})};
+        long[] key = new long[2];
+        cache.fingerprint(features, null, 0, key);
+        cache.put(key, outputs, 0);
+        cache.fingerprint(features, null, 1, key);
+        cache.put(key, outputs, 1);
+        assertTrue(cache.report().contains("mismatches=1"));
+    }
+}
@@ -0,0 +1,95 @@
+package org.campagnelab.dl.framework.models;
+
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that pruned graphs calculate the outputs they keep exactly as the graph they were pruned from.
+ *
+ * @author Fabien Campagne
+ */
+public class PrunedComputationGraphTest {
+    private static final int MINI_BATCH_SIZE = 8;
+
+    @Test
+    public void testKeptOutputsMatchFullGraph() {
+        ComputationGraph graph = twoBranchGraph();
+        INDArray features = features();
+        INDArray[] full = graph.output(false, features);
+        PrunedComputationGraph pruned = new PrunedComputationGraph(graph, new boolean[]{true, false, true});
+        assertTrue(pruned.isPruned());
+        assertTrue(pruned.getGraph().numParams() < graph.numParams());
+        // the branch that only leads to metaData is gone, the shared layer is kept:
+        assertFalse(pruned.getGraph().getConfiguration().getVertices().containsKey("metaDataDense"));
+        assertTrue(pruned.getGraph().getConfiguration().getVertices().containsKey("dense"));
+        INDArray[] observed = pruned.output(features);
+        assertEquals(3, observed.length);
+        assertNull(observed[1]);
+        assertEquals(full[0], observed[0]);
+        assertEquals(full[2], observed[2]);
+    }
+
+    @Test
+    public void testKeepOutputsByName() {
+        ComputationGraph graph = twoBranchGraph();
+        INDArray features = features();
+        INDArray[] full = graph.output(false, features);
+        INDArray[] observed = PrunedComputationGraph.keepOutputs(graph, "metaData").output(features);
+        assertNull(observed[0]);
+        assertEquals(full[1], observed[1]);
+        assertNull(observed[2]);
+    }
+
+    @Test
+    public void testNothingToPrune() {
+        ComputationGraph graph = twoBranchGraph();
+        for (boolean[] required : new boolean[][]{{true, true, true}, {false, false, false}}) {
+            PrunedComputationGraph pruned = new PrunedComputationGraph(graph, required);
+            assertFalse(pruned.isPruned());
+            assertSame(graph, pruned.getGraph());
+        }
+    }
+
+    /**
+     * A shared dense layer feeding two outputs directly, and a metaData output through a branch of its own.
+     */
+    private static ComputationGraph twoBranchGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(1234)
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("input")
+                .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(6).activation("relu").build(), "input")
+                .addLayer("A", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                        .nIn(6).nOut(2).activation("softmax").build(), "dense")
+                .addLayer("metaDataDense", new DenseLayer.Builder().nIn(6).nOut(5).activation("relu").build(), "dense")
+                .addLayer("metaData", new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                        .nIn(5).nOut(3).activation("identity").build(), "metaDataDense")
+                .addLayer("isVariant", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                        .nIn(6).nOut(2).activation("softmax").build(), "dense")
+                .setOutputs("A", "metaData", "isVariant")
+                .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        return graph;
+    }
+
+    private static INDArray features() {
+        Nd4j.getRandom().setSeed(42);
+        return Nd4j.rand(MINI_BATCH_SIZE, 4);
+    }
+}
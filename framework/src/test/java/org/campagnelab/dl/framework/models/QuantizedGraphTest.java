@@ -0,0 +1,201 @@
+package org.campagnelab.dl.framework.models;
+
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.graph.rnn.DuplicateToTimeSeriesVertex;
+import org.deeplearning4j.nn.conf.graph.rnn.LastTimeStepVertex;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.GravesLSTM;
+import org.deeplearning4j.nn.conf.layers.LocalResponseNormalization;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compare the outputs of reduced-precision graphs to the outputs of the float graph they were converted from.
+ *
+ * @author Fabien Campagne
+ */
+public class QuantizedGraphTest {
+    private static final int MINI_BATCH_SIZE = 8;
+    private static final int TIME_STEPS = 5;
+
+    @Test
+    public void testBF16MatchesFloatGraph() throws IOException {
+        ComputationGraph graph = denseAndLstmGraph();
+        INDArray[] features = features();
+        INDArray[] masks = masks();
+        QuantizedGraph quantized = saveAndLoad(QuantizedGraph.fromGraph(graph, QuantizedGraph.Precision.BF16));
+        assertClose(floatOutputs(graph, features, masks), quantized.output(features, masks), 0.02f);
+    }
+
+    @Test
+    public void testINT8MatchesFloatGraph() throws IOException {
+        ComputationGraph graph = denseAndLstmGraph();
+        INDArray[] features = features();
+        INDArray[] masks = masks();
+        QuantizedGraph quantized = QuantizedGraph.fromGraph(graph, QuantizedGraph.Precision.INT8);
+        quantized.calibrate(features, masks);
+        quantized.finishCalibration();
+        quantized = saveAndLoad(quantized);
+        assertClose(floatOutputs(graph, features, masks), quantized.output(features, masks), 0.05f);
+    }
+
+    @Test
+    public void testBF16MatchesTrueGenotypeDecoder() throws IOException {
+        ComputationGraph graph = trueGenotypeDecoderGraph();
+        INDArray[] features = decoderFeatures();
+        QuantizedGraph quantized = saveAndLoad(QuantizedGraph.fromGraph(graph, QuantizedGraph.Precision.BF16));
+        assertClose(floatOutputs(graph, features, null), quantized.output(features, null), 0.02f);
+    }
+
+    @Test
+    public void testINT8MatchesTrueGenotypeDecoder() throws IOException {
+        ComputationGraph graph = trueGenotypeDecoderGraph();
+        INDArray[] features = decoderFeatures();
+        QuantizedGraph quantized = QuantizedGraph.fromGraph(graph, QuantizedGraph.Precision.INT8);
+        quantized.calibrate(features, null);
+        quantized.finishCalibration();
+        quantized = saveAndLoad(quantized);
+        assertClose(floatOutputs(graph, features, null), quantized.output(features, null), 0.05f);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnsupportedLayerIsRejected() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(1234)
+                .graphBuilder()
+                .addInputs("input")
+                .addLayer("normalization", new LocalResponseNormalization.Builder().build(), "input")
+                .setOutputs("normalization")
+                .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        QuantizedGraph.fromGraph(graph, QuantizedGraph.Precision.BF16);
+    }
+
+    /**
+     * A dense input and a sequence input, encoded by an LSTM, merged before a softmax output.
+     */
+    private static ComputationGraph denseAndLstmGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(1234)
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("input", "sequence")
+                .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(6).activation("relu").build(), "input")
+                .addLayer("lstm", new GravesLSTM.Builder().nIn(3).nOut(5).activation("softsign").build(), "sequence")
+                .addVertex("lastStep", new LastTimeStepVertex("sequence"), "lstm")
+                .addVertex("merge", new MergeVertex(), "dense", "lastStep")
+                .addLayer("output", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                        .nIn(11).nOut(3).activation("softmax").build(), "merge")
+                .setOutputs("output")
+                .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        return graph;
+    }
+
+    /**
+     * The layout of the genotype models with an LSTM true genotype decoder (see GenotypeAssembler): a dense
+     * reduction of the features is duplicated over the time steps of the decoder input, read together with it by
+     * stacked LSTMs, and classified at each time step by an RNN output layer. The LSTMs use hard sigmoid gates, to
+     * check that the configured gate activation is used.
+     */
+    private static ComputationGraph trueGenotypeDecoderGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(1234)
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("input", "trueGenotypeInput")
+                .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(6).activation("relu").build(), "input")
+                .addLayer("denseReduction", new DenseLayer.Builder().nIn(6).nOut(3).activation("relu").build(),
+                        "dense")
+                .addVertex("feedForwardLstmDuplicate", new DuplicateToTimeSeriesVertex("trueGenotypeInput"),
+                        "denseReduction")
+                .addLayer("lstmTrueGenotype_0", new GravesLSTM.Builder().nIn(5).nOut(4).activation("softsign")
+                        .gateActivationFunction("hardsigmoid").build(), "trueGenotypeInput", "feedForwardLstmDuplicate")
+                .addLayer("lstmTrueGenotype_1", new GravesLSTM.Builder().nIn(4).nOut(4).activation("softsign")
+                        .gateActivationFunction("hardsigmoid").build(), "lstmTrueGenotype_0")
+                .addLayer("trueGenotype", new RnnOutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                        .nIn(4).nOut(3).activation("softmax").build(), "lstmTrueGenotype_1")
+                .addLayer("metaData", new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                        .nIn(6).nOut(2).activation("identity").build(), "dense")
+                .setOutputs("trueGenotype", "metaData")
+                .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        return graph;
+    }
+
+    private static INDArray[] decoderFeatures() {
+        Nd4j.getRandom().setSeed(42);
+        return new INDArray[]{Nd4j.rand(MINI_BATCH_SIZE, 4),
+                Nd4j.rand(new int[]{MINI_BATCH_SIZE, 2, TIME_STEPS}).subi(0.5)};
+    }
+
+    private static INDArray[] features() {
+        Nd4j.getRandom().setSeed(42);
+        return new INDArray[]{Nd4j.rand(MINI_BATCH_SIZE, 4),
+                Nd4j.rand(new int[]{MINI_BATCH_SIZE, 3, TIME_STEPS}).subi(0.5)};
+    }
+
+    /**
+     * Sequences of decreasing length, so that the last time step differs between examples.
+     */
+    private static INDArray[] masks() {
+        INDArray mask = Nd4j.zeros(MINI_BATCH_SIZE, TIME_STEPS);
+        for (int b = 0; b < MINI_BATCH_SIZE; b++) {
+            for (int t = 0; t < TIME_STEPS - b % TIME_STEPS; t++) {
+                mask.putScalar(b, t, 1);
+            }
+        }
+        return new INDArray[]{null, mask};
+    }
+
+    private static INDArray[] floatOutputs(ComputationGraph graph, INDArray[] features, INDArray[] masks) {
+        if (masks != null) {
+            graph.setLayerMaskArrays(masks, null);
+        }
+        INDArray[] outputs = graph.output(false, features);
+        graph.clearLayerMaskArrays();
+        return outputs;
+    }
+
+    private static QuantizedGraph saveAndLoad(QuantizedGraph quantized) throws IOException {
+        File file = File.createTempFile("quantized-", ".bin");
+        try {
+            quantized.save(file.getPath());
+            return QuantizedGraph.load(file.getPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Outputs must have the same shape, [example][column] or [example][column][timeStep], and close values.
+     */
+    private static void assertClose(INDArray[] expected, INDArray[] observed, float tolerance) {
+        assertEquals(expected.length, observed.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i].shape(), observed[i].shape());
+            float[] expectedValues = expected[i].dup('c').data().asFloat();
+            float[] observedValues = observed[i].dup('c').data().asFloat();
+            for (int k = 0; k < expectedValues.length; k++) {
+                assertEquals("output " + i + " value " + k, expectedValues[k], observedValues[k], tolerance);
+            }
+        }
+    }
+}
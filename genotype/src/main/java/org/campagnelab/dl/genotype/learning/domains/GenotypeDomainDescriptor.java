@@ -21,6 +21,9 @@ import org.campagnelab.dl.genotype.predictions.*;
 import org.campagnelab.dl.somatic.learning.TrainSomaticModel;
 import org.campagnelab.dl.somatic.learning.iterators.BaseInformationConcatIterator;
 import org.campagnelab.dl.somatic.learning.iterators.BaseInformationIterator;
+import org.campagnelab.dl.somatic.storage.RegionRecordReader;
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.ColumnarRecordReader;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -144,22 +147,44 @@ public class GenotypeDomainDescriptor extends DomainDescriptor<BaseInformationRe
             return featureMappers.get(inputName);
         }
         if (inputName.equals("trueGenotypeInput") && isPredicting) {
-            TrueGenotypeLSTMDecodingFeatureMapper glpfMapper = new TrueGenotypeLSTMDecodingFeatureMapper();
-            Properties glpfMapperProperties = new Properties();
-            glpfMapperProperties.setProperty("isPredicting", "true");
-            decorateProperties(glpfMapperProperties);
-            glpfMapper.configure(glpfMapperProperties);
-            return glpfMapper;
+            return createDecodingFeatureMapper();
         } else {
             return getFeatureMapper(inputName);
         }
     }
 
+    @Override
+    public FeatureMapper newFeatureMapper(String inputName, boolean isPredicting) {
+        if (inputName.equals("trueGenotypeInput") && isPredicting) {
+            return createDecodingFeatureMapper();
+        } else {
+            return createFeatureMapper(inputName);
+        }
+    }
+
+    private FeatureMapper createDecodingFeatureMapper() {
+        TrueGenotypeLSTMDecodingFeatureMapper glpfMapper = new TrueGenotypeLSTMDecodingFeatureMapper();
+        Properties glpfMapperProperties = new Properties();
+        glpfMapperProperties.setProperty("isPredicting", "true");
+        decorateProperties(glpfMapperProperties);
+        glpfMapper.configure(glpfMapperProperties);
+        return glpfMapper;
+    }
+
     @Override
     public FeatureMapper getFeatureMapper(String inputName) {
         if (featureMappers.containsKey(inputName)) {
             return featureMappers.get(inputName);
         }
+        FeatureMapper result = createFeatureMapper(inputName);
+        featureMappers.put(inputName, result);
+        return result;
+    }
+
+    /**
+     * Create and configure a new feature mapper for an input.
+     */
+    private FeatureMapper createFeatureMapper(String inputName) {
         FeatureMapper result;
 
         if (isLSTMInput(inputName)) {
@@ -230,7 +255,6 @@ public class GenotypeDomainDescriptor extends DomainDescriptor<BaseInformationRe
                 throw new RuntimeException(e);
             }
         }
-        featureMappers.put(inputName, result);
         return result;
     }
 
@@ -412,6 +436,10 @@ public class GenotypeDomainDescriptor extends DomainDescriptor<BaseInformationRe
     public Function<String, ? extends Iterable<BaseInformationRecords.BaseInformation>> getRecordIterable() {
         return inputFilename -> {
             try {
+                if (inputFilename.endsWith(".sbc")) {
+                    // decode only the columns that the mappers of this domain read:
+                    return new ColumnarRecordReader(inputFilename, Column.requiredBy(this));
+                }
                 return new SequenceBaseInformationReader(inputFilename);
             } catch (IOException e) {
                 throw new RuntimeException("Unable to read records from " + inputFilename, e);
@@ -419,6 +447,20 @@ public class GenotypeDomainDescriptor extends DomainDescriptor<BaseInformationRe
         };
     }
 
+    @Override
+    public Function<String, ? extends Iterable<BaseInformationRecords.BaseInformation>> getRecordIterable(String region) {
+        if (region == null) {
+            return getRecordIterable();
+        }
+        return inputFilename -> {
+            try {
+                return new RegionRecordReader(inputFilename, region);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read records of region " + region + " from " + inputFilename, e);
+            }
+        };
+    }
+
     @Override
     public PerformanceMetricDescriptor<BaseInformationRecords.BaseInformation> performanceDescritor() {
         return new PerformanceMetricDescriptor<BaseInformationRecords.BaseInformation>(this) {
@@ -623,6 +665,18 @@ public class GenotypeDomainDescriptor extends DomainDescriptor<BaseInformationRe
         }
     }
 
+    /**
+     * Models trained with true genotype labels are interpreted from the trueGenotype output alone (see
+     * TrueGenotypePrediction), so their other outputs are not calculated during prediction.
+     */
+    @Override
+    public boolean isOutputRead(String outputName) {
+        if (addTrueGenotypeLabels) {
+            return "trueGenotype".equals(outputName) || "metaData".equals(outputName);
+        }
+        return true;
+    }
+
     @Override
     public GenotypePrediction aggregatePredictions(BaseInformationRecords.BaseInformation record, List<Prediction> individualOutputPredictions) {
         if (addTrueGenotypeLabels) {
@@ -2,7 +2,9 @@ package org.campagnelab.dl.genotype.mappers;
 
 import org.campagnelab.dl.framework.mappers.AbstractFeatureMapper1D;
 import org.campagnelab.dl.framework.mappers.FeatureNameMapper;
+import org.campagnelab.dl.framework.mappers.FeatureWriter;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.nd4j.linalg.api.ndarray.INDArray;
 
 /**
  * Created by fac2003 on 12/15/16.
@@ -36,6 +38,28 @@ public class CountReorderingMapper extends AbstractFeatureMapper1D<BaseInformati
         delegate.prepareToNormalize(sortedCountRecord, indexOfRecord);
     }
 
+    @Override
+    public void mapFeatures(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
+        // let the delegate map all its features, rather than looking up each feature in the delegate:
+        delegate.mapFeatures(sortedCountRecord, inputs, indexOfRecord);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
+        delegate.mapFeaturesToZeroed(sortedCountRecord, inputs, indexOfRecord);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs,
+                                    int indexOfRecord, int offset) {
+        delegate.mapFeaturesToZeroed(sortedCountRecord, inputs, indexOfRecord, offset);
+    }
+
+    @Override
+    public void writeNonZeroFeatures(BaseInformationRecords.BaseInformationOrBuilder record, FeatureWriter writer) {
+        delegate.writeNonZeroFeatures(sortedCountRecord, writer);
+    }
+
     @Override
     public float produceFeature(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
         return delegate.produceFeature(sortedCountRecord, featureIndex);
@@ -2,16 +2,25 @@ package org.campagnelab.dl.genotype.mappers;
 
 import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
 import org.campagnelab.dl.somatic.mappers.NamingConcatFeatureMapper;
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 
+import java.util.Set;
+
 /**
  * Created by fac2003 on 12/16/16.
  */
-public abstract class GenotypeFeatureMapper extends NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> implements ConfigurableFeatureMapper {
+public abstract class GenotypeFeatureMapper extends NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> implements ConfigurableFeatureMapper, RequiresColumns {
     public boolean sortCounts;
     public boolean withDistinctAlleleCounts;
     public boolean withCombinedLayer;
     public boolean withCombinedLayerRef;
     public boolean hasIsVariantLabelMapper;
     public static int MAX_GENOTYPES = 3;
+
+    @Override
+    public Set<Column> requiredColumns() {
+        return Column.featureColumns();
+    }
 }
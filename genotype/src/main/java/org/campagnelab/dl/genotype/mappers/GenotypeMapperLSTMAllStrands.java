@@ -21,8 +21,7 @@ public class GenotypeMapperLSTMAllStrands implements
     private int indelSequenceLength;
     private MappedDimensions dim;
     private int maskLen;
-    private int[] indicesMapper = new int[]{0, 0, 0};
-    private int[] indicesMasker = new int[]{0, 0};
+    private TimeSeriesBlock block;
 
     private Sample cachedSample = null;
     private static final int featuresPerSequence = 8;
@@ -39,6 +38,7 @@ public class GenotypeMapperLSTMAllStrands implements
             indelSequenceLength = Integer.parseInt(indelSequenceLengthProperty);
         }
         dim = new MappedDimensions(featuresPerTimeStep, indelSequenceLength);
+        block = new TimeSeriesBlock(featuresPerTimeStep, indelSequenceLength);
     }
 
     @Override
@@ -65,19 +65,36 @@ public class GenotypeMapperLSTMAllStrands implements
                 sampleInfo.getCounts(2).getToSequence(),
                 indelSequenceLength);
         maskLen = cachedSample.maxLen();
+        encode();
     }
 
-    @Override
-    public void mapFeatures(BaseInformationRecords.BaseInformation record, INDArray inputs, int indexOfRecord) {
-        indicesMapper[0] = indexOfRecord;
-        for (int i = 0; i < indelSequenceLength; i++) {
-            indicesMapper[2] = i;
-            for (int j = 0; j < featuresPerTimeStep; j++) {
-                indicesMapper[1] = j;
-                int featureIndex = i * featuresPerTimeStep + j;
-                inputs.putScalar(indicesMapper, produceFeature(record, featureIndex));
+    /**
+     * Encode the features and mask of the cached sample in the block, one time step at a time.
+     */
+    private void encode() {
+        block.clear();
+        for (int timeStep = 0; timeStep < maskLen; timeStep++) {
+            final int timeStepOffset = timeStep * featuresPerTimeStep;
+            for (int sequenceIndex = 0; sequenceIndex < sequencesPerIndel; sequenceIndex++) {
+                String sequence = cachedSample.getSequence(sequenceIndex);
+                final int featureInSequenceIndex = timeStep < sequence.length() ?
+                        getIntegerOfBase(sequence, timeStep) :
+                        // the sequence ended before the longest sequence:
+                        featuresPerSequence - 2;
+                block.put(timeStepOffset + sequenceIndex * featuresPerSequence + featureInSequenceIndex, 1F);
             }
         }
+        block.setSequenceLength(maskLen);
+    }
+
+    @Override
+    public void mapFeatures(BaseInformationRecords.BaseInformation record, INDArray inputs, int indexOfRecord) {
+        block.copyFeaturesTo(inputs, indexOfRecord);
+    }
+
+    @Override
+    public void writeNonZeroFeatures(BaseInformationRecords.BaseInformation record, FeatureWriter writer) {
+        block.writeNonZeroFeatures(writer);
     }
 
     @Override
@@ -87,14 +104,7 @@ public class GenotypeMapperLSTMAllStrands implements
 
     @Override
     public void maskFeatures(BaseInformationRecords.BaseInformation record, INDArray mask, int indexOfRecord) {
-        indicesMasker[0] = indexOfRecord;
-        for (int i = 0; i < indelSequenceLength; i++) {
-            indicesMasker[1] = i;
-            for (int j = 0; j < featuresPerTimeStep; j++) {
-                int featureIndex = i * featuresPerTimeStep + j;
-                mask.putScalar(indicesMasker, isMasked(record, featureIndex) ? 1F : 0F);
-            }
-        }
+        block.copyMaskTo(mask, indexOfRecord);
     }
 
     @Override
@@ -104,19 +114,7 @@ public class GenotypeMapperLSTMAllStrands implements
 
     @Override
     public float produceFeature(BaseInformationRecords.BaseInformation record, int featureIndex) {
-        int featureInTimeStepIndex = featureIndex % featuresPerTimeStep;
-        int sequenceIndex = featureInTimeStepIndex / featuresPerSequence;
-        int featureInSequenceIndex = featureInTimeStepIndex % featuresPerSequence;
-        String sequence = cachedSample.getSequence(sequenceIndex);
-        int timeStepIndex = featureIndex / featuresPerTimeStep;
-        if (timeStepIndex < sequence.length()) {
-            int sequenceBase = getIntegerOfBase(sequence, timeStepIndex);
-            return sequenceBase == featureInSequenceIndex ? 1F : 0F;
-        } else if (timeStepIndex < maskLen) {
-            return featureInSequenceIndex == featuresPerSequence - 2 ? 1F : 0F;
-        } else {
-            return 0f;
-        }
+        return block.get(featureIndex);
     }
 
     private static int getIntegerOfBase(String field, int baseIndex) {
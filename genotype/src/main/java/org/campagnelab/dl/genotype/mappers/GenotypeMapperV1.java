@@ -62,16 +62,11 @@ public class GenotypeMapperV1  extends GenotypeFeatureMapper{
                         new InverseNormalizationMapper(
                                 new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(readIndexMappers)),
                         new GenomicContextMapper(sbiProperties),
-                        new DensityMapper("numVariationsInRead", 20, sbiProperties, baseInformationOrBuilder ->
-                                TraversalHelper.forSampleCounts(sampleIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
-                        new DensityMapper("readMappingQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                                TraversalHelper.forSampleCounts(sampleIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
-                        new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                                TraversalHelper.forSampleCounts(sampleIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
-                        new DensityMapper("baseQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                                TraversalHelper.forSampleCounts(sampleIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
-                        new DensityMapper("baseQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                                TraversalHelper.forSampleCounts(sampleIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
+                        new DensityMapper("numVariationsInRead", 20, sbiProperties, TraversalHelper.sampleCounts(sampleIndex, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
+                        new DensityMapper("readMappingQuality.forward", 10, sbiProperties, TraversalHelper.sampleCounts(sampleIndex, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
+                        new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, TraversalHelper.sampleCounts(sampleIndex, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
+                        new DensityMapper("baseQuality.forward", 10, sbiProperties, TraversalHelper.sampleCounts(sampleIndex, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
+                        new DensityMapper("baseQuality.reverse", 10, sbiProperties, TraversalHelper.sampleCounts(sampleIndex, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
                 )
         ;
         numFeatures = delegate.numberOfFeatures();
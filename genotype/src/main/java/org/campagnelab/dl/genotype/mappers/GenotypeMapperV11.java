@@ -53,17 +53,13 @@ public class GenotypeMapperV11 extends GenotypeMapperV9 {
                     record -> record.getSamples(0).getCounts(constantGenotypeIndex).getToSequence().substring(0, 1));
             numVariationsInReadMappers[i] = new DensityMapper("numVariationsInRead",
                     40, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.forward",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.forward",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
 
             genotypeIndex++;
         }
@@ -76,13 +72,10 @@ public class GenotypeMapperV11 extends GenotypeMapperV9 {
 
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.reverse",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.reverse",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
 
             genotypeIndex++;
         }
@@ -56,31 +56,24 @@ public class GenotypeMapperV15 extends GenotypeMapperV11 {
                     record -> record.getSamples(0).getCounts(constantGenotypeIndex).getToSequence().substring(0, 1));
             numVariationsInReadMappers[i] = new DensityMapper("numVariationsInRead",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.forward",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.forward",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
 
             targetAlignedLengthMappers[i] = new DensityMapper("targetAlignedLength",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getTargetAlignedLengthsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getTargetAlignedLengthsList));
             queryAlignedLengthMappers[i] = new DensityMapper("queryAlignedLength",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQueryAlignedLengthsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQueryAlignedLengthsList));
             // need a better way to map binary flags, whe the number of distinct combination is smaller than the range:
             pairFlagMappers[i] = new DensityMapper("pairFlag",
                     12, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getPairFlagsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getPairFlagsList));
 
 
             genotypeIndex++;
@@ -94,13 +87,10 @@ public class GenotypeMapperV15 extends GenotypeMapperV11 {
 
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.reverse",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.reverse",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
 
             genotypeIndex++;
         }
@@ -119,8 +109,7 @@ public class GenotypeMapperV15 extends GenotypeMapperV11 {
                         /* NumVariationsInReads for counts not in the best 3: */
                         new DensityMapper("numVariationsInRead",
                                 10, sbiProperties,
-                                record -> TraversalHelper.forAllSampleCounts(record,
-                                        CountInfoOrBuilder::getNumVariationsInReadsList)),
+                                TraversalHelper.allSampleCounts(CountInfoOrBuilder::getNumVariationsInReadsList)),
 
                         new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(numVariationsInReadMappers),
                         new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(readMappingQualityMappers),
@@ -66,35 +66,28 @@ public class GenotypeMapperV16 extends GenotypeMapperV11 {
                     record -> record.getSamples(0).getCounts(constantGenotypeIndex).getToSequence().substring(0, 1));
             numVariationsInReadMappers[i] = new DensityMapper("numVariationsInRead",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
 
             distancesToReadVariations[i] = new DensityMapper("distancesToReadVariations.forward","distancesToReadVariations.reverse",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotypeBothStrands(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder,
+                    TraversalHelper.oneSampleGenotypeBothStrands(sampleIndex, constantGenotypeIndex,
                                     BaseInformationRecords.CountInfo::getDistancesToReadVariationsForwardStrandList,
                                     BaseInformationRecords.CountInfo::getDistancesToReadVariationsReverseStrandList),
                     distance  -> (float)(Math.log(distance)/Math.log(2)));
 
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.forward",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.forward",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
 
             targetAlignedLengthMappers[i] = new DensityMapper("targetAlignedLength",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getTargetAlignedLengthsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getTargetAlignedLengthsList));
             queryAlignedLengthMappers[i] = new DensityMapper("queryAlignedLength",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQueryAlignedLengthsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQueryAlignedLengthsList));
             bamFlagMappers[i] = new BamFlagMapper(sampleIndex,genotypeIndex);
             genotypeIndex++;
         }
@@ -107,13 +100,10 @@ public class GenotypeMapperV16 extends GenotypeMapperV11 {
 
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.reverse",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.reverse",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
             genotypeIndex++;
         }
         delegate =
@@ -132,8 +122,7 @@ public class GenotypeMapperV16 extends GenotypeMapperV11 {
                         /* NumVariationsInReads for counts not in the best 3: */
                         new DensityMapper("numVariationsInRead",
                                 10, sbiProperties,
-                                record -> TraversalHelper.forAllSampleCounts(record,
-                                        CountInfoOrBuilder::getNumVariationsInReadsList)),
+                                TraversalHelper.allSampleCounts(CountInfoOrBuilder::getNumVariationsInReadsList)),
 
                         new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(numVariationsInReadMappers),
                         new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(readMappingQualityMappers),
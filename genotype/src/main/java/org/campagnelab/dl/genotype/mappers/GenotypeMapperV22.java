@@ -60,33 +60,26 @@ public class GenotypeMapperV22 extends GenotypeMapperV19 {
                     record -> record.getSamples(0).getCounts(constantGenotypeIndex).getToSequence().substring(0, 1));
             numVariationsInReadMappers[i] = new DensityMapper("numVariationsInRead",
                     40, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
             //bin width 1 density mapper that ignores variations outside of caps
             distancesToReadVariations[i] = new DensityMapperCapped("distancesToReadVariations.forward","distancesToReadVariations.reverse",
                     -50,50, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotypeBothStrands(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder,
+                    TraversalHelper.oneSampleGenotypeBothStrands(sampleIndex, constantGenotypeIndex,
                                     BaseInformationRecords.CountInfo::getDistancesToReadVariationsForwardStrandList,
                                     BaseInformationRecords.CountInfo::getDistancesToReadVariationsReverseStrandList));
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.forward",
                     20, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.forward",
                     20, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
 
             targetAlignedLengthMappers[i] = new DensityMapper("targetAlignedLength",
                     20, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getTargetAlignedLengthsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getTargetAlignedLengthsList));
             queryAlignedLengthMappers[i] = new DensityMapper("queryAlignedLength",
                     10, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQueryAlignedLengthsList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQueryAlignedLengthsList));
             bamFlagMappers[i] = new BamFlagMapper(sampleIndex,genotypeIndex);
             genotypeIndex++;
         }
@@ -99,13 +92,10 @@ public class GenotypeMapperV22 extends GenotypeMapperV19 {
 
             readMappingQualityMappers[i] = new DensityMapper("readMappingQuality.reverse",
                     20, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex,
-                                    baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
             baseQualityMappers[i] = new DensityMapper("baseQuality.reverse",
                     20, sbiProperties,
-                    baseInformationOrBuilder ->
-                            TraversalHelper.forOneSampleGenotype(sampleIndex, constantGenotypeIndex, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
+                    TraversalHelper.oneSampleGenotype(sampleIndex, constantGenotypeIndex, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
             genotypeIndex++;
         }
         delegate =
@@ -86,16 +86,11 @@ public class SomaticFeatureMapper1 extends NamingConcatFeatureMapper<BaseInforma
                 new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(matchesRefMappers),
                 new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(originalGobyCountIndexMappers),
                 new NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>(firstBaseMappers),
-                new DensityMapper("numVariationsInRead", 20, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forNSampleCounts(sampleIndices, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
-                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forNSampleCounts(sampleIndices, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
-                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forNSampleCounts(sampleIndices, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
-                new DensityMapper("baseQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forNSampleCounts(sampleIndices, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
-                new DensityMapper("baseQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forNSampleCounts(sampleIndices, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList)),
+                new DensityMapper("numVariationsInRead", 20, sbiProperties, TraversalHelper.nSampleCounts(sampleIndices, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
+                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, TraversalHelper.nSampleCounts(sampleIndices, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
+                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, TraversalHelper.nSampleCounts(sampleIndices, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
+                new DensityMapper("baseQuality.forward", 10, sbiProperties, TraversalHelper.nSampleCounts(sampleIndices, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
+                new DensityMapper("baseQuality.reverse", 10, sbiProperties, TraversalHelper.nSampleCounts(sampleIndices, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList)),
                 new DensityMapper("insertSizes", 10, sbiProperties, (BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder) -> {
                     return TraversalHelper.forNSampleCounts(sampleIndices, baseInformationOrBuilder, BaseInformationRecords.CountInfo::getInsertSizesList);
                 },
@@ -1,11 +1,14 @@
 package org.campagnelab.dl.genotype.predictions;
 
 import org.campagnelab.dl.framework.models.ModelLoader;
+import org.campagnelab.dl.framework.models.PredictionCache;
 import org.campagnelab.goby.algorithmic.dsv.DiscoverVariantPositionData;
 import org.campagnelab.goby.algorithmic.dsv.SampleCountInfo;
 import org.campagnelab.goby.predictions.GenotypePredictor;
 import org.campagnelab.goby.predictions.Predictor;
 import org.campagnelab.goby.reads.RandomAccessSequenceInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Properties;
@@ -18,6 +21,7 @@ import java.util.Properties;
  *         Created by fac2003 on 11/14/16.
  */
 public class DLGenotypePredictor implements GenotypePredictor, Predictor {
+    static private Logger LOG = LoggerFactory.getLogger(DLGenotypePredictor.class);
     private GenotypeModel model;
     private GenotypePrediction prediction;
 
@@ -36,6 +40,30 @@ public class DLGenotypePredictor implements GenotypePredictor, Predictor {
     @Override
     public void loadModel(String modelPath, String modelPrefix) throws IOException {
         model = new GenotypeModel(modelPath, modelPrefix);
+        // Goby does not pass options to predictors, the prediction cache is configured with system properties:
+        int cacheEntries = Integer.getInteger(PREDICTION_CACHE_ENTRIES_PROPERTY, 0);
+        if (cacheEntries > 0) {
+            predictionCache = new PredictionCache(cacheEntries,
+                    Float.parseFloat(System.getProperty(PREDICTION_CACHE_QUANTUM_PROPERTY, "0")),
+                    Boolean.getBoolean(PREDICTION_CACHE_VERIFY_PROPERTY));
+            model.setPredictionCache(predictionCache);
+            // Goby does not tell predictors when calling is done, report cache usage when the JVM exits:
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> LOG.info(predictionCacheReport())));
+        }
+    }
+
+    public static final String PREDICTION_CACHE_ENTRIES_PROPERTY = "dlva.predictionCache.entries";
+    public static final String PREDICTION_CACHE_QUANTUM_PROPERTY = "dlva.predictionCache.quantum";
+    public static final String PREDICTION_CACHE_VERIFY_PROPERTY = "dlva.predictionCache.verify";
+    private PredictionCache predictionCache;
+
+    /**
+     * Report prediction cache usage, when the cache is enabled.
+     *
+     * @return a report, or null if the cache is not enabled.
+     */
+    public String predictionCacheReport() {
+        return predictionCache == null ? null : predictionCache.report();
     }
 
     @Override
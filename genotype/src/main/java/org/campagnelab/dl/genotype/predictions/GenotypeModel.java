@@ -6,6 +6,7 @@ import org.campagnelab.dl.framework.domains.DomainDescriptorLoader;
 import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
 import org.campagnelab.dl.framework.mappers.FeatureMapper;
 import org.campagnelab.dl.framework.models.ModelLoader;
+import org.campagnelab.dl.framework.models.PredictionCache;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.campagnelab.goby.algorithmic.dsv.DiscoverVariantPositionData;
 import org.campagnelab.goby.algorithmic.dsv.SampleCountInfo;
@@ -76,7 +77,7 @@ public class GenotypeModel {
 
 
         ModelLoader modelLoader = new ModelLoader(modelPath);
-        Model model = modelLoader.loadModel(prefix);
+        Model model = modelLoader.loadModelForInference(prefix);
         modelProperties = modelLoader.getModelProperties();
         domainDescriptor = DomainDescriptorLoader.load(modelPath);
         this.protoPredictor = new GenotypeProtoPredictor(domainDescriptor, model, featureMapper);
@@ -98,6 +99,10 @@ public class GenotypeModel {
     }
 
 
+    public void setPredictionCache(PredictionCache predictionCache) {
+        protoPredictor.setPredictionCache(predictionCache);
+    }
+
     public Properties getProperties() {
         return modelProperties;
     }
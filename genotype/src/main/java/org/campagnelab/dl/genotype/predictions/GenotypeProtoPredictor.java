@@ -5,6 +5,7 @@ import org.campagnelab.dl.framework.domains.prediction.Prediction;
 import org.campagnelab.dl.framework.domains.prediction.PredictionInterpreter;
 import org.campagnelab.dl.framework.mappers.FeatureMapper;
 import org.campagnelab.dl.framework.models.ModelOutputHelper;
+import org.campagnelab.dl.framework.models.PredictionCache;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.deeplearning4j.nn.api.Model;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -34,11 +35,23 @@ public class GenotypeProtoPredictor {
         for (String outputName : outputNames) {
             interpretors[outputIndex++] = domainDescriptor.getPredictionInterpreter(outputName);
         }
+        readOutputs = ModelOutputHelper.readOutputs(domainDescriptor);
+        outputHelper.setRequiredOutputs(ModelOutputHelper.requiredOutputs(domainDescriptor, interpretors));
 
 
     }
 
+    /**
+     * Reuse model outputs for records whose mapped features were seen before.
+     *
+     * @param predictionCache cache, or null to run the model for every record.
+     */
+    public void setPredictionCache(PredictionCache predictionCache) {
+        outputHelper.setPredictionCache(predictionCache);
+    }
+
     private PredictionInterpreter[] interpretors;
+    private boolean[] readOutputs;
     private List<Prediction> predictions = new ArrayList<>();
 
     public GenotypePrediction predictGenotype(BaseInformationRecords.BaseInformation currentRecord) {
@@ -50,6 +63,10 @@ public class GenotypeProtoPredictor {
             INDArray outputPredictions = outputHelper.getOutput(outputIndex);
 
             if (interpretors[outputIndex] != null) {
+                if (!readOutputs[outputIndex]) {
+                    predictions.add(null);
+                    continue;
+                }
                 Prediction prediction = interpretors[outputIndex].interpret(currentRecord, outputPredictions);
                 prediction.outputIndex = outputIndex;
                 predictions.add(prediction);
@@ -64,4 +64,10 @@ public class MetaDataInterpreter implements PredictionInterpreter<BaseInformatio
         };
         return p;
     }
+
+    @Override
+    public boolean usesModelOutput() {
+        // meta-data is read from the record, not from the model:
+        return false;
+    }
 }
@@ -0,0 +1,75 @@
+package org.campagnelab.dl.genotype.stats;
+
+import org.campagnelab.dl.somatic.mappers.functional.FieldStatistics;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+/**
+ * Summaries (min, max, mean and variance) of per-site counts in one sample: depth, number of genotypes with
+ * at least one read, and number of indel genotypes with at least one read.
+ *
+ * @author Fabien Campagne
+ */
+public class CountDistributions implements RecordStatistic {
+    private final int sampleIndex;
+    private final FieldStatistics depth = new FieldStatistics();
+    private final FieldStatistics distinctGenotypes = new FieldStatistics();
+    private final FieldStatistics indelGenotypes = new FieldStatistics();
+
+    public CountDistributions(int sampleIndex) {
+        this.sampleIndex = sampleIndex;
+    }
+
+    @Override
+    public String name() {
+        return "counts";
+    }
+
+    @Override
+    public void observe(BaseInformationRecords.BaseInformation record) {
+        if (sampleIndex >= record.getSamplesCount()) {
+            return;
+        }
+        int sum = 0;
+        int numObserved = 0;
+        int numIndels = 0;
+        for (BaseInformationRecords.CountInfo count : record.getSamples(sampleIndex).getCountsList()) {
+            final int total = count.getGenotypeCountForwardStrand() + count.getGenotypeCountReverseStrand();
+            if (total > 0) {
+                sum += total;
+                numObserved++;
+                if (count.getIsIndel()) {
+                    numIndels++;
+                }
+            }
+        }
+        depth.visit(sum, 1);
+        distinctGenotypes.visit(numObserved, 1);
+        indelGenotypes.visit(numIndels, 1);
+    }
+
+    @Override
+    public void merge(RecordStatistic other) {
+        CountDistributions distributions = (CountDistributions) other;
+        depth.merge(distributions.depth);
+        distinctGenotypes.merge(distributions.distinctGenotypes);
+        indelGenotypes.merge(distributions.indelGenotypes);
+    }
+
+    @Override
+    public void report(StatisticsReport report) {
+        report(report, "depth", depth);
+        report(report, "distinctGenotypes", distinctGenotypes);
+        report(report, "indelGenotypes", indelGenotypes);
+    }
+
+    private void report(StatisticsReport report, String field, FieldStatistics statistics) {
+        report.add(name(), field + ".count", statistics.getCount());
+        if (statistics.getCount() == 0) {
+            return;
+        }
+        report.add(name(), field + ".min", statistics.getMin());
+        report.add(name(), field + ".max", statistics.getMax());
+        report.add(name(), field + ".mean", statistics.getMean());
+        report.add(name(), field + ".variance", statistics.getVariance());
+    }
+}
@@ -0,0 +1,84 @@
+package org.campagnelab.dl.genotype.stats;
+
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrays;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+/**
+ * Histograms of the coverage of one sample (sum of the forward and reverse counts of all its genotypes), one per
+ * chromosome. Reports how many sites of each chromosome have each depth.
+ *
+ * @author Fabien Campagne
+ */
+public class CoverageHistograms implements RecordStatistic {
+    private final int sampleIndex;
+    private final Object2ObjectOpenHashMap<String, Int2LongOpenHashMap> histograms = new Object2ObjectOpenHashMap<>();
+
+    public CoverageHistograms(int sampleIndex) {
+        this.sampleIndex = sampleIndex;
+    }
+
+    @Override
+    public String name() {
+        return "coverage";
+    }
+
+    @Override
+    public void observe(BaseInformationRecords.BaseInformation record) {
+        if (sampleIndex >= record.getSamplesCount()) {
+            return;
+        }
+        Int2LongOpenHashMap histogram = histograms.get(record.getReferenceId());
+        if (histogram == null) {
+            histogram = new Int2LongOpenHashMap();
+            histograms.put(record.getReferenceId(), histogram);
+        }
+        histogram.addTo(depth(record.getSamples(sampleIndex)), 1);
+    }
+
+    @Override
+    public void merge(RecordStatistic other) {
+        for (Object2ObjectMap.Entry<String, Int2LongOpenHashMap> entry :
+                ((CoverageHistograms) other).histograms.object2ObjectEntrySet()) {
+            Int2LongOpenHashMap histogram = histograms.get(entry.getKey());
+            if (histogram == null) {
+                histograms.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            for (Int2LongMap.Entry count : entry.getValue().int2LongEntrySet()) {
+                histogram.addTo(count.getIntKey(), count.getLongValue());
+            }
+        }
+    }
+
+    @Override
+    public void report(StatisticsReport report) {
+        String[] chromosomes = histograms.keySet().toArray(new String[histograms.size()]);
+        ObjectArrays.quickSort(chromosomes);
+        for (String chromosome : chromosomes) {
+            Int2LongOpenHashMap histogram = histograms.get(chromosome);
+            int[] depths = histogram.keySet().toIntArray();
+            IntArrays.quickSort(depths);
+            for (int depth : depths) {
+                report.add(name(), chromosome + ":" + depth, histogram.get(depth));
+            }
+        }
+    }
+
+    public long getNumSites(String chromosome, int depth) {
+        Int2LongOpenHashMap histogram = histograms.get(chromosome);
+        return histogram == null ? 0 : histogram.get(depth);
+    }
+
+    static int depth(BaseInformationRecords.SampleInfo sample) {
+        int depth = 0;
+        for (BaseInformationRecords.CountInfo count : sample.getCountsList()) {
+            depth += count.getGenotypeCountForwardStrand() + count.getGenotypeCountReverseStrand();
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,187 @@
+package org.campagnelab.dl.genotype.stats;
+
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+/**
+ * Counts sites by type of true genotype: variants, SNPs and indels, heterozygous or homozygous. These are the
+ * counters SbiStats has always printed. Genotypes may use either | or / to delimit alleles.
+ * <p>
+ * The true genotype is classified with a single scan of its characters, which gives the same answers as
+ * GenotypeHelper.isVariant/isIndel/isHeterozygote without splitting the genotype into a set of alleles. As in
+ * GenotypeHelper, alleles are compared to each other ignoring case, and to the reference after converting them to
+ * upper case, so a lower case reference base never matches.
+ *
+ * @author Fabien Campagne
+ */
+public class GenotypeCounts implements RecordStatistic {
+    public static final int VARIANT = 1;
+    public static final int INDEL = 2;
+    public static final int HETEROZYGOUS = 4;
+    public static final int NO_CALL = 8;
+
+    long numSites;
+    long numIndels;
+    long numSnps;
+    long numHetSnps;
+    long numHomSnps;
+    long numHetIndels;
+    long numHomIndels;
+    long numVariants;
+    long numNoCalls;
+
+    @Override
+    public String name() {
+        return "genotypes";
+    }
+
+    @Override
+    public void observe(BaseInformationRecords.BaseInformation record) {
+        final int type = classify(record.getReferenceBase(), record.getTrueGenotype());
+        final boolean isVariant = (type & VARIANT) != 0;
+        final boolean isIndel = (type & INDEL) != 0;
+        final boolean heterozygous = (type & HETEROZYGOUS) != 0;
+        numSites++;
+        if ((type & NO_CALL) != 0) {
+            numNoCalls++;
+        }
+        if (isVariant) {
+            numVariants++;
+        }
+        if (isIndel) {
+            numIndels++;
+            if (heterozygous) {
+                numHetIndels++;
+            } else {
+                numHomIndels++;
+            }
+        }
+        if (isVariant && !isIndel) {
+            numSnps++;
+            if (heterozygous) {
+                numHetSnps++;
+            } else {
+                numHomSnps++;
+            }
+        }
+    }
+
+    @Override
+    public void merge(RecordStatistic other) {
+        GenotypeCounts counts = (GenotypeCounts) other;
+        numSites += counts.numSites;
+        numIndels += counts.numIndels;
+        numSnps += counts.numSnps;
+        numHetSnps += counts.numHetSnps;
+        numHomSnps += counts.numHomSnps;
+        numHetIndels += counts.numHetIndels;
+        numHomIndels += counts.numHomIndels;
+        numVariants += counts.numVariants;
+        numNoCalls += counts.numNoCalls;
+    }
+
+    @Override
+    public void report(StatisticsReport report) {
+        report.add(name(), "numSites", numSites);
+        report.add(name(), "numIndels", numIndels);
+        report.add(name(), "numSnps", numSnps);
+        report.add(name(), "numHetSnps", numHetSnps);
+        report.add(name(), "numHomSnps", numHomSnps);
+        report.add(name(), "numHetIndels", numHetIndels);
+        report.add(name(), "numHomIndels", numHomIndels);
+        report.add(name(), "numVariants", numVariants);
+        report.add(name(), "numNoCalls", numNoCalls);
+        report.add(name(), "Het/Hom_Ratio", (0d + numHetIndels + numHetSnps) / (0d + numHomIndels + numHomSnps));
+    }
+
+    /**
+     * Classify a true genotype.
+     *
+     * @param reference reference bases at the site.
+     * @param genotype  true genotype in goby format, with alleles delimited by | or /.
+     * @return a combination of the VARIANT, INDEL, HETEROZYGOUS and NO_CALL flags.
+     */
+    public static int classify(String reference, String genotype) {
+        int type = 0;
+        if (genotype.length() > 3 || reference.length() > 1) {
+            type |= INDEL;
+        }
+        // start and end of the first two distinct alleles:
+        int firstStart = -1, firstEnd = -1;
+        int secondStart = -1, secondEnd = -1;
+        int numDistinct = 0;
+        int start = 0;
+        final int length = genotype.length();
+        for (int i = 0; i <= length; i++) {
+            if (i < length && genotype.charAt(i) != '|' && genotype.charAt(i) != '/') {
+                continue;
+            }
+            final int alleleLength = i - start;
+            if (alleleLength > 0 && !isMissing(genotype, start, alleleLength)) {
+                if (numDistinct == 0) {
+                    firstStart = start;
+                    firstEnd = i;
+                    numDistinct = 1;
+                } else if (!sameAllele(genotype, start, i, firstStart, firstEnd)) {
+                    if (numDistinct == 1) {
+                        secondStart = start;
+                        secondEnd = i;
+                        numDistinct = 2;
+                    } else if (!sameAllele(genotype, start, i, secondStart, secondEnd)) {
+                        // more than two distinct alleles, all such genotypes are classified the same way:
+                        numDistinct = 3;
+                    }
+                }
+            }
+            start = i + 1;
+        }
+        switch (numDistinct) {
+            case 0:
+                // no allele: GenotypeHelper.isVariant considers that such sites do not match the reference.
+                type |= VARIANT | NO_CALL;
+                break;
+            case 1:
+                final int alleleLength = firstEnd - firstStart;
+                if (!matchesReference(reference, genotype, firstStart, alleleLength)) {
+                    type |= VARIANT;
+                }
+                if (alleleLength == 1 && Character.toUpperCase(genotype.charAt(firstStart)) == 'N') {
+                    type |= NO_CALL;
+                }
+                break;
+            case 2:
+                type |= VARIANT | HETEROZYGOUS;
+                break;
+            default:
+                type |= VARIANT;
+        }
+        return type;
+    }
+
+    /**
+     * Compare the upper case of an allele to the reference, as GenotypeHelper.isVariant does.
+     */
+    private static boolean matchesReference(String reference, String genotype, int start, int length) {
+        if (reference.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (reference.charAt(i) != Character.toUpperCase(genotype.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameAllele(String genotype, int start, int end, int otherStart, int otherEnd) {
+        return end - start == otherEnd - otherStart
+                && genotype.regionMatches(true, start, genotype, otherStart, end - start);
+    }
+
+    private static boolean isMissing(String genotype, int start, int length) {
+        if (length != 1) {
+            return false;
+        }
+        final char c = genotype.charAt(start);
+        return c == '.' || c == '?';
+    }
+}
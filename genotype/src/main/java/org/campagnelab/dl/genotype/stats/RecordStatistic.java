@@ -0,0 +1,35 @@
+package org.campagnelab.dl.genotype.stats;
+
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+/**
+ * A statistic accumulated over the records of .sbi files. Instances observe disjoint subsets of the records (one
+ * per thread, or per file) and are merged at the end, so implementations must make merge(a, b) give the same
+ * result as observing the records of a and b in one instance.
+ *
+ * @author Fabien Campagne
+ */
+public interface RecordStatistic {
+
+    /**
+     * @return the name of this statistic, used to label its values in reports.
+     */
+    String name();
+
+    /**
+     * Accumulate one record.
+     */
+    void observe(BaseInformationRecords.BaseInformation record);
+
+    /**
+     * Add the values accumulated by another instance of the same statistic to this one.
+     *
+     * @param other an instance of the same class, created with the same parameters.
+     */
+    void merge(RecordStatistic other);
+
+    /**
+     * Add the values of this statistic to a report.
+     */
+    void report(StatisticsReport report);
+}
@@ -0,0 +1,94 @@
+package org.campagnelab.dl.genotype.stats;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * A set of statistics computed together, in one pass over the records. Collect a stream of records into
+ * instances of this class to compute the statistics in parallel:
+ * <pre>
+ * RecordStatistics statistics = RecordStatistics.collect(reader.stream(true), names, sampleIndex);
+ * </pre>
+ *
+ * @author Fabien Campagne
+ */
+public class RecordStatistics {
+    /**
+     * Built-in statistics, by name. Each factory creates an instance for a sample index.
+     */
+    public static final Map<String, IntFunction<RecordStatistic>> BUILT_IN = new Object2ObjectLinkedOpenHashMap<>();
+
+    static {
+        BUILT_IN.put("genotypes", sampleIndex -> new GenotypeCounts());
+        BUILT_IN.put("coverage", CoverageHistograms::new);
+        BUILT_IN.put("counts", CountDistributions::new);
+    }
+
+    private final List<RecordStatistic> statistics;
+
+    public RecordStatistics(List<RecordStatistic> statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Create built-in statistics.
+     *
+     * @param names       names of the statistics, keys of BUILT_IN.
+     * @param sampleIndex index of the sample that per-sample statistics describe.
+     */
+    public static RecordStatistics create(List<String> names, int sampleIndex) {
+        List<RecordStatistic> statistics = new ObjectArrayList<>(names.size());
+        for (String name : names) {
+            IntFunction<RecordStatistic> factory = BUILT_IN.get(name);
+            if (factory == null) {
+                throw new IllegalArgumentException("Unknown statistic: " + name + ", must be one of " + BUILT_IN.keySet());
+            }
+            statistics.add(factory.apply(sampleIndex));
+        }
+        return new RecordStatistics(statistics);
+    }
+
+    /**
+     * Compute built-in statistics over a stream of records. When the stream is parallel, each thread accumulates
+     * its own instances, which are merged at the end.
+     */
+    public static RecordStatistics collect(Stream<BaseInformationRecords.BaseInformation> records,
+                                           List<String> names, int sampleIndex) {
+        return records.collect(() -> create(names, sampleIndex), RecordStatistics::observe, RecordStatistics::merge);
+    }
+
+    public void observe(BaseInformationRecords.BaseInformation record) {
+        for (RecordStatistic statistic : statistics) {
+            statistic.observe(record);
+        }
+    }
+
+    public void merge(RecordStatistics other) {
+        for (int i = 0; i < statistics.size(); i++) {
+            statistics.get(i).merge(other.statistics.get(i));
+        }
+    }
+
+    public StatisticsReport report() {
+        StatisticsReport report = new StatisticsReport();
+        for (RecordStatistic statistic : statistics) {
+            statistic.report(report);
+        }
+        return report;
+    }
+
+    public RecordStatistic get(String name) {
+        for (RecordStatistic statistic : statistics) {
+            if (statistic.name().equals(name)) {
+                return statistic;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,147 @@
+package org.campagnelab.dl.genotype.stats;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Values reported by statistics, in the order they were added. Each value is identified by the name of the
+ * statistic that reported it and a key. The report can be written as text (key = value, or statistic.key = value
+ * when several statistics report the same key), as tab-separated values, or as a JSON object with one member per
+ * statistic.
+ *
+ * @author Fabien Campagne
+ */
+public class StatisticsReport {
+    private final List<String> statistics = new ObjectArrayList<>();
+    private final List<String> keys = new ObjectArrayList<>();
+    private final List<Object> values = new ObjectArrayList<>();
+    private final DecimalFormat format = new DecimalFormat("#.####", DecimalFormatSymbols.getInstance(Locale.US));
+
+    public void add(String statistic, String key, long value) {
+        addValue(statistic, key, value);
+    }
+
+    public void add(String statistic, String key, double value) {
+        addValue(statistic, key, value);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public String getKey(int i) {
+        return keys.get(i);
+    }
+
+    public Object getValue(int i) {
+        return values.get(i);
+    }
+
+    /**
+     * Find a value by statistic name and key.
+     *
+     * @return the value, or null if the statistic did not report this key.
+     */
+    public Object get(String statistic, String key) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (statistics.get(i).equals(statistic) && keys.get(i).equals(key)) {
+                return values.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write one line per value. Keys are printed as reported, and prefixed with the name of their statistic only
+     * when another statistic reports the same key.
+     */
+    public void writeText(PrintWriter writer) {
+        Object2ObjectOpenHashMap<String, String> statisticOfKey = new Object2ObjectOpenHashMap<>();
+        ObjectOpenHashSet<String> sharedKeys = new ObjectOpenHashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            final String previous = statisticOfKey.putIfAbsent(keys.get(i), statistics.get(i));
+            if (previous != null && !previous.equals(statistics.get(i))) {
+                sharedKeys.add(keys.get(i));
+            }
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = keys.get(i);
+            if (sharedKeys.contains(key)) {
+                writer.printf("%s.%s = %s%n", statistics.get(i), key, format(values.get(i)));
+            } else {
+                writer.printf("%s = %s%n", key, format(values.get(i)));
+            }
+        }
+        writer.flush();
+    }
+
+    public void writeTsv(PrintWriter writer) {
+        writer.println("statistic\tkey\tvalue");
+        for (int i = 0; i < keys.size(); i++) {
+            writer.printf("%s\t%s\t%s%n", statistics.get(i), keys.get(i), format(values.get(i)));
+        }
+        writer.flush();
+    }
+
+    public void writeJson(PrintWriter writer) {
+        writer.println("{");
+        String current = null;
+        for (int i = 0; i < keys.size(); i++) {
+            final String statistic = statistics.get(i);
+            if (!statistic.equals(current)) {
+                if (current != null) {
+                    writer.println();
+                    writer.println("  },");
+                }
+                writer.printf("  %s: {%n", quote(statistic));
+                current = statistic;
+            } else {
+                writer.println(",");
+            }
+            writer.printf("    %s: %s", quote(keys.get(i)), jsonValue(values.get(i)));
+        }
+        if (current != null) {
+            writer.println();
+            writer.println("  }");
+        }
+        writer.println("}");
+        writer.flush();
+    }
+
+    private void addValue(String statistic, String key, Object value) {
+        statistics.add(statistic);
+        keys.add(key);
+        values.add(value);
+    }
+
+    private String format(Object value) {
+        return value instanceof Double ? format.format(value) : value.toString();
+    }
+
+    private String jsonValue(Object value) {
+        if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+            return "null";
+        }
+        return format(value);
+    }
+
+    private static String quote(String text) {
+        StringBuilder builder = new StringBuilder(text.length() + 2);
+        builder.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        return builder.append('"').toString();
+    }
+}
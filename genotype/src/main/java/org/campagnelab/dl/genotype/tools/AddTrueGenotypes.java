@@ -10,8 +10,8 @@ import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
 import org.campagnelab.dl.genotype.helpers.AddTrueGenotypeHelper;
 import org.campagnelab.dl.genotype.helpers.GenotypeHelper;
 import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.somatic.storage.RecordWriter;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
-import org.campagnelab.goby.baseinfo.SequenceBaseInformationWriter;
 import org.campagnelab.goby.reads.RandomAccessSequenceCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,7 +70,7 @@ public class AddTrueGenotypes extends AbstractTool<AddTrueGenotypesArguments> {
 
         try {
             RecordReader source = new RecordReader(args().inputFile);
-            SequenceBaseInformationWriter dest = new SequenceBaseInformationWriter(args().outputFilename);
+            RecordWriter dest = new RecordWriter(args().outputFilename, RecordWriter.DEFAULT_ENTRIES_PER_CHUNK, args().numThreads);
             AddTrueGenotypeHelper addTrueGenotypeHelper = new AddTrueGenotypeHelper();
             addTrueGenotypeHelper.configure(
                     args().genotypeMap,
@@ -94,14 +94,14 @@ public class AddTrueGenotypes extends AbstractTool<AddTrueGenotypesArguments> {
                     }
                     keep = addTrueGenotypeHelper.addTrueGenotype(recContext.get(recContext.size()/2),recContext);
                     if (keep) {
-                        dest.appendEntry(addTrueGenotypeHelper.labeledEntry());
+                        dest.writeRecord(addTrueGenotypeHelper.labeledEntry());
                     }
 
                     recContext.remove(0);
                 } else {
                     keep = addTrueGenotypeHelper.addTrueGenotype(rec);
                     if (keep) {
-                        dest.appendEntry(addTrueGenotypeHelper.labeledEntry());
+                        dest.writeRecord(addTrueGenotypeHelper.labeledEntry());
                     }
                 }
                 recordsLabeled++;
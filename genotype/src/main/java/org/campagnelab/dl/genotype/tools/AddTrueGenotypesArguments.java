@@ -33,5 +33,8 @@ public class AddTrueGenotypesArguments implements ToolArguments {
 
     @Parameter( names = { "--indels-as-ref"}, description = "When true, treat add the first base of indels as ref if they aren't considered. Ignored if indels considered.")
     public boolean indelsAsRef = true;
+
+    @Parameter(required = false, names = {"--num-threads"}, description = "Number of threads that compress chunks of the output. 0 compresses chunks on the thread that writes records.")
+    public int numThreads = Runtime.getRuntime().availableProcessors();
 }
 
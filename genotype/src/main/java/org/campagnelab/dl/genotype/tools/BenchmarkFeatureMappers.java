@@ -0,0 +1,148 @@
+package org.campagnelab.dl.genotype.tools;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.framework.mappers.ConcatFeatureMapper;
+import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
+import org.campagnelab.dl.framework.mappers.FeatureMapper;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measure the throughput of feature mappers of the somatic and genotype families. mapFeatures is timed twice in the
+ * same run: with concatenations that visit each level of nested mappers, and with flattened feature plans (see
+ * ConcatFeatureMapper.setCompilePlans). Records are loaded in memory first, so that only mapping is timed. Features
+ * produced by both strategies are checked to be identical.
+ *
+ * @author Fabien Campagne
+ */
+public class BenchmarkFeatureMappers extends AbstractTool<BenchmarkFeatureMappersArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(BenchmarkFeatureMappers.class);
+
+    public static void main(String[] args) {
+
+        BenchmarkFeatureMappers tool = new BenchmarkFeatureMappers();
+        tool.parseArguments(args, "BenchmarkFeatureMappers", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public BenchmarkFeatureMappersArguments createArguments() {
+        return new BenchmarkFeatureMappersArguments();
+    }
+
+    @Override
+    public void execute() {
+        List<BaseInformationRecords.BaseInformation> records = new ObjectArrayList<>();
+        Properties properties;
+        try (RecordReader reader = new RecordReader(args().inputFile)) {
+            properties = reader.getProperties();
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                if (records.size() >= args().numRecords) {
+                    break;
+                }
+                records.add(record);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read records from " + args().inputFile, e);
+        }
+        System.out.printf("Mapping %d records.%n", records.size());
+        final boolean compilePlans = ConcatFeatureMapper.compilesPlans();
+        try {
+            for (String classname : args().mapperClassnames) {
+                try {
+                    benchmark(classname, records, properties);
+                } catch (ReflectiveOperationException e) {
+                    System.err.printf("Unable to create mapper %s: %s%n", classname, e.getMessage());
+                } catch (RuntimeException e) {
+                    // typically, a somatic mapper used with a genotype dataset, or the reverse:
+                    LOG.error("Unable to map records with " + classname, e);
+                }
+            }
+        } finally {
+            ConcatFeatureMapper.setCompilePlans(compilePlans);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void benchmark(String classname, List<BaseInformationRecords.BaseInformation> records, Properties properties)
+            throws ReflectiveOperationException {
+        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> mapper =
+                (FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>) Class.forName(classname).newInstance();
+        if (mapper instanceof ConfigurableFeatureMapper) {
+            ((ConfigurableFeatureMapper) mapper).configure(properties);
+        }
+        int[] exampleShape = mapper.dimensions().dimensions;
+        int[] shape = new int[exampleShape.length + 1];
+        shape[0] = 1;
+        System.arraycopy(exampleShape, 0, shape, 1, exampleShape.length);
+
+        if (shape.length != 2) {
+            System.out.printf("%s: skipped, only concatenations of one dimension are mapped with feature plans.%n", classname);
+            return;
+        }
+
+        int numMismatches = compare(mapper, records, shape);
+        long nestedTime = 0;
+        long planTime = 0;
+        INDArray inputs = Nd4j.zeros(shape);
+        for (int round = 0; round < args().repeat; round++) {
+            // alternate strategies so that both see the same machine state:
+            long nestedRound = time(mapper, records, inputs, false);
+            long planRound = time(mapper, records, inputs, true);
+            if (round > 0 || args().repeat == 1) {
+                nestedTime += nestedRound;
+                planTime += planRound;
+            }
+        }
+        System.out.printf("%s: %d features, nested mappers: %.1f records/s, feature plans: %.1f records/s, speedup: %.2fx%s%n",
+                classname, mapper.numberOfFeatures(),
+                recordsPerSecond(records.size(), nestedTime, args().repeat),
+                recordsPerSecond(records.size(), planTime, args().repeat),
+                planTime == 0 ? 0 : ((double) nestedTime) / planTime,
+                numMismatches == 0 ? "" : String.format(" (features differ for %d records)", numMismatches));
+    }
+
+    private int compare(FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> mapper,
+                        List<BaseInformationRecords.BaseInformation> records, int[] shape) {
+        int numMismatches = 0;
+        INDArray nested = Nd4j.zeros(shape);
+        INDArray planned = Nd4j.zeros(shape);
+        for (BaseInformationRecords.BaseInformation record : records) {
+            ConcatFeatureMapper.setCompilePlans(false);
+            mapper.prepareToNormalize(record, 0);
+            mapper.mapFeatures(record, nested, 0);
+            ConcatFeatureMapper.setCompilePlans(true);
+            mapper.prepareToNormalize(record, 0);
+            mapper.mapFeatures(record, planned, 0);
+            if (!nested.equals(planned)) {
+                numMismatches++;
+            }
+        }
+        return numMismatches;
+    }
+
+    private long time(FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> mapper,
+                      List<BaseInformationRecords.BaseInformation> records, INDArray inputs, boolean compilePlans) {
+        ConcatFeatureMapper.setCompilePlans(compilePlans);
+        long start = System.nanoTime();
+        for (BaseInformationRecords.BaseInformation record : records) {
+            mapper.prepareToNormalize(record, 0);
+            mapper.mapFeatures(record, inputs, 0);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double recordsPerSecond(long numRecords, long nanoseconds, int repeat) {
+        int timedRounds = Math.max(1, repeat - 1);
+        return nanoseconds == 0 ? 0 : numRecords * timedRounds * 1E9 / nanoseconds;
+    }
+}
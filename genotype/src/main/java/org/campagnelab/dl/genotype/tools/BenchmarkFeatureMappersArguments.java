@@ -0,0 +1,30 @@
+package org.campagnelab.dl.genotype.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arguments for BenchmarkFeatureMappers.
+ */
+@Parameters(commandDescription = "Report the throughput of feature mappers, mapped through nested concatenations and through feature plans.")
+
+public class BenchmarkFeatureMappersArguments implements ToolArguments {
+    @Parameter(required = true, names = {"-i", "--input-file"}, description = "Dataset (.sbi) whose records are mapped.")
+    public String inputFile;
+
+    @Parameter(names = {"--mapper"}, variableArity = true, description = "Fully qualified class names of the feature mappers to benchmark. Somatic mappers require a somatic dataset, genotype mappers a genotype dataset.")
+    public List<String> mapperClassnames = new ArrayList<>(Arrays.asList(
+            "org.campagnelab.dl.somatic.mappers.FeatureMapperV25",
+            "org.campagnelab.dl.genotype.mappers.GenotypeMapperV30"));
+
+    @Parameter(names = {"-n", "--num-records"}, description = "Number of records to load and map.")
+    public int numRecords = 20000;
+
+    @Parameter(names = {"--repeat"}, description = "Number of timed rounds. The first round is used as warm-up when more than one round is run.")
+    public int repeat = 3;
+}
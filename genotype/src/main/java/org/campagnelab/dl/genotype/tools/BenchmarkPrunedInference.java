@@ -0,0 +1,119 @@
+package org.campagnelab.dl.genotype.tools;
+
+import com.google.common.collect.Iterables;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.commons.io.FilenameUtils;
+import org.campagnelab.dl.framework.domains.DomainDescriptor;
+import org.campagnelab.dl.framework.domains.DomainDescriptorLoader;
+import org.campagnelab.dl.framework.domains.prediction.PredictionInterpreter;
+import org.campagnelab.dl.framework.iterators.MultiDataSetIteratorAdapter;
+import org.campagnelab.dl.framework.models.ModelLoader;
+import org.campagnelab.dl.framework.models.ModelOutputHelper;
+import org.campagnelab.dl.framework.models.PrunedComputationGraph;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Measure the time saved by pruning the outputs that are not needed to call genotypes. Genotype models of the
+ * GenotypeSixDenseLayersWithIndelLSTM family have up to fourteen outputs; calling genotypes reads only some
+ * of them. Minibatches are mapped once, then predicted with the full graph and with the pruned graph.
+ *
+ * @author Fabien Campagne
+ */
+public class BenchmarkPrunedInference extends AbstractTool<BenchmarkPrunedInferenceArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(BenchmarkPrunedInference.class);
+
+    public static void main(String[] args) {
+
+        BenchmarkPrunedInference tool = new BenchmarkPrunedInference();
+        tool.parseArguments(args, "BenchmarkPrunedInference", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public BenchmarkPrunedInferenceArguments createArguments() {
+        return new BenchmarkPrunedInferenceArguments();
+    }
+
+    @Override
+    public void execute() {
+        try {
+            ModelLoader modelLoader = new ModelLoader(args().modelPath);
+            Model model = modelLoader.loadModelForInference(args().modelName);
+            if (!(model instanceof ComputationGraph)) {
+                System.err.println("Pruning requires a computation graph, cannot load one with prefix " + args().modelName);
+                System.exit(1);
+            }
+            ComputationGraph graph = (ComputationGraph) model;
+            DomainDescriptor<BaseInformationRecords.BaseInformation> domainDescriptor = DomainDescriptorLoader.load(args().modelPath);
+            PrunedComputationGraph pruned;
+            if (args().outputs.isEmpty()) {
+                String[] outputNames = domainDescriptor.getComputationalGraph().getOutputNames();
+                PredictionInterpreter[] interpreters = new PredictionInterpreter[outputNames.length];
+                for (int i = 0; i < outputNames.length; i++) {
+                    interpreters[i] = domainDescriptor.getPredictionInterpreter(outputNames[i]);
+                }
+                pruned = new PrunedComputationGraph(graph, ModelOutputHelper.requiredOutputs(domainDescriptor, interpreters));
+            } else {
+                pruned = PrunedComputationGraph.keepOutputs(graph, args().outputs.toArray(new String[0]));
+            }
+            System.out.println(pruned.report());
+            System.out.println("Kept outputs: " + pruned.getGraph().getConfiguration().getNetworkOutputs());
+
+            List<INDArray[]> minibatches = new ObjectArrayList<>();
+            Iterable<BaseInformationRecords.BaseInformation> records = Iterables.limit(
+                    domainDescriptor.getRecordIterable().apply(args().testSet), args().numExamples);
+            MultiDataSetIteratorAdapter<BaseInformationRecords.BaseInformation> adapter =
+                    new MultiDataSetIteratorAdapter<BaseInformationRecords.BaseInformation>(records,
+                            args().miniBatchSize, domainDescriptor) {
+                        @Override
+                        public String getBasename() {
+                            return FilenameUtils.getBaseName(args().testSet);
+                        }
+                    };
+            long numExamples = 0;
+            for (MultiDataSet dataSet : adapter) {
+                minibatches.add(dataSet.getFeatures());
+                numExamples += dataSet.getFeatures(0).size(0);
+            }
+            long fullTime = 0;
+            long prunedTime = 0;
+            for (int round = 0; round < args().repeat; round++) {
+                // alternate graphs so that both see the same machine state:
+                long full = time(graph, minibatches);
+                long prunedRound = time(pruned.getGraph(), minibatches);
+                if (round > 0 || args().repeat == 1) {
+                    fullTime += full;
+                    prunedTime += prunedRound;
+                }
+            }
+            System.out.printf("Full graph: %.1f examples/s, pruned graph: %.1f examples/s, time saved: %.1f%%%n",
+                    examplesPerSecond(numExamples, fullTime, args().repeat), examplesPerSecond(numExamples, prunedTime, args().repeat),
+                    fullTime == 0 ? 0 : 100.0 * (fullTime - prunedTime) / fullTime);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to run benchmark with model " + args().modelPath, e);
+        }
+    }
+
+    private long time(ComputationGraph graph, List<INDArray[]> minibatches) {
+        long start = System.nanoTime();
+        for (INDArray[] features : minibatches) {
+            graph.output(false, features);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double examplesPerSecond(long numExamples, long nanoseconds, int repeat) {
+        int timedRounds = Math.max(1, repeat - 1);
+        return nanoseconds == 0 ? 0 : numExamples * timedRounds * 1E9 / nanoseconds;
+    }
+}
@@ -0,0 +1,36 @@
+package org.campagnelab.dl.genotype.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arguments for BenchmarkPrunedInference.
+ */
+@Parameters(commandDescription = "Compare the inference time of a genotype model with all outputs to the same model pruned to the outputs used for calling genotypes.")
+
+public class BenchmarkPrunedInferenceArguments implements ToolArguments {
+    @Parameter(required = true, names = {"-m", "--model-path"}, description = "directory containing the model (e.g., trained with the GenotypeSixDenseLayersWithIndelLSTM architecture).")
+    public String modelPath;
+
+    @Parameter(names = {"-l", "--model-name"}, description = "keyword specifying which specific model to use (ie bestAUC, latest)")
+    public String modelName = "best";
+
+    @Parameter(required = true, names = {"-i", "--dataset"}, description = "Dataset (.sbi) used to produce minibatches.")
+    public String testSet;
+
+    @Parameter(names = {"--outputs"}, variableArity = true, description = "Names of the outputs to keep. By default, keep the outputs that the prediction interpreters of the domain read.")
+    public List<String> outputs = new ArrayList<>();
+
+    @Parameter(names = {"-n", "--num-examples"}, description = "Number of examples to predict with each graph.")
+    public int numExamples = 20000;
+
+    @Parameter(names = {"--mini-batch-size"}, description = "Number of records in minibatch.")
+    public int miniBatchSize = 512;
+
+    @Parameter(names = {"--repeat"}, description = "Number of times the minibatches are predicted with each graph. The first round is a warm-up and is not timed.")
+    public int repeat = 3;
+}
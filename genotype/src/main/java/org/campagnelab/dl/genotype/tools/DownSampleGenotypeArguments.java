@@ -17,7 +17,7 @@ public class DownSampleGenotypeArguments implements ToolArguments {
     @Parameter(required = true, names = {"-o", "--output-filename"}, description = "Output filename where down-sampled data will be written.")
     public String outputFilename;
 
-    @Parameter(required = true, names = {"-g", "--genome"}, description = "Genome location to add calls with")
+    @Parameter(required = false, names = {"-g", "--genome"}, description = "Genome used to find the reference base of sites. When omitted, the reference base stored in records is used.")
     public String genomeFilename;
 
     @Parameter(required = false, names = {"-s", "--sample-index"}, description = "Indicate the sample that should be down-sampled (default if first sample, index 0")
@@ -29,15 +29,19 @@ public class DownSampleGenotypeArguments implements ToolArguments {
     @Parameter(required = false, names = { "--keep-hets"}, description = "Do not down-sample heterozygous sites.")
     public boolean keepAllHeterozygotes;
 
-    @Parameter( names = { "--other-sampling-rate"}, description = "Sampling rate for genotypes that match the down-sampling criteria. Default is not to include them.")
+    @Parameter( names = { "--other-sampling-rate"}, description = "Sampling rate for genotypes that match the down-sampling criteria. Default is not to include them. " +
+            "The number of sites kept is exactly the rate times the number of sites of each genotype type (variant/reference, SNP/indel, het/hom).")
     public float otherSamplingRate =0f;
 
     @Parameter( names = { "--balancing-ratio"}, description = "Use 2 to downsample such that the number of non selected genotypes if about double the number of selected genotypes. " +
-            "This argument overrides --other-sampling-rate by continuously adjusting the rate according to the number of selected genotypes found so far. Currently not implemented.")
+            "This argument overrides --other-sampling-rate and requires --keep-indels or --keep-hets. Non selected genotypes are kept in proportion to the number of sites of each genotype type.")
     public Float balancingRatio =null;
 
-    @Parameter( names = { "seed"}, description = "optional custom random seed.")
+    @Parameter( names = { "seed", "--seed"}, description = "optional custom random seed.")
     public int seed=240965;
 
+    @Parameter(required = false, names = {"--num-threads"}, description = "Number of threads that decode chunks of the input.")
+    public int numThreads = Runtime.getRuntime().availableProcessors();
+
 }
 
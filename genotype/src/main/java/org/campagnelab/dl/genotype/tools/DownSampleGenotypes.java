@@ -1,37 +1,50 @@
 package org.campagnelab.dl.genotype.tools;
 
 
-import it.unimi.dsi.logging.ProgressLogger;
 import it.unimi.dsi.util.XorShift1024StarRandom;
 import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
-import org.campagnelab.dl.genotype.helpers.GenotypeHelper;
+import org.campagnelab.dl.genotype.stats.GenotypeCounts;
+import org.campagnelab.dl.somatic.storage.ChunkSplitter;
 import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.somatic.storage.SbiChunks;
+import org.campagnelab.dl.somatic.storage.SbiIndex;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
-import org.campagnelab.goby.baseinfo.SequenceBaseInformationWriter;
+import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
 import org.campagnelab.goby.reads.RandomAccessSequenceCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Date;
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Down-sample genotypes that do not have certain characteristics. Used to over-sample SNPs and het variants.
- *
+ * <p>
+ * Sites are stratified by the type of their true genotype (variant/reference, SNP/indel, het/hom, see
+ * GenotypeCounts.classify). A first pass counts the sites of each stratum in each chunk of the input, in parallel.
+ * The number of sites to keep in each stratum is then exact, and is split over chunks so that every set of sites of
+ * that size is equally likely to be kept. A second pass selects sites in each chunk in parallel (see ChunkSplitter):
+ * chunks where all sites are kept are copied without being encoded again.
  */
 public class DownSampleGenotypes extends AbstractTool<DownSampleGenotypeArguments> {
 
-
-    private RandomAccessSequenceCache genome = new RandomAccessSequenceCache();
-    private Random random;
-    private int recordsIncluded = 0;
-    private int sitesNotSampled = 0;
-    private int inputNumRecords = 0;
-
     static private Logger LOG = LoggerFactory.getLogger(DownSampleGenotypes.class);
-    private int numIndel;
-    private int numHeterozygotes;
+    /**
+     * Number of strata, one per combination of the GenotypeCounts flags.
+     */
+    static final int NUM_STRATA = 16;
+
+    private RandomAccessSequenceCache genome;
 
 
     public static void main(String[] args) {
@@ -51,95 +64,27 @@ public class DownSampleGenotypes extends AbstractTool<DownSampleGenotypeArgument
         if (args().keepAllIndels) {
             System.out.println("Will keep indel sites.");
         }
-        if (args().otherSamplingRate == 0 && !args().keepAllHeterozygotes && !args().keepAllIndels) {
-            System.out.println("These arguments would result in nothing written to the output. Aborting.");
+        final String problem = checkArguments();
+        if (problem != null) {
+            System.out.println(problem + " Aborting.");
             System.exit(1);
         }
 
-        //init random
-        random = new XorShift1024StarRandom(args().seed);
         //get reference genome
         String genomePath = args().genomeFilename;
-        try {
-            System.err.println("Loading genome cache " + genomePath);
-            genome = new RandomAccessSequenceCache();
-            genome.load(genomePath, "min", "max");
-            System.err.println("Done loading genome. ");
-        } catch (Exception e) {
-            throw new RuntimeException("Could not load genome cache " + args().genomeFilename, e);
+        if (genomePath != null) {
+            try {
+                System.err.println("Loading genome cache " + genomePath);
+                genome = new RandomAccessSequenceCache();
+                genome.load(genomePath, "min", "max");
+                System.err.println("Done loading genome. ");
+            } catch (Exception e) {
+                throw new RuntimeException("Could not load genome cache " + args().genomeFilename, e);
+            }
         }
 
         try {
-            int numSkippedSoFar = 0;
-            int numKeptSoFar = 0;
-            int numOtherKeptSoFar = 0;
-            int numMustKeepSoFar = 0;
-            RecordReader source = new RecordReader(args().inputFile);
-            SequenceBaseInformationWriter dest = new SequenceBaseInformationWriter(args().outputFilename);
-            ProgressLogger recordLogger = new ProgressLogger(LOG);
-            recordLogger.expectedUpdates = source.numRecords();
-            System.out.println(source.numRecords() + " records to label");
-            recordLogger.start();
-
-            for (BaseInformationRecords.BaseInformation rec : source) {
-                int referenceIndex = genome.getReferenceIndex(rec.getReferenceId());
-                char referenceBase = genome.get(referenceIndex, rec.getPosition());
-                String refBase = Character.toString(referenceBase);
-                inputNumRecords++;
-                boolean isVariant = rec.getSamples(0).getIsVariant();
-                String trueGenotype = rec.getTrueGenotype();
-
-                boolean keep = false;
-
-                //todo verify use of isIndel here
-                boolean indel = GenotypeHelper.isIndel(refBase,trueGenotype);
-                boolean heterozygote = GenotypeHelper.isHeterozygote(trueGenotype);
-
-                keep |= args().keepAllIndels && indel;
-                keep |= args().keepAllHeterozygotes && heterozygote;
-                if (keep) {
-                    numMustKeepSoFar++;
-                }
-                if (!keep) {
-
-                    if (random.nextFloat() > args().otherSamplingRate) {
-                        sitesNotSampled++;
-                        numOtherKeptSoFar++;
-                    } else {
-                        keep = true;
-
-                    }
-                    if (args().balancingRatio != null) {
-                        /**
-                        System.out.printf("sitesNotSampled %d numKeptSoFar %d otherSamplingRate %f%n",sitesNotSampled,numKeptSoFar, args().otherSamplingRate);
-
-                        float hasBeen=  numKeptSoFar-numMustKeepSoFar;
-                        float shouldBe = numKeptSoFar*args().balancingRatio;
-                        System.out.printf("hasBeen=%f shouldBe=%f%n",hasBeen,shouldBe);
-                        args().otherSamplingRate = Math.max(0, hasBeen  / shouldBe );
-                   */
-                        throw new UnsupportedOperationException("This argument is currently not supported.");
-                    }
-                }
-                if (keep) {
-                    if (indel) {
-                        numIndel++;
-                    }
-                    if (heterozygote) {
-                        numHeterozygotes++;
-                    }
-                    recordsIncluded++;
-                    dest.appendEntry(rec);
-                    numKeptSoFar++;
-                } else {
-                    numSkippedSoFar++;
-                }
-                recordLogger.update();
-            }
-            recordLogger.done();
-            dest.setCustomProperties(getStatProperties(source));
-            dest.close();
-            printStats(numSkippedSoFar);
+            downSample();
         } catch (IOException e) {
             System.err.println("IO exception, perhaps sbi file not found?");
             e.printStackTrace();
@@ -147,29 +92,291 @@ public class DownSampleGenotypes extends AbstractTool<DownSampleGenotypeArgument
         }
     }
 
+    /**
+     * Return why the arguments cannot produce a sensible output, or null when they can.
+     */
+    String checkArguments() {
+        if (args().balancingRatio != null && !args().keepAllHeterozygotes && !args().keepAllIndels) {
+            return "--balancing-ratio keeps other sites in proportion to the sites kept with --keep-indels or --keep-hets, and requires one of them.";
+        }
+        if (args().otherSamplingRate == 0 && args().balancingRatio == null && !args().keepAllHeterozygotes && !args().keepAllIndels) {
+            return "These arguments would result in nothing written to the output.";
+        }
+        return null;
+    }
+
+    /**
+     * Count the sites of each stratum, then write the sites selected in each stratum to the output.
+     */
+    ChunkSplitter.Result downSample() throws IOException {
+        final long totalRecords;
+        try (RecordReader source = new RecordReader(args().inputFile)) {
+            totalRecords = source.numRecords();
+        }
+        System.out.println(totalRecords + " records to down-sample");
+        SbiChunks chunks = SbiChunks.of(args().inputFile, 0, Long.MAX_VALUE, totalRecords);
+        int[][] counts = countStrata(chunks);
+        long[] totals = new long[NUM_STRATA];
+        for (int[] chunkCounts : counts) {
+            for (int s = 0; s < NUM_STRATA; s++) {
+                totals[s] += chunkCounts[s];
+            }
+        }
+        long[] targets = targets(totals);
+        int[][] quotas = allocate(counts, totals, targets, new XorShift1024StarRandom(args().seed));
+
+        ChunkSplitter splitter = new ChunkSplitter(args().inputFile, args().outputFilename);
+        splitter.setNumThreads(args().numThreads);
+        splitter.setSeed(args().seed);
+        ChunkSplitter.Result result = splitter.split(new StratifiedRouter(counts, quotas));
+        writeStatProperties(totals, targets, result);
+        printStats(targets, result);
+        return result;
+    }
+
 
     @Override
     public DownSampleGenotypeArguments createArguments() {
         return new DownSampleGenotypeArguments();
     }
 
+    /**
+     * Return the stratum of a site: the flags of GenotypeCounts.classify for its true genotype.
+     */
+    int stratum(BaseInformationRecords.BaseInformation record) {
+        final String refBase;
+        if (genome != null) {
+            int referenceIndex = genome.getReferenceIndex(record.getReferenceId());
+            refBase = Character.toString(genome.get(referenceIndex, record.getPosition()));
+        } else {
+            refBase = record.getReferenceBase();
+        }
+        return GenotypeCounts.classify(refBase, record.getTrueGenotype());
+    }
 
-    private void printStats(int numSkippedSoFar) {
-        System.out.println(numSkippedSoFar + " number of sites removed from the file..");
-        System.out.println(recordsIncluded + " labeled records written.");
-        System.out.println(numHeterozygotes + " heterozygotes records written.");
-        System.out.println(numIndel + " indels records written.");
+    /**
+     * Count the sites of each stratum in each chunk, decoding chunks in parallel.
+     *
+     * @return counts[chunkIndex][stratum]
+     */
+    private int[][] countStrata(SbiChunks chunks) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, args().numThreads));
+        try {
+            Future<int[]>[] futures = new Future[chunks.size()];
+            for (int c = 0; c < chunks.size(); c++) {
+                final int chunkIndex = c;
+                futures[c] = executor.submit(() -> {
+                    int[] chunkCounts = new int[NUM_STRATA];
+                    try (RecordReader reader = chunks.open(chunkIndex, chunkIndex + 1)) {
+                        for (BaseInformationRecords.BaseInformation record : reader) {
+                            chunkCounts[stratum(record)]++;
+                        }
+                    }
+                    return chunkCounts;
+                });
+            }
+            int[][] counts = new int[chunks.size()][];
+            for (int c = 0; c < counts.length; c++) {
+                counts[c] = futures[c].get();
+            }
+            return counts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting sites of " + args().inputFile, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to count sites of " + args().inputFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
+    private boolean mustKeep(int stratum) {
+        return args().keepAllIndels && (stratum & GenotypeCounts.INDEL) != 0 ||
+                args().keepAllHeterozygotes && (stratum & GenotypeCounts.HETEROZYGOUS) != 0;
+    }
 
-    public Properties getStatProperties(RecordReader source) {
-        Properties result = source.getProperties();
-        result.put("downSampleGenotypes.sitesNotSampled", Integer.toString(sitesNotSampled));
-        result.put("downSampleGenotypes.numIndelsWritten", Integer.toString(numIndel));
-        result.put("downSampleGenotypes.numHeterezygotesWritten", Integer.toString(numHeterozygotes));
-        result.put("downSampleGenotypes.sitesNotSampled", Integer.toString(sitesNotSampled));
-        result.put("downSampleGenotypes.input.numRecords", Integer.toString(inputNumRecords));
-        result.put("downSampleGenotypes.otherSamplingRate", Float.toString(args().otherSamplingRate));
-        return result;
+    /**
+     * Return the number of sites to keep in each stratum. Strata that must be kept are kept entirely. Other strata
+     * are sampled at the sampling rate, or share balancingRatio times the number of kept sites in proportion to
+     * their size.
+     */
+    long[] targets(long[] totals) {
+        long[] targets = new long[NUM_STRATA];
+        long numMustKeep = 0;
+        long numOthers = 0;
+        for (int s = 0; s < NUM_STRATA; s++) {
+            if (mustKeep(s)) {
+                targets[s] = totals[s];
+                numMustKeep += totals[s];
+            } else {
+                numOthers += totals[s];
+            }
+        }
+        if (args().balancingRatio == null) {
+            for (int s = 0; s < NUM_STRATA; s++) {
+                if (!mustKeep(s)) {
+                    targets[s] = Math.min(totals[s], Math.round((double) args().otherSamplingRate * totals[s]));
+                }
+            }
+            return targets;
+        }
+        final long numOtherTarget = Math.min(numOthers, Math.round((double) args().balancingRatio * numMustKeep));
+        if (numOtherTarget == 0) {
+            return targets;
+        }
+        // largest remainder method, so that the strata add up to the target:
+        long assigned = 0;
+        long[] remainders = new long[NUM_STRATA];
+        for (int s = 0; s < NUM_STRATA; s++) {
+            if (!mustKeep(s)) {
+                targets[s] = numOtherTarget * totals[s] / numOthers;
+                remainders[s] = numOtherTarget * totals[s] % numOthers;
+                assigned += targets[s];
+            }
+        }
+        for (; assigned < numOtherTarget; assigned++) {
+            int largest = -1;
+            for (int s = 0; s < NUM_STRATA; s++) {
+                if (!mustKeep(s) && targets[s] < totals[s] && (largest == -1 || remainders[s] > remainders[largest])) {
+                    largest = s;
+                }
+            }
+            targets[largest]++;
+            remainders[largest] = -1;
+        }
+        return targets;
+    }
+
+    /**
+     * Split the number of sites to keep in each stratum over chunks. Quotas follow the distribution of a selection
+     * sampling pass over the whole file, so that all subsets of a stratum of the target size are equally likely.
+     *
+     * @return quotas[chunkIndex][stratum]
+     */
+    static int[][] allocate(int[][] counts, long[] totals, long[] targets, Random random) {
+        int[][] quotas = new int[counts.length][NUM_STRATA];
+        for (int s = 0; s < NUM_STRATA; s++) {
+            long remaining = totals[s];
+            long toSelect = targets[s];
+            for (int c = 0; c < counts.length; c++) {
+                final int n = counts[c][s];
+                int selected;
+                if (toSelect == 0) {
+                    selected = 0;
+                } else if (toSelect == remaining) {
+                    selected = n;
+                } else {
+                    selected = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (random.nextDouble() * (remaining - i) < toSelect - selected) {
+                            selected++;
+                        }
+                    }
+                }
+                quotas[c][s] = selected;
+                remaining -= n;
+                toSelect -= selected;
+            }
+        }
+        return quotas;
+    }
+
+    /**
+     * Keeps exactly the quota of sites of each stratum in a chunk, with selection sampling.
+     */
+    private class StratifiedRouter implements ChunkSplitter.Router {
+        private final int[][] counts;
+        private final int[][] quotas;
+        private final int[] remaining;
+        private final int[] toSelect;
+
+        StratifiedRouter(int[][] counts, int[][] quotas) {
+            this.counts = counts;
+            this.quotas = quotas;
+            this.remaining = null;
+            this.toSelect = null;
+        }
+
+        private StratifiedRouter(StratifiedRouter router, int chunkIndex) {
+            this.counts = router.counts;
+            this.quotas = router.quotas;
+            this.remaining = counts[chunkIndex].clone();
+            this.toSelect = quotas[chunkIndex].clone();
+        }
+
+        @Override
+        public ChunkSplitter.Router forChunk(int chunkIndex) {
+            return new StratifiedRouter(this, chunkIndex);
+        }
+
+        @Override
+        public int chunkDestination(SbiIndex index, int chunkIndex) {
+            boolean all = true;
+            boolean none = true;
+            for (int s = 0; s < NUM_STRATA; s++) {
+                all &= quotas[chunkIndex][s] == counts[chunkIndex][s];
+                none &= quotas[chunkIndex][s] == 0;
+            }
+            return all ? 0 : none ? SKIP : -1;
+        }
+
+        @Override
+        public int destination(BaseInformationRecords.BaseInformation record, Random random) {
+            final int s = stratum(record);
+            final boolean keep = random.nextDouble() * remaining[s] < toSelect[s];
+            remaining[s]--;
+            if (keep) {
+                toSelect[s]--;
+                return 0;
+            }
+            return SKIP;
+        }
+    }
+
+    private void printStats(long[] targets, ChunkSplitter.Result result) {
+        System.out.println(result.numSkippedRecords + " number of sites removed from the file..");
+        System.out.println(result.totalRecords() + " labeled records written.");
+        System.out.println(sum(targets, GenotypeCounts.HETEROZYGOUS) + " heterozygotes records written.");
+        System.out.println(sum(targets, GenotypeCounts.INDEL) + " indels records written.");
+        System.out.printf("Copied %d chunks, encoded %d chunks.%n", result.numCopiedChunks, result.numEncodedChunks);
+    }
+
+    /**
+     * Return the number of sites to keep in strata with a flag.
+     */
+    private static long sum(long[] targets, int flag) {
+        long sum = 0;
+        for (int s = 0; s < NUM_STRATA; s++) {
+            if ((s & flag) != 0) {
+                sum += targets[s];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Add down-sampling statistics to the properties ChunkSplitter wrote for the output.
+     */
+    private void writeStatProperties(long[] totals, long[] targets, ChunkSplitter.Result result) throws IOException {
+        final String sbip = SequenceBaseInformationReader.getBasename(args().outputFilename) + ".sbip";
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(sbip)) {
+            properties.load(reader);
+        }
+        long inputNumRecords = 0;
+        for (long total : totals) {
+            inputNumRecords += total;
+        }
+        properties.put("downSampleGenotypes.sitesNotSampled", Long.toString(result.numSkippedRecords));
+        properties.put("downSampleGenotypes.numIndelsWritten", Long.toString(sum(targets, GenotypeCounts.INDEL)));
+        properties.put("downSampleGenotypes.numHeterezygotesWritten", Long.toString(sum(targets, GenotypeCounts.HETEROZYGOUS)));
+        properties.put("downSampleGenotypes.input.numRecords", Long.toString(inputNumRecords));
+        properties.put("downSampleGenotypes.otherSamplingRate", Float.toString(args().otherSamplingRate));
+        if (args().balancingRatio != null) {
+            properties.put("downSampleGenotypes.balancingRatio", Float.toString(args().balancingRatio));
+        }
+        try (Writer writer = new FileWriter(sbip)) {
+            properties.store(writer, new Date().toString());
+        }
     }
 }
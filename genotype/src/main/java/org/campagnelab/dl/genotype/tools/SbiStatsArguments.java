@@ -4,6 +4,10 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Arguments for SbiStats.
  */
@@ -14,9 +18,27 @@ public class SbiStatsArguments implements ToolArguments {
     public String inputFile;
 
 
-    @Parameter(required = false, names = {"-s", "--sample-index"}, description = "Add calls to an alternative sample in the sbi file (default if first sample, index 0")
+    @Parameter(required = false, names = {"-s", "--sample-index"}, description = "Index of the sample that coverage and count statistics describe (default is first sample, index 0).")
     public int sampleIndex = 0;
 
+    @Parameter(required = false, names = {"--statistics"}, description = "Comma separated list of the statistics to compute in one pass: genotypes (site counts by type of true genotype), coverage (per-chromosome depth histograms), counts (summaries of per-site counts). Default is genotypes and counts: coverage reports one histogram per chromosome and is only computed when requested.")
+    public List<String> statistics = new ArrayList<>(Arrays.asList("genotypes", "counts"));
 
-}
+    @Parameter(required = false, names = {"--format"}, description = "Format of the report: text, tsv or json.")
+    public Format format = Format.TEXT;
+
+    @Parameter(required = false, names = {"-o", "--output"}, description = "Write the report to this file instead of the standard output.")
+    public String outputFile;
 
+    @Parameter(required = false, names = {"--parallel"}, description = "When provided, decode and observe chunks of records in parallel threads.")
+    public boolean parallel = false;
+
+    @Parameter(required = false, names = {"-n", "--num-records"}, description = "Process at most n records.")
+    public long readN = Long.MAX_VALUE;
+
+    public enum Format {
+        TEXT,
+        TSV,
+        JSON
+    }
+}
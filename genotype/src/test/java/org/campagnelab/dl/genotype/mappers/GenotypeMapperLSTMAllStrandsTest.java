@@ -35,6 +35,90 @@ public class GenotypeMapperLSTMAllStrandsTest {
         }
     }
 
+    /**
+     * Map records of various sequence lengths into one minibatch, and compare to the features and mask that one
+     * putScalar per feature and time step produced before the mapper encoded records in blocks.
+     */
+    @Test
+    public void testBlocksMatchPutScalar() {
+        final int indelSequenceLength = 6;
+        final int featuresPerTimeStep = 32;
+        String[][] sequences = {
+                {"CAGT", "C--T", "A", "T"},
+                {"C", "A", "T", "G"},
+                {"CAGTCAGTCA", "C----AGTCA", "CN", "X"},
+                {"ACGTAC", "acgt", "", "-"}};
+        GenotypeMapperLSTMAllStrands mapper = new GenotypeMapperLSTMAllStrands();
+        Properties properties = new Properties();
+        properties.setProperty("indelSequenceLength", Integer.toString(indelSequenceLength));
+        mapper.configure(properties);
+        for (char order : new char[]{'c', 'f'}) {
+            INDArray inputs = Nd4j.create(new int[]{sequences.length, featuresPerTimeStep, indelSequenceLength}, order).assign(-1);
+            INDArray mask = Nd4j.create(new int[]{sequences.length, indelSequenceLength}, order).assign(-1);
+            INDArray expectedInputs = Nd4j.create(new int[]{sequences.length, featuresPerTimeStep, indelSequenceLength}, order);
+            INDArray expectedMask = Nd4j.create(new int[]{sequences.length, indelSequenceLength}, order);
+            for (int b = 0; b < sequences.length; b++) {
+                BaseInformationRecords.BaseInformation record = record(sequences[b]);
+                mapper.prepareToNormalize(record, b);
+                mapper.mapFeatures(record, inputs, b);
+                mapper.maskFeatures(record, mask, b);
+                int maskLength = 0;
+                for (String sequence : sequences[b]) {
+                    maskLength = Math.max(maskLength, sequence.length());
+                }
+                maskLength = Math.min(maskLength, indelSequenceLength);
+                for (int t = 0; t < indelSequenceLength; t++) {
+                    for (int f = 0; f < featuresPerTimeStep; f++) {
+                        final float feature = putScalarFeature(sequences[b], maskLength, t, f);
+                        expectedInputs.putScalar(new int[]{b, f, t}, feature);
+                        assertEquals(feature, mapper.produceFeature(record, t * featuresPerTimeStep + f), 0);
+                    }
+                    expectedMask.putScalar(new int[]{b, t}, t < maskLength ? 1F : 0F);
+                }
+            }
+            for (int b = 0; b < sequences.length; b++) {
+                for (int t = 0; t < indelSequenceLength; t++) {
+                    for (int f = 0; f < featuresPerTimeStep; f++) {
+                        assertEquals("record " + b + " feature " + f + " time step " + t,
+                                expectedInputs.getFloat(new int[]{b, f, t}), inputs.getFloat(new int[]{b, f, t}), 0);
+                    }
+                    assertEquals("mask of record " + b + " time step " + t,
+                            expectedMask.getFloat(b, t), mask.getFloat(b, t), 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * The feature produced before records were encoded in blocks: a one-hot base for each of the from and three to
+     * sequences, the second to last feature for sequences that ended before the longest sequence.
+     */
+    private static float putScalarFeature(String[] sequences, int maskLength, int timeStep, int featureInTimeStep) {
+        final String sequence = sequences[featureInTimeStep / 8];
+        final int featureInSequence = featureInTimeStep % 8;
+        if (timeStep < sequence.length()) {
+            final int base = "ATCGN-".indexOf(Character.toUpperCase(sequence.charAt(timeStep)));
+            // other characters are encoded by the last feature:
+            return featureInSequence == (base == -1 ? 7 : base) ? 1F : 0F;
+        } else if (timeStep < maskLength) {
+            return featureInSequence == 6 ? 1F : 0F;
+        }
+        return 0F;
+    }
+
+    private static BaseInformationRecords.BaseInformation record(String[] sequences) {
+        BaseInformationRecords.SampleInfo.Builder sample = BaseInformationRecords.SampleInfo.newBuilder();
+        for (int i = 1; i < sequences.length; i++) {
+            sample.addCounts(BaseInformationRecords.CountInfo.newBuilder()
+                    .setFromSequence(sequences[0]).setToSequence(sequences[i])
+                    .setMatchesReference(false).setIsIndel(false)
+                    .setGenotypeCountForwardStrand(1).setGenotypeCountReverseStrand(1));
+        }
+        return BaseInformationRecords.BaseInformation.newBuilder()
+                .setReferenceIndex(0).setPosition(1).setMutated(false).setReferenceBase("C")
+                .addSamples(sample).buildPartial();
+    }
+
     String[] records = {"reference_index: 21\n" +
             "position: 45944850\n" +
             "mutated: false\n" +
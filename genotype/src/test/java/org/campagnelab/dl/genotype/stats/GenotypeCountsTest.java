@@ -0,0 +1,104 @@
+package org.campagnelab.dl.genotype.stats;
+
+import org.campagnelab.dl.genotype.helpers.GenotypeHelper;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check genotype classification against GenotypeHelper, and that merged counts equal sequential counts.
+ */
+public class GenotypeCountsTest {
+    private static final String[][] SITES = {
+            {"A", "A|A"}, {"A", "A/A"}, {"A", "A|C"}, {"A", "C/A"}, {"A", "C|C"}, {"A", "c/c"}, {"A", "a|a"},
+            {"A", "A|C|C"}, {"A", "A|C|G"}, {"A", "C|A|C"}, {"A", "AT|A"}, {"AT", "A|A"}, {"AT", "AT/AT"},
+            {"A", "A--|A"}, {"A", "N|N"}, {"A", "./."}, {"A", ".|A"}, {"A", ""}, {"A", "A"}, {"A", "T"},
+    };
+    /**
+     * Lower case references, which GenotypeHelper compares case-sensitively to upper-cased alleles.
+     */
+    private static final String[][] LOWER_CASE_REFERENCES = {{"a", "A|A"}, {"a", "a|a"}, {"at", "AT|AT"}};
+
+    @Test
+    public void classifyLikeGenotypeHelper() {
+        classifyLikeGenotypeHelper(SITES);
+        classifyLikeGenotypeHelper(LOWER_CASE_REFERENCES);
+    }
+
+    private static void classifyLikeGenotypeHelper(String[][] sites) {
+        for (String[] site : sites) {
+            final String reference = site[0];
+            final String genotype = site[1];
+            final int type = GenotypeCounts.classify(reference, genotype);
+            final String message = reference + " " + genotype;
+            assertEquals(message, GenotypeHelper.isVariant(true, genotype, reference), (type & GenotypeCounts.VARIANT) != 0);
+            assertEquals(message, GenotypeHelper.isIndel(reference, genotype), (type & GenotypeCounts.INDEL) != 0);
+            assertEquals(message, GenotypeHelper.isHeterozygote(genotype), (type & GenotypeCounts.HETEROZYGOUS) != 0);
+        }
+    }
+
+    @Test
+    public void mergeEqualsSequential() {
+        RecordStatistics sequential = RecordStatistics.create(Arrays.asList("genotypes", "coverage", "counts"), 0);
+        RecordStatistics first = RecordStatistics.create(Arrays.asList("genotypes", "coverage", "counts"), 0);
+        RecordStatistics second = RecordStatistics.create(Arrays.asList("genotypes", "coverage", "counts"), 0);
+        for (int i = 0; i < SITES.length; i++) {
+            BaseInformationRecords.BaseInformation record = record(i);
+            sequential.observe(record);
+            (i % 3 == 0 ? first : second).observe(record);
+        }
+        first.merge(second);
+        assertEquals(text(sequential.report()), text(first.report()));
+        assertEquals((long) SITES.length, sequential.report().get("genotypes", "numSites"));
+        assertEquals(5L, ((CoverageHistograms) sequential.get("coverage")).getNumSites("chr1", 4));
+    }
+
+    /**
+     * Keys keep their names in text reports, unless two statistics report the same key.
+     */
+    @Test
+    public void textKeysNameTheirStatisticWhenShared() {
+        StatisticsReport report = new StatisticsReport();
+        report.add("genotypes", "numSites", 20L);
+        report.add("genotypes", "numVariants", 3L);
+        report.add("counts", "numSites", 0.5);
+        StringWriter writer = new StringWriter();
+        report.writeText(new PrintWriter(writer));
+        assertEquals(String.format("genotypes.numSites = 20%nnumVariants = 3%ncounts.numSites = 0.5%n"), writer.toString());
+    }
+
+    private BaseInformationRecords.BaseInformation record(int i) {
+        BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+        builder.setReferenceIndex(i % 2);
+        builder.setReferenceId("chr" + (i % 2));
+        builder.setPosition(i);
+        builder.setReferenceBase(SITES[i][0]);
+        builder.setTrueGenotype(SITES[i][1]);
+        builder.setMutated(false);
+        BaseInformationRecords.SampleInfo.Builder sample = BaseInformationRecords.SampleInfo.newBuilder();
+        sample.setIsTumor(false);
+        for (int j = 0; j < 2; j++) {
+            BaseInformationRecords.CountInfo.Builder count = BaseInformationRecords.CountInfo.newBuilder();
+            count.setFromSequence(SITES[i][0]);
+            count.setToSequence(j == 0 ? SITES[i][0] : "T");
+            count.setMatchesReference(j == 0);
+            count.setIsIndel(false);
+            count.setGenotypeCountForwardStrand(i % 4 + j);
+            count.setGenotypeCountReverseStrand(j == 0 ? 1 : 0);
+            sample.addCounts(count);
+        }
+        builder.addSamples(sample);
+        return builder.build();
+    }
+
+    private String text(StatisticsReport report) {
+        StringWriter writer = new StringWriter();
+        report.writeJson(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
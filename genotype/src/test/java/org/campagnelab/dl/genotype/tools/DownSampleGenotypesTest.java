@@ -0,0 +1,189 @@
+package org.campagnelab.dl.genotype.tools;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.util.XorShift1024StarRandom;
+import org.apache.commons.io.FileUtils;
+import org.campagnelab.dl.genotype.stats.GenotypeCounts;
+import org.campagnelab.dl.somatic.storage.ChunkSplitter;
+import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.somatic.storage.RecordWriter;
+import org.campagnelab.dl.somatic.storage.SbiIndex;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that quotas split over chunks add up to the exact number of sites to keep, and that down-sampled files hold
+ * exactly the number of sites to keep in each stratum, whether or not the input is indexed.
+ */
+public class DownSampleGenotypesTest {
+    private static final String DIRECTORY = "test-results/down-sample-genotypes";
+    private static final String INPUT = DIRECTORY + "/input.sbi";
+    private static final int HOM_REF = 0;
+    private static final int HOM_INDEL = GenotypeCounts.VARIANT | GenotypeCounts.INDEL;
+    private static final int HET_SNP = GenotypeCounts.VARIANT | GenotypeCounts.HETEROZYGOUS;
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(new File(DIRECTORY));
+        FileUtils.forceMkdir(new File(DIRECTORY));
+        // 20 chunks of 50 sites: 4 chunks of indels, 6 chunks of homozygous reference sites, then 10 mixed chunks.
+        // In total, 300 indels, 100 heterozygous SNPs and 600 homozygous reference sites.
+        try (RecordWriter writer = new RecordWriter(INPUT, 50)) {
+            for (int i = 0; i < 1000; i++) {
+                final String genotype;
+                if (i < 200 || i >= 500 && i % 5 == 0) {
+                    genotype = "AT|AT";
+                } else if (i >= 500 && i % 5 == 1) {
+                    genotype = "A|T";
+                } else {
+                    genotype = "A|A";
+                }
+                BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+                builder.setReferenceIndex(0);
+                builder.setReferenceId("chr1");
+                builder.setPosition(i);
+                builder.setReferenceBase("A");
+                builder.setTrueGenotype(genotype);
+                builder.setMutated(false);
+                writer.writeRecord(builder.build());
+            }
+        }
+    }
+
+    @Test
+    public void allocateIsExact() {
+        final int numChunks = 40;
+        int[][] counts = new int[numChunks][DownSampleGenotypes.NUM_STRATA];
+        long[] totals = new long[DownSampleGenotypes.NUM_STRATA];
+        for (int c = 0; c < numChunks; c++) {
+            for (int s = 0; s < DownSampleGenotypes.NUM_STRATA; s++) {
+                counts[c][s] = (c * 7 + s * 13) % 50;
+                totals[s] += counts[c][s];
+            }
+        }
+        long[] targets = new long[DownSampleGenotypes.NUM_STRATA];
+        for (int s = 0; s < DownSampleGenotypes.NUM_STRATA; s++) {
+            targets[s] = s == 0 ? 0 : s == 1 ? totals[s] : totals[s] * s / 17;
+        }
+        int[][] quotas = DownSampleGenotypes.allocate(counts, totals, targets, new XorShift1024StarRandom(1));
+        for (int s = 0; s < DownSampleGenotypes.NUM_STRATA; s++) {
+            long sum = 0;
+            for (int c = 0; c < numChunks; c++) {
+                assertTrue(quotas[c][s] >= 0 && quotas[c][s] <= counts[c][s]);
+                sum += quotas[c][s];
+            }
+            assertEquals(targets[s], sum);
+        }
+        int[][] again = DownSampleGenotypes.allocate(counts, totals, targets, new XorShift1024StarRandom(1));
+        for (int c = 0; c < numChunks; c++) {
+            for (int s = 0; s < DownSampleGenotypes.NUM_STRATA; s++) {
+                assertEquals(quotas[c][s], again[c][s]);
+            }
+        }
+    }
+
+    @Test
+    public void keepIndelsOnly() throws IOException {
+        String[] arguments = {"--keep-indels", "--other-sampling-rate", "0"};
+        LongArrayList unindexed = checkKeepIndelsOnly(arguments, "unindexed");
+        SbiIndex.build(INPUT, false).save(INPUT);
+        LongArrayList indexed = checkKeepIndelsOnly(arguments, "indexed");
+        assertEquals(unindexed, indexed);
+    }
+
+    /**
+     * Chunks of indels are copied whole, chunks of homozygous reference sites are skipped whole, and mixed chunks
+     * keep their indels only.
+     */
+    private LongArrayList checkKeepIndelsOnly(String[] arguments, String output) throws IOException {
+        ChunkSplitter.Result result = downSample(arguments, output);
+        assertEquals(4, result.numCopiedChunks);
+        assertEquals(10, result.numEncodedChunks);
+        assertEquals(700, result.numSkippedRecords);
+        assertEquals(300, result.numRecords[0]);
+        long[] counts = new long[DownSampleGenotypes.NUM_STRATA];
+        LongArrayList positions = read(output, counts);
+        assertEquals(300, counts[HOM_INDEL]);
+        assertEquals(300, positions.size());
+        return positions;
+    }
+
+    @Test
+    public void keepHeterozygotesAndSampleOthers() throws IOException {
+        String[] arguments = {"--keep-hets", "--other-sampling-rate", "0.5"};
+        LongArrayList unindexed = checkStrata(arguments, "unindexed", 300, 150, 100);
+        SbiIndex.build(INPUT, false).save(INPUT);
+        LongArrayList indexed = checkStrata(arguments, "indexed", 300, 150, 100);
+        assertEquals(unindexed, indexed);
+    }
+
+    @Test
+    public void balanceOthersWithIndels() throws IOException {
+        // 300 other sites, split over 600 homozygous reference sites and 100 heterozygous SNPs by largest remainder:
+        String[] arguments = {"--keep-indels", "--balancing-ratio", "1"};
+        LongArrayList unindexed = checkStrata(arguments, "unindexed", 257, 300, 43);
+        SbiIndex.build(INPUT, false).save(INPUT);
+        LongArrayList indexed = checkStrata(arguments, "indexed", 257, 300, 43);
+        assertEquals(unindexed, indexed);
+    }
+
+    @Test
+    public void balancingRatioRequiresSitesToKeep() {
+        DownSampleGenotypes tool = tool(new String[]{"--balancing-ratio", "1", "--other-sampling-rate", "0.5"}, "rejected");
+        assertNotNull(tool.checkArguments());
+        tool = tool(new String[]{"--keep-hets", "--balancing-ratio", "1"}, "accepted");
+        assertNull(tool.checkArguments());
+    }
+
+    private LongArrayList checkStrata(String[] arguments, String output,
+                                      long homRef, long homIndels, long hetSnps) throws IOException {
+        ChunkSplitter.Result result = downSample(arguments, output);
+        assertEquals(homRef + homIndels + hetSnps, result.numRecords[0]);
+        assertEquals(1000 - result.numRecords[0], result.numSkippedRecords);
+        long[] counts = new long[DownSampleGenotypes.NUM_STRATA];
+        LongArrayList positions = read(output, counts);
+        assertEquals(homRef, counts[HOM_REF]);
+        assertEquals(homIndels, counts[HOM_INDEL]);
+        assertEquals(hetSnps, counts[HET_SNP]);
+        assertEquals(result.numRecords[0], positions.size());
+        return positions;
+    }
+
+    private static ChunkSplitter.Result downSample(String[] arguments, String output) throws IOException {
+        return tool(arguments, output).downSample();
+    }
+
+    private static DownSampleGenotypes tool(String[] arguments, String output) {
+        String[] all = new String[arguments.length + 6];
+        System.arraycopy(arguments, 0, all, 0, arguments.length);
+        System.arraycopy(new String[]{"-i", INPUT, "-o", DIRECTORY + "/" + output, "--num-threads", "3"},
+                0, all, arguments.length, 6);
+        DownSampleGenotypes tool = new DownSampleGenotypes();
+        tool.parseArguments(all, "DownSampleGenotypes", tool.createArguments());
+        return tool;
+    }
+
+    /**
+     * Count the sites of each stratum in an output, and return their positions, which must be in input order.
+     */
+    private static LongArrayList read(String output, long[] counts) throws IOException {
+        LongArrayList positions = new LongArrayList();
+        try (RecordReader reader = new RecordReader(DIRECTORY + "/" + output + ".sbi")) {
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                counts[GenotypeCounts.classify(record.getReferenceBase(), record.getTrueGenotype())]++;
+                assertTrue(positions.isEmpty() || positions.getLong(positions.size() - 1) < record.getPosition());
+                positions.add(record.getPosition());
+            }
+        }
+        return positions;
+    }
+}
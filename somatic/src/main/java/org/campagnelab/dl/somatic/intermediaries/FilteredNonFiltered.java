@@ -71,6 +71,10 @@ public class FilteredNonFiltered {
             }
 
             pg.stop();
+            if (reader.getNumUnmatched(0) > 0 || reader.getNumUnmatched(1) > 0) {
+                LOG.warn(String.format("Skipped %d records of %s and %d records of %s at sites missing from the other file.",
+                        reader.getNumUnmatched(0), inputFilenameA, reader.getNumUnmatched(1), inputFilenameB));
+            }
             reader.close();
             writer.close();
 
@@ -18,6 +18,9 @@ import org.campagnelab.dl.somatic.learning.iterators.BaseInformationIterator;
 import org.campagnelab.dl.somatic.mappers.IsBaseMutatedMapper;
 import org.campagnelab.dl.somatic.mappers.IsSomaticMutationMapper;
 import org.campagnelab.dl.somatic.mappers.SomaticFrequencyLabelMapper;
+import org.campagnelab.dl.somatic.storage.RegionRecordReader;
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.ColumnarRecordReader;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -85,6 +88,13 @@ public class SomaticMutationDomainDescriptor extends DomainDescriptor<BaseInform
         if (cachedFeatureMappers.containsKey(inputName)) {
             return cachedFeatureMappers.get(inputName);
         }
+        FeatureMapper result = newFeatureMapper(inputName, false);
+        cachedFeatureMappers.put(inputName, result);
+        return result;
+    }
+
+    @Override
+    public FeatureMapper newFeatureMapper(String inputName, boolean isPredicting) {
         FeatureMapper result;
         if (args().featureMapperClassname != null) {
             assert "input".equals(inputName) : "Only one input supported by this domain.";
@@ -107,7 +117,6 @@ public class SomaticMutationDomainDescriptor extends DomainDescriptor<BaseInform
                 throw new RuntimeException(e);
             }
         }
-        cachedFeatureMappers.put(inputName, result);
         return result;
 
     }
@@ -146,6 +155,10 @@ public class SomaticMutationDomainDescriptor extends DomainDescriptor<BaseInform
     public Function<String, ? extends Iterable<BaseInformationRecords.BaseInformation>> getRecordIterable() {
         return inputFilename -> {
             try {
+                if (inputFilename.endsWith(".sbc")) {
+                    // decode only the columns that the mappers of this domain read:
+                    return new ColumnarRecordReader(inputFilename, Column.requiredBy(this));
+                }
                 return new SequenceBaseInformationReader(inputFilename);
             } catch (IOException e) {
                 throw new RuntimeException("Unable to read records from " + inputFilename, e);
@@ -153,6 +166,20 @@ public class SomaticMutationDomainDescriptor extends DomainDescriptor<BaseInform
         };
     }
 
+    @Override
+    public Function<String, ? extends Iterable<BaseInformationRecords.BaseInformation>> getRecordIterable(String region) {
+        if (region == null) {
+            return getRecordIterable();
+        }
+        return inputFilename -> {
+            try {
+                return new RegionRecordReader(inputFilename, region);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read records of region " + region + " from " + inputFilename, e);
+            }
+        };
+    }
+
     @Override
     public PerformanceMetricDescriptor<BaseInformationRecords.BaseInformation> performanceDescritor() {
         return new PerformanceMetricDescriptor<BaseInformationRecords.BaseInformation>(this) {
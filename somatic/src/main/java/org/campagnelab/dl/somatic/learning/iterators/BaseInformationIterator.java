@@ -2,6 +2,7 @@ package org.campagnelab.dl.somatic.learning.iterators;
 
 import org.apache.commons.compress.utils.IOUtils;
 import org.campagnelab.dl.framework.mappers.LabelMapper;
+import org.campagnelab.dl.framework.mappers.FeatureContext;
 import org.campagnelab.dl.framework.mappers.FeatureMapper;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.campagnelab.dl.somatic.storage.RecordReader;
@@ -85,6 +86,7 @@ public class BaseInformationIterator implements NamedDataSetIterator, Closeable
             if (hasNextRecord()) {
                 // fill in features and labels for a given record i:
                 BaseInformationRecords.BaseInformationOrBuilder record = nextRecord();
+                FeatureContext.current().reset(record);
                 featureMapper.prepareToNormalize(record, i);
                 featureMapper.mapFeatures(record, inputs, i);
                 labelMapper.prepareToNormalize(record, i);
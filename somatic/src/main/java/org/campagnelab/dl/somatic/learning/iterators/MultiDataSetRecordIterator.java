@@ -1,6 +1,7 @@
 package org.campagnelab.dl.somatic.learning.iterators;
 
 import org.campagnelab.dl.framework.domains.DomainDescriptor;
+import org.campagnelab.dl.framework.mappers.FeatureContext;
 import org.campagnelab.dl.framework.mappers.FeatureMapper;
 import org.campagnelab.dl.framework.mappers.LabelMapper;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -92,6 +93,7 @@ public abstract class MultiDataSetRecordIterator<RecordType> implements MultiDat
             if (hasNextRecord()) {
                 // fill in features and labels for a given record i:
                 RecordType record = nextRecord();
+                FeatureContext.current().reset(record);
                 for (int j = 0; j < numInputs; j++) {
                     featureMappers[j].prepareToNormalize(record, i);
                     featureMappers[j].mapFeatures(record, inputs[j], i);
@@ -1,6 +1,7 @@
 package org.campagnelab.dl.somatic.mappers;
 
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.framework.mappers.FeatureContext;
 import org.campagnelab.dl.framework.mappers.FeatureNameMapper;
 import org.campagnelab.dl.framework.mappers.MappedDimensions;
 import org.campagnelab.dl.somatic.genotypes.GenotypeCountFactory;
@@ -8,7 +9,6 @@ import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.util.Arrays;
-import java.util.Collections;
 
 /**
  * AbstractFeatureMapper encapsulates behavior common to many feature mappers.
@@ -50,47 +50,47 @@ public abstract class AbstractFeatureMapper<T extends BaseInformationRecords.Bas
 
     protected ObjectArrayList<? extends GenotypeCount> getAllCounts(BaseInformationRecords.BaseInformationOrBuilder record, GenotypeCountFactory factory, boolean isTumor, boolean sort) {
         int sampleIndex = isTumor ? 1 : 0;
-        ObjectArrayList<GenotypeCount> list = new ObjectArrayList<>();
-        int genotypeIndex = 0;
-        for (int i = 0; i < record.getSamples(0).getCountsCount(); i++) {
-            int germCount = record.getSamples(0).getCounts(i).getGenotypeCountForwardStrand() + record.getSamples(0).getCounts(i).getGenotypeCountReverseStrand();
-            BaseInformationRecords.CountInfo genoInfo = record.getSamples(sampleIndex).getCounts(i);
-            int forwCount = genoInfo.getGenotypeCountForwardStrand();
-            int revCount = genoInfo.getGenotypeCountReverseStrand();
-            GenotypeCount count = factory.create();
-            count.set(forwCount, revCount, genoInfo.getToSequence(), i, germCount);
-            initializeCount(record.getSamples(sampleIndex).getCounts(i), count);
-            list.add(count);
-        }
+        ObjectArrayList<GenotypeCount> list = new ObjectArrayList<>(MAX_GENOTYPES);
+        // genotypes are visited in decreasing order of counts when sort is true, and we consider only the 5
+        // genotypes with largest total counts. The order is shared by all mappers of the record:
+        final int[] order = SomaticFeatureContext.of(record).countOrder(sort);
         // DO not increment genotypeIndex. It must remain constant for all N bases
         int genotypeIndexFor_Ns = N_GENOTYPE_INDEX;
-        // pad with zero until we have 10 elements:
-        while (list.size() < MAX_GENOTYPES) {
-            final GenotypeCount genotypeCount = getGenotypeCountFactory().create();
-            genotypeCount.set(0, 0, "N", genotypeIndexFor_Ns, 0);
-            list.add(genotypeCount);
-
-        }
-        //sort in decreasing order of counts:
-        if (sort) {
-            Collections.sort(list);
+        for (int i : order) {
+            if (i >= 0) {
+                int germCount = record.getSamples(0).getCounts(i).getGenotypeCountForwardStrand() + record.getSamples(0).getCounts(i).getGenotypeCountReverseStrand();
+                BaseInformationRecords.CountInfo genoInfo = record.getSamples(sampleIndex).getCounts(i);
+                int forwCount = genoInfo.getGenotypeCountForwardStrand();
+                int revCount = genoInfo.getGenotypeCountReverseStrand();
+                GenotypeCount count = factory.create();
+                count.set(forwCount, revCount, genoInfo.getToSequence(), i, germCount);
+                initializeCount(genoInfo, count);
+                list.add(count);
+            } else {
+                // pad with N genotypes when the record has fewer than 5 genotypes:
+                final GenotypeCount genotypeCount = getGenotypeCountFactory().create();
+                genotypeCount.set(0, 0, "N", genotypeIndexFor_Ns, 0);
+                list.add(genotypeCount);
+            }
         }
-        // trim the list at 5 elements because we will consider only the 5 genotypes with largest total counts:
-        list.trim(MAX_GENOTYPES);
-
         return list;
     }
 
 
     protected abstract void initializeCount(BaseInformationRecords.CountInfo sampleCounts, GenotypeCount count);
 
-    private BaseInformationRecords.BaseInformationOrBuilder recordCached[][] = new BaseInformationRecords.BaseInformationOrBuilder[2][2];
+    private FeatureContext contextCached[][] = new FeatureContext[2][2];
+    private int generationCached[][] = new int[2][2];
     private ObjectArrayList<? extends GenotypeCount> cachedResult[][] = new ObjectArrayList[2][2];
 
     protected ObjectArrayList<? extends GenotypeCount> getAllCounts(BaseInformationRecords.BaseInformationOrBuilder record,
                                                                     boolean isTumor, boolean sort) {
         ObjectArrayList<? extends GenotypeCount> cached = getCachedResult(isTumor, sort);
-        if (cached != null && record.equals(recordCached[isTumor ? 1 : 0][sort ? 1 : 0])) {
+        final FeatureContext context = FeatureContext.forRecord(record);
+        final int index1 = isTumor ? 1 : 0;
+        final int index2 = sort ? 1 : 0;
+        if (cached != null && contextCached[index1][index2] == context &&
+                generationCached[index1][index2] == context.generation()) {
             return cached;
         } else {
 
@@ -100,17 +100,18 @@ public abstract class AbstractFeatureMapper<T extends BaseInformationRecords.Bas
                 if (isTumor != record.getSamples(i).getIsTumor()) continue;
                 // a subclass is expected to override getGenotypeCountFactory to provide its own type for Genotype counts:
                 cached = getAllCounts(record, getGenotypeCountFactory(), isTumor, sort);
-                putInCache(record, cached, isTumor, sort);
+                putInCache(context, cached, isTumor, sort);
                 return cached;
             }
             throw new InternalError("At least one sample matching isTumor, and one matching not isTumor must be found.");
         }
     }
 
-    private void putInCache(BaseInformationRecords.BaseInformationOrBuilder record, ObjectArrayList<? extends GenotypeCount> cached, boolean isTumor, boolean sort) {
+    private void putInCache(FeatureContext context, ObjectArrayList<? extends GenotypeCount> cached, boolean isTumor, boolean sort) {
         int index1 = isTumor ? 1 : 0;
         int index2 = sort ? 1 : 0;
-        recordCached[index1][index2] = record;
+        contextCached[index1][index2] = context;
+        generationCached[index1][index2] = context.generation();
         cachedResult[index1][index2] = cached;
     }
 
@@ -20,7 +20,7 @@ public abstract class BinaryFeatureMapper extends NoMaskFeatureMapper<BaseInform
         this(Integer.MAX_VALUE);
     }
 
-    private static final int[] indices = new int[]{0, 0};
+    private final int[] indices = new int[]{0, 0};
 
     @Override
     public int numberOfFeatures() {
@@ -0,0 +1,130 @@
+package org.campagnelab.dl.somatic.mappers;
+
+import org.campagnelab.dl.somatic.mappers.functional.IntToFloatFunction;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An integer histogram of values with frequencies, normalized to a density over a fixed number of bins.
+ * The bin of each value in [minValue, maxValue] is calculated once, when the histogram is created, so that adding
+ * a value is a table lookup. Bins are identical to the ones DensityMapper calculated with a boxed value function.
+ *
+ * @author Fabien Campagne
+ */
+public class DensityHistogram {
+    private static final int MAX_TABLE_SIZE = 1 << 20;
+    private static final int OUTSIDE = -1;
+
+    private final int minValue;
+    private final int numBins;
+    private final float binWidth;
+    private final float transformedMin;
+    private final IntToFloatFunction valueFunction;
+    private final int[] binOfValue;
+    private final int[] counts;
+    private int total;
+
+    /**
+     * @param minValue      smallest value expected.
+     * @param maxValue      largest value expected.
+     * @param numBins       number of bins. If -1, use a bin for every increment between minValue and maxValue.
+     * @param valueFunction transformation applied to values before binning (e.g., log10).
+     */
+    public DensityHistogram(int minValue, int maxValue, int numBins, IntToFloatFunction valueFunction) {
+        this.minValue = minValue;
+        this.numBins = numBins == -1 ? maxValue - minValue : numBins;
+        this.valueFunction = valueFunction;
+        this.transformedMin = valueFunction.applyAsFloat(minValue);
+        this.binWidth = (valueFunction.applyAsFloat(maxValue) - transformedMin) / this.numBins;
+        this.counts = new int[this.numBins];
+        long tableSize = (long) maxValue - minValue + 1;
+        if (tableSize > 0 && tableSize <= MAX_TABLE_SIZE) {
+            binOfValue = new int[(int) tableSize];
+            for (int i = 0; i < binOfValue.length; i++) {
+                binOfValue[i] = calculateBin(minValue + i);
+            }
+        } else {
+            binOfValue = null;
+        }
+    }
+
+    private int calculateBin(int value) {
+        int bin = (int) ((valueFunction.applyAsFloat(value) - transformedMin) / binWidth);
+        return bin < 0 || bin >= numBins ? OUTSIDE : bin;
+    }
+
+    /**
+     * Determine the bin of a value.
+     *
+     * @return the bin index, or -1 when the value falls outside of the bins.
+     */
+    public int binOf(int value) {
+        final int offset = value - minValue;
+        if (binOfValue != null && offset >= 0 && offset < binOfValue.length) {
+            return binOfValue[offset];
+        }
+        return calculateBin(value);
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    public void add(int value, int frequency) {
+        final int bin = binOf(value);
+        if (bin != OUTSIDE) {
+            counts[bin] += frequency;
+            total += frequency;
+        }
+    }
+
+    public void addAll(List<BaseInformationRecords.NumberWithFrequency> values) {
+        final int size = values.size();
+        for (int i = 0; i < size; i++) {
+            BaseInformationRecords.NumberWithFrequency n = values.get(i);
+            add(n.getNumber(), n.getFrequency());
+        }
+    }
+
+    /**
+     * Write the density (counts divided by the total count) to an array.
+     *
+     * @param density where to write the density.
+     * @param offset  index of the first bin in density.
+     */
+    public void writeDensity(float[] density, int offset) {
+        if (total == 0) {
+            Arrays.fill(density, offset, offset + numBins, 0);
+            return;
+        }
+        final float numElements = total;
+        for (int bin = 0; bin < numBins; bin++) {
+            density[offset + bin] = counts[bin] / numElements;
+        }
+    }
+
+    public int numBins() {
+        return numBins;
+    }
+
+    public float binWidth() {
+        return binWidth;
+    }
+
+    public String featureName(String name, int featureIndex) {
+        float binMin = 0;
+        float binMax = 0;
+        for (int i = 0; i < numBins; i++) {
+            if (i < featureIndex) {
+                binMin += binWidth;
+            }
+            if (i <= featureIndex) {
+                binMax += binWidth;
+            }
+        }
+        return String.format("density_%s_%s_%s", name, Float.toString(binMin), Float.toString(binMax));
+    }
+}
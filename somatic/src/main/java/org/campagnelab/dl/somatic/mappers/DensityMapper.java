@@ -2,41 +2,71 @@ package org.campagnelab.dl.somatic.mappers;
 
 import org.campagnelab.dl.framework.mappers.FeatureNameMapper;
 import org.campagnelab.dl.framework.mappers.NoMaskFeatureMapper;
+import org.campagnelab.dl.somatic.mappers.functional.IntToFloatFunction;
+import org.campagnelab.dl.somatic.mappers.functional.RecordTraversal;
+import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.somatic.mappers.functional.ValueVisitor;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.function.Function;
 
 /**
  * Produces feature that represent a density of values for a given number of bins..
+ * Values are binned with a DensityHistogram. See MultiDensityMapper to calculate several densities in one
+ * traversal of the counts of a record.
  * Created by fac2003 on 10/21/16.
  */
 public class DensityMapper extends NoMaskFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>
         implements FeatureNameMapper<BaseInformationRecords.BaseInformationOrBuilder> {
 
     protected Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues;
+    protected RecordTraversal traversal;
     protected int minValue=Integer.MAX_VALUE;
     protected int maxValue=Integer.MIN_VALUE;
     protected float binWidth;
     protected String name;
-    protected Function<Integer, Float> valueFunction;
+    protected IntToFloatFunction valueFunction;
     int numBins = 10;
     float[] bins;
-    protected int[] indices;
+    protected int[] indices = new int[]{0, 0};
+    private DensityHistogram histogram;
+    private ValueVisitor addToHistogram;
 
     public DensityMapper(String name, int numBins, Properties sbiProperties,
                          Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues
     ) {
-        this(name, numBins, sbiProperties, recordToValues, Integer::floatValue);
+        this(name, numBins, sbiProperties, recordToValues, value -> value);
     }
 
     public DensityMapper(String name1, String name2, int numBins, Properties sbiProperties,
                          Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues
     ) {
-        this(name1, name2, numBins, sbiProperties, recordToValues, Integer::floatValue);
+        this(name1, name2, numBins, sbiProperties, recordToValues, value -> value);
+    }
+
+    public DensityMapper(String name, int numBins, Properties sbiProperties, RecordTraversal traversal) {
+        this(name, numBins, sbiProperties, traversal, value -> value);
+    }
+
+    public DensityMapper(String name1, String name2, int numBins, Properties sbiProperties, RecordTraversal traversal) {
+        this(name1, name2, numBins, sbiProperties, traversal, value -> value);
+    }
+
+    public DensityMapper(String name, int numBins, Properties sbiProperties,
+                         Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues,
+                         IntToFloatFunction valueFunction) {
+        this(name, numBins, sbiProperties, TraversalHelper.of(recordToValues), valueFunction);
+        this.recordToValues = recordToValues;
+    }
+
+    public DensityMapper(String name1, String name2, int numBins, Properties sbiProperties,
+                         Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues,
+                         IntToFloatFunction valueFunction) {
+        this(name1, name2, numBins, sbiProperties, TraversalHelper.of(recordToValues), valueFunction);
+        this.recordToValues = recordToValues;
     }
 
 
@@ -44,25 +74,25 @@ public class DensityMapper extends NoMaskFeatureMapper<BaseInformationRecords.Ba
      * @param name
      * @param numBins number of bins to represent this density with. If -1, use a bin for every increment between minValue and maxValue.
      * @param sbiProperties
-     * @param recordToValues
+     * @param traversal visits the values of a record, without building a list.
      * @param valueFunction
      */
     public DensityMapper(String name, int numBins, Properties sbiProperties,
-                         Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues,
-                         Function<Integer, Float> valueFunction) {
+                         RecordTraversal traversal,
+                         IntToFloatFunction valueFunction) {
         if (!propertiesPresent(sbiProperties, "stats." + name)) {
             throw new UnsupportedOperationException("The sbip file does not contain the statistics for " + name + " (stats." + name + ".min and stats." + name + ".max)");
         }
         this.minValue = (int)getMin(sbiProperties, "stats." + name);
         this.maxValue = (int)getMax(sbiProperties, "stats." + name);
-        constructorHelper(name,numBins,recordToValues,valueFunction);
+        constructorHelper(name,numBins,traversal,valueFunction);
     }
 
 
     //handle case where there are two protobuf fields contributing to one map.
     public DensityMapper(String name1, String name2, int numBins, Properties sbiProperties,
-                         Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues,
-                         Function<Integer, Float> valueFunction
+                         RecordTraversal traversal,
+                         IntToFloatFunction valueFunction
     ) {
 
         if (!propertiesPresent(sbiProperties, "stats." + name1)) {
@@ -82,13 +112,13 @@ public class DensityMapper extends NoMaskFeatureMapper<BaseInformationRecords.Ba
             }
         }
         common.append("+" + name2.substring(i));
-        constructorHelper(common.toString(),numBins,recordToValues,valueFunction);
+        constructorHelper(common.toString(),numBins,traversal,valueFunction);
     }
 
 
     protected void constructorHelper(String name, int numBins,
-                                   Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues,
-                                   Function<Integer, Float> valueFunction){
+                                   RecordTraversal traversal,
+                                   IntToFloatFunction valueFunction){
         this.name = name;
         this.valueFunction = valueFunction;
         if (numBins == -1){
@@ -97,8 +127,10 @@ public class DensityMapper extends NoMaskFeatureMapper<BaseInformationRecords.Ba
             this.numBins = numBins;
         }
         bins = new float[this.numBins];
-        this.recordToValues = recordToValues;
-        this.binWidth = (valueFunction.apply(maxValue) - valueFunction.apply(minValue) )/ this.numBins;
+        this.traversal = traversal;
+        this.binWidth = (valueFunction.applyAsFloat(maxValue) - valueFunction.applyAsFloat(minValue) )/ this.numBins;
+        this.histogram = new DensityHistogram(minValue, maxValue, this.numBins, valueFunction);
+        this.addToHistogram = histogram::add;
     }
 
 
@@ -110,29 +142,17 @@ public class DensityMapper extends NoMaskFeatureMapper<BaseInformationRecords.Ba
 
     @Override
     public void prepareToNormalize(BaseInformationRecords.BaseInformationOrBuilder record, int indexOfRecord) {
-        Arrays.fill(bins, 0);
-        List<BaseInformationRecords.NumberWithFrequency> listOfValues = recordToValues.apply(record);
-        float numElements = 0;
-        for (BaseInformationRecords.NumberWithFrequency n : listOfValues) {
-            int featureIndex = (int) ((valueFunction.apply(n.getNumber()) - valueFunction.apply(minValue)) / binWidth);
-            if (featureIndex < 0 || featureIndex >= numBins) {
-                //ignore points outside of min-max
-            } else {
-                bins[featureIndex] += n.getFrequency();
-                numElements += n.getFrequency();
-            }
-        }
+        histogram.clear();
+        // points outside of min-max are ignored:
+        traversal.forEachValue(record, addToHistogram);
         // normalize the counts to produce a density:
-        if (numElements > 0) {
-            for (int featureIndex = 0; featureIndex < numBins; featureIndex++) {
-                bins[featureIndex] /= numElements;
-            }
-        }
+        histogram.writeDensity(bins, 0);
     }
 
     @Override
     public void mapFeatures(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
         mapFeatures(record, bins, 0, indexOfRecord);
+        indices[0] = indexOfRecord;
         for (int featureIndex = 0; featureIndex < numberOfFeatures(); featureIndex++) {
             indices[1] = featureIndex;
             inputs.putScalar(indices, bins[featureIndex]);
@@ -1,5 +1,8 @@
 package org.campagnelab.dl.somatic.mappers;
 
+import org.campagnelab.dl.somatic.mappers.functional.RecordTraversal;
+import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.somatic.mappers.functional.ValueVisitor;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 
 import java.util.Arrays;
@@ -17,47 +20,50 @@ public class DensityMapperCapped extends DensityMapper {
     int linearBinMax;
 
     int numLinearBins;
+    private float numElements;
+    private final ValueVisitor addToBins = this::addToBins;
 
     public DensityMapperCapped(String name1, int linearBinMin, int linearBinMax, Properties sbiProperties,
                                Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues) {
-        super(name1, 1, sbiProperties, recordToValues, Integer::floatValue);
+        this(name1, linearBinMin, linearBinMax, sbiProperties, TraversalHelper.of(recordToValues));
+        this.recordToValues = recordToValues;
+    }
+
+    public DensityMapperCapped(String name1, String name2, int linearBinMin, int linearBinMax, Properties sbiProperties,
+                               Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues
+    ) {
+        this(name1, name2, linearBinMin, linearBinMax, sbiProperties, TraversalHelper.of(recordToValues));
+        this.recordToValues = recordToValues;
+    }
+
+    public DensityMapperCapped(String name1, int linearBinMin, int linearBinMax, Properties sbiProperties,
+                               RecordTraversal traversal) {
+        super(name1, 1, sbiProperties, traversal, value -> value);
         //now cap bins:
         this.numBins = linearBinMax - linearBinMin;
         this.linearBinMax = linearBinMax;
         this.linearBinMin = linearBinMin;
         bins = new float[this.numBins];
-        this.recordToValues = recordToValues;
         this.binWidth = 1;
     }
 
     public DensityMapperCapped(String name1, String name2, int linearBinMin, int linearBinMax, Properties sbiProperties,
-                               Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues
-    ) {
+                               RecordTraversal traversal) {
 
-        super(name1, name2, 1, sbiProperties, recordToValues, Integer::floatValue);
+        super(name1, name2, 1, sbiProperties, traversal, value -> value);
         //now cap bins:
         this.numBins = linearBinMax - linearBinMin;
         this.linearBinMax = linearBinMax;
         this.linearBinMin = linearBinMin;
         bins = new float[this.numBins];
-        this.recordToValues = recordToValues;
         this.binWidth = 1;
     }
 
 
     public void prepareToNormalize(BaseInformationRecords.BaseInformationOrBuilder record, int indexOfRecord) {
         Arrays.fill(bins, 0);
-        List<BaseInformationRecords.NumberWithFrequency> listOfValues = recordToValues.apply(record);
-        float numElements = 0;
-        for (BaseInformationRecords.NumberWithFrequency n : listOfValues) {
-            int featureIndex = (int) ((valueFunction.apply(n.getNumber()) - linearBinMin));
-            //handle higher than linearMax case, lower than linearMin case
-            if (featureIndex >= (numLinearBins) || featureIndex < 0) {
-            } else {
-                bins[featureIndex] += n.getFrequency();
-                numElements += n.getFrequency();
-            }
-        }
+        numElements = 0;
+        traversal.forEachValue(record, addToBins);
         // normalize the counts to produce a density:
         if (numElements > 0) {
             for (int featureIndex = 0; featureIndex < numBins; featureIndex++) {
@@ -65,4 +71,14 @@ public class DensityMapperCapped extends DensityMapper {
             }
         }
     }
+
+    private void addToBins(int number, int frequency) {
+        int featureIndex = (int) ((valueFunction.applyAsFloat(number) - linearBinMin));
+        //handle higher than linearMax case, lower than linearMin case
+        if (featureIndex >= (numLinearBins) || featureIndex < 0) {
+        } else {
+            bins[featureIndex] += frequency;
+            numElements += frequency;
+        }
+    }
 }
@@ -1,13 +1,23 @@
 package org.campagnelab.dl.somatic.mappers;
 
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
+
+import java.util.Set;
+
 /**
  * Same as V13, but with FractionDifferences4 instead of 3., to avoid division by zero when sum to counts is 0
  * in one sample.
  */
-public class FeatureMapperV18 extends NamingConcatFeatureMapper {
+public class FeatureMapperV18 extends NamingConcatFeatureMapper implements RequiresColumns {
     public FeatureMapperV18() {
         super(new SimpleFeatureCalculator(true), new IndelFeatures(),
                 new ReadIndexFeaturesFix(), new FractionDifferences4(), new MagnitudeFeatures2()
         );
     }
+
+    @Override
+    public Set<Column> requiredColumns() {
+        return Column.featureColumns();
+    }
 }
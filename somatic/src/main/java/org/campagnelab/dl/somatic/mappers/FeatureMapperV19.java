@@ -2,15 +2,18 @@ package org.campagnelab.dl.somatic.mappers;
 
 import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
 import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Same as V18, but adds density features for numVariationsInRead. Starting to use Java8 lambdas to customize generic feature mappers.
  */
-public class FeatureMapperV19 extends NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> implements ConfigurableFeatureMapper {
+public class FeatureMapperV19 extends NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> implements ConfigurableFeatureMapper, RequiresColumns {
     NamingConcatFeatureMapper delegate;
 
     /**
@@ -26,16 +29,11 @@ public class FeatureMapperV19 extends NamingConcatFeatureMapper<BaseInformationR
                 new ReadIndexFeaturesFix(),
                 new FractionDifferences4(),
                 new MagnitudeFeatures2(),
-                new DensityMapper("numVariationsInRead", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
-                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
-                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
-                new DensityMapper("baseQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
-                new DensityMapper("baseQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
+                new DensityMapper("numVariationsInRead", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
+                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
+                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
+                new DensityMapper("baseQuality.forward", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
+                new DensityMapper("baseQuality.reverse", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
         );
     }
 
@@ -63,4 +61,9 @@ public class FeatureMapperV19 extends NamingConcatFeatureMapper<BaseInformationR
     public float produceFeature(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
         return delegate.produceFeature(record, featureIndex);
     }
+
+    @Override
+    public Set<Column> requiredColumns() {
+        return Column.featureColumns();
+    }
 }
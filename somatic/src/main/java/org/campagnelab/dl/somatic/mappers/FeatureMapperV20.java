@@ -2,16 +2,19 @@ package org.campagnelab.dl.somatic.mappers;
 
 import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
 import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Same as V19, but more point for some density mappers (numVariationsInRead).
  */
 public class FeatureMapperV20 extends NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>
-        implements ConfigurableFeatureMapper {
+        implements ConfigurableFeatureMapper, RequiresColumns {
     private NamingConcatFeatureMapper delegate;
 
     /**
@@ -28,16 +31,11 @@ public class FeatureMapperV20 extends NamingConcatFeatureMapper<BaseInformationR
                 new ReadIndexFeaturesFix(),
                 new FractionDifferences4(),
                 new MagnitudeFeatures2(),
-                new DensityMapper("numVariationsInRead", 20, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
-                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
-                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
-                new DensityMapper("baseQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
-                new DensityMapper("baseQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
+                new DensityMapper("numVariationsInRead", 20, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
+                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
+                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
+                new DensityMapper("baseQuality.forward", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
+                new DensityMapper("baseQuality.reverse", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
         );
 
 
@@ -69,4 +67,8 @@ public class FeatureMapperV20 extends NamingConcatFeatureMapper<BaseInformationR
         return delegate.produceFeature(record, featureIndex);
     }
 
+    @Override
+    public Set<Column> requiredColumns() {
+        return Column.featureColumns();
+    }
 }
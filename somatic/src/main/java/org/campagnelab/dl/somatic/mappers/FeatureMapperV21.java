@@ -2,6 +2,8 @@ package org.campagnelab.dl.somatic.mappers;
 
 import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
 import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
@@ -9,13 +11,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 
 /**
  * Same as V20, with to information for each count, arranged as a sequence.
  */
 public class FeatureMapperV21 extends NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>
-        implements ConfigurableFeatureMapper {
+        implements ConfigurableFeatureMapper, RequiresColumns {
     private NamingConcatFeatureMapper delegate;
 
     private String recordTo(final int contextLength, BaseInformationRecords.BaseInformationOrBuilder record, int countIndex) {
@@ -43,16 +46,11 @@ public class FeatureMapperV21 extends NamingConcatFeatureMapper<BaseInformationR
                 new ReadIndexFeaturesFix(),
                 new FractionDifferences4(),
                 new MagnitudeFeatures2(),
-                new DensityMapper("numVariationsInRead", 20, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
-                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
-                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
-                new DensityMapper("baseQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
-                new DensityMapper("baseQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
+                new DensityMapper("numVariationsInRead", 20, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
+                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
+                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
+                new DensityMapper("baseQuality.forward", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
+                new DensityMapper("baseQuality.reverse", 10, sbiProperties, TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList))
         );
 
 
@@ -84,4 +82,8 @@ public class FeatureMapperV21 extends NamingConcatFeatureMapper<BaseInformationR
         return delegate.produceFeature(record, featureIndex);
     }
 
+    @Override
+    public Set<Column> requiredColumns() {
+        return Column.featureColumns();
+    }
 }
@@ -1,7 +1,9 @@
 package org.campagnelab.dl.somatic.mappers;
 
 import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
-import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.framework.mappers.FeatureWriter;
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
@@ -9,13 +11,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 
 /**
  * Same as V24, with no genomic position encoding.
  */
 public class FeatureMapperV25 extends NamingConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>
-        implements ConfigurableFeatureMapper {
+        implements ConfigurableFeatureMapper, RequiresColumns {
     private NamingConcatFeatureMapper delegate;
 
     private String recordTo(final int contextLength, BaseInformationRecords.BaseInformationOrBuilder record, int countIndex) {
@@ -42,20 +45,15 @@ public class FeatureMapperV25 extends NamingConcatFeatureMapper<BaseInformationR
                 new ReadIndexFeaturesFix(),
                 new FractionDifferences4(),
                 new MagnitudeFeatures2(),
-                new DensityMapper("numVariationsInRead", 20, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
-                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
-                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
-                new DensityMapper("baseQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
-                new DensityMapper("baseQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList)),
-                new DensityMapper("insertSizes", 10, sbiProperties, (BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder) -> {
-                    return TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getInsertSizesList);
-                },
-                        insertSize -> (float)Math.log10(insertSize))
+                // all densities are calculated in one traversal of the counts:
+                new MultiDensityMapper(sbiProperties)
+                        .add("numVariationsInRead", 20, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)
+                        .add("readMappingQuality.forward", 10, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)
+                        .add("readMappingQuality.reverse", 10, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)
+                        .add("baseQuality.forward", 10, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)
+                        .add("baseQuality.reverse", 10, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList)
+                        .add("insertSizes", 10, BaseInformationRecords.CountInfo::getInsertSizesList,
+                                insertSize -> (float) Math.log10(insertSize))
 
         );
 
@@ -83,9 +81,29 @@ public class FeatureMapperV25 extends NamingConcatFeatureMapper<BaseInformationR
         delegate.mapFeatures(record, inputs, indexOfRecord);
     }
 
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
+        delegate.mapFeaturesToZeroed(record, inputs, indexOfRecord);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs,
+                                    int indexOfRecord, int offset) {
+        delegate.mapFeaturesToZeroed(record, inputs, indexOfRecord, offset);
+    }
+
+    @Override
+    public void writeNonZeroFeatures(BaseInformationRecords.BaseInformationOrBuilder record, FeatureWriter writer) {
+        delegate.writeNonZeroFeatures(record, writer);
+    }
+
     @Override
     public float produceFeature(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
         return delegate.produceFeature(record, featureIndex);
     }
 
+    @Override
+    public Set<Column> requiredColumns() {
+        return Column.featureColumns();
+    }
 }
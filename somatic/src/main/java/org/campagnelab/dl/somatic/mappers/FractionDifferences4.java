@@ -32,14 +32,9 @@ public class FractionDifferences4 extends AbstractFeatureMapper<BaseInformationR
     }
 
     public void prepareToNormalize(BaseInformationRecords.BaseInformationOrBuilder record, int indexOfRecord) {
-        totalCountsGermline = 1;
-        totalCountsSomatic = 1;
-        ObjectArrayList<? extends GenotypeCount> germlineCounts = getAllCounts(record, false, true);
-        ObjectArrayList<? extends GenotypeCount> somaticCounts = getAllCounts(record, true, true);
-        for (int i = 0; i < germlineCounts.size(); i++) {
-            totalCountsGermline += (germlineCounts.get(i).totalCount());
-            totalCountsSomatic += (somaticCounts.get(i).totalCount());
-        }
+        final SomaticFeatureContext context = SomaticFeatureContext.of(record);
+        totalCountsGermline = 1 + context.totalCount(0, true);
+        totalCountsSomatic = 1 + context.totalCount(1, true);
         assert(totalCountsGermline>0):"0 total";
         assert(totalCountsSomatic>0):"0 total";
     }
@@ -47,6 +42,15 @@ public class FractionDifferences4 extends AbstractFeatureMapper<BaseInformationR
 
     int[] indices = new int[]{0, 0};
 
+    /**
+     * Plain genotype counts are shared with the other mappers of the record.
+     */
+    @Override
+    protected ObjectArrayList<? extends GenotypeCount> getAllCounts(BaseInformationRecords.BaseInformationOrBuilder record,
+                                                                    boolean isTumor, boolean sort) {
+        return SomaticFeatureContext.of(record).counts(isTumor ? 1 : 0, sort);
+    }
+
     public void mapFeatures(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
         indices[0] = indexOfRecord;
         for (int featureIndex = 0; featureIndex < numberOfFeatures(); featureIndex++) {
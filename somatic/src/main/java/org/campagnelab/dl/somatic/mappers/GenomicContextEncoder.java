@@ -0,0 +1,175 @@
+package org.campagnelab.dl.somatic.mappers;
+
+import org.campagnelab.dl.framework.mappers.FeatureNameMapper;
+import org.campagnelab.dl.framework.mappers.FeatureWriter;
+import org.campagnelab.dl.framework.mappers.NoMaskFeatureMapper;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * One-hot encodes centered windows of the genomic context. The context is read once per record and each base is
+ * mapped to its one-hot index with a 256-entry lookup table. All windows are centered sub-windows of the same
+ * context, so several window sizes are encoded in one pass, without trimming the context into new strings.
+ * <p>
+ * Each window produces the same features as a GenomicContextMapper of the same size: windowSize groups of six
+ * features (A, T, C, G, N, other, as in OneHotBaseFeatureMapper.getIntegerOfBase). Windows are concatenated in the
+ * order given to the constructor. Positions of a window that fall outside of a shorter context are encoded as other.
+ *
+ * @author Fabien Campagne
+ */
+public class GenomicContextEncoder extends NoMaskFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>
+        implements FeatureNameMapper<BaseInformationRecords.BaseInformationOrBuilder> {
+    private static final int NUM_BASE_FEATURES = 6;
+    private static final byte OTHER = 5;
+    private static final byte[] BASE_TO_INDEX = new byte[256];
+
+    static {
+        Arrays.fill(BASE_TO_INDEX, OTHER);
+        String bases = "ATCGN";
+        for (byte index = 0; index < bases.length(); index++) {
+            BASE_TO_INDEX[bases.charAt(index)] = index;
+            BASE_TO_INDEX[Character.toLowerCase(bases.charAt(index))] = index;
+        }
+    }
+
+    private final Function<BaseInformationRecords.BaseInformationOrBuilder, String> recordToContext;
+    private final int[] windowSizes;
+    private final int[] windowOffsets;
+    private final int numFeatures;
+    /**
+     * One-hot index of each base of the current context.
+     */
+    private byte[] codes = new byte[0];
+    private int contextLength;
+    private int[] indices = new int[]{0, 0};
+
+    /**
+     * Encode windows of the genomic context of the record.
+     *
+     * @param windowSizes sizes of the centered windows to encode.
+     */
+    public GenomicContextEncoder(int... windowSizes) {
+        this(BaseInformationRecords.BaseInformationOrBuilder::getGenomicSequenceContext, windowSizes);
+    }
+
+    /**
+     * Encode windows of an arbitrary context.
+     *
+     * @param recordToContext function that returns the context to encode for a record.
+     * @param windowSizes     sizes of the centered windows to encode.
+     */
+    public GenomicContextEncoder(Function<BaseInformationRecords.BaseInformationOrBuilder, String> recordToContext,
+                                 int... windowSizes) {
+        this.recordToContext = recordToContext;
+        this.windowSizes = windowSizes.clone();
+        this.windowOffsets = new int[windowSizes.length];
+        int offset = 0;
+        for (int w = 0; w < windowSizes.length; w++) {
+            windowOffsets[w] = offset;
+            offset += windowSizes[w] * NUM_BASE_FEATURES;
+        }
+        this.numFeatures = offset;
+    }
+
+    /**
+     * Return the one-hot index of a base: A=0, T=1, C=2, G=3, N=4, other=5.
+     */
+    public static int indexOfBase(char base) {
+        return base < 256 ? BASE_TO_INDEX[base] : OTHER;
+    }
+
+    @Override
+    public int numberOfFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public void prepareToNormalize(BaseInformationRecords.BaseInformationOrBuilder record, int indexOfRecord) {
+        String context = recordToContext.apply(record);
+        contextLength = context.length();
+        if (codes.length < contextLength) {
+            codes = new byte[contextLength];
+        }
+        for (int i = 0; i < contextLength; i++) {
+            char base = context.charAt(i);
+            codes[i] = base < 256 ? BASE_TO_INDEX[base] : OTHER;
+        }
+    }
+
+    /**
+     * Return the one-hot index of a base of a window.
+     *
+     * @param window    index of the window.
+     * @param baseIndex index of the base in the window.
+     */
+    private int code(int window, int baseIndex) {
+        // same centering as GenomicContextMapper.trim:
+        final int position = (contextLength - windowSizes[window]) / 2 + baseIndex;
+        return position >= 0 && position < contextLength ? codes[position] : OTHER;
+    }
+
+    @Override
+    public void mapFeatures(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
+        indices[0] = indexOfRecord;
+        for (int w = 0; w < windowSizes.length; w++) {
+            int featureIndex = windowOffsets[w];
+            for (int baseIndex = 0; baseIndex < windowSizes[w]; baseIndex++) {
+                final int code = code(w, baseIndex);
+                for (int f = 0; f < NUM_BASE_FEATURES; f++) {
+                    indices[1] = featureIndex++;
+                    inputs.putScalar(indices, f == code ? 1F : 0F);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
+        mapFeaturesToZeroed(record, inputs, indexOfRecord, 0);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs,
+                                    int indexOfRecord, int offset) {
+        indices[0] = indexOfRecord;
+        for (int w = 0; w < windowSizes.length; w++) {
+            for (int baseIndex = 0; baseIndex < windowSizes[w]; baseIndex++) {
+                indices[1] = offset + windowOffsets[w] + baseIndex * NUM_BASE_FEATURES + code(w, baseIndex);
+                inputs.putScalar(indices, 1F);
+            }
+        }
+    }
+
+    @Override
+    public void writeNonZeroFeatures(BaseInformationRecords.BaseInformationOrBuilder record, FeatureWriter writer) {
+        for (int w = 0; w < windowSizes.length; w++) {
+            for (int baseIndex = 0; baseIndex < windowSizes[w]; baseIndex++) {
+                writer.put(windowOffsets[w] + baseIndex * NUM_BASE_FEATURES + code(w, baseIndex), 1F);
+            }
+        }
+    }
+
+    @Override
+    public float produceFeature(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
+        int w = windowOf(featureIndex);
+        int indexInWindow = featureIndex - windowOffsets[w];
+        return code(w, indexInWindow / NUM_BASE_FEATURES) == indexInWindow % NUM_BASE_FEATURES ? 1F : 0F;
+    }
+
+    private int windowOf(int featureIndex) {
+        int w = windowOffsets.length - 1;
+        while (w > 0 && windowOffsets[w] > featureIndex) {
+            w--;
+        }
+        return w;
+    }
+
+    @Override
+    public String getFeatureName(int featureIndex) {
+        int w = windowOf(featureIndex);
+        return "GenomicContext" + windowSizes[w] + "_" + (featureIndex - windowOffsets[w]);
+    }
+}
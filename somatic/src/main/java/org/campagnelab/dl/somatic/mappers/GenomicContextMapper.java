@@ -15,7 +15,7 @@ import java.util.function.Function;
 
 public class GenomicContextMapper extends NoMaskFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>
         implements FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>, FeatureNameMapper<BaseInformationRecords.BaseInformationOrBuilder> {
-    private ConcatFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> delegate;
+    private FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> delegate;
 
     public GenomicContextMapper(Properties sbiProperties, int maxContextSize) {
 
@@ -34,12 +34,8 @@ public class GenomicContextMapper extends NoMaskFeatureMapper<BaseInformationRec
     }
 
     public GenomicContextMapper(int contextSize) {
-        OneHotBaseFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>[] refContext = new OneHotBaseFeatureMapper[contextSize];
-        for (int i = 0; i < contextSize; i++) {
-            refContext[i] = new OneHotBaseFeatureMapper<>(i,
-                    record -> trim(contextSize, record.getGenomicSequenceContext()));
-        }
-        delegate = new ConcatFeatureMapper<>(refContext);
+        // the encoder produces the same features as one OneHotBaseFeatureMapper per base of the trimmed context:
+        delegate = new GenomicContextEncoder(contextSize);
     }
 
     /**
@@ -49,7 +45,7 @@ public class GenomicContextMapper extends NoMaskFeatureMapper<BaseInformationRec
      * @param recordGenomicSequenceContext the genomic context from the sbi file, may be larger than trimLength
      * @return
      */
-    String trim(int trimLength, String recordGenomicSequenceContext) {
+    public static String trim(int trimLength, String recordGenomicSequenceContext) {
        assert trimLength<=recordGenomicSequenceContext.length() :
                String.format("The trim length (%d) must be smaller than the .sbi context length (%d).",
                trimLength,  recordGenomicSequenceContext.length()) ;
@@ -61,12 +57,15 @@ public class GenomicContextMapper extends NoMaskFeatureMapper<BaseInformationRec
         return result;
     }
 
+    /**
+     * Map a context computed from the record, such as the bases of a genotype.
+     *
+     * @param contextSize number of bases to encode.
+     * @param function    returns the context of a record, expected to have contextSize bases. A longer context is
+     *                    centered as with trim, and bases missing from a shorter context are encoded as other.
+     */
     public GenomicContextMapper(int contextSize, Function<BaseInformationRecords.BaseInformationOrBuilder, String> function) {
-        OneHotBaseFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>[] refContext = new OneHotBaseFeatureMapper[contextSize];
-        for (int i = 0; i < contextSize; i++) {
-            refContext[i] = new OneHotBaseFeatureMapper<>(i, function);
-        }
-        delegate = new ConcatFeatureMapper<>(refContext);
+        delegate = new GenomicContextEncoder(function, contextSize);
     }
 
     @Override
@@ -87,6 +86,23 @@ public class GenomicContextMapper extends NoMaskFeatureMapper<BaseInformationRec
         delegate.mapFeatures(record, inputs, indexOfRecord);
     }
 
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
+        // only the one-hot cell of each base is written:
+        delegate.mapFeaturesToZeroed(record, inputs, indexOfRecord);
+    }
+
+    @Override
+    public void mapFeaturesToZeroed(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs,
+                                    int indexOfRecord, int offset) {
+        delegate.mapFeaturesToZeroed(record, inputs, indexOfRecord, offset);
+    }
+
+    @Override
+    public void writeNonZeroFeatures(BaseInformationRecords.BaseInformationOrBuilder record, FeatureWriter writer) {
+        delegate.writeNonZeroFeatures(record, writer);
+    }
+
     @Override
     public float produceFeature(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
         return delegate.produceFeature(record, featureIndex);
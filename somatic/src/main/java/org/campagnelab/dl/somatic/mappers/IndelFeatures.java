@@ -59,9 +59,9 @@ public class IndelFeatures extends AbstractFeatureMapper<BaseInformationRecords.
 
     public float produceFeatureInternal(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
         assert featureIndex >= 0 && featureIndex < MAX_GENOTYPES : "Only MAX_GENOTYPES features";
-        // germline counts written first:
-        final IndelGenotypeCount genotypeCount = (IndelGenotypeCount) getAllCounts(record, false, true).get(featureIndex);
-        return genotypeCount.getIsIndel() ? 1F : 0F;
+        // genotypes in decreasing order of germline counts, N genotypes are not indels:
+        final int countIndex = SomaticFeatureContext.of(record).countOrder(true)[featureIndex];
+        return countIndex >= 0 && record.getSamples(0).getCounts(countIndex).getIsIndel() ? 1F : 0F;
     }
 
     @Override
@@ -1,19 +1,23 @@
 package org.campagnelab.dl.somatic.mappers;
 
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A label with 6 floats: first is probability that site is not mutated. Next floats are probability
  * that a genotype (sorted by decreasing count) is a somatic mutation.
  * Created by fac2003 on 5/12/2016.
  */
-public class IsBaseMutatedMapper extends NoMasksLabelMapper<BaseInformationRecords.BaseInformation> {
+public class IsBaseMutatedMapper extends NoMasksLabelMapper<BaseInformationRecords.BaseInformation> implements RequiresColumns {
     int[] indices = new int[]{0, 0};
 
     private float[] labels = new float[numberOfLabels()];
@@ -68,4 +72,8 @@ public class IsBaseMutatedMapper extends NoMasksLabelMapper<BaseInformationRecor
         return labels[labelIndex];
     }
 
+    @Override
+    public Set<Column> requiredColumns() {
+        return EnumSet.of(Column.MUTATED, Column.COUNT_ALLELES, Column.COUNT_TOTALS);
+    }
 }
@@ -1,12 +1,17 @@
 package org.campagnelab.dl.somatic.mappers;
 
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Created by fac2003 on 11/8/16.
  */
-public class IsSomaticMutationMapper extends NoMasksLabelMapper<BaseInformationRecords.BaseInformation> {
+public class IsSomaticMutationMapper extends NoMasksLabelMapper<BaseInformationRecords.BaseInformation> implements RequiresColumns {
     int[] indices = new int[]{0, 0};
 
     @Override
@@ -34,4 +39,9 @@ public class IsSomaticMutationMapper extends NoMasksLabelMapper<BaseInformationR
         // second index is 1 when site is not mutated.
         return record.getMutated() ? 0 : 1;
     }
+
+    @Override
+    public Set<Column> requiredColumns() {
+        return EnumSet.of(Column.MUTATED);
+    }
 }
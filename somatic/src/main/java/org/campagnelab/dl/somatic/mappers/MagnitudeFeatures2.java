@@ -1,5 +1,6 @@
 package org.campagnelab.dl.somatic.mappers;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.campagnelab.dl.framework.mappers.FeatureCalculator;
 import org.campagnelab.dl.somatic.genotypes.GenotypeCountFactory;
 import org.campagnelab.dl.somatic.genotypes.BaseGenotypeCountFactory;
@@ -30,6 +31,15 @@ public class MagnitudeFeatures2 extends AbstractFeatureMapper<BaseInformationRec
         indices[0] = indexOfRecord;
     }
 
+    /**
+     * Plain genotype counts are shared with the other mappers of the record.
+     */
+    @Override
+    protected ObjectArrayList<? extends GenotypeCount> getAllCounts(BaseInformationRecords.BaseInformationOrBuilder record,
+                                                                    boolean isTumor, boolean sort) {
+        return SomaticFeatureContext.of(record).counts(isTumor ? 1 : 0, sort);
+    }
+
     @Override
     public int numberOfLabels() {
         return 2;
@@ -0,0 +1,153 @@
+package org.campagnelab.dl.somatic.mappers;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.framework.mappers.FeatureNameMapper;
+import org.campagnelab.dl.framework.mappers.NoMaskFeatureMapper;
+import org.campagnelab.dl.somatic.mappers.functional.IntToFloatFunction;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * Produces several density features in a single traversal of the samples and counts of a record. Each density
+ * reads values from CountInfo (e.g., CountInfo::getQualityScoresForwardStrandList) into its own DensityHistogram.
+ * Features are identical to the features of a sequence of DensityMapper instances configured with the same names,
+ * bins and functions over forAllSampleCounts (or forSampleCounts), but values are never copied into intermediate
+ * lists.
+ *
+ * @author Fabien Campagne
+ */
+public class MultiDensityMapper extends NoMaskFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>
+        implements FeatureNameMapper<BaseInformationRecords.BaseInformationOrBuilder> {
+
+    private static class Density {
+        String name;
+        DensityHistogram histogram;
+        Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> countToValues;
+        int offset;
+    }
+
+    private final Properties sbiProperties;
+    private final int sampleIndex;
+    private final List<Density> densities = new ObjectArrayList<>();
+    private Density[] densityArray = new Density[0];
+    private int numFeatures;
+    private float[] values = new float[0];
+    private int[] indices = new int[]{0, 0};
+
+    /**
+     * Create a mapper over the counts of all samples.
+     */
+    public MultiDensityMapper(Properties sbiProperties) {
+        this(-1, sbiProperties);
+    }
+
+    /**
+     * Create a mapper over the counts of one sample.
+     *
+     * @param sampleIndex index of the sample, or -1 for all samples.
+     */
+    public MultiDensityMapper(int sampleIndex, Properties sbiProperties) {
+        this.sampleIndex = sampleIndex;
+        this.sbiProperties = sbiProperties;
+    }
+
+    public MultiDensityMapper add(String name, int numBins,
+                                  Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> countToValues) {
+        return add(name, numBins, countToValues, value -> value);
+    }
+
+    /**
+     * Add a density. The range of values is read from the stats.name.min and stats.name.max properties.
+     *
+     * @param name          name of the statistic.
+     * @param numBins       number of bins. If -1, use a bin for every increment between min and max.
+     * @param countToValues values of one count.
+     * @param valueFunction transformation applied to values before binning.
+     * @return this mapper.
+     */
+    public MultiDensityMapper add(String name, int numBins,
+                                  Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> countToValues,
+                                  IntToFloatFunction valueFunction) {
+        final String property = "stats." + name;
+        if (!sbiProperties.containsKey(property + ".min") || !sbiProperties.containsKey(property + ".max")) {
+            throw new UnsupportedOperationException("The sbip file does not contain the statistics for " + name + " (stats." + name + ".min and stats." + name + ".max)");
+        }
+        Density density = new Density();
+        density.name = name;
+        density.histogram = new DensityHistogram((int) Float.parseFloat(sbiProperties.getProperty(property + ".min")),
+                (int) Float.parseFloat(sbiProperties.getProperty(property + ".max")), numBins, valueFunction);
+        density.countToValues = countToValues;
+        density.offset = numFeatures;
+        densities.add(density);
+        densityArray = densities.toArray(new Density[densities.size()]);
+        numFeatures += density.histogram.numBins();
+        values = new float[numFeatures];
+        return this;
+    }
+
+    @Override
+    public int numberOfFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public void prepareToNormalize(BaseInformationRecords.BaseInformationOrBuilder record, int indexOfRecord) {
+        for (Density density : densityArray) {
+            density.histogram.clear();
+        }
+        if (sampleIndex == -1) {
+            final int numSamples = record.getSamplesCount();
+            for (int i = 0; i < numSamples; i++) {
+                addCounts(record.getSamples(i));
+            }
+        } else {
+            addCounts(record.getSamples(sampleIndex));
+        }
+        for (Density density : densityArray) {
+            density.histogram.writeDensity(values, density.offset);
+        }
+    }
+
+    private void addCounts(BaseInformationRecords.SampleInfo sample) {
+        final int numCounts = sample.getCountsCount();
+        for (int countIndex = 0; countIndex < numCounts; countIndex++) {
+            BaseInformationRecords.CountInfo count = sample.getCounts(countIndex);
+            for (Density density : densityArray) {
+                density.histogram.addAll(density.countToValues.apply(count));
+            }
+        }
+    }
+
+    @Override
+    public void mapFeatures(BaseInformationRecords.BaseInformationOrBuilder record, INDArray inputs, int indexOfRecord) {
+        indices[0] = indexOfRecord;
+        for (int featureIndex = 0; featureIndex < numFeatures; featureIndex++) {
+            indices[1] = featureIndex;
+            inputs.putScalar(indices, values[featureIndex]);
+        }
+    }
+
+    @Override
+    public float produceFeature(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
+        return values[featureIndex];
+    }
+
+    public void mapFeatures(BaseInformationRecords.BaseInformationOrBuilder record, float[] inputs, int offset, int indexOfRecord) {
+        System.arraycopy(values, 0, inputs, offset, numFeatures);
+    }
+
+    @Override
+    public String getFeatureName(int featureIndex) {
+        for (int i = densityArray.length - 1; i >= 0; i--) {
+            Density density = densityArray[i];
+            if (featureIndex >= density.offset) {
+                return density.histogram.featureName(density.name, featureIndex - density.offset);
+            }
+        }
+        throw new IndexOutOfBoundsException("featureIndex " + featureIndex);
+    }
+}
@@ -20,6 +20,14 @@ public class NamingConcatFeatureMapper<RecordType> extends ConcatFeatureMapper<R
         super(featureMappers);
     }
 
+    /**
+     * Naming concatenations can be flattened, subclasses opt in by overriding this method.
+     */
+    @Override
+    public boolean isFlattenable() {
+        return getClass() == NamingConcatFeatureMapper.class;
+    }
+
     public String getFeatureName(int i) {
         int indexOfDelegate = Arrays.binarySearch(offsets, i);
         if (indexOfDelegate < 0) {
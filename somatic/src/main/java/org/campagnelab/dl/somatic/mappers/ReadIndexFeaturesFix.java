@@ -86,16 +86,12 @@ public class ReadIndexFeaturesFix extends AbstractFeatureMapper<BaseInformationR
 
     public float produceFeatureInternal(BaseInformationRecords.BaseInformationOrBuilder record, int featureIndex) {
         assert featureIndex >= 0 && featureIndex < MAX_GENOTYPES * 2: "Only MAX_GENOTYPES*2 features";
-        if (featureIndex < MAX_GENOTYPES) {
-            // germline counts written first:
-            final ReadIndexWithCounts genotypeCount = (ReadIndexWithCounts) getAllCounts(record, false, true).get(featureIndex);
-            return genotypeCount.getDistinctReadIndices();
-        } else {
-            // tumor counts written next:
-            featureIndex -= MAX_GENOTYPES;
-            final ReadIndexWithCounts genotypeCount = (ReadIndexWithCounts) getAllCounts(record, true, true).get(featureIndex);
-            return genotypeCount.getDistinctReadIndices();
-        }
+        final SomaticFeatureContext context = SomaticFeatureContext.of(record);
+        // germline counts written first, tumor counts next:
+        final int sampleIndex = featureIndex < MAX_GENOTYPES ? 0 : 1;
+        final int countIndex = context.countOrder(true)[featureIndex % MAX_GENOTYPES];
+        // N genotypes have no reads:
+        return countIndex < 0 ? 0 : context.distinctReadIndices(sampleIndex, countIndex);
     }
 
     public boolean oneSampleHasTumor(java.util.List<BaseInformationRecords.SampleInfo> samples) {
@@ -1,5 +1,6 @@
 package org.campagnelab.dl.somatic.mappers;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.campagnelab.dl.framework.mappers.FeatureCalculator;
 import org.campagnelab.dl.somatic.genotypes.BaseGenotypeCountFactory;
 import org.campagnelab.dl.somatic.genotypes.GenotypeCountFactory;
@@ -62,13 +63,21 @@ public class SimpleFeatureCalculator extends AbstractFeatureMapper<BaseInformati
     public void prepareToNormalize(BaseInformationRecords.BaseInformationOrBuilder record, int indexOfRecord) {
         indices[0] = indexOfRecord;
 
-        sumCounts = 0;
-        for (int featureIndex = 0; featureIndex < numberOfFeatures(); featureIndex++) {
-            sumCounts += produceFeatureInternal(record, featureIndex);
-        }
+        // the sum of the counts that features are made of:
+        final SomaticFeatureContext context = SomaticFeatureContext.of(record);
+        sumCounts = context.totalCount(0, sort) + context.totalCount(1, sort);
         normalized = true;
     }
 
+    /**
+     * Plain genotype counts are shared with the other mappers of the record.
+     */
+    @Override
+    protected ObjectArrayList<? extends GenotypeCount> getAllCounts(BaseInformationRecords.BaseInformationOrBuilder record,
+                                                                    boolean isTumor, boolean sort) {
+        return SomaticFeatureContext.of(record).counts(isTumor ? 1 : 0, sort);
+    }
+
     @Override
     public int numberOfLabels() {
         return 2;
@@ -0,0 +1,206 @@
+package org.campagnelab.dl.somatic.mappers;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.framework.mappers.FeatureContext;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quantities derived from a somatic record that several mappers of a concatenation need: the order of genotypes by
+ * decreasing germline count, genotype counts of each sample in this order, the total of these counts, and the number
+ * of distinct read indices of each genotype. Each quantity is computed at most once per record, the first time a
+ * mapper needs it, and storage is reused from one record to the next.
+ *
+ * @author Fabien Campagne
+ */
+public class SomaticFeatureContext {
+    private static final int MAX_GENOTYPES = AbstractFeatureMapper.MAX_GENOTYPES;
+
+    private static final FeatureContext.Key<BaseInformationRecords.BaseInformationOrBuilder, SomaticFeatureContext> KEY =
+            new FeatureContext.Key<BaseInformationRecords.BaseInformationOrBuilder, SomaticFeatureContext>() {
+                @Override
+                protected SomaticFeatureContext compute(BaseInformationRecords.BaseInformationOrBuilder record,
+                                                        SomaticFeatureContext previous) {
+                    SomaticFeatureContext context = previous == null ? new SomaticFeatureContext() : previous;
+                    context.reset(record);
+                    return context;
+                }
+            };
+
+    /**
+     * Return the context of a record, for the current thread.
+     */
+    public static SomaticFeatureContext of(BaseInformationRecords.BaseInformationOrBuilder record) {
+        return FeatureContext.forRecord(record).get(KEY);
+    }
+
+    private BaseInformationRecords.BaseInformationOrBuilder record;
+    /**
+     * Index of the genotype counts in the record, in feature order, for unsorted (0) and sorted (1) genotypes.
+     */
+    private final int[][] orders = new int[2][MAX_GENOTYPES];
+    private final boolean[] orderReady = new boolean[2];
+    private int[] sortIndices = new int[MAX_GENOTYPES];
+    private int[] sortKeys = new int[MAX_GENOTYPES];
+    /**
+     * Genotype counts, indexed by sampleIndex * 2 + (sort ? 1 : 0).
+     */
+    private ObjectArrayList<GenotypeCount>[] counts = new ObjectArrayList[0];
+    private boolean[] countsReady = new boolean[0];
+    private int[] totalCounts = new int[0];
+    private int[][] distinctReadIndices = new int[0][];
+    private boolean[] distinctReadIndicesReady = new boolean[0];
+    private final IntOpenHashSet readIndices = new IntOpenHashSet();
+
+    private void reset(BaseInformationRecords.BaseInformationOrBuilder record) {
+        this.record = record;
+        Arrays.fill(orderReady, false);
+        final int numSamples = record.getSamplesCount();
+        if (countsReady.length < numSamples * 2) {
+            counts = Arrays.copyOf(counts, numSamples * 2);
+            countsReady = new boolean[numSamples * 2];
+            totalCounts = new int[numSamples * 2];
+            distinctReadIndices = Arrays.copyOf(distinctReadIndices, numSamples);
+            distinctReadIndicesReady = new boolean[numSamples];
+        } else {
+            Arrays.fill(countsReady, false);
+            Arrays.fill(distinctReadIndicesReady, false);
+        }
+    }
+
+    /**
+     * Return the index in the record of the genotype counts used to produce features, in feature order.
+     * When sort is true, genotypes are ordered by decreasing germline count (ties keep the order of the record).
+     * Only the first MAX_GENOTYPES genotypes are considered. Index -1 stands for a padding N genotype, used when
+     * the record has fewer genotypes.
+     *
+     * @param sort whether genotypes are sorted by decreasing germline count.
+     * @return an array of MAX_GENOTYPES genotype indices. The array is owned by the context and must not be changed.
+     */
+    public int[] countOrder(boolean sort) {
+        final int s = sort ? 1 : 0;
+        if (!orderReady[s]) {
+            final BaseInformationRecords.SampleInfo germline = record.getSamples(0);
+            final int numCounts = germline.getCountsCount();
+            final int size = Math.max(numCounts, MAX_GENOTYPES);
+            if (sortIndices.length < size) {
+                sortIndices = new int[size];
+                sortKeys = new int[size];
+            }
+            for (int i = 0; i < size; i++) {
+                sortIndices[i] = i < numCounts ? i : -1;
+                sortKeys[i] = i < numCounts ? germlineCount(germline.getCounts(i)) : 0;
+            }
+            if (sort) {
+                // stable insertion sort in decreasing order of germline count, as Collections.sort of GenotypeCount:
+                for (int i = 1; i < size; i++) {
+                    final int index = sortIndices[i];
+                    final int key = sortKeys[i];
+                    int j = i;
+                    while (j > 0 && sortKeys[j - 1] < key) {
+                        sortIndices[j] = sortIndices[j - 1];
+                        sortKeys[j] = sortKeys[j - 1];
+                        j--;
+                    }
+                    sortIndices[j] = index;
+                    sortKeys[j] = key;
+                }
+            }
+            System.arraycopy(sortIndices, 0, orders[s], 0, MAX_GENOTYPES);
+            orderReady[s] = true;
+        }
+        return orders[s];
+    }
+
+    /**
+     * Return the genotype counts of a sample, in the order of countOrder(sort). Counts are compared by germline count,
+     * and padding genotypes have sequence N, as done by AbstractFeatureMapper.
+     *
+     * @param sampleIndex index of the sample in the record.
+     * @param sort        whether genotypes are sorted by decreasing germline count.
+     * @return MAX_GENOTYPES counts. The list is owned by the context and must not be changed.
+     */
+    public ObjectArrayList<GenotypeCount> counts(int sampleIndex, boolean sort) {
+        final int slot = sampleIndex * 2 + (sort ? 1 : 0);
+        if (!countsReady[slot]) {
+            ObjectArrayList<GenotypeCount> list = counts[slot];
+            if (list == null) {
+                list = new ObjectArrayList<>(MAX_GENOTYPES);
+                for (int k = 0; k < MAX_GENOTYPES; k++) {
+                    list.add(new GenotypeCount());
+                }
+                counts[slot] = list;
+            }
+            final int[] order = countOrder(sort);
+            final BaseInformationRecords.SampleInfo germline = record.getSamples(0);
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            int total = 0;
+            for (int k = 0; k < MAX_GENOTYPES; k++) {
+                final int index = order[k];
+                final GenotypeCount count = list.get(k);
+                if (index >= 0) {
+                    final BaseInformationRecords.CountInfo genoInfo = sample.getCounts(index);
+                    count.set(genoInfo.getGenotypeCountForwardStrand(), genoInfo.getGenotypeCountReverseStrand(),
+                            genoInfo.getToSequence(), index, germlineCount(germline.getCounts(index)));
+                } else {
+                    count.set(0, 0, "N", AbstractFeatureMapper.N_GENOTYPE_INDEX, 0);
+                }
+                total += count.totalCount();
+            }
+            totalCounts[slot] = total;
+            countsReady[slot] = true;
+        }
+        return counts[slot];
+    }
+
+    /**
+     * Return the sum of the counts returned by counts(sampleIndex, sort).
+     */
+    public int totalCount(int sampleIndex, boolean sort) {
+        counts(sampleIndex, sort);
+        return totalCounts[sampleIndex * 2 + (sort ? 1 : 0)];
+    }
+
+    /**
+     * Return the number of distinct read indices, over both strands, of the reads that support a genotype.
+     *
+     * @param sampleIndex index of the sample in the record.
+     * @param countIndex  index of the genotype in the record.
+     */
+    public int distinctReadIndices(int sampleIndex, int countIndex) {
+        if (!distinctReadIndicesReady[sampleIndex]) {
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            final int numCounts = sample.getCountsCount();
+            int[] distinct = distinctReadIndices[sampleIndex];
+            if (distinct == null || distinct.length < numCounts) {
+                distinct = new int[numCounts];
+                distinctReadIndices[sampleIndex] = distinct;
+            }
+            for (int i = 0; i < numCounts; i++) {
+                final BaseInformationRecords.CountInfo countInfo = sample.getCounts(i);
+                readIndices.clear();
+                addReadIndices(countInfo.getReadIndicesForwardStrandList());
+                addReadIndices(countInfo.getReadIndicesReverseStrandList());
+                distinct[i] = readIndices.size();
+            }
+            distinctReadIndicesReady[sampleIndex] = true;
+        }
+        return distinctReadIndices[sampleIndex][countIndex];
+    }
+
+    private void addReadIndices(List<BaseInformationRecords.NumberWithFrequency> readIndexList) {
+        for (BaseInformationRecords.NumberWithFrequency readIndex : readIndexList) {
+            // expanding the list would repeat each index frequency times:
+            if (readIndex.getFrequency() > 0) {
+                readIndices.add(readIndex.getNumber());
+            }
+        }
+    }
+
+    private static int germlineCount(BaseInformationRecords.CountInfo countInfo) {
+        return countInfo.getGenotypeCountForwardStrand() + countInfo.getGenotypeCountReverseStrand();
+    }
+}
@@ -1,13 +1,18 @@
 package org.campagnelab.dl.somatic.mappers;
 
+import org.campagnelab.dl.somatic.storage.columnar.Column;
+import org.campagnelab.dl.somatic.storage.columnar.RequiresColumns;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Label: frequency of somatic mutation.
  * Created by fac2003 on 11/8/16.
  */
-public class SomaticFrequencyLabelMapper extends NoMasksLabelMapper<BaseInformationRecords.BaseInformation> {
+public class SomaticFrequencyLabelMapper extends NoMasksLabelMapper<BaseInformationRecords.BaseInformation> implements RequiresColumns {
     @Override
     public int numberOfLabels() {
         return 1;
@@ -32,5 +37,8 @@ public class SomaticFrequencyLabelMapper extends NoMasksLabelMapper<BaseInformat
         return record.getFrequencyOfMutation();
     }
 
-
+    @Override
+    public Set<Column> requiredColumns() {
+        return EnumSet.of(Column.MUTATED);
+    }
 }
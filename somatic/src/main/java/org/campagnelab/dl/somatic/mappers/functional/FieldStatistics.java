@@ -0,0 +1,158 @@
+package org.campagnelab.dl.somatic.mappers.functional;
+
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.Properties;
+
+/**
+ * Accumulates the statistics of the values of a NumberWithFrequency field: number of values, min, max, mean,
+ * variance and, optionally, the histogram of values. Each value is weighted by its frequency. Accumulators built
+ * over different records (in different threads, or over different files) can be merged, and merging gives the
+ * statistics of the union of the records.
+ *
+ * @author Fabien Campagne
+ */
+public class FieldStatistics implements ValueVisitor {
+    private long count;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private double mean;
+    /**
+     * Sum of squared differences to the mean (Welford).
+     */
+    private double m2;
+    private final Int2LongOpenHashMap histogram;
+
+    public FieldStatistics() {
+        this(false);
+    }
+
+    /**
+     * @param keepHistogram when true, count how many times each distinct value was observed.
+     */
+    public FieldStatistics(boolean keepHistogram) {
+        histogram = keepHistogram ? new Int2LongOpenHashMap() : null;
+    }
+
+    @Override
+    public void visit(int number, int frequency) {
+        if (frequency <= 0) {
+            return;
+        }
+        min = Math.min(min, number);
+        max = Math.max(max, number);
+        final long newCount = count + frequency;
+        final double delta = number - mean;
+        mean += delta * frequency / newCount;
+        m2 += delta * (number - mean) * frequency;
+        count = newCount;
+        if (histogram != null) {
+            histogram.addTo(number, frequency);
+        }
+    }
+
+    /**
+     * Add the statistics accumulated by another instance to this one.
+     *
+     * @param other statistics of other records.
+     * @return this instance.
+     */
+    public FieldStatistics merge(FieldStatistics other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            mean = other.mean;
+            m2 = other.m2;
+        } else {
+            final long newCount = count + other.count;
+            final double delta = other.mean - mean;
+            mean += delta * other.count / newCount;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / newCount);
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (histogram != null && other.histogram != null) {
+            for (Int2LongMap.Entry entry : other.histogram.int2LongEntrySet()) {
+                histogram.addTo(entry.getIntKey(), entry.getLongValue());
+            }
+        }
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Return the population variance of the values, or zero when no value was observed.
+     */
+    public double getVariance() {
+        return count == 0 ? 0 : m2 / count;
+    }
+
+    /**
+     * Return how many times a value was observed, or zero when the histogram is not kept.
+     */
+    public long getFrequency(int value) {
+        return histogram == null ? 0 : histogram.get(value);
+    }
+
+    /**
+     * Store the statistics under stats.name.*, where DensityMapper looks for min and max. Nothing is stored when
+     * no value was observed, so that mappers keep reporting the statistic as missing.
+     *
+     * @param properties properties of an sbi file.
+     * @param name       name of the field, e.g., baseQuality.forward.
+     */
+    public void store(Properties properties, String name) {
+        if (count == 0) {
+            return;
+        }
+        final String prefix = "stats." + name;
+        properties.setProperty(prefix + ".min", Integer.toString(min));
+        properties.setProperty(prefix + ".max", Integer.toString(max));
+        properties.setProperty(prefix + ".count", Long.toString(count));
+        properties.setProperty(prefix + ".mean", Double.toString(mean));
+        properties.setProperty(prefix + ".variance", Double.toString(getVariance()));
+        if (histogram != null) {
+            properties.setProperty(prefix + ".histogram", histogramAsString());
+        }
+    }
+
+    /**
+     * Return the histogram as value:frequency pairs, separated by commas, in increasing order of value.
+     */
+    private String histogramAsString() {
+        final int[] values = histogram.keySet().toIntArray();
+        IntArrays.quickSort(values);
+        StringBuilder builder = new StringBuilder();
+        for (int value : values) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(value).append(':').append(histogram.get(value));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d min=%d max=%d mean=%f variance=%f", count, min, max, mean, getVariance());
+    }
+}
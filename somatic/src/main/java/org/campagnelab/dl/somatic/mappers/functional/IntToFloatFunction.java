@@ -0,0 +1,9 @@
+package org.campagnelab.dl.somatic.mappers.functional;
+
+/**
+ * A function from int to float that does not box its argument or result.
+ */
+@FunctionalInterface
+public interface IntToFloatFunction {
+    float applyAsFloat(int value);
+}
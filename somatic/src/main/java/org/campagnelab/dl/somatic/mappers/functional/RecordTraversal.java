@@ -0,0 +1,12 @@
+package org.campagnelab.dl.somatic.mappers.functional;
+
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+/**
+ * Visits NumberWithFrequency values found in some samples and counts of a record. See TraversalHelper for
+ * traversals over the samples and counts that mappers typically need.
+ */
+@FunctionalInterface
+public interface RecordTraversal {
+    void forEachValue(BaseInformationRecords.BaseInformationOrBuilder record, ValueVisitor visitor);
+}
@@ -6,12 +6,223 @@ import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.IntPredicate;
 
 /**
+ * Traverse the NumberWithFrequency values of a record, across samples and counts. Visitors and reducers walk the
+ * protobuf repeated fields directly, and do not allocate. Methods that return lists are kept for mappers that need
+ * the values as NumberWithFrequency messages.
  * Created by fac2003 on 10/21/16.
  */
 public class TraversalHelper {
 
+    /**
+     * Selects all samples of a record.
+     */
+    public static final IntPredicate ALL_SAMPLES = sampleIndex -> true;
+
+    /**
+     * Visit the values of a field, in all counts of the selected samples.
+     *
+     * @param record         the record to traverse.
+     * @param sampleSelector selects samples by index.
+     * @param field          returns the values of a count (e.g., CountInfo::getQualityScoresForwardStrandList).
+     * @param visitor        receives each value and its frequency.
+     */
+    public static void forEachValue(BaseInformationRecords.BaseInformationOrBuilder record, IntPredicate sampleSelector,
+                                    Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field,
+                                    ValueVisitor visitor) {
+        final int numSamples = record.getSamplesCount();
+        for (int sampleIndex = 0; sampleIndex < numSamples; sampleIndex++) {
+            if (!sampleSelector.test(sampleIndex)) {
+                continue;
+            }
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            final int numCounts = sample.getCountsCount();
+            for (int countIndex = 0; countIndex < numCounts; countIndex++) {
+                forEachValue(field.apply(sample.getCounts(countIndex)), visitor);
+            }
+        }
+    }
+
+    /**
+     * Visit the values of a field, in one count of one sample.
+     */
+    public static void forEachValue(int sampleIndex, int genotypeIndex, BaseInformationRecords.BaseInformationOrBuilder record,
+                                    Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field,
+                                    ValueVisitor visitor) {
+        forEachValue(field.apply(record.getSamples(sampleIndex).getCounts(genotypeIndex)), visitor);
+    }
+
+    /**
+     * Visit a list of values.
+     */
+    public static void forEachValue(List<BaseInformationRecords.NumberWithFrequency> values, ValueVisitor visitor) {
+        final int size = values.size();
+        for (int i = 0; i < size; i++) {
+            final BaseInformationRecords.NumberWithFrequency value = values.get(i);
+            visitor.visit(value.getNumber(), value.getFrequency());
+        }
+    }
+
+    /**
+     * Sum of values, each counted as many times as its frequency, in all counts of the selected samples.
+     */
+    public static long sumOfValues(BaseInformationRecords.BaseInformationOrBuilder record, IntPredicate sampleSelector,
+                                   Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        long sum = 0;
+        final int numSamples = record.getSamplesCount();
+        for (int sampleIndex = 0; sampleIndex < numSamples; sampleIndex++) {
+            if (!sampleSelector.test(sampleIndex)) {
+                continue;
+            }
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            final int numCounts = sample.getCountsCount();
+            for (int countIndex = 0; countIndex < numCounts; countIndex++) {
+                final List<BaseInformationRecords.NumberWithFrequency> values = field.apply(sample.getCounts(countIndex));
+                final int size = values.size();
+                for (int i = 0; i < size; i++) {
+                    final BaseInformationRecords.NumberWithFrequency value = values.get(i);
+                    sum += (long) value.getNumber() * value.getFrequency();
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Number of values (sum of frequencies) in all counts of the selected samples.
+     */
+    public static long numberOfValues(BaseInformationRecords.BaseInformationOrBuilder record, IntPredicate sampleSelector,
+                                      Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        long count = 0;
+        final int numSamples = record.getSamplesCount();
+        for (int sampleIndex = 0; sampleIndex < numSamples; sampleIndex++) {
+            if (!sampleSelector.test(sampleIndex)) {
+                continue;
+            }
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            final int numCounts = sample.getCountsCount();
+            for (int countIndex = 0; countIndex < numCounts; countIndex++) {
+                final List<BaseInformationRecords.NumberWithFrequency> values = field.apply(sample.getCounts(countIndex));
+                final int size = values.size();
+                for (int i = 0; i < size; i++) {
+                    count += values.get(i).getFrequency();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Smallest value observed (with a frequency larger than zero) in all counts of the selected samples.
+     *
+     * @return the smallest value, or Integer.MAX_VALUE when no value was observed.
+     */
+    public static int minValue(BaseInformationRecords.BaseInformationOrBuilder record, IntPredicate sampleSelector,
+                               Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        int min = Integer.MAX_VALUE;
+        final int numSamples = record.getSamplesCount();
+        for (int sampleIndex = 0; sampleIndex < numSamples; sampleIndex++) {
+            if (!sampleSelector.test(sampleIndex)) {
+                continue;
+            }
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            final int numCounts = sample.getCountsCount();
+            for (int countIndex = 0; countIndex < numCounts; countIndex++) {
+                final List<BaseInformationRecords.NumberWithFrequency> values = field.apply(sample.getCounts(countIndex));
+                final int size = values.size();
+                for (int i = 0; i < size; i++) {
+                    final BaseInformationRecords.NumberWithFrequency value = values.get(i);
+                    if (value.getFrequency() > 0) {
+                        min = Math.min(min, value.getNumber());
+                    }
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Largest value observed (with a frequency larger than zero) in all counts of the selected samples.
+     *
+     * @return the largest value, or Integer.MIN_VALUE when no value was observed.
+     */
+    public static int maxValue(BaseInformationRecords.BaseInformationOrBuilder record, IntPredicate sampleSelector,
+                               Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        int max = Integer.MIN_VALUE;
+        final int numSamples = record.getSamplesCount();
+        for (int sampleIndex = 0; sampleIndex < numSamples; sampleIndex++) {
+            if (!sampleSelector.test(sampleIndex)) {
+                continue;
+            }
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            final int numCounts = sample.getCountsCount();
+            for (int countIndex = 0; countIndex < numCounts; countIndex++) {
+                final List<BaseInformationRecords.NumberWithFrequency> values = field.apply(sample.getCounts(countIndex));
+                final int size = values.size();
+                for (int i = 0; i < size; i++) {
+                    final BaseInformationRecords.NumberWithFrequency value = values.get(i);
+                    if (value.getFrequency() > 0) {
+                        max = Math.max(max, value.getNumber());
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Traversal of a field across all samples and counts of these samples.
+     */
+    public static RecordTraversal allSampleCounts(Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        return (record, visitor) -> forEachValue(record, ALL_SAMPLES, field, visitor);
+    }
+
+    /**
+     * Traversal of a field across all counts of one sample.
+     */
+    public static RecordTraversal sampleCounts(int sampleIndex,
+                                               Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        return (record, visitor) -> forEachValue(record, index -> index == sampleIndex, field, visitor);
+    }
+
+    /**
+     * Traversal of a field across the counts of N samples.
+     */
+    public static RecordTraversal nSampleCounts(Set<Integer> sampleIndices,
+                                                Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        return (record, visitor) -> forEachValue(record, sampleIndices::contains, field, visitor);
+    }
+
+    /**
+     * Traversal of a field in one count of one sample.
+     */
+    public static RecordTraversal oneSampleGenotype(int sampleIndex, int genotypeIndex,
+                                                    Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        return (record, visitor) -> forEachValue(sampleIndex, genotypeIndex, record, field, visitor);
+    }
+
+    /**
+     * Traversal of the forward strand field, then of the reverse strand field, in one count of one sample.
+     */
+    public static RecordTraversal oneSampleGenotypeBothStrands(int sampleIndex, int genotypeIndex,
+                                                               Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> forwardFunction,
+                                                               Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> reverseFunction) {
+        return (record, visitor) -> {
+            final BaseInformationRecords.CountInfo countInfo = record.getSamples(sampleIndex).getCounts(genotypeIndex);
+            forEachValue(forwardFunction.apply(countInfo), visitor);
+            forEachValue(reverseFunction.apply(countInfo), visitor);
+        };
+    }
+
+    /**
+     * Traversal of the values a function returns as a list.
+     */
+    public static RecordTraversal of(Function<BaseInformationRecords.BaseInformationOrBuilder, List<BaseInformationRecords.NumberWithFrequency>> recordToValues) {
+        return (record, visitor) -> forEachValue(recordToValues.apply(record), visitor);
+    }
+
     /**
      * Define a Function to reduce a record to a list of NumberWithFrequency found across all samples and counts of these samples.
      * @param baseInformationOrBuilder
@@ -20,16 +231,7 @@ public class TraversalHelper {
      */
     public static List<BaseInformationRecords.NumberWithFrequency> forAllSampleCounts(BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder,
                                                                                 Function<BaseInformationRecords.CountInfo,List<BaseInformationRecords.NumberWithFrequency>> function) {
-        List<BaseInformationRecords.NumberWithFrequency> list = new ObjectArrayList<>();
-
-        baseInformationOrBuilder.getSamplesList().forEach(
-                sampleInfo -> {
-                    sampleInfo.getCountsList().forEach(
-                            countInfo -> list.addAll(function.apply(countInfo))
-                    );
-                }
-        );
-        return list;
+        return collect(baseInformationOrBuilder, ALL_SAMPLES, function);
     }
 
     /**
@@ -40,16 +242,12 @@ public class TraversalHelper {
      */
     public static List<BaseInformationRecords.NumberWithFrequency> forSampleCounts(int sampleIndex, BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder,
                                                                                 Function<BaseInformationRecords.CountInfo,List<BaseInformationRecords.NumberWithFrequency>> function) {
-        List<BaseInformationRecords.NumberWithFrequency> list = new ObjectArrayList<>();
-
-        baseInformationOrBuilder.getSamples(sampleIndex).getCountsList().forEach(
-                            countInfo -> list.addAll(function.apply(countInfo))
-                    );
-        return list;
+        return collect(baseInformationOrBuilder, index -> index == sampleIndex, function);
     }
 
     /**
      * Define a Function to reduce a record to a list of NumberWithFrequency found across all samples and counts of these samples.
+     * The list of the count is returned as is: it must not be modified.
      * @param baseInformationOrBuilder
      * @param function
      * @return
@@ -58,9 +256,7 @@ public class TraversalHelper {
                                                                                         int genotypeIndex,
                                                                                         BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder,
                                                                                    Function<BaseInformationRecords.CountInfo,List<BaseInformationRecords.NumberWithFrequency>> function) {
-        List<BaseInformationRecords.NumberWithFrequency> list = new ObjectArrayList<>();
-        list.addAll(function.apply(baseInformationOrBuilder.getSamples(sampleIndex).getCounts(genotypeIndex)));
-        return list;
+        return function.apply(baseInformationOrBuilder.getSamples(sampleIndex).getCounts(genotypeIndex));
     }
 
     /**
@@ -76,10 +272,12 @@ public class TraversalHelper {
                                                                                         BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder,
                                                                                         Function<BaseInformationRecords.CountInfo,List<BaseInformationRecords.NumberWithFrequency>> forwardFunction,
                                                                                         Function<BaseInformationRecords.CountInfo,List<BaseInformationRecords.NumberWithFrequency>> reverseFunction) {
-        List<BaseInformationRecords.NumberWithFrequency> list = new ObjectArrayList<>();
         BaseInformationRecords.CountInfo countInfo = baseInformationOrBuilder.getSamples(sampleIndex).getCounts(genotypeIndex);
-        list.addAll(forwardFunction.apply(countInfo));
-        list.addAll(reverseFunction.apply(countInfo));
+        List<BaseInformationRecords.NumberWithFrequency> forward = forwardFunction.apply(countInfo);
+        List<BaseInformationRecords.NumberWithFrequency> reverse = reverseFunction.apply(countInfo);
+        List<BaseInformationRecords.NumberWithFrequency> list = new ObjectArrayList<>(forward.size() + reverse.size());
+        list.addAll(forward);
+        list.addAll(reverse);
         return list;
     }
 
@@ -92,15 +290,22 @@ public class TraversalHelper {
      */
     public static List<BaseInformationRecords.NumberWithFrequency> forNSampleCounts(Set<Integer> sampleIndices, BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder,
                                                                                       Function<BaseInformationRecords.CountInfo,List<BaseInformationRecords.NumberWithFrequency>> function) {
-        List<BaseInformationRecords.NumberWithFrequency> list = new ObjectArrayList<>();
+        return collect(baseInformationOrBuilder, sampleIndices::contains, function);
+    }
 
-        for (int i = 0; i < baseInformationOrBuilder.getSamplesList().size(); i++) {
-            if (!sampleIndices.contains(i)) {
+    private static List<BaseInformationRecords.NumberWithFrequency> collect(BaseInformationRecords.BaseInformationOrBuilder record,
+                                                                            IntPredicate sampleSelector,
+                                                                            Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> field) {
+        List<BaseInformationRecords.NumberWithFrequency> list = new ObjectArrayList<>();
+        final int numSamples = record.getSamplesCount();
+        for (int sampleIndex = 0; sampleIndex < numSamples; sampleIndex++) {
+            if (!sampleSelector.test(sampleIndex)) {
                 continue;
             }
-            BaseInformationRecords.SampleInfo si = baseInformationOrBuilder.getSamples(i);
-            for (BaseInformationRecords.CountInfo ci : si.getCountsList()){
-                list.addAll(function.apply(ci));
+            final BaseInformationRecords.SampleInfo sample = record.getSamples(sampleIndex);
+            final int numCounts = sample.getCountsCount();
+            for (int countIndex = 0; countIndex < numCounts; countIndex++) {
+                list.addAll(field.apply(sample.getCounts(countIndex)));
             }
         }
         return list;
@@ -0,0 +1,15 @@
+package org.campagnelab.dl.somatic.mappers.functional;
+
+/**
+ * Receives the values of a repeated NumberWithFrequency field, without boxing them or building a list.
+ */
+@FunctionalInterface
+public interface ValueVisitor {
+    /**
+     * Visit one value.
+     *
+     * @param number    the value.
+     * @param frequency number of times the value was observed.
+     */
+    void visit(int number, int frequency);
+}
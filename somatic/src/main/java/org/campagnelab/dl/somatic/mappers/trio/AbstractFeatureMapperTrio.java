@@ -1,6 +1,7 @@
 package org.campagnelab.dl.somatic.mappers.trio;
 
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.framework.mappers.FeatureContext;
 import org.campagnelab.dl.somatic.genotypes.GenotypeCountFactory;
 import org.campagnelab.dl.somatic.mappers.AbstractFeatureMapper;
 import org.campagnelab.dl.somatic.mappers.GenotypeCount;
@@ -65,13 +66,17 @@ public abstract class AbstractFeatureMapperTrio<T extends BaseInformationRecords
         return list;
     }
 
-    private BaseInformationRecords.BaseInformationOrBuilder recordCached[][] = new BaseInformationRecords.BaseInformationOrBuilder[3][2];
+    private FeatureContext contextCached[][] = new FeatureContext[3][2];
+    private int generationCached[][] = new int[3][2];
     private ObjectArrayList<? extends GenotypeCount> cachedResult[][] = new ObjectArrayList[3][2];
 
     protected ObjectArrayList<? extends GenotypeCount> getAllCounts(BaseInformationRecords.BaseInformationOrBuilder record,
                                                                     int sampleIndex, boolean sort) {
         ObjectArrayList<? extends GenotypeCount> cached = getCachedResult(sampleIndex, sort);
-        if (cached != null && record.equals(recordCached[sampleIndex][sort ? 1 : 0])) {
+        final FeatureContext context = FeatureContext.forRecord(record);
+        final int index2 = sort ? 1 : 0;
+        if (cached != null && contextCached[sampleIndex][index2] == context &&
+                generationCached[sampleIndex][index2] == context.generation()) {
             return cached;
         } else {
 
@@ -79,14 +84,15 @@ public abstract class AbstractFeatureMapperTrio<T extends BaseInformationRecords
 
             // a subclass is expected to override getGenotypeCountFactory to provide its own type for Genotype counts:
             cached = getAllCounts(record, getGenotypeCountFactory(), sampleIndex, sort);
-            putInCache(record, cached, sampleIndex, sort);
+            putInCache(context, cached, sampleIndex, sort);
             return cached;
         }
     }
 
-    private void putInCache(BaseInformationRecords.BaseInformationOrBuilder record, ObjectArrayList<? extends GenotypeCount> cached, int sampleIndex, boolean sort) {
+    private void putInCache(FeatureContext context, ObjectArrayList<? extends GenotypeCount> cached, int sampleIndex, boolean sort) {
         int index2 = sort ? 1 : 0;
-        recordCached[sampleIndex][index2] = record;
+        contextCached[sampleIndex][index2] = context;
+        generationCached[sampleIndex][index2] = context.generation();
         cachedResult[sampleIndex][index2] = cached;
     }
 
@@ -4,7 +4,7 @@ import org.campagnelab.dl.framework.mappers.ConfigurableFeatureMapper;
 import org.campagnelab.dl.somatic.mappers.DensityMapper;
 import org.campagnelab.dl.somatic.mappers.GenomicContextMapper;
 import org.campagnelab.dl.somatic.mappers.NamingConcatFeatureMapper;
-import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.somatic.mappers.MultiDensityMapper;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
@@ -59,20 +59,15 @@ public class FeatureMapperV25Trio extends NamingConcatFeatureMapper<BaseInformat
                 new FractionDifferences4Trio(0),
                 new FractionDifferences4Trio(1),
                 new MagnitudeFeatures2Trio(),
-                new DensityMapper("numVariationsInRead", 20, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)),
-                new DensityMapper("readMappingQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)),
-                new DensityMapper("readMappingQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)),
-                new DensityMapper("baseQuality.forward", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)),
-                new DensityMapper("baseQuality.reverse", 10, sbiProperties, baseInformationOrBuilder ->
-                        TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList)),
-                new DensityMapper("insertSizes", 10, sbiProperties, (BaseInformationRecords.BaseInformationOrBuilder baseInformationOrBuilder) -> {
-                    return TraversalHelper.forAllSampleCounts(baseInformationOrBuilder, BaseInformationRecords.CountInfo::getInsertSizesList);
-                },
-                        insertSize -> (float)Math.log10(insertSize))
+                // all densities are calculated in one traversal of the counts:
+                new MultiDensityMapper(sbiProperties)
+                        .add("numVariationsInRead", 20, BaseInformationRecords.CountInfo::getNumVariationsInReadsList)
+                        .add("readMappingQuality.forward", 10, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList)
+                        .add("readMappingQuality.reverse", 10, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList)
+                        .add("baseQuality.forward", 10, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)
+                        .add("baseQuality.reverse", 10, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList)
+                        .add("insertSizes", 10, BaseInformationRecords.CountInfo::getInsertSizesList,
+                                insertSize -> (float) Math.log10(insertSize))
 
         );
 
@@ -78,7 +78,7 @@ public class SomaticModel {
 
 
         ModelLoader modelLoader = new ModelLoader(modelPath);
-        Model model = modelLoader.loadModel(prefix);
+        Model model = modelLoader.loadModelForInference(prefix);
         domainDescriptor = DomainDescriptorLoader.load(modelPath);
         this.predictor = new ProtoPredictor(domainDescriptor, model, featureMapper);
         this.isTrio = featureMapper.getClass().getCanonicalName().contains("Trio");
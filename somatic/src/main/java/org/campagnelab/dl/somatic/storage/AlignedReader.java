@@ -0,0 +1,171 @@
+package org.campagnelab.dl.somatic.storage;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over N record files in lock-step, returning one record of each file for every genomic site present in
+ * all the files. Each file is decoded by its own threads (see ParallelRecordIterator), with a bounded number of
+ * chunks decoded ahead, so iteration runs at the speed of the slowest decoder rather than the sum of all decoders.
+ * <p>
+ * Files must be sorted by (referenceIndex, position). Records are aligned with a merge-join: when the files are not
+ * aligned, records of sites missing from some file are skipped and counted. When a site has several records in a
+ * file, they are paired in file order with the records of the same site in the other files.
+ *
+ * @author Fabien Campagne
+ */
+public class AlignedReader implements Closeable {
+    private static final int READ_AHEAD = 4;
+    private final String[] filenames;
+    private final RecordReader[] readers;
+    private final ParallelRecordIterator[] iterators;
+    private final BaseInformationRecords.BaseInformation[] records;
+    private final long[] keys;
+    private final long[] skipped;
+    private long numAligned;
+    private boolean loaded;
+    private boolean finished;
+
+    public AlignedReader(String... filenames) throws IOException {
+        this(1, filenames);
+    }
+
+    /**
+     * @param threadsPerInput number of threads decoding each file.
+     * @param filenames       files to align.
+     */
+    public AlignedReader(int threadsPerInput, String... filenames) throws IOException {
+        this.filenames = filenames;
+        final int n = filenames.length;
+        readers = new RecordReader[n];
+        iterators = new ParallelRecordIterator[n];
+        records = new BaseInformationRecords.BaseInformation[n];
+        keys = new long[n];
+        skipped = new long[n];
+        Arrays.fill(keys, Long.MIN_VALUE);
+        try {
+            for (int i = 0; i < n; i++) {
+                readers[i] = new RecordReader(filenames[i]);
+                iterators[i] = readers[i].parallelIterator(threadsPerInput, READ_AHEAD * threadsPerInput, true);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int numInputs() {
+        return filenames.length;
+    }
+
+    /**
+     * Return the number of records in an input file.
+     */
+    public long getTotalRecords(int input) {
+        return readers[input].getTotalRecords();
+    }
+
+    /**
+     * Advance all the files to the next site present in every file.
+     *
+     * @return true if such a site was found.
+     */
+    public boolean hasNext() {
+        if (loaded) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+        for (int i = 0; i < records.length; i++) {
+            if (!advance(i)) {
+                return false;
+            }
+        }
+        while (true) {
+            long max = Long.MIN_VALUE;
+            for (long key : keys) {
+                max = Math.max(max, key);
+            }
+            boolean aligned = true;
+            for (int i = 0; i < records.length; i++) {
+                while (keys[i] < max) {
+                    skipped[i]++;
+                    if (!advance(i)) {
+                        return false;
+                    }
+                }
+                aligned &= keys[i] == max;
+            }
+            if (aligned) {
+                numAligned++;
+                loaded = true;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return the aligned records, one per input file, in the order of the files given to the constructor. The array
+     * is reused: its content is valid until the next call to hasNext.
+     */
+    public BaseInformationRecords.BaseInformation[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        loaded = false;
+        return records;
+    }
+
+    /**
+     * Return the number of sites returned so far.
+     */
+    public long getNumAligned() {
+        return numAligned;
+    }
+
+    /**
+     * Return the number of records of an input skipped so far because other inputs had no record for their site.
+     */
+    public long getNumSkipped(int input) {
+        return skipped[input];
+    }
+
+    /**
+     * Return the number of records of an input that were not aligned with the other inputs. Exact once iteration
+     * has finished, including the records left after the shortest input was exhausted.
+     */
+    public long getNumUnmatched(int input) {
+        return getTotalRecords(input) - numAligned;
+    }
+
+    private boolean advance(int input) {
+        if (!iterators[input].hasNext()) {
+            finished = true;
+            return false;
+        }
+        records[input] = iterators[input].next();
+        final long key = SbiIndex.key(records[input].getReferenceIndex(), records[input].getPosition());
+        if (key < keys[input]) {
+            throw new IllegalStateException(String.format("Records of %s must be sorted by position, found %d:%d after a later site.",
+                    filenames[input], records[input].getReferenceIndex(), records[input].getPosition()));
+        }
+        keys[input] = key;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < readers.length; i++) {
+            if (iterators[i] != null) {
+                iterators[i].close();
+            }
+            IOUtils.closeQuietly(readers[i]);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.campagnelab.dl.somatic.storage;
+
+import org.apache.commons.io.IOUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the records of a range of chunks of an .sbi file. Splitting divides the range of chunks in
+ * two, so that each half is decoded by its own reader, in the thread that traverses it. Once traversal has started,
+ * a spliterator no longer splits. The spliterator is SIZED and SUBSIZED when the file has a position index, since
+ * the number of records of each chunk is then known.
+ * <p>
+ * A split closes its reader once it has been traversed. Readers of splits that are abandoned before the end (for
+ * instance by Stream.limit) are kept in a set shared by all the splits, so that their owner can close them (see
+ * RecordReader.stream).
+ *
+ * @author Fabien Campagne
+ */
+public class ChunkSpliterator implements Spliterator<BaseInformationRecords.BaseInformation> {
+    private final SbiChunks chunks;
+    private int from;
+    private final int to;
+    private final Set<RecordReader> openReaders;
+    private RecordReader reader;
+    private Iterator<BaseInformationRecords.BaseInformation> records;
+    private long consumed;
+
+    public ChunkSpliterator(SbiChunks chunks) {
+        this(chunks, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * @param chunks      chunks to traverse.
+     * @param openReaders set where the readers of splits are kept while they are open. Must be thread-safe.
+     */
+    public ChunkSpliterator(SbiChunks chunks, Set<RecordReader> openReaders) {
+        this(chunks, 0, chunks.size(), openReaders);
+    }
+
+    private ChunkSpliterator(SbiChunks chunks, int from, int to, Set<RecordReader> openReaders) {
+        this.chunks = chunks;
+        this.from = from;
+        this.to = to;
+        this.openReaders = openReaders;
+    }
+
+    /**
+     * Close the readers of splits that were not traversed to the end.
+     */
+    public static void closeReaders(Set<RecordReader> openReaders) {
+        for (RecordReader reader : openReaders) {
+            IOUtils.closeQuietly(reader);
+        }
+        openReaders.clear();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super BaseInformationRecords.BaseInformation> action) {
+        if (records == null) {
+            if (from >= to) {
+                return false;
+            }
+            open();
+        }
+        if (records.hasNext()) {
+            action.accept(records.next());
+            consumed++;
+            return true;
+        }
+        finish();
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super BaseInformationRecords.BaseInformation> action) {
+        if (records == null) {
+            if (from >= to) {
+                return;
+            }
+            open();
+        }
+        while (records.hasNext()) {
+            action.accept(records.next());
+            consumed++;
+        }
+        finish();
+    }
+
+    @Override
+    public Spliterator<BaseInformationRecords.BaseInformation> trySplit() {
+        if (records != null || to - from < 2) {
+            return null;
+        }
+        final int middle = (from + to) >>> 1;
+        ChunkSpliterator prefix = new ChunkSpliterator(chunks, from, middle, openReaders);
+        from = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (records == null && from >= to) {
+            return 0;
+        }
+        return chunks.numRecords(from, to) - consumed;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE | (chunks.isSized() ? SIZED | SUBSIZED : 0);
+    }
+
+    private void open() {
+        try {
+            reader = chunks.open(from, to);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read chunks " + from + "-" + (to - 1) + " of " + chunks.getFilename(), e);
+        }
+        openReaders.add(reader);
+        records = reader.iterator();
+    }
+
+    private void finish() {
+        if (reader != null) {
+            openReaders.remove(reader);
+            IOUtils.closeQuietly(reader);
+        }
+        reader = null;
+        records = null;
+        from = to;
+        consumed = 0;
+    }
+}
@@ -0,0 +1,460 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.logging.ProgressLogger;
+import it.unimi.dsi.util.XoRoShiRo128PlusRandom;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes the records of an .sbi file to several output files. Worker threads decode chunks in parallel and route
+ * each record with a Router, which may also drop records. Records a chunk sends to one destination are encoded by
+ * the worker, and the encoded chunks are appended to the output in input order. When all the records of a chunk go
+ * to the same destination, the compressed chunk is copied to the output without being encoded again. When the input
+ * has a position index and the router can tell the destination of a whole chunk from its range of positions, the
+ * chunk is copied (or dropped) without being decoded at all.
+ * <p>
+ * Random choices use one generator per chunk, seeded from the seed and the chunk index, so that outputs do not
+ * depend on the number of threads.
+ *
+ * @author Fabien Campagne
+ */
+public class ChunkSplitter {
+    static private Logger LOG = LoggerFactory.getLogger(ChunkSplitter.class);
+
+    /**
+     * Chooses the output of records.
+     */
+    public interface Router {
+        /**
+         * Destination of records, or of whole chunks, that are not written to any output.
+         */
+        int SKIP = -2;
+
+        /**
+         * Return the router used for the records of a chunk. Routers that keep state while routing the records of
+         * a chunk return a new instance, which is then used by a single thread.
+         *
+         * @param chunkIndex index of the chunk in the file.
+         */
+        default Router forChunk(int chunkIndex) {
+            return this;
+        }
+
+        /**
+         * Return the destination of all the records of a chunk, SKIP to drop the chunk, or -1 when records must be
+         * routed one by one.
+         *
+         * @param index      position index of the input file.
+         * @param chunkIndex index of the chunk in the file.
+         */
+        default int chunkDestination(SbiIndex index, int chunkIndex) {
+            return -1;
+        }
+
+        /**
+         * Return the index of the output a record goes to, or SKIP to drop the record.
+         *
+         * @param record the record.
+         * @param random generator for random choices, specific to the chunk of the record.
+         */
+        int destination(BaseInformationRecords.BaseInformation record, Random random);
+    }
+
+    /**
+     * Number of records written to each output, in total and per reference id.
+     */
+    public static class Result {
+        public final long[] numRecords;
+        public final Object2LongOpenHashMap<String>[] countsByReference;
+        public long numCopiedChunks;
+        public long numEncodedChunks;
+        public long numSkippedRecords;
+
+        Result(int numOutputs) {
+            numRecords = new long[numOutputs];
+            countsByReference = new Object2LongOpenHashMap[numOutputs];
+            for (int d = 0; d < numOutputs; d++) {
+                countsByReference[d] = new Object2LongOpenHashMap<>();
+            }
+        }
+
+        public long totalRecords() {
+            long total = 0;
+            for (long n : numRecords) {
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    private final String inputFilename;
+    private final String[] outputBasenames;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private long seed;
+    private long maxRecords = Long.MAX_VALUE;
+
+    /**
+     * @param inputFilename   the .sbi file to split.
+     * @param outputFilenames one output per destination, with or without the .sbi extension.
+     */
+    public ChunkSplitter(String inputFilename, String... outputFilenames) {
+        this.inputFilename = inputFilename;
+        this.outputBasenames = new String[outputFilenames.length];
+        for (int d = 0; d < outputFilenames.length; d++) {
+            outputBasenames[d] = SequenceBaseInformationReader.getBasename(outputFilenames[d]);
+        }
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Stop after this number of records was written. Records are then routed in input order and encoded by the
+     * thread that writes outputs.
+     */
+    public void setMaxRecords(long maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    public Result split(Router router) throws IOException {
+        final Properties properties = new Properties();
+        final long totalRecords;
+        try (RecordReader reader = new RecordReader(inputFilename)) {
+            properties.putAll(reader.getProperties());
+            totalRecords = reader.getTotalRecords();
+        }
+        final SbiIndex index = SbiIndex.load(inputFilename);
+        final SbiChunks chunks = SbiChunks.of(inputFilename, 0, Long.MAX_VALUE, totalRecords);
+        final boolean limited = maxRecords != Long.MAX_VALUE;
+        final int numOutputs = outputBasenames.length;
+        Result result = new Result(numOutputs);
+
+        ProgressLogger pgRead = new ProgressLogger(LOG);
+        pgRead.itemsName = "records";
+        pgRead.expectedUpdates = Math.min(totalRecords, maxRecords);
+        pgRead.displayFreeMemory = true;
+        pgRead.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        ArrayDeque<Future<ChunkResult>> pending = new ArrayDeque<>();
+        FileChannel input = null;
+        FileChannel[] outputs = new FileChannel[numOutputs];
+        RecordWriter[] writers = new RecordWriter[numOutputs];
+        int nextChunk = 0;
+        boolean complete = false;
+        try {
+            input = new RandomAccessFile(SbiIndex.sbiFilename(inputFilename), "r").getChannel();
+            for (int d = 0; d < numOutputs; d++) {
+                if (limited) {
+                    writers[d] = new RecordWriter(outputBasenames[d]);
+                } else {
+                    outputs[d] = new FileOutputStream(outputBasenames[d] + ".sbi").getChannel();
+                }
+            }
+            final int readAhead = numThreads * 2;
+            while (true) {
+                while (pending.size() < readAhead && nextChunk < chunks.size() && result.totalRecords() < maxRecords) {
+                    final int chunkIndex = nextChunk++;
+                    pending.add(executor.submit(() -> process(chunks, index, chunkIndex, router, !limited)));
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                final ChunkResult chunk = pending.poll().get();
+                final long before = result.totalRecords();
+                if (limited) {
+                    chunk.write(writers, result, maxRecords);
+                } else {
+                    chunk.append(input, chunks, outputs, result);
+                }
+                pgRead.update(result.totalRecords() - before);
+            }
+            if (!limited) {
+                // end each output with the empty chunk that ends the input:
+                final long trailerOffset = input.size() - SbiChunks.TRAILER_LENGTH;
+                for (int d = 0; d < numOutputs; d++) {
+                    input.transferTo(trailerOffset, SbiChunks.TRAILER_LENGTH, outputs[d]);
+                }
+            }
+            complete = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while splitting " + inputFilename, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to split " + inputFilename, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (!complete) {
+                // wait for workers still encoding, so that they do not create pieces after they are deleted:
+                awaitTermination(executor);
+                for (int chunkIndex = 0; chunkIndex < nextChunk; chunkIndex++) {
+                    for (int d = 0; d < numOutputs; d++) {
+                        FileUtils.deleteQuietly(new File(outputBasenames[d] + "-chunk-" + chunkIndex + ".sbi"));
+                        FileUtils.deleteQuietly(new File(outputBasenames[d] + "-chunk-" + chunkIndex + ".sbip"));
+                    }
+                }
+            }
+            IOUtils.closeQuietly(input);
+            for (int d = 0; d < numOutputs; d++) {
+                IOUtils.closeQuietly(outputs[d]);
+                if (writers[d] != null) {
+                    writers[d].close();
+                }
+            }
+        }
+        pgRead.stop();
+        if (!limited) {
+            for (int d = 0; d < numOutputs; d++) {
+                writeProperties(properties, outputBasenames[d], result.numRecords[d]);
+            }
+        }
+        LOG.info(String.format("Copied %d chunks, encoded %d chunks.", result.numCopiedChunks, result.numEncodedChunks));
+        return result;
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the properties of an output: those of the input, so that mappers configured with any output use the
+     * statistics of the whole dataset, with the number of records of the output.
+     */
+    private void writeProperties(Properties inputProperties, String basename, long numRecords) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(inputProperties);
+        properties.setProperty("numRecords", Long.toString(numRecords));
+        try (Writer writer = new FileWriter(basename + ".sbip")) {
+            properties.store(writer, new Date().toString());
+        }
+    }
+
+    private ChunkResult process(SbiChunks chunks, SbiIndex index, int chunkIndex, Router router,
+                                boolean encode) throws IOException {
+        final int numOutputs = outputBasenames.length;
+        ChunkResult result = new ChunkResult(numOutputs);
+        final Router chunkRouter = router.forChunk(chunkIndex);
+        if (encode && index != null) {
+            final int destination = chunkRouter.chunkDestination(index, chunkIndex);
+            if (destination == Router.SKIP) {
+                result.skipped = index.numRecords(chunkIndex);
+                return result;
+            }
+            if (destination >= 0) {
+                result.copyTo(chunkIndex, destination, index.numRecords(chunkIndex),
+                        index.referenceName(index.minReferenceIndex(chunkIndex)));
+                return result;
+            }
+        }
+        final Random random = new XoRoShiRo128PlusRandom(seed ^ (chunkIndex * 0x9E3779B97F4A7C15L));
+        try (RecordReader reader = chunks.open(chunkIndex, chunkIndex + 1)) {
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                result.add(record, chunkRouter.destination(record, random));
+            }
+        }
+        if (!encode || result.records.isEmpty()) {
+            return result;
+        }
+        final int destination = result.singleDestination();
+        if (destination >= 0) {
+            result.copyTo(chunkIndex, destination);
+        } else {
+            result.encode(chunkIndex);
+        }
+        return result;
+    }
+
+    /**
+     * Records of one input chunk, routed to their destinations.
+     */
+    private class ChunkResult {
+        final ObjectArrayList<BaseInformationRecords.BaseInformation> records = new ObjectArrayList<>();
+        final IntArrayList destinations = new IntArrayList();
+        final long[] counts;
+        final Object2LongOpenHashMap<String>[] countsByReference;
+        int copiedChunk = -1;
+        int copyDestination = -1;
+        long skipped;
+        String[] encoded;
+
+        ChunkResult(int numOutputs) {
+            counts = new long[numOutputs];
+            countsByReference = new Object2LongOpenHashMap[numOutputs];
+        }
+
+        void add(BaseInformationRecords.BaseInformation record, int destination) {
+            if (destination == Router.SKIP) {
+                skipped++;
+                return;
+            }
+            records.add(record);
+            destinations.add(destination);
+        }
+
+        int singleDestination() {
+            if (skipped > 0) {
+                return -1;
+            }
+            int destination = -1;
+            for (int d : destinations) {
+                if (destination != -1 && d != destination) {
+                    return -1;
+                }
+                destination = d;
+            }
+            return destination;
+        }
+
+        void copyTo(int chunkIndex, int destination, long numRecords, String referenceId) {
+            copiedChunk = chunkIndex;
+            copyDestination = destination;
+            count(destination, referenceId, numRecords);
+        }
+
+        void copyTo(int chunkIndex, int destination) {
+            copiedChunk = chunkIndex;
+            copyDestination = destination;
+            countRecords();
+            records.clear();
+        }
+
+        /**
+         * Encode the records sent to each destination into a temporary .sbi file.
+         */
+        void encode(int chunkIndex) throws IOException {
+            final int numOutputs = counts.length;
+            RecordWriter[] writers = new RecordWriter[numOutputs];
+            encoded = new String[numOutputs];
+            try {
+                for (int i = 0; i < records.size(); i++) {
+                    final int d = destinations.getInt(i);
+                    if (writers[d] == null) {
+                        encoded[d] = outputBasenames[d] + "-chunk-" + chunkIndex;
+                        writers[d] = new RecordWriter(encoded[d]);
+                    }
+                    writers[d].writeRecord(records.get(i));
+                }
+            } finally {
+                for (RecordWriter writer : writers) {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                }
+            }
+            countRecords();
+            records.clear();
+        }
+
+        private void countRecords() {
+            for (int i = 0; i < records.size(); i++) {
+                count(destinations.getInt(i), records.get(i).getReferenceId(), 1);
+            }
+        }
+
+        private void count(int destination, String referenceId, long n) {
+            counts[destination] += n;
+            if (countsByReference[destination] == null) {
+                countsByReference[destination] = new Object2LongOpenHashMap<>();
+            }
+            countsByReference[destination].addTo(referenceId == null ? "" : referenceId, n);
+        }
+
+        /**
+         * Append the chunk to the outputs, as copied compressed bytes or encoded chunks.
+         */
+        void append(FileChannel input, SbiChunks chunks, FileChannel[] outputs, Result result) throws IOException {
+            if (copyDestination >= 0) {
+                copy(input, chunks.start(copiedChunk), chunks.byteLength(copiedChunk), outputs[copyDestination]);
+                result.numCopiedChunks++;
+            } else if (encoded != null) {
+                for (int d = 0; d < encoded.length; d++) {
+                    if (encoded[d] == null) {
+                        continue;
+                    }
+                    try (FileChannel piece = new FileInputStream(encoded[d] + ".sbi").getChannel()) {
+                        copy(piece, 0, piece.size() - SbiChunks.TRAILER_LENGTH, outputs[d]);
+                    }
+                }
+                deleteEncoded();
+                result.numEncodedChunks++;
+            }
+            addCounts(result);
+        }
+
+        /**
+         * Write records in input order, until the maximum number of records is written.
+         */
+        void write(RecordWriter[] writers, Result result, long maxRecords) throws IOException {
+            for (int i = 0; i < records.size() && result.totalRecords() < maxRecords; i++) {
+                final int d = destinations.getInt(i);
+                final BaseInformationRecords.BaseInformation record = records.get(i);
+                writers[d].writeRecord(record);
+                result.numRecords[d]++;
+                result.countsByReference[d].addTo(record.getReferenceId(), 1);
+            }
+            result.numSkippedRecords += skipped;
+            result.numEncodedChunks++;
+        }
+
+        private void addCounts(Result result) {
+            result.numSkippedRecords += skipped;
+            for (int d = 0; d < counts.length; d++) {
+                result.numRecords[d] += counts[d];
+                if (countsByReference[d] != null) {
+                    for (Object2LongMap.Entry<String> entry : countsByReference[d].object2LongEntrySet()) {
+                        result.countsByReference[d].addTo(entry.getKey(), entry.getLongValue());
+                    }
+                }
+            }
+        }
+
+        void deleteEncoded() {
+            if (encoded == null) {
+                return;
+            }
+            for (String basename : encoded) {
+                if (basename != null) {
+                    FileUtils.deleteQuietly(new File(basename + ".sbi"));
+                    FileUtils.deleteQuietly(new File(basename + ".sbip"));
+                }
+            }
+            encoded = null;
+        }
+    }
+
+    private static void copy(FileChannel source, long position, long length, FileChannel destination) throws IOException {
+        final long end = position + length;
+        while (position < end) {
+            position += source.transferTo(position, end - position, destination);
+        }
+    }
+}
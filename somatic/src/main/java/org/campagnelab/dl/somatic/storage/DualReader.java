@@ -1,6 +1,5 @@
 package org.campagnelab.dl.somatic.storage;
 
-import org.apache.commons.compress.utils.IOUtils;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 
 import java.io.Closeable;
@@ -8,24 +7,22 @@ import java.io.IOException;
 import java.util.NoSuchElementException;
 
 /**
- * Helper class to iterate over two readers that are aligned by genomic position.
+ * Helper class to iterate over two readers that are aligned by genomic position. Both files are decoded in
+ * parallel, and records of sites missing from one file are skipped (see AlignedReader).
  * Created by fac2003 on 5/26/16.
  *
  * @author Fabien Campagne
  */
 public class DualReader implements Closeable {
     private final long totalRecords;
-    private RecordReader readerA;
-    private RecordReader readerB;
+    private final AlignedReader reader;
     private BaseInformationRecords.BaseInformation recordA;
     private BaseInformationRecords.BaseInformation recordB;
     private boolean loaded;
 
     public DualReader(String filename1, String filename2) throws IOException {
-        readerA = new RecordReader(filename1);
-        readerB = new RecordReader(filename2);
-        totalRecords=readerA.getTotalRecords();
-        assert readerA.getTotalRecords() == readerB.getTotalRecords() : " readers must have the same number of records";
+        reader = new AlignedReader(filename1, filename2);
+        totalRecords = reader.getTotalRecords(0);
     }
 
     public long getTotalRecords() {
@@ -36,16 +33,14 @@ public class DualReader implements Closeable {
 
         if (loaded) return true;
         else {
-            recordA = readerA.nextRecord();
-            recordB = readerB.nextRecord();
-            if (recordA==null || recordB==null) {
-                loaded=false;
+            if (!reader.hasNext()) {
                 return false;
             }
-            assert recordA.getReferenceIndex() == recordB.getReferenceIndex() : "reference indices must match between readers.";
-            assert recordA.getPosition() == recordB.getPosition() : "position must match between readers.";
+            BaseInformationRecords.BaseInformation[] records = reader.next();
+            recordA = records[0];
+            recordB = records[1];
         }
-        loaded = recordA != null && recordB != null;
+        loaded = true;
         return loaded;
     }
 
@@ -75,9 +70,15 @@ public class DualReader implements Closeable {
         }
     }
 
-    public void close() {
-        IOUtils.closeQuietly(readerA);
-        IOUtils.closeQuietly(readerB);
+    /**
+     * Return the number of records of the first (input=0) or second (input=1) reader that were not aligned with the
+     * other reader.
+     */
+    public long getNumUnmatched(int input) {
+        return reader.getNumUnmatched(input);
+    }
 
+    public void close() {
+        reader.close();
     }
 }
@@ -1,13 +1,12 @@
 package org.campagnelab.dl.somatic.storage;
 
 
-import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.campagnelab.dl.somatic.mappers.FeatureMapperV18;
 import org.campagnelab.dl.framework.mappers.FeatureNameMapper;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 
 import java.io.*;
-import java.util.Set;
 
 
 /**
@@ -21,6 +20,10 @@ import java.util.Set;
  * <p>
  * Also, this jar should be a resource for Goby to output variations as a parquet file using its AvroVariationOutputFormat
  * class.
+ * <p>
+ * Sites are identified by the long key of SbiIndex (reference index and position packed in a long), so records are
+ * matched without building strings. Chunks of the records file are decoded in parallel threads, and matching records
+ * are written in file order.
  * Created by rct66 on 5/17/16.
  *
  * @author rct66
@@ -30,14 +33,18 @@ public class FeatureCollector {
     String recordsPath;
     BufferedReader positionsReader;
     BufferedWriter outputWriter;
-    private Set<String> idSet = new ObjectOpenHashSet<String>();
+    private LongOpenHashSet idSet = new LongOpenHashSet();
+    private int numThreads = Runtime.getRuntime().availableProcessors();
 
     public static void main(String[] args) throws IOException {
-        if (args.length<1) {
-            System.err.println("usage: printer <positions-file> <parquet-file> <feature-output>");
+        if (args.length<3) {
+            System.err.println("usage: printer <positions-file> <parquet-file> <feature-output> [num-threads]");
             System.exit(1);
         }
         FeatureCollector featureCollector = new FeatureCollector(args[0], args[1], args[2]);
+        if (args.length > 3) {
+            featureCollector.numThreads = Integer.parseInt(args[3]);
+        }
         featureCollector.getIds();
         featureCollector.execute();
 
@@ -81,17 +88,28 @@ public class FeatureCollector {
     private void getIds() throws IOException{
         String line;
         while ((line = positionsReader.readLine()) != null) {
-            String[] fields = line.split("\t");
-            idSet.add(fields[0]+":"+fields[1]);
+            final int tab = line.indexOf('\t');
+            if (tab == -1) {
+                continue;
+            }
+            int end = line.indexOf('\t', tab + 1);
+            if (end == -1) {
+                end = line.length();
+            }
+            idSet.add(SbiIndex.key(Integer.parseInt(line.substring(0, tab)), Integer.parseInt(line.substring(tab + 1, end).trim())));
         }
+        positionsReader.close();
     }
 
     private void execute() throws IOException {
         outputWriter.write(getHeader());
-        RecordReader reader = new RecordReader(recordsPath);
-        for (BaseInformationRecords.BaseInformation base : reader) {
-            if (idSet.contains(base.getReferenceIndex()+":"+base.getPosition())) {
-                outputRecord(base);
+        try (RecordReader reader = new RecordReader(recordsPath);
+             ParallelRecordIterator records = reader.parallelIterator(numThreads, 2 * numThreads, true)) {
+            while (records.hasNext()) {
+                BaseInformationRecords.BaseInformation base = records.next();
+                if (idSet.contains(SbiIndex.key(base.getReferenceIndex(), base.getPosition()))) {
+                    outputRecord(base);
+                }
             }
         }
         outputWriter.close();
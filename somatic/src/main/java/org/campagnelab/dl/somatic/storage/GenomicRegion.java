@@ -0,0 +1,81 @@
+package org.campagnelab.dl.somatic.storage;
+
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+/**
+ * A range of positions on one reference sequence. Positions are those stored in the records, and both ends of the
+ * range are included.
+ *
+ * @author Fabien Campagne
+ */
+public class GenomicRegion {
+    public final int referenceIndex;
+    public final int start;
+    public final int end;
+
+    public GenomicRegion(int referenceIndex, int start, int end) {
+        if (start > end) {
+            throw new IllegalArgumentException(String.format("Region start (%d) must not be after its end (%d).", start, end));
+        }
+        this.referenceIndex = referenceIndex;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parse a region in the format chr, chr:start or chr:start-end. Chromosomes are found by name in the index, or
+     * can be given as a reference index.
+     *
+     * @param region text of the region, e.g., chr1:1000000-2000000
+     * @param index  index of the file that will be queried.
+     * @return the region.
+     */
+    public static GenomicRegion parse(String region, SbiIndex index) {
+        String chromosome = region;
+        int start = 0;
+        int end = Integer.MAX_VALUE;
+        final int colon = region.lastIndexOf(':');
+        if (colon >= 0) {
+            chromosome = region.substring(0, colon);
+            String range = region.substring(colon + 1).replace(",", "");
+            final int dash = range.indexOf('-');
+            try {
+                if (dash >= 0) {
+                    start = Integer.parseInt(range.substring(0, dash));
+                    end = Integer.parseInt(range.substring(dash + 1));
+                } else {
+                    start = Integer.parseInt(range);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Unable to parse positions in region " + region, e);
+            }
+        }
+        int referenceIndex = index.referenceIndex(chromosome);
+        if (referenceIndex == -1) {
+            try {
+                referenceIndex = Integer.parseInt(chromosome);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Chromosome " + chromosome + " was not found in the index.");
+            }
+        }
+        return new GenomicRegion(referenceIndex, start, end);
+    }
+
+    public boolean contains(BaseInformationRecords.BaseInformationOrBuilder record) {
+        final int position = record.getPosition();
+        return record.getReferenceIndex() == referenceIndex && position >= start && position <= end;
+    }
+
+    public long startKey() {
+        return SbiIndex.key(referenceIndex, start);
+    }
+
+    public long endKey() {
+        return SbiIndex.key(referenceIndex, end);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d:%d-%d", referenceIndex, start, end);
+    }
+}
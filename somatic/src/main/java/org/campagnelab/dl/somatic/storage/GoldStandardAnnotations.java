@@ -0,0 +1,338 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.io.FastBufferedReader;
+import it.unimi.dsi.io.LineIterator;
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gold-standard annotations of mutated sites, stored per chromosome as sorted arrays of positions and of allele
+ * indices, or, for BED files, as sorted arrays of the starts and ends of merged intervals. Records are annotated
+ * with a {@link Cursor}, which sweeps the positions (or interval ends) of a chromosome together with position-sorted
+ * records (a merge-join), and falls back to binary search when records go backwards. Lookups do not allocate.
+ * <p>
+ * Annotations are read from:
+ * <ul>
+ * <li>TSV files: chromosome, one-based position and optional mutated bases;</li>
+ * <li>VCF files (.vcf or .vcf.gz): CHROM, POS and ALT (used as mutated bases);</li>
+ * <li>BED files (.bed or .bed.gz): chromosome, zero-based start and exclusive end; every position of the
+ * interval is annotated, without mutated bases. Overlapping intervals are merged.</li>
+ * </ul>
+ * When a position is annotated several times, the last annotation wins. Lines with positions that are not
+ * non-negative integers are rejected.
+ *
+ * @author Fabien Campagne
+ */
+public class GoldStandardAnnotations {
+    private final Object2ObjectOpenHashMap<String, Chromosome> chromosomes = new Object2ObjectOpenHashMap<>();
+    private final ObjectArrayList<String> alleles = new ObjectArrayList<>();
+    private long size;
+
+    private static class Chromosome {
+        /**
+         * Annotated positions, or the starts of intervals when ends is not null.
+         */
+        int[] positions;
+        /**
+         * Exclusive ends of intervals (BED files), or null.
+         */
+        int[] ends;
+        /**
+         * Index in alleles of the mutated bases at each position, or -1 when the annotation has none. Null for
+         * intervals.
+         */
+        int[] alleles;
+        long numPositions;
+    }
+
+    /**
+     * Load annotations, in a format determined by the extension of the filename.
+     */
+    public static GoldStandardAnnotations load(String filename) throws IOException {
+        GoldStandardAnnotations annotations = new GoldStandardAnnotations();
+        final String name = filename.endsWith(".gz") ? filename.substring(0, filename.length() - 3) : filename;
+        final Format format = name.endsWith(".vcf") ? Format.VCF : name.endsWith(".bed") ? Format.BED : Format.TSV;
+        Object2ObjectOpenHashMap<String, IntArrayList[]> lists = new Object2ObjectOpenHashMap<>();
+        Object2IntOpenHashMap<String> alleleIndices = new Object2IntOpenHashMap<>();
+        alleleIndices.defaultReturnValue(-1);
+        InputStream input = new FileInputStream(filename);
+        if (filename.endsWith(".gz")) {
+            input = new GZIPInputStream(input);
+        }
+        try (FastBufferedReader reader = new FastBufferedReader(new InputStreamReader(input))) {
+            LineIterator lines = new LineIterator(reader);
+            int[] tabs = new int[5];
+            long lineNumber = 0;
+            while (lines.hasNext()) {
+                MutableString line = lines.next();
+                lineNumber++;
+                if (line.length() == 0 || line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
+                    continue;
+                }
+                final int numTokens = tokenize(line, tabs);
+                final String chromosome = line.substring(0, tabs[0]).toString();
+                IntArrayList[] perChromosome = lists.get(chromosome);
+                if (perChromosome == null) {
+                    perChromosome = new IntArrayList[]{new IntArrayList(), new IntArrayList()};
+                    lists.put(chromosome, perChromosome);
+                }
+                switch (format) {
+                    case BED: {
+                        // intervals are stored as (start, end) pairs:
+                        final int start = parseInt(line, tabs[0] + 1, tabs[1], filename, lineNumber);
+                        final int end = parseInt(line, tabs[1] + 1, tabs[2], filename, lineNumber);
+                        if (end > start) {
+                            perChromosome[0].add(start);
+                            perChromosome[1].add(end);
+                        }
+                        break;
+                    }
+                    case VCF:
+                        perChromosome[0].add(parseInt(line, tabs[0] + 1, tabs[1], filename, lineNumber) - 1);
+                        perChromosome[1].add(annotations.alleleIndex(alleleIndices,
+                                line.substring(tabs[3] + 1, tabs[4]).toString()));
+                        break;
+                    default:
+                        // convert to zero-based position used by goby/variationanalysis:
+                        perChromosome[0].add(parseInt(line, tabs[0] + 1, tabs[1], filename, lineNumber) - 1);
+                        perChromosome[1].add(numTokens >= 3 ?
+                                annotations.alleleIndex(alleleIndices, line.substring(tabs[1] + 1, tabs[2]).toString()) : -1);
+                }
+            }
+        }
+        // sort the chromosomes in parallel:
+        lists.object2ObjectEntrySet().parallelStream().forEach(entry -> {
+            Chromosome chromosome = format == Format.BED ?
+                    merge(entry.getValue()[0], entry.getValue()[1]) :
+                    sort(entry.getValue()[0], entry.getValue()[1]);
+            synchronized (annotations) {
+                annotations.chromosomes.put(entry.getKey(), chromosome);
+                annotations.size += chromosome.numPositions;
+            }
+        });
+        return annotations;
+    }
+
+    /**
+     * @return the number of annotated positions.
+     */
+    public long size() {
+        return size;
+    }
+
+    public int numChromosomes() {
+        return chromosomes.size();
+    }
+
+    /**
+     * Return a new cursor. Cursors are not thread-safe, use one per thread.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Finds annotations of successive records. Each lookup continues from the position of the previous one, so that
+     * a pass over position-sorted records costs a single sweep of the annotations of each chromosome.
+     */
+    public class Cursor {
+        private String referenceId;
+        private Chromosome chromosome;
+        private int index;
+        private int previousPosition = Integer.MIN_VALUE;
+        private long numBacktracks;
+
+        /**
+         * Find the annotation of a site.
+         *
+         * @return true when the site is annotated. Use getMutatedBases() to obtain its annotation.
+         */
+        public boolean find(String referenceId, int position) {
+            if (referenceId != this.referenceId && !referenceId.equals(this.referenceId)) {
+                this.referenceId = referenceId;
+                chromosome = chromosomes.get(referenceId);
+                index = 0;
+                previousPosition = Integer.MIN_VALUE;
+            }
+            if (chromosome == null) {
+                return false;
+            }
+            // intervals are searched by their exclusive end, for the first interval that ends after the position:
+            final boolean intervals = chromosome.ends != null;
+            final int[] keys = intervals ? chromosome.ends : chromosome.positions;
+            final int key = intervals ? position + 1 : position;
+            if (position < previousPosition) {
+                // records are not sorted, search the keys before the current one:
+                numBacktracks++;
+                index = lowerBound(keys, 0, index, key);
+            } else {
+                // gallop to the first key that is not before this one:
+                int step = 1;
+                while (index + step < keys.length && keys[index + step - 1] < key) {
+                    step <<= 1;
+                }
+                index = lowerBound(keys, index, Math.min(index + step, keys.length), key);
+            }
+            previousPosition = position;
+            if (index >= keys.length) {
+                return false;
+            }
+            return intervals ? chromosome.positions[index] <= position : keys[index] == position;
+        }
+
+        /**
+         * @return the mutated bases of the site last found, or null when its annotation has none.
+         */
+        public String getMutatedBases() {
+            if (chromosome.alleles == null) {
+                return null;
+            }
+            final int allele = chromosome.alleles[index];
+            return allele == -1 ? null : alleles.get(allele);
+        }
+
+        /**
+         * @return how many times lookups went back to a position before the previous one (unsorted input).
+         */
+        public long getNumBacktracks() {
+            return numBacktracks;
+        }
+    }
+
+    private int alleleIndex(Object2IntOpenHashMap<String> alleleIndices, String allele) {
+        int index = alleleIndices.getInt(allele);
+        if (index == -1) {
+            index = alleles.size();
+            alleles.add(allele);
+            alleleIndices.put(allele, index);
+        }
+        return index;
+    }
+
+    /**
+     * Sort annotations by position, keeping the last annotation of each position.
+     */
+    private static Chromosome sort(IntArrayList positionList, IntArrayList alleleList) {
+        final int n = positionList.size();
+        int[] positions = positionList.toIntArray();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        // sorts by position, then by line order:
+        IntArrays.radixSort(positions, order);
+        int size = 0;
+        int[] alleles = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (size > 0 && positions[size - 1] == positions[i]) {
+                size--;
+            }
+            positions[size] = positions[i];
+            alleles[size] = alleleList.getInt(order[i]);
+            size++;
+        }
+        Chromosome chromosome = new Chromosome();
+        chromosome.positions = IntArrays.trim(positions, size);
+        chromosome.alleles = IntArrays.trim(alleles, size);
+        chromosome.numPositions = size;
+        return chromosome;
+    }
+
+    /**
+     * Sort intervals by start and merge the ones that overlap or touch, so that both starts and ends are sorted.
+     */
+    private static Chromosome merge(IntArrayList startList, IntArrayList endList) {
+        final int n = startList.size();
+        int[] starts = startList.toIntArray();
+        int[] ends = endList.toIntArray();
+        IntArrays.radixSort(starts, ends);
+        int size = 0;
+        long numPositions = 0;
+        for (int i = 0; i < n; i++) {
+            if (size > 0 && starts[i] <= ends[size - 1]) {
+                ends[size - 1] = Math.max(ends[size - 1], ends[i]);
+            } else {
+                starts[size] = starts[i];
+                ends[size] = ends[i];
+                size++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            numPositions += ends[i] - starts[i];
+        }
+        Chromosome chromosome = new Chromosome();
+        chromosome.positions = IntArrays.trim(starts, size);
+        chromosome.ends = IntArrays.trim(ends, size);
+        chromosome.numPositions = numPositions;
+        return chromosome;
+    }
+
+    /**
+     * @return the index of the first element of positions[from, to) not smaller than position, or to.
+     */
+    private static int lowerBound(int[] positions, int from, int to, int position) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (positions[middle] < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Record the offsets of the first tabs of a line.
+     *
+     * @return the number of tokens found, at most tabs.length.
+     */
+    private static int tokenize(MutableString line, int[] tabs) {
+        int numTokens = 0;
+        int from = 0;
+        while (numTokens < tabs.length) {
+            final int tab = line.indexOf('\t', from);
+            tabs[numTokens++] = tab == -1 ? line.length() : tab;
+            if (tab == -1) {
+                break;
+            }
+            from = tab + 1;
+        }
+        for (int i = numTokens; i < tabs.length; i++) {
+            tabs[i] = line.length();
+        }
+        return numTokens;
+    }
+
+    private static int parseInt(MutableString line, int start, int end, String filename, long lineNumber) throws IOException {
+        if (start >= end) {
+            throw new IOException(String.format("Missing position at line %d of %s: %s", lineNumber, filename, line));
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9' || (value = value * 10 + (c - '0')) > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Invalid position at line %d of %s: %s", lineNumber, filename, line));
+            }
+        }
+        return (int) value;
+    }
+
+    private enum Format {
+        TSV,
+        VCF,
+        BED
+    }
+}
@@ -0,0 +1,185 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
+import org.campagnelab.goby.baseinfo.SequenceBaseInformationWriter;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes an .sbi file with chunks compressed in background threads. Records are collected into chunks on the
+ * caller's thread. Each full chunk is serialized and compressed by a worker, with Goby's writer, into a temporary
+ * file that also holds the statistics of its records. Compressed chunks are appended to the output in the order
+ * records were written, and the properties of all chunks are merged as QuickConcat does, so that the number of
+ * records and the statistics of the output are those of a file written by a single Goby writer.
+ * <p>
+ * Goby does not expose its chunk codec, so each compressed chunk is written to disk twice: once to its temporary
+ * piece, and once when it is copied to the output. The pieces are short-lived and usually read back from the page
+ * cache, but the writer does twice the write traffic of a single Goby writer. BenchmarkRecordWriter reports the
+ * end-to-end throughput of this writer relative to the single-threaded writer, to check that compression threads
+ * still pay for the extra copy.
+ *
+ * @author Fabien Campagne
+ */
+class ParallelChunkWriter implements Closeable {
+    private final String basename;
+    private final int numEntriesPerChunk;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+    private final ObjectArrayList<Properties> properties = new ObjectArrayList<>();
+    private final FileChannel output;
+    private ObjectArrayList<BaseInformationRecords.BaseInformation> chunk;
+    private int numChunks;
+    private Properties customProperties;
+    private boolean closed;
+
+    /**
+     * @param file               name of the output, with or without the .sbi extension.
+     * @param numEntriesPerChunk number of records per chunk.
+     * @param numThreads         number of threads compressing chunks. At most twice this number of chunks wait
+     *                           to be compressed or written, which bounds memory use.
+     */
+    ParallelChunkWriter(String file, int numEntriesPerChunk, int numThreads) throws IOException {
+        this.basename = SequenceBaseInformationReader.getBasename(file);
+        this.numEntriesPerChunk = Math.max(1, numEntriesPerChunk);
+        this.maxPending = 2 * Math.max(1, numThreads);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, numThreads), runnable -> {
+            Thread thread = new Thread(runnable, "sbi-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.output = new FileOutputStream(basename + ".sbi").getChannel();
+        this.chunk = new ObjectArrayList<>(this.numEntriesPerChunk);
+    }
+
+    void append(BaseInformationRecords.BaseInformation record) throws IOException {
+        chunk.add(record);
+        if (chunk.size() == numEntriesPerChunk) {
+            submit();
+        }
+    }
+
+    /**
+     * Set properties written to the .sbip file in addition to the number of records and statistics.
+     */
+    void setCustomProperties(Properties customProperties) {
+        this.customProperties = customProperties;
+    }
+
+    private void submit() throws IOException {
+        final ObjectArrayList<BaseInformationRecords.BaseInformation> records = chunk;
+        final String piece = basename + "-chunk-" + numChunks++;
+        chunk = new ObjectArrayList<>(numEntriesPerChunk);
+        pending.add(executor.submit(() -> encode(piece, records)));
+        while (pending.size() > maxPending) {
+            appendNext(true);
+        }
+    }
+
+    private static String encode(String piece, ObjectArrayList<BaseInformationRecords.BaseInformation> records) throws IOException {
+        SequenceBaseInformationWriter writer = new SequenceBaseInformationWriter(piece);
+        try {
+            writer.setNumEntriesPerChunk(records.size() + 1);
+            for (BaseInformationRecords.BaseInformation record : records) {
+                writer.appendEntry(record);
+            }
+        } finally {
+            writer.close();
+        }
+        return piece;
+    }
+
+    /**
+     * Append the oldest pending chunk to the output.
+     *
+     * @param stripTrailer whether to leave out the empty chunk that ends the piece. Only the last piece keeps it.
+     */
+    private void appendNext(boolean stripTrailer) throws IOException {
+        final String piece;
+        try {
+            piece = pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing chunks of " + basename, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to compress a chunk of " + basename, e.getCause());
+        }
+        try (FileChannel input = new FileInputStream(piece + ".sbi").getChannel()) {
+            long position = 0;
+            final long end = input.size() - (stripTrailer ? SbiChunks.TRAILER_LENGTH : 0);
+            while (position < end) {
+                position += input.transferTo(position, end - position, output);
+            }
+        }
+        properties.add(loadProperties(piece));
+        FileUtils.deleteQuietly(new File(piece + ".sbi"));
+        FileUtils.deleteQuietly(new File(piece + ".sbip"));
+    }
+
+    private void awaitTermination() {
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Properties loadProperties(String basename) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(basename + ".sbip")) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean complete = false;
+        try {
+            if (!chunk.isEmpty() || numChunks == 0) {
+                // an empty file still needs the trailer and properties of an empty piece:
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                appendNext(pending.size() > 1);
+            }
+            complete = true;
+        } finally {
+            executor.shutdownNow();
+            IOUtils.closeQuietly(output);
+            if (!complete) {
+                // wait for workers still encoding, so that they do not create pieces after they are deleted:
+                awaitTermination();
+                for (int i = 0; i < numChunks; i++) {
+                    FileUtils.deleteQuietly(new File(basename + "-chunk-" + i + ".sbi"));
+                    FileUtils.deleteQuietly(new File(basename + "-chunk-" + i + ".sbip"));
+                }
+            }
+        }
+        SequenceBaseInformationWriter.writeProperties(basename, properties);
+        if (customProperties != null) {
+            Properties merged = loadProperties(basename);
+            merged.putAll(customProperties);
+            try (Writer writer = new FileWriter(basename + ".sbip")) {
+                merged.store(writer, new Date().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Iterates over the records of an .sbi file while chunks are decoded in parallel threads. At most readAhead chunks
+ * are decoded ahead of the consumer, which bounds memory use. When ordered, records are returned in file order;
+ * otherwise chunks are returned as soon as they are decoded (records of a chunk stay in file order).
+ *
+ * @author Fabien Campagne
+ */
+public class ParallelRecordIterator implements Iterator<BaseInformationRecords.BaseInformation>, Closeable {
+    private final SbiChunks chunks;
+    private final int readAhead;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<ObjectArrayList<BaseInformationRecords.BaseInformation>>> pending = new ArrayDeque<>();
+    private final CompletionService<ObjectArrayList<BaseInformationRecords.BaseInformation>> completion;
+    private int inFlight;
+    private int nextChunk;
+    private Iterator<BaseInformationRecords.BaseInformation> current;
+
+    /**
+     * @param chunks     chunks of the file to read.
+     * @param numThreads number of decoding threads.
+     * @param readAhead  maximum number of chunks decoded and not yet consumed.
+     * @param ordered    whether records must be returned in file order.
+     */
+    public ParallelRecordIterator(SbiChunks chunks, int numThreads, int readAhead, boolean ordered) {
+        this.chunks = chunks;
+        this.readAhead = Math.max(1, readAhead);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, numThreads), runnable -> {
+            Thread thread = new Thread(runnable, "sbi-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.completion = ordered ? null : new ExecutorCompletionService<>(executor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            submit();
+            if (inFlight == 0) {
+                close();
+                return false;
+            }
+            current = take().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public BaseInformationRecords.BaseInformation next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void submit() {
+        while (inFlight < readAhead && nextChunk < chunks.size()) {
+            final int chunkIndex = nextChunk++;
+            Callable<ObjectArrayList<BaseInformationRecords.BaseInformation>> decode = () -> decode(chunkIndex);
+            if (completion != null) {
+                completion.submit(decode);
+            } else {
+                pending.add(executor.submit(decode));
+            }
+            inFlight++;
+        }
+    }
+
+    private ObjectArrayList<BaseInformationRecords.BaseInformation> decode(int chunkIndex) throws IOException {
+        ObjectArrayList<BaseInformationRecords.BaseInformation> records = new ObjectArrayList<>();
+        try (RecordReader reader = chunks.open(chunkIndex, chunkIndex + 1)) {
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private ObjectArrayList<BaseInformationRecords.BaseInformation> take() {
+        try {
+            Future<ObjectArrayList<BaseInformationRecords.BaseInformation>> future =
+                    completion != null ? completion.take() : pending.poll();
+            inFlight--;
+            return future.get();
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while decoding " + chunks.getFilename(), e);
+        } catch (ExecutionException e) {
+            close();
+            throw new RuntimeException("Unable to decode a chunk of " + chunks.getFilename(), e.getCause());
+        }
+    }
+
+    /**
+     * Stop the decoding threads. Needed only when iteration stops before the end of the file.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
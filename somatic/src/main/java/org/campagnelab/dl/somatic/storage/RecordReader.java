@@ -1,16 +1,22 @@
 package org.campagnelab.dl.somatic.storage;
 
+import it.unimi.dsi.io.FastBufferedInputStream;
 import org.apache.commons.io.IOUtils;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
 import org.campagnelab.goby.exception.GobyRuntimeException;
 
 import java.io.Closeable;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A reader for base information records stored in protobuf format.
@@ -20,10 +26,35 @@ import java.util.function.Consumer;
 public class RecordReader implements Closeable, RecordIterable, RecordReaderI<BaseInformationRecords.BaseInformation> {
 
     private SequenceBaseInformationReader reader;
+    private final String filepath;
+    private final long startOffset;
+    private final long endOffset;
+    private SbiChunks chunks;
+    private final Set<RecordReader> spliteratorReaders = ConcurrentHashMap.newKeySet();
 
     public RecordReader(String filepath) throws IOException {
 
         reader = new SequenceBaseInformationReader(filepath);
+        this.filepath = filepath;
+        this.startOffset = 0;
+        this.endOffset = Long.MAX_VALUE;
+    }
+
+    /**
+     * Read the records of the chunks that start in a range of bytes of the file. Use SbiIndex to find chunk
+     * offsets.
+     *
+     * @param filepath    name of the .sbi file, or its basename.
+     * @param startOffset offset of the first chunk to read.
+     * @param endOffset   reading stops at the first chunk that starts after this offset.
+     * @throws IOException
+     */
+    public RecordReader(String filepath, long startOffset, long endOffset) throws IOException {
+        reader = new SequenceBaseInformationReader(startOffset, endOffset,
+                new FastBufferedInputStream(new FileInputStream(SbiIndex.sbiFilename(filepath))));
+        this.filepath = filepath;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
     }
 
 
@@ -55,6 +86,7 @@ public class RecordReader implements Closeable, RecordIterable, RecordReaderI<Ba
      */
     @Override
     public void close() throws IOException {
+        ChunkSpliterator.closeReaders(spliteratorReaders);
         IOUtils.closeQuietly(reader);
     }
 
@@ -83,47 +115,64 @@ public class RecordReader implements Closeable, RecordIterable, RecordReaderI<Ba
     }
 
     /**
-     * Performs the given action for each element of the {@code Iterable}
-     * until all elements have been processed or the action throws an
-     * exception.  Unless otherwise specified by the implementing class,
-     * actions are performed in the order of iteration (if an iteration order
-     * is specified).  Exceptions thrown by the action are relayed to the
-     * caller.
+     * Performs the given action for each record not read yet, in file order.
      *
-     * @param action The action to be performed for each element
-     * @throws NullPointerException if the specified action is null
-     * @implSpec <p>The default implementation behaves as if:
-     * <pre>{@code
-     *     for (T t : this)
-     *         action.accept(t);
-     * }</pre>
-     * @since 1.8
+     * @param action The action to be performed for each record
      */
     @Override
     public void forEach(Consumer<? super BaseInformationRecords.BaseInformation> action) {
-
+        for (BaseInformationRecords.BaseInformation record : this) {
+            action.accept(record);
+        }
     }
 
     /**
-     * Creates a {@link Spliterator} over the elements described by this
-     * {@code Iterable}.
+     * Creates a {@link Spliterator} over all the records of the file (or of the range of chunks given to the
+     * constructor). The spliterator splits the file at chunk boundaries, and each split is decoded by its own
+     * reader, so that parallel streams decode chunks in parallel. The spliterator is independent of this reader's
+     * iterator, and is sized when the file has a position index (see IndexSbi). Readers of splits that are not
+     * traversed to the end are closed when this reader is closed.
      *
-     * @return a {@code Spliterator} over the elements described by this
-     * {@code Iterable}.
-     * @implSpec The default implementation creates an
-     * <em><a href="Spliterator.html#binding">early-binding</a></em>
-     * spliterator from the iterable's {@code Iterator}.  The spliterator
-     * inherits the <em>fail-fast</em> properties of the iterable's iterator.
-     * @implNote The default implementation should usually be overridden.  The
-     * spliterator returned by the default implementation has poor splitting
-     * capabilities, is unsized, and does not report any spliterator
-     * characteristics. Implementing classes can nearly always provide a
-     * better implementation.
-     * @since 1.8
+     * @return a {@code Spliterator} over the records of the file.
      */
     @Override
     public Spliterator<BaseInformationRecords.BaseInformation> spliterator() {
-        return null;
+        return new ChunkSpliterator(chunks(), spliteratorReaders);
+    }
+
+    /**
+     * Return a stream over the records of the file. Closing the stream closes the readers of chunks that were not
+     * traversed to the end (e.g., after limit), so streams that may stop early should be closed with
+     * try-with-resources.
+     *
+     * @param parallel whether chunks are decoded in parallel.
+     */
+    public Stream<BaseInformationRecords.BaseInformation> stream(boolean parallel) {
+        final Set<RecordReader> openReaders = ConcurrentHashMap.newKeySet();
+        return StreamSupport.stream(new ChunkSpliterator(chunks(), openReaders), parallel)
+                .onClose(() -> ChunkSpliterator.closeReaders(openReaders));
+    }
+
+    /**
+     * Return an iterator over the records of the file that decodes chunks in parallel threads.
+     *
+     * @param numThreads number of decoding threads.
+     * @param readAhead  maximum number of chunks decoded ahead of the consumer.
+     * @param ordered    when true, records are returned in file order.
+     */
+    public ParallelRecordIterator parallelIterator(int numThreads, int readAhead, boolean ordered) {
+        return new ParallelRecordIterator(chunks(), numThreads, readAhead, ordered);
+    }
+
+    private SbiChunks chunks() {
+        if (chunks == null) {
+            try {
+                chunks = SbiChunks.of(filepath, startOffset, endOffset, getTotalRecords());
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to find the chunks of " + filepath, e);
+            }
+        }
+        return chunks;
     }
 
 
@@ -7,15 +7,41 @@ import org.campagnelab.goby.baseinfo.SequenceBaseInformationWriter;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Properties;
 
 /**
- * A writer for base information records in protobuf format.
+ * A writer for base information records in protobuf format. By default, chunks are serialized and compressed on the
+ * thread that writes records. Writers created with a number of threads compress chunks in background threads
+ * instead (see ParallelChunkWriter), and produce the same records, record count and statistics.
  *
  * @author manuele simi
  */
 public class RecordWriter implements Closeable {
+    /**
+     * Number of records per chunk of writers that compress chunks in background threads, when not specified.
+     */
+    public static final int DEFAULT_ENTRIES_PER_CHUNK = 1000;
 
    private SequenceBaseInformationWriter writer;
+   private ParallelChunkWriter parallelWriter;
+
+    /**
+     * Create a writer that compresses chunks in background threads.
+     *
+     * @param file               name of the output file.
+     * @param numEntriesPerChunk number of records per chunk.
+     * @param numThreads         number of compression threads. Chunks are compressed on the caller's thread when
+     *                           zero.
+     */
+    public RecordWriter(String file, int numEntriesPerChunk, int numThreads) throws IOException {
+        if (numThreads > 0) {
+            parallelWriter = new ParallelChunkWriter(file, numEntriesPerChunk, numThreads);
+        } else {
+            writer = new SequenceBaseInformationWriter(file);
+            writer.setNumEntriesPerChunk(numEntriesPerChunk);
+        }
+    }
+
     public RecordWriter(String file, int numEntriesPerChunk) throws IOException {
         writer = new SequenceBaseInformationWriter(file);
         writer.setNumEntriesPerChunk(numEntriesPerChunk);
@@ -26,7 +52,22 @@ public class RecordWriter implements Closeable {
     }
 
     public void writeRecord(BaseInformationRecords.BaseInformation record) throws IOException {
-        writer.appendEntry(record);
+        if (parallelWriter != null) {
+            parallelWriter.append(record);
+        } else {
+            writer.appendEntry(record);
+        }
+    }
+
+    /**
+     * Set properties written to the .sbip file in addition to the number of records and statistics.
+     */
+    public void setCustomProperties(Properties customProperties) {
+        if (parallelWriter != null) {
+            parallelWriter.setCustomProperties(customProperties);
+        } else {
+            writer.setCustomProperties(customProperties);
+        }
     }
 
     public static String addParqExtension(String path) {
@@ -48,8 +89,11 @@ public class RecordWriter implements Closeable {
      */
     @Override
     public void close() throws IOException {
-
-        writer.close();
+        if (parallelWriter != null) {
+            parallelWriter.close();
+        } else {
+            writer.close();
+        }
     }
 
 }
@@ -0,0 +1,127 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.commons.io.IOUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the records of a genomic region from an indexed .sbi file. Only the chunks whose range of positions
+ * overlaps the region are decoded, and records outside of the region are skipped. Consecutive chunks are read
+ * with a single reader.
+ *
+ * @author Fabien Campagne
+ */
+public class RegionRecordReader implements RecordIterable, RecordReaderI<BaseInformationRecords.BaseInformation> {
+    private final String filename;
+    private final SbiIndex index;
+    private final GenomicRegion region;
+    private final IntArrayList chunks;
+    private RecordReader current;
+
+    /**
+     * @param filename name of an .sbi file indexed with IndexSbi.
+     * @param region   region in the format chr, chr:start or chr:start-end.
+     * @throws IOException when the file has no index, or its index is stale.
+     */
+    public RegionRecordReader(String filename, String region) throws IOException {
+        this.filename = filename;
+        this.index = SbiIndex.load(filename);
+        if (index == null) {
+            throw new IOException("No up to date index found for " + filename + ". Run IndexSbi (index-sbi.sh) to create it.");
+        }
+        this.region = GenomicRegion.parse(region, index);
+        this.chunks = index.chunksOverlapping(this.region);
+    }
+
+    public GenomicRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * Return the number of records in the chunks that overlap the region, an upper bound on the number of records
+     * returned by the iterator.
+     */
+    @Override
+    public long numRecords() {
+        long n = 0;
+        for (int chunkIndex : chunks) {
+            n += index.numRecords(chunkIndex);
+        }
+        return n;
+    }
+
+    @Override
+    public Iterator<BaseInformationRecords.BaseInformation> iterator() {
+        return new Iterator<BaseInformationRecords.BaseInformation>() {
+            // position in chunks of the next run of consecutive chunks to open:
+            int nextChunk = 0;
+            Iterator<BaseInformationRecords.BaseInformation> records;
+            BaseInformationRecords.BaseInformation next;
+            boolean done;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !done) {
+                    if (records != null && records.hasNext()) {
+                        BaseInformationRecords.BaseInformation record = records.next();
+                        if (region.contains(record)) {
+                            next = record;
+                        } else if (index.isSorted() && SbiIndex.key(record.getReferenceIndex(), record.getPosition()) > region.endKey()) {
+                            // records are in genome order, none of the following records can be in the region:
+                            done = true;
+                        }
+                    } else if (nextChunk < chunks.size()) {
+                        records = openRun();
+                    } else {
+                        done = true;
+                    }
+                }
+                if (done) {
+                    closeCurrent();
+                }
+                return next != null;
+            }
+
+            @Override
+            public BaseInformationRecords.BaseInformation next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                BaseInformationRecords.BaseInformation result = next;
+                next = null;
+                return result;
+            }
+
+            private Iterator<BaseInformationRecords.BaseInformation> openRun() {
+                final int first = chunks.getInt(nextChunk);
+                int last = first;
+                nextChunk++;
+                while (nextChunk < chunks.size() && chunks.getInt(nextChunk) == last + 1) {
+                    last++;
+                    nextChunk++;
+                }
+                closeCurrent();
+                try {
+                    current = new RecordReader(filename, index.chunkStart(first), index.chunkEnd(last));
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to read chunks " + first + "-" + last + " of " + filename, e);
+                }
+                return current.iterator();
+            }
+        };
+    }
+
+    private void closeCurrent() {
+        IOUtils.closeQuietly(current);
+        current = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeCurrent();
+    }
+}
@@ -0,0 +1,148 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.campagnelab.goby.compression.MessageChunksWriter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The compressed chunks of an .sbi file, each of which can be decoded independently of the others. Chunk offsets
+ * come from the position index when the file has one, and the number of records of each chunk is then known.
+ * Otherwise, offsets are found by reading chunk headers and only the total number of records is known.
+ *
+ * @author Fabien Campagne
+ */
+public class SbiChunks {
+    /**
+     * Length of the empty chunk that ends .sbi files.
+     */
+    public static final int TRAILER_LENGTH = MessageChunksWriter.DELIMITER_LENGTH + 1 + MessageChunksWriter.SIZE_OF_MESSAGE_LENGTH;
+
+    private final String filename;
+    private final LongArrayList offsets;
+    /**
+     * Offset at which readers of the last chunk must stop: the byte before the next chunk of the file, or the
+     * length of the file.
+     */
+    private final long limit;
+    private final long fileLength;
+    /**
+     * Number of records in each chunk, or null when the file has no index.
+     */
+    private final IntArrayList numRecords;
+    private final long totalRecords;
+
+    private SbiChunks(String filename, LongArrayList offsets, long limit, long fileLength, IntArrayList numRecords,
+                      long totalRecords) {
+        this.filename = filename;
+        this.offsets = offsets;
+        this.limit = limit;
+        this.fileLength = fileLength;
+        this.numRecords = numRecords;
+        this.totalRecords = totalRecords;
+    }
+
+    /**
+     * Find the chunks of an .sbi file that start in a range of bytes.
+     *
+     * @param filename     name of the .sbi file, or its basename.
+     * @param startOffset  chunks that start before this offset are excluded.
+     * @param endOffset    chunks that start after this offset are excluded.
+     * @param totalRecords number of records in the file, used to estimate the size of ranges of chunks when the
+     *                     file has no index.
+     */
+    public static SbiChunks of(String filename, long startOffset, long endOffset, long totalRecords) throws IOException {
+        final long fileLength = new File(SbiIndex.sbiFilename(filename)).length();
+        long limit = fileLength;
+        LongArrayList offsets = new LongArrayList();
+        SbiIndex index = SbiIndex.load(filename);
+        if (index != null) {
+            IntArrayList numRecords = new IntArrayList();
+            long total = 0;
+            for (int chunkIndex = 0; chunkIndex < index.numChunks(); chunkIndex++) {
+                final long offset = index.chunkStart(chunkIndex);
+                if (offset >= startOffset && offset <= endOffset) {
+                    offsets.add(offset);
+                    numRecords.add(index.numRecords(chunkIndex));
+                    total += index.numRecords(chunkIndex);
+                } else if (offset > endOffset) {
+                    limit = Math.min(limit, offset - 1);
+                }
+            }
+            return new SbiChunks(filename, offsets, limit, fileLength, numRecords, total);
+        }
+        final LongArrayList allOffsets = SbiIndex.chunkOffsets(filename);
+        for (long offset : allOffsets) {
+            if (offset >= startOffset && offset <= endOffset) {
+                offsets.add(offset);
+            } else if (offset > endOffset) {
+                limit = Math.min(limit, offset - 1);
+            }
+        }
+        if (offsets.size() < allOffsets.size() && !allOffsets.isEmpty()) {
+            // assume that records are evenly distributed over chunks:
+            totalRecords = totalRecords * offsets.size() / allOffsets.size();
+        }
+        return new SbiChunks(filename, offsets, limit, fileLength, null, totalRecords);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int size() {
+        return offsets.size();
+    }
+
+    /**
+     * True when the exact number of records of every chunk is known.
+     */
+    public boolean isSized() {
+        return numRecords != null;
+    }
+
+    public long start(int chunkIndex) {
+        return offsets.getLong(chunkIndex);
+    }
+
+    /**
+     * Return the end offset to give a reader so that it stops after this chunk.
+     */
+    public long end(int chunkIndex) {
+        return chunkIndex + 1 < offsets.size() ? offsets.getLong(chunkIndex + 1) - 1 : limit;
+    }
+
+    /**
+     * Return the number of bytes of a chunk, header included. Copying these bytes to another .sbi file copies the
+     * chunk.
+     */
+    public long byteLength(int chunkIndex) {
+        final long end = chunkIndex + 1 < offsets.size() ? offsets.getLong(chunkIndex + 1) :
+                limit == fileLength ? fileLength - TRAILER_LENGTH : limit + 1;
+        return end - offsets.getLong(chunkIndex);
+    }
+
+    /**
+     * Return the number of records in chunks [from, to). The number is exact when isSized(), and estimated
+     * otherwise.
+     */
+    public long numRecords(int from, int to) {
+        if (numRecords == null) {
+            return offsets.isEmpty() ? 0 : totalRecords * (to - from) / offsets.size();
+        }
+        long n = 0;
+        for (int chunkIndex = from; chunkIndex < to; chunkIndex++) {
+            n += numRecords.getInt(chunkIndex);
+        }
+        return n;
+    }
+
+    /**
+     * Open a reader over chunks [from, to).
+     */
+    public RecordReader open(int from, int to) throws IOException {
+        return new RecordReader(filename, start(from), end(to - 1));
+    }
+}
@@ -0,0 +1,375 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
+import org.campagnelab.goby.compression.MessageChunksWriter;
+
+import java.io.*;
+import java.util.stream.IntStream;
+
+/**
+ * A sidecar index of an .sbi file (basename.sbii). For each compressed chunk of the file, the index stores the byte
+ * offset of the chunk, the ordinal of its first record, its number of records, and the smallest and largest genomic
+ * positions (reference index, position) of its records. Readers use the index to decode only the chunks that may
+ * contain records of a region, or that contain a given record ordinal.
+ * <p>
+ * Build the index with the IndexSbi tool. An index is stale, and is ignored, when the size or the modification time
+ * of the .sbi file differ from those recorded when the index was built.
+ *
+ * @author Fabien Campagne
+ */
+public class SbiIndex {
+    private static final int VERSION = 2;
+    public static final String EXTENSION = ".sbii";
+
+    private long sbiLength;
+    private long sbiLastModified;
+    private boolean sorted = true;
+    private final LongArrayList offsets = new LongArrayList();
+    private final LongArrayList firstOrdinals = new LongArrayList();
+    private final IntArrayList numRecords = new IntArrayList();
+    private final LongArrayList minKeys = new LongArrayList();
+    private final LongArrayList maxKeys = new LongArrayList();
+    private final Int2ObjectMap<String> referenceNames = new Int2ObjectAVLTreeMap<>();
+    private final Object2IntOpenHashMap<String> referenceIndices = new Object2IntOpenHashMap<>();
+
+    private SbiIndex() {
+        referenceIndices.defaultReturnValue(-1);
+    }
+
+    /**
+     * Combine reference index and position in a key that sorts in genome order.
+     */
+    public static long key(int referenceIndex, int position) {
+        return ((long) referenceIndex << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    public static String sbiFilename(String filename) {
+        return SequenceBaseInformationReader.getBasename(filename) + ".sbi";
+    }
+
+    public static String indexFilename(String filename) {
+        return SequenceBaseInformationReader.getBasename(filename) + EXTENSION;
+    }
+
+    /**
+     * Find the byte offset of each chunk of an .sbi file. Only chunk headers are read: each chunk starts with a
+     * delimiter, a codec byte and the length of the compressed chunk, which is skipped. A chunk of length zero
+     * marks the end of the file.
+     *
+     * @param filename name of the .sbi file, or its basename.
+     * @return offsets of the chunks, in file order.
+     * @throws IOException if the file cannot be read or is not a chunked file.
+     */
+    public static LongArrayList chunkOffsets(String filename) throws IOException {
+        final int headerLength = MessageChunksWriter.DELIMITER_LENGTH + 1 + MessageChunksWriter.SIZE_OF_MESSAGE_LENGTH;
+        LongArrayList offsets = new LongArrayList();
+        try (RandomAccessFile file = new RandomAccessFile(sbiFilename(filename), "r")) {
+            final long length = file.length();
+            long position = 0;
+            while (position + headerLength <= length) {
+                file.seek(position);
+                for (int i = 0; i < MessageChunksWriter.DELIMITER_LENGTH; i++) {
+                    if (file.readUnsignedByte() != 0xFF) {
+                        throw new IOException(String.format("No chunk delimiter at offset %d of %s", position, filename));
+                    }
+                }
+                file.readByte();
+                final int size = file.readInt();
+                if (size == 0) {
+                    break;
+                }
+                offsets.add(position);
+                position += headerLength + size;
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Build the index of an .sbi file. Chunk offsets are found from chunk headers, then chunks are decoded to
+     * collect the positions of their records, in parallel when requested.
+     */
+    public static SbiIndex build(String filename, boolean parallel) throws IOException {
+        SbiIndex index = new SbiIndex();
+        final File sbiFile = new File(sbiFilename(filename));
+        index.sbiLength = sbiFile.length();
+        index.sbiLastModified = sbiFile.lastModified();
+        final LongArrayList offsets = chunkOffsets(filename);
+        final int numChunks = offsets.size();
+        final ChunkSummary[] summaries = new ChunkSummary[numChunks];
+        IntStream chunkIndices = IntStream.range(0, numChunks);
+        if (parallel) {
+            chunkIndices = chunkIndices.parallel();
+        }
+        chunkIndices.forEach(chunkIndex -> {
+            try (RecordReader reader = new RecordReader(filename, offsets.getLong(chunkIndex),
+                    index.chunkEnd(offsets, chunkIndex))) {
+                summaries[chunkIndex] = new ChunkSummary(reader);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to decode chunk " + chunkIndex + " of " + filename, e);
+            }
+        });
+        long ordinal = 0;
+        long previousMaxKey = Long.MIN_VALUE;
+        for (int chunkIndex = 0; chunkIndex < numChunks; chunkIndex++) {
+            final ChunkSummary summary = summaries[chunkIndex];
+            index.offsets.add(offsets.getLong(chunkIndex));
+            index.firstOrdinals.add(ordinal);
+            index.numRecords.add(summary.numRecords);
+            index.minKeys.add(summary.minKey);
+            index.maxKeys.add(summary.maxKey);
+            // empty chunks would break the order of chunk ranges that binary searches rely on:
+            index.sorted &= summary.sorted && summary.numRecords > 0 && summary.minKey >= previousMaxKey;
+            previousMaxKey = summary.maxKey;
+            ordinal += summary.numRecords;
+            for (Int2ObjectMap.Entry<String> entry : summary.referenceNames.int2ObjectEntrySet()) {
+                index.addReference(entry.getIntKey(), entry.getValue());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Load the index of an .sbi file.
+     *
+     * @return the index, or null when the file has no index or the index is stale.
+     */
+    public static SbiIndex load(String filename) throws IOException {
+        File indexFile = new File(indexFilename(filename));
+        if (!indexFile.exists()) {
+            return null;
+        }
+        SbiIndex index = new SbiIndex();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            final int version = input.readInt();
+            if (version != VERSION) {
+                return null;
+            }
+            index.sbiLength = input.readLong();
+            index.sbiLastModified = input.readLong();
+            index.sorted = input.readBoolean();
+            final int numReferences = input.readInt();
+            for (int i = 0; i < numReferences; i++) {
+                final int referenceIndex = input.readInt();
+                index.addReference(referenceIndex, input.readUTF());
+            }
+            final int numChunks = input.readInt();
+            for (int i = 0; i < numChunks; i++) {
+                index.offsets.add(input.readLong());
+                index.firstOrdinals.add(input.readLong());
+                index.numRecords.add(input.readInt());
+                index.minKeys.add(input.readLong());
+                index.maxKeys.add(input.readLong());
+            }
+        }
+        final File sbiFile = new File(sbiFilename(filename));
+        if (index.sbiLength != sbiFile.length() || index.sbiLastModified != sbiFile.lastModified()) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Write the index next to the .sbi file.
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFilename(filename))))) {
+            output.writeInt(VERSION);
+            output.writeLong(sbiLength);
+            output.writeLong(sbiLastModified);
+            output.writeBoolean(sorted);
+            output.writeInt(referenceNames.size());
+            for (Int2ObjectMap.Entry<String> entry : referenceNames.int2ObjectEntrySet()) {
+                output.writeInt(entry.getIntKey());
+                output.writeUTF(entry.getValue());
+            }
+            output.writeInt(numChunks());
+            for (int i = 0; i < numChunks(); i++) {
+                output.writeLong(offsets.getLong(i));
+                output.writeLong(firstOrdinals.getLong(i));
+                output.writeInt(numRecords.getInt(i));
+                output.writeLong(minKeys.getLong(i));
+                output.writeLong(maxKeys.getLong(i));
+            }
+        }
+    }
+
+    private void addReference(int referenceIndex, String name) {
+        referenceNames.put(referenceIndex, name);
+        referenceIndices.put(name, referenceIndex);
+    }
+
+    public int numChunks() {
+        return offsets.size();
+    }
+
+    public long numRecords() {
+        final int n = numChunks();
+        return n == 0 ? 0 : firstOrdinals.getLong(n - 1) + numRecords.getInt(n - 1);
+    }
+
+    /**
+     * True when records are in genome order over the whole file.
+     */
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public long chunkStart(int chunkIndex) {
+        return offsets.getLong(chunkIndex);
+    }
+
+    /**
+     * Return the end offset to give a reader so that it stops after this chunk: the byte before the next chunk, or
+     * the length of the file for the last chunk.
+     */
+    public long chunkEnd(int chunkIndex) {
+        return chunkEnd(offsets, chunkIndex);
+    }
+
+    private long chunkEnd(LongArrayList offsets, int chunkIndex) {
+        return chunkIndex + 1 < offsets.size() ? offsets.getLong(chunkIndex + 1) - 1 : sbiLength;
+    }
+
+    public long firstOrdinal(int chunkIndex) {
+        return firstOrdinals.getLong(chunkIndex);
+    }
+
+    public int numRecords(int chunkIndex) {
+        return numRecords.getInt(chunkIndex);
+    }
+
+    /**
+     * Return the index of the chunk that contains a record.
+     *
+     * @param ordinal index of the record in the file.
+     */
+    public int chunkOfRecord(long ordinal) {
+        int low = 0;
+        int high = numChunks() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (firstOrdinals.getLong(middle) <= ordinal) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Return the indices of the chunks whose range of positions overlaps a region, in file order.
+     */
+    public IntArrayList chunksOverlapping(GenomicRegion region) {
+        final long startKey = region.startKey();
+        final long endKey = region.endKey();
+        IntArrayList chunks = new IntArrayList();
+        int first = 0;
+        int last = numChunks() - 1;
+        if (sorted) {
+            // chunk ranges are ordered, find the first and last chunks that may overlap by binary search:
+            first = firstChunkEndingAtOrAfter(startKey);
+            last = lastChunkStartingAtOrBefore(endKey);
+        }
+        for (int chunkIndex = first; chunkIndex <= last; chunkIndex++) {
+            if (numRecords.getInt(chunkIndex) > 0 && minKeys.getLong(chunkIndex) <= endKey
+                    && maxKeys.getLong(chunkIndex) >= startKey) {
+                chunks.add(chunkIndex);
+            }
+        }
+        return chunks;
+    }
+
+    private int firstChunkEndingAtOrAfter(long key) {
+        int low = 0;
+        int high = numChunks();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (maxKeys.getLong(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int lastChunkStartingAtOrBefore(long key) {
+        int low = -1;
+        int high = numChunks() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (minKeys.getLong(middle) <= key) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Return the smallest reference index of the records of a chunk.
+     */
+    public int minReferenceIndex(int chunkIndex) {
+        return (int) (minKeys.getLong(chunkIndex) >> 32);
+    }
+
+    /**
+     * Return the largest reference index of the records of a chunk.
+     */
+    public int maxReferenceIndex(int chunkIndex) {
+        return (int) (maxKeys.getLong(chunkIndex) >> 32);
+    }
+
+    /**
+     * Return the reference id (chromosome name) of a reference index, or null when records have no reference id.
+     */
+    public String referenceName(int referenceIndex) {
+        return referenceNames.get(referenceIndex);
+    }
+
+    /**
+     * Return the reference index of a chromosome name, or -1 when no record of the file has this reference id.
+     */
+    public int referenceIndex(String referenceId) {
+        return referenceIndices.getInt(referenceId);
+    }
+
+    /**
+     * Positions of the records of one chunk.
+     */
+    private static class ChunkSummary {
+        int numRecords;
+        long minKey = Long.MAX_VALUE;
+        long maxKey = Long.MIN_VALUE;
+        boolean sorted = true;
+        final Int2ObjectMap<String> referenceNames = new Int2ObjectAVLTreeMap<>();
+
+        ChunkSummary(RecordReader reader) {
+            long previousKey = Long.MIN_VALUE;
+            int previousReferenceIndex = -1;
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                final int referenceIndex = record.getReferenceIndex();
+                final long key = key(referenceIndex, record.getPosition());
+                minKey = Math.min(minKey, key);
+                maxKey = Math.max(maxKey, key);
+                sorted &= key >= previousKey;
+                previousKey = key;
+                if (referenceIndex != previousReferenceIndex && record.hasReferenceId()) {
+                    referenceNames.put(referenceIndex, record.getReferenceId());
+                }
+                previousReferenceIndex = referenceIndex;
+                numRecords++;
+            }
+        }
+    }
+}
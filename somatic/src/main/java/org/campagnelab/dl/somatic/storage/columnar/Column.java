@@ -0,0 +1,524 @@
+package org.campagnelab.dl.somatic.storage.columnar;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.framework.domains.DomainDescriptor;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Columns of the columnar record format. Each column stores a group of fields that mappers usually read together.
+ * Fields of samples and counts are stored for every sample and every count of the record, in order. Fields that
+ * no column stores are kept in the REST column, as a protobuf message where the columnar fields are cleared.
+ * <p>
+ * Column identifiers are written in files and must not change.
+ *
+ * @author Fabien Campagne
+ */
+public enum Column {
+    /**
+     * Number of samples of each record, and number of counts of each sample. Always read.
+     */
+    STRUCTURE(0) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            out.writeVarInt(record.getSamplesCount());
+            for (BaseInformationRecords.SampleInfo sample : record.getSamplesList()) {
+                out.writeVarInt(sample.getCountsCount());
+            }
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            final int numSamples = in.readVarInt();
+            for (int i = 0; i < numSamples; i++) {
+                BaseInformationRecords.SampleInfo.Builder sample = builder.addSamplesBuilder();
+                final int numCounts = in.readVarInt();
+                for (int j = 0; j < numCounts; j++) {
+                    sample.addCountsBuilder();
+                }
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+        }
+    },
+    /**
+     * Reference index and position, position stored as the difference to the previous record.
+     */
+    POSITION(1) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            out.writeOptionalInt(record.hasReferenceIndex(), record.getReferenceIndex());
+            out.writeOptionalDelta(record.hasPosition(), record.getPosition());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            long encoded = in.readOptional();
+            if (encoded != 0) {
+                builder.setReferenceIndex(in.decodeInt(encoded));
+            }
+            encoded = in.readOptional();
+            if (encoded != 0) {
+                builder.setPosition(in.decodeDelta(encoded));
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            builder.clearReferenceIndex().clearPosition();
+        }
+    },
+    REFERENCE_ID(2) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            out.writeOptionalWord(record.hasReferenceId(), record.getReferenceId());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            final String word = in.readOptionalWord();
+            if (word != null) {
+                builder.setReferenceId(word);
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            builder.clearReferenceId();
+        }
+    },
+    REFERENCE_BASE(3) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            out.writeOptionalWord(record.hasReferenceBase(), record.getReferenceBase());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            final String word = in.readOptionalWord();
+            if (word != null) {
+                builder.setReferenceBase(word);
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            builder.clearReferenceBase();
+        }
+    },
+    GENOMIC_CONTEXT(4) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            out.writeOptionalString(record.hasGenomicSequenceContext(), record.getGenomicSequenceContext());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            final String string = in.readOptionalString();
+            if (string != null) {
+                builder.setGenomicSequenceContext(string);
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            builder.clearGenomicSequenceContext();
+        }
+    },
+    TRUE_GENOTYPE(5) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            out.writeOptionalWord(record.hasTrueGenotype(), record.getTrueGenotype());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            final String word = in.readOptionalWord();
+            if (word != null) {
+                builder.setTrueGenotype(word);
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            builder.clearTrueGenotype();
+        }
+    },
+    /**
+     * Somatic mutation labels: mutated, mutatedBase and frequencyOfMutation.
+     */
+    MUTATED(6) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            out.writeOptionalBoolean(record.hasMutated(), record.getMutated());
+            out.writeOptionalWord(record.hasMutatedBase(), record.getMutatedBase());
+            out.writeOptionalFloat(record.hasFrequencyOfMutation(), record.getFrequencyOfMutation());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            final long mutated = in.readOptional();
+            if (mutated != 0) {
+                builder.setMutated(mutated == 2);
+            }
+            final String mutatedBase = in.readOptionalWord();
+            if (mutatedBase != null) {
+                builder.setMutatedBase(mutatedBase);
+            }
+            final long frequency = in.readOptional();
+            if (frequency != 0) {
+                builder.setFrequencyOfMutation(in.decodeFloat(frequency));
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            builder.clearMutated().clearMutatedBase().clearFrequencyOfMutation();
+        }
+    },
+    IS_TUMOR(7) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            for (BaseInformationRecords.SampleInfo sample : record.getSamplesList()) {
+                out.writeOptionalBoolean(sample.hasIsTumor(), sample.getIsTumor());
+            }
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            for (BaseInformationRecords.SampleInfo.Builder sample : builder.getSamplesBuilderList()) {
+                final long isTumor = in.readOptional();
+                if (isTumor != 0) {
+                    sample.setIsTumor(isTumor == 2);
+                }
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            for (BaseInformationRecords.SampleInfo.Builder sample : builder.getSamplesBuilderList()) {
+                sample.clearIsTumor();
+            }
+        }
+    },
+    /**
+     * Genotype of each count: matchesReference, fromSequence, toSequence, isIndel and gobyGenotypeIndex.
+     */
+    COUNT_ALLELES(8) {
+        @Override
+        void encode(BaseInformationRecords.CountInfo count, ColumnBuffer out) {
+            out.writeOptionalBoolean(count.hasMatchesReference(), count.getMatchesReference());
+            out.writeOptionalWord(count.hasFromSequence(), count.getFromSequence());
+            out.writeOptionalWord(count.hasToSequence(), count.getToSequence());
+            out.writeOptionalBoolean(count.hasIsIndel(), count.getIsIndel());
+            out.writeOptionalInt(count.hasGobyGenotypeIndex(), count.getGobyGenotypeIndex());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.CountInfo.Builder count) {
+            final long matchesReference = in.readOptional();
+            if (matchesReference != 0) {
+                count.setMatchesReference(matchesReference == 2);
+            }
+            final String from = in.readOptionalWord();
+            if (from != null) {
+                count.setFromSequence(from);
+            }
+            final String to = in.readOptionalWord();
+            if (to != null) {
+                count.setToSequence(to);
+            }
+            final long isIndel = in.readOptional();
+            if (isIndel != 0) {
+                count.setIsIndel(isIndel == 2);
+            }
+            final long genotypeIndex = in.readOptional();
+            if (genotypeIndex != 0) {
+                count.setGobyGenotypeIndex(in.decodeInt(genotypeIndex));
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.CountInfo.Builder count) {
+            count.clearMatchesReference().clearFromSequence().clearToSequence().clearIsIndel().clearGobyGenotypeIndex();
+        }
+    },
+    /**
+     * Number of reads that support each count, on the forward and reverse strands.
+     */
+    COUNT_TOTALS(9) {
+        @Override
+        void encode(BaseInformationRecords.CountInfo count, ColumnBuffer out) {
+            out.writeOptionalInt(count.hasGenotypeCountForwardStrand(), count.getGenotypeCountForwardStrand());
+            out.writeOptionalInt(count.hasGenotypeCountReverseStrand(), count.getGenotypeCountReverseStrand());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.CountInfo.Builder count) {
+            final long forward = in.readOptional();
+            if (forward != 0) {
+                count.setGenotypeCountForwardStrand(in.decodeInt(forward));
+            }
+            final long reverse = in.readOptional();
+            if (reverse != 0) {
+                count.setGenotypeCountReverseStrand(in.decodeInt(reverse));
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.CountInfo.Builder count) {
+            count.clearGenotypeCountForwardStrand().clearGenotypeCountReverseStrand();
+        }
+    },
+    QUALITY_SCORES_FORWARD(10, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllQualityScoresForwardStrand,
+            BaseInformationRecords.CountInfo.Builder::clearQualityScoresForwardStrand),
+    QUALITY_SCORES_REVERSE(11, BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllQualityScoresReverseStrand,
+            BaseInformationRecords.CountInfo.Builder::clearQualityScoresReverseStrand),
+    READ_MAPPING_QUALITY_FORWARD(12, BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllReadMappingQualityForwardStrand,
+            BaseInformationRecords.CountInfo.Builder::clearReadMappingQualityForwardStrand),
+    READ_MAPPING_QUALITY_REVERSE(13, BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllReadMappingQualityReverseStrand,
+            BaseInformationRecords.CountInfo.Builder::clearReadMappingQualityReverseStrand),
+    NUM_VARIATIONS_IN_READS(14, BaseInformationRecords.CountInfo::getNumVariationsInReadsList,
+            BaseInformationRecords.CountInfo.Builder::addAllNumVariationsInReads,
+            BaseInformationRecords.CountInfo.Builder::clearNumVariationsInReads),
+    INSERT_SIZES(15, BaseInformationRecords.CountInfo::getInsertSizesList,
+            BaseInformationRecords.CountInfo.Builder::addAllInsertSizes,
+            BaseInformationRecords.CountInfo.Builder::clearInsertSizes),
+    TARGET_ALIGNED_LENGTHS(16, BaseInformationRecords.CountInfo::getTargetAlignedLengthsList,
+            BaseInformationRecords.CountInfo.Builder::addAllTargetAlignedLengths,
+            BaseInformationRecords.CountInfo.Builder::clearTargetAlignedLengths),
+    QUERY_ALIGNED_LENGTHS(17, BaseInformationRecords.CountInfo::getQueryAlignedLengthsList,
+            BaseInformationRecords.CountInfo.Builder::addAllQueryAlignedLengths,
+            BaseInformationRecords.CountInfo.Builder::clearQueryAlignedLengths),
+    QUERY_POSITIONS(18, BaseInformationRecords.CountInfo::getQueryPositionsList,
+            BaseInformationRecords.CountInfo.Builder::addAllQueryPositions,
+            BaseInformationRecords.CountInfo.Builder::clearQueryPositions),
+    PAIR_FLAGS(19, BaseInformationRecords.CountInfo::getPairFlagsList,
+            BaseInformationRecords.CountInfo.Builder::addAllPairFlags,
+            BaseInformationRecords.CountInfo.Builder::clearPairFlags),
+    DISTANCES_TO_READ_VARIATIONS_FORWARD(20, BaseInformationRecords.CountInfo::getDistancesToReadVariationsForwardStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllDistancesToReadVariationsForwardStrand,
+            BaseInformationRecords.CountInfo.Builder::clearDistancesToReadVariationsForwardStrand),
+    DISTANCES_TO_READ_VARIATIONS_REVERSE(21, BaseInformationRecords.CountInfo::getDistancesToReadVariationsReverseStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllDistancesToReadVariationsReverseStrand,
+            BaseInformationRecords.CountInfo.Builder::clearDistancesToReadVariationsReverseStrand),
+    DISTANCE_TO_START_OF_READ(22, BaseInformationRecords.CountInfo::getDistanceToStartOfReadList,
+            BaseInformationRecords.CountInfo.Builder::addAllDistanceToStartOfRead,
+            BaseInformationRecords.CountInfo.Builder::clearDistanceToStartOfRead),
+    DISTANCE_TO_END_OF_READ(23, BaseInformationRecords.CountInfo::getDistanceToEndOfReadList,
+            BaseInformationRecords.CountInfo.Builder::addAllDistanceToEndOfRead,
+            BaseInformationRecords.CountInfo.Builder::clearDistanceToEndOfRead),
+    READ_INDICES_FORWARD(24, BaseInformationRecords.CountInfo::getReadIndicesForwardStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllReadIndicesForwardStrand,
+            BaseInformationRecords.CountInfo.Builder::clearReadIndicesForwardStrand),
+    READ_INDICES_REVERSE(25, BaseInformationRecords.CountInfo::getReadIndicesReverseStrandList,
+            BaseInformationRecords.CountInfo.Builder::addAllReadIndicesReverseStrand,
+            BaseInformationRecords.CountInfo.Builder::clearReadIndicesReverseStrand),
+    /**
+     * Whether each count is an allele of the true genotype, a genotype label.
+     */
+    IS_CALLED(26) {
+        @Override
+        void encode(BaseInformationRecords.CountInfo count, ColumnBuffer out) {
+            out.writeOptionalBoolean(count.hasIsCalled(), count.getIsCalled());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.CountInfo.Builder count) {
+            final long isCalled = in.readOptional();
+            if (isCalled != 0) {
+                count.setIsCalled(isCalled == 2);
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.CountInfo.Builder count) {
+            count.clearIsCalled();
+        }
+    },
+    /**
+     * Whether each sample has a variant at the site, a genotype label.
+     */
+    IS_VARIANT(27) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            for (BaseInformationRecords.SampleInfo sample : record.getSamplesList()) {
+                out.writeOptionalBoolean(sample.hasIsVariant(), sample.getIsVariant());
+            }
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            for (BaseInformationRecords.SampleInfo.Builder sample : builder.getSamplesBuilderList()) {
+                final long isVariant = in.readOptional();
+                if (isVariant != 0) {
+                    sample.setIsVariant(isVariant == 2);
+                }
+            }
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+            for (BaseInformationRecords.SampleInfo.Builder sample : builder.getSamplesBuilderList()) {
+                sample.clearIsVariant();
+            }
+        }
+    },
+    /**
+     * All the fields that other columns do not store, such as formatted counts or predictions.
+     */
+    REST(127) {
+        @Override
+        void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+            BaseInformationRecords.BaseInformation.Builder builder = record.toBuilder();
+            for (Column column : values()) {
+                if (column != REST) {
+                    column.clear(builder);
+                }
+            }
+            out.writeMessage(builder.buildPartial());
+        }
+
+        @Override
+        void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+            in.mergeMessage(builder);
+        }
+
+        @Override
+        void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+        }
+    };
+
+    final byte id;
+    private final Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> list;
+    private final BiConsumer<BaseInformationRecords.CountInfo.Builder, Iterable<BaseInformationRecords.NumberWithFrequency>> addAll;
+    private final Consumer<BaseInformationRecords.CountInfo.Builder> clearList;
+
+    Column(int id) {
+        this(id, null, null, null);
+    }
+
+    /**
+     * A column that stores a list of NumberWithFrequency of each count.
+     */
+    Column(int id, Function<BaseInformationRecords.CountInfo, List<BaseInformationRecords.NumberWithFrequency>> list,
+           BiConsumer<BaseInformationRecords.CountInfo.Builder, Iterable<BaseInformationRecords.NumberWithFrequency>> addAll,
+           Consumer<BaseInformationRecords.CountInfo.Builder> clearList) {
+        this.id = (byte) id;
+        this.list = list;
+        this.addAll = addAll;
+        this.clearList = clearList;
+    }
+
+    /**
+     * Return the columns that a set of mappers need. Mappers that do not implement {@link RequiresColumns} may read
+     * any field, and require all the columns.
+     */
+    public static EnumSet<Column> requiredBy(Iterable<?> mappers) {
+        EnumSet<Column> columns = EnumSet.noneOf(Column.class);
+        for (Object mapper : mappers) {
+            if (!(mapper instanceof RequiresColumns)) {
+                return EnumSet.allOf(Column.class);
+            }
+            columns.addAll(((RequiresColumns) mapper).requiredColumns());
+        }
+        return columns;
+    }
+
+    /**
+     * Return the columns that feature mappers read: every column except the labels and the rest of the record.
+     */
+    public static EnumSet<Column> featureColumns() {
+        return EnumSet.complementOf(EnumSet.of(MUTATED, TRUE_GENOTYPE, IS_CALLED, IS_VARIANT, REST));
+    }
+
+    /**
+     * Return the columns that the feature and label mappers of a domain need.
+     */
+    public static EnumSet<Column> requiredBy(DomainDescriptor<?> domainDescriptor) {
+        List<Object> mappers = new ObjectArrayList<>();
+        mappers.addAll(Arrays.asList(domainDescriptor.featureMappers()));
+        mappers.addAll(Arrays.asList(domainDescriptor.labelMappers()));
+        return requiredBy(mappers);
+    }
+
+    static Column byId(byte id) {
+        for (Column column : values()) {
+            if (column.id == id) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Append the values of this column for a record. The default implementation writes the fields of each count.
+     */
+    void encode(BaseInformationRecords.BaseInformation record, ColumnBuffer out) {
+        for (BaseInformationRecords.SampleInfo sample : record.getSamplesList()) {
+            for (BaseInformationRecords.CountInfo count : sample.getCountsList()) {
+                encode(count, out);
+            }
+        }
+    }
+
+    /**
+     * Set the fields of this column in a record builder whose samples and counts already exist.
+     */
+    void decode(ColumnBuffer in, BaseInformationRecords.BaseInformation.Builder builder) {
+        for (BaseInformationRecords.SampleInfo.Builder sample : builder.getSamplesBuilderList()) {
+            for (BaseInformationRecords.CountInfo.Builder count : sample.getCountsBuilderList()) {
+                decode(in, count);
+            }
+        }
+    }
+
+    /**
+     * Clear the fields of this column in a record builder.
+     */
+    void clear(BaseInformationRecords.BaseInformation.Builder builder) {
+        for (BaseInformationRecords.SampleInfo.Builder sample : builder.getSamplesBuilderList()) {
+            for (BaseInformationRecords.CountInfo.Builder count : sample.getCountsBuilderList()) {
+                clear(count);
+            }
+        }
+    }
+
+    void encode(BaseInformationRecords.CountInfo count, ColumnBuffer out) {
+        List<BaseInformationRecords.NumberWithFrequency> values = list.apply(count);
+        out.writeVarInt(values.size());
+        for (BaseInformationRecords.NumberWithFrequency value : values) {
+            out.writeSignedVarInt(value.getNumber());
+            out.writeVarInt(value.getFrequency());
+        }
+    }
+
+    void decode(ColumnBuffer in, BaseInformationRecords.CountInfo.Builder count) {
+        final int size = in.readVarInt();
+        if (size == 0) {
+            return;
+        }
+        ObjectArrayList<BaseInformationRecords.NumberWithFrequency> values = new ObjectArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                    .setNumber(in.readSignedVarInt()).setFrequency(in.readVarInt()).build());
+        }
+        addAll.accept(count, values);
+    }
+
+    void clear(BaseInformationRecords.CountInfo.Builder count) {
+        clearList.accept(count);
+    }
+}
@@ -0,0 +1,249 @@
+package org.campagnelab.dl.somatic.storage.columnar;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import it.unimi.dsi.fastutil.bytes.ByteArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The values of one column for the records of a block. Values are written as variable-length integers. Optional
+ * values are shifted by one, so that zero means that the field is not set. Strings with few distinct values are
+ * replaced by their index in a dictionary that is stored at the start of the column.
+ *
+ * @author Fabien Campagne
+ */
+final class ColumnBuffer {
+    private byte[] bytes = new byte[1024];
+    private int length;
+    private int position;
+    /**
+     * Last value written or read with a delta method.
+     */
+    private long previous;
+    private final Object2IntOpenHashMap<String> dictionary = new Object2IntOpenHashMap<>();
+    private final ObjectArrayList<String> words = new ObjectArrayList<>();
+
+    ColumnBuffer() {
+        dictionary.defaultReturnValue(-1);
+    }
+
+    /**
+     * Parse a column serialized with {@link #serialize(ColumnBuffer)}.
+     */
+    ColumnBuffer(byte[] serialized, int length) {
+        this.bytes = serialized;
+        this.length = length;
+        final int numWords = readVarInt();
+        for (int i = 0; i < numWords; i++) {
+            final int wordLength = readVarInt();
+            words.add(new String(bytes, position, wordLength, StandardCharsets.UTF_8));
+            position += wordLength;
+        }
+    }
+
+    void clear() {
+        length = 0;
+        position = 0;
+        previous = 0;
+        dictionary.clear();
+        words.clear();
+    }
+
+    /**
+     * Write the dictionary and the values of this column to another buffer.
+     */
+    void serialize(ColumnBuffer destination) {
+        destination.clear();
+        destination.writeVarInt(words.size());
+        for (String word : words) {
+            final byte[] utf8 = word.getBytes(StandardCharsets.UTF_8);
+            destination.writeVarInt(utf8.length);
+            destination.write(utf8, 0, utf8.length);
+        }
+        destination.write(bytes, 0, length);
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    void writeSignedVarInt(int value) {
+        writeVarLong(zigZag(value));
+    }
+
+    int readSignedVarInt() {
+        return (int) unZigZag(readVarLong());
+    }
+
+    /**
+     * Write an optional int.
+     */
+    void writeOptionalInt(boolean present, int value) {
+        writeVarLong(present ? zigZag(value) + 1 : 0);
+    }
+
+    /**
+     * Write an optional int as the difference to the previous int written with this method, which is efficient for
+     * sorted values.
+     */
+    void writeOptionalDelta(boolean present, int value) {
+        if (present) {
+            writeVarLong(zigZag(value - previous) + 1);
+            previous = value;
+        } else {
+            writeVarLong(0);
+        }
+    }
+
+    /**
+     * Read an optional value written with writeOptionalInt or writeOptionalDelta.
+     *
+     * @return 0 when the value is not set, and the encoded value + 1 otherwise: use {@link #decodeInt(long)} or
+     * {@link #decodeDelta(long)} to obtain the value.
+     */
+    long readOptional() {
+        return readVarLong();
+    }
+
+    int decodeInt(long encoded) {
+        return (int) unZigZag(encoded - 1);
+    }
+
+    int decodeDelta(long encoded) {
+        previous += unZigZag(encoded - 1);
+        return (int) previous;
+    }
+
+    void writeOptionalBoolean(boolean present, boolean value) {
+        writeVarLong(present ? (value ? 2 : 1) : 0);
+    }
+
+    void writeOptionalFloat(boolean present, float value) {
+        writeVarLong(present ? (Float.floatToIntBits(value) & 0xFFFFFFFFL) + 1 : 0);
+    }
+
+    float decodeFloat(long encoded) {
+        return Float.intBitsToFloat((int) (encoded - 1));
+    }
+
+    /**
+     * Write an optional string as an index in the dictionary of this column.
+     */
+    void writeOptionalWord(boolean present, String word) {
+        if (!present) {
+            writeVarLong(0);
+            return;
+        }
+        int index = dictionary.getInt(word);
+        if (index == -1) {
+            index = words.size();
+            words.add(word);
+            dictionary.put(word, index);
+        }
+        writeVarLong(index + 1);
+    }
+
+    /**
+     * @return the string, or null when it is not set.
+     */
+    String readOptionalWord() {
+        final int index = readVarInt();
+        return index == 0 ? null : words.get(index - 1);
+    }
+
+    /**
+     * Write an optional string with many distinct values, in full.
+     */
+    void writeOptionalString(boolean present, String string) {
+        if (!present) {
+            writeVarLong(0);
+            return;
+        }
+        final byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(utf8.length + 1L);
+        write(utf8, 0, utf8.length);
+    }
+
+    String readOptionalString() {
+        final int encoded = readVarInt();
+        if (encoded == 0) {
+            return null;
+        }
+        final String string = new String(bytes, position, encoded - 1, StandardCharsets.UTF_8);
+        position += encoded - 1;
+        return string;
+    }
+
+    void writeMessage(Message message) {
+        final byte[] serialized = message.toByteArray();
+        writeVarInt(serialized.length);
+        write(serialized, 0, serialized.length);
+    }
+
+    /**
+     * Merge a message written with writeMessage into a builder.
+     */
+    void mergeMessage(Message.Builder builder) {
+        final int messageLength = readVarInt();
+        try {
+            builder.mergeFrom(bytes, position, messageLength);
+        } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException("Unable to parse the fields of a record not stored in columns.", e);
+        }
+        position += messageLength;
+    }
+
+    private void write(byte[] source, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(source, offset, bytes, length, count);
+        length += count;
+    }
+
+    private void ensureCapacity(int count) {
+        bytes = ByteArrays.grow(bytes, length + count);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,227 @@
+package org.campagnelab.dl.somatic.storage.columnar;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrays;
+import org.campagnelab.dl.somatic.storage.RecordIterable;
+import org.campagnelab.dl.somatic.storage.RecordReaderI;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads records from a columnar file (.sbc), decoding only the columns of a projection. Records are returned as
+ * protobuf messages where the fields of other columns are not set, so that existing mappers can read them. Records
+ * are built with buildPartial, since required fields may not be in the projection. Projected columns that a block
+ * does not contain, such as columns added after the file was written, are left unset.
+ * <p>
+ * Like RecordReader, this class supports one iteration at a time.
+ *
+ * @author Fabien Campagne
+ */
+public class ColumnarRecordReader implements RecordIterable, RecordReaderI<BaseInformationRecords.BaseInformation> {
+    private final String filename;
+    private final RandomAccessFile file;
+    private final long[] blockOffsets;
+    private final int[] blockSizes;
+    private final long totalRecords;
+    private final boolean[] projected = new boolean[Column.values().length];
+    private final Column[] decoded;
+    private final ColumnBuffer[] buffers = new ColumnBuffer[Column.values().length];
+    private final boolean[] present = new boolean[Column.values().length];
+    private final Inflater inflater = new Inflater();
+    private final byte[] header = new byte[9];
+    private byte[] compressed = new byte[1024];
+
+    /**
+     * Read all the fields of the records.
+     */
+    public ColumnarRecordReader(String filename) throws IOException {
+        this(filename, EnumSet.allOf(Column.class));
+    }
+
+    /**
+     * @param filename   name of a file written by ColumnarRecordWriter.
+     * @param projection columns to decode. Use {@link Column#requiredBy(Iterable)} to obtain the columns that
+     *                   mappers need.
+     */
+    public ColumnarRecordReader(String filename, Set<Column> projection) throws IOException {
+        this.filename = filename;
+        this.file = new RandomAccessFile(filename, "r");
+        if (file.length() < 16) {
+            throw new IOException("Not a columnar record file: " + filename);
+        }
+        file.seek(file.length() - 12);
+        final long footerOffset = file.readLong();
+        if (file.readInt() != ColumnarRecordWriter.MAGIC) {
+            throw new IOException("Not a columnar record file, or truncated: " + filename);
+        }
+        file.seek(footerOffset);
+        final int numBlocks = file.readInt();
+        blockOffsets = new long[numBlocks];
+        blockSizes = new int[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            blockOffsets[i] = file.readLong();
+            blockSizes[i] = file.readInt();
+        }
+        totalRecords = file.readLong();
+
+        // the rest of the record provides its samples and counts, otherwise STRUCTURE creates them:
+        EnumSet<Column> columns = EnumSet.noneOf(Column.class);
+        columns.addAll(projection);
+        columns.add(projection.contains(Column.REST) ? Column.REST : Column.STRUCTURE);
+        if (projection.contains(Column.REST)) {
+            columns.remove(Column.STRUCTURE);
+        }
+        for (Column column : columns) {
+            projected[column.ordinal()] = true;
+        }
+        // decode the column that creates samples and counts first:
+        decoded = new Column[columns.size()];
+        int i = 0;
+        decoded[i++] = projection.contains(Column.REST) ? Column.REST : Column.STRUCTURE;
+        for (Column column : columns) {
+            if (column != Column.REST && column != Column.STRUCTURE) {
+                decoded[i++] = column;
+            }
+        }
+    }
+
+    @Override
+    public long numRecords() {
+        return totalRecords;
+    }
+
+    public int numBlocks() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Return the properties stored with the records (basename.sbip), or empty properties if there are none.
+     */
+    public Properties getProperties() throws IOException {
+        Properties properties = new Properties();
+        File sbip = new File(getBasename(filename) + ".sbip");
+        if (sbip.exists()) {
+            try (Reader reader = new FileReader(sbip)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    public static String getBasename(String filename) {
+        return filename.endsWith(".sbc") ? filename.substring(0, filename.length() - 4) : filename;
+    }
+
+    @Override
+    public Iterator<BaseInformationRecords.BaseInformation> iterator() {
+        return new Iterator<BaseInformationRecords.BaseInformation>() {
+            int nextBlock;
+            BaseInformationRecords.BaseInformation[] records;
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                while (records == null || index == records.length) {
+                    if (nextBlock == blockOffsets.length) {
+                        return false;
+                    }
+                    try {
+                        records = readBlock(nextBlock++);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Unable to read block " + (nextBlock - 1) + " of " + filename, e);
+                    }
+                    index = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public BaseInformationRecords.BaseInformation next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return records[index++];
+            }
+        };
+    }
+
+    /**
+     * Read the projected columns of a block and assemble its records.
+     */
+    BaseInformationRecords.BaseInformation[] readBlock(int block) throws IOException {
+        file.seek(blockOffsets[block]);
+        final int numRecords = file.readInt();
+        final int numColumns = file.readInt();
+        long position = blockOffsets[block] + 8;
+        Arrays.fill(present, false);
+        for (int c = 0; c < numColumns; c++) {
+            file.readFully(header);
+            final Column column = Column.byId(header[0]);
+            final int compressedLength = readInt(header, 1);
+            final int length = readInt(header, 5);
+            position += header.length;
+            if (column != null && projected[column.ordinal()]) {
+                compressed = ByteArrays.grow(compressed, compressedLength);
+                file.readFully(compressed, 0, compressedLength);
+                buffers[column.ordinal()] = new ColumnBuffer(inflate(compressedLength, length), length);
+                present[column.ordinal()] = true;
+            } else {
+                file.seek(position + compressedLength);
+            }
+            position += compressedLength;
+        }
+        BaseInformationRecords.BaseInformation[] records = new BaseInformationRecords.BaseInformation[numRecords];
+        for (int i = 0; i < numRecords; i++) {
+            BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+            for (Column column : decoded) {
+                if (present[column.ordinal()]) {
+                    column.decode(buffers[column.ordinal()], builder);
+                }
+            }
+            records[i] = builder.buildPartial();
+        }
+        return records;
+    }
+
+    private byte[] inflate(int compressedLength, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int inflated = 0;
+            while (inflated < length) {
+                final int count = inflater.inflate(bytes, inflated, length - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Column data is truncated in " + filename);
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Column data is corrupted in " + filename, e);
+        }
+        return bytes;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+}
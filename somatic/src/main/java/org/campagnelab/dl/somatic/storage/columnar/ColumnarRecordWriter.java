@@ -0,0 +1,129 @@
+package org.campagnelab.dl.somatic.storage.columnar;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrays;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.io.FastBufferedOutputStream;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Writes records in the columnar format (.sbc). Records are grouped in blocks, and the values of each column of a
+ * block are stored together and compressed. Layout of a file:
+ * <pre>
+ * MAGIC
+ * block*: numRecords, numColumns, column*: (id, compressed length, uncompressed length, deflated bytes)
+ * footer: numBlocks, (block offset, block numRecords)*, totalRecords, footer offset, MAGIC
+ * </pre>
+ *
+ * @author Fabien Campagne
+ */
+public class ColumnarRecordWriter implements Closeable {
+    static final int MAGIC = 0x53424331;
+    public static final int DEFAULT_BLOCK_SIZE = 10000;
+
+    private final DataOutputStream output;
+    private final int blockSize;
+    private final Column[] columns = Column.values();
+    private final ColumnBuffer[] buffers = new ColumnBuffer[columns.length];
+    private final ColumnBuffer serialized = new ColumnBuffer();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressed = new byte[1024];
+    private final LongArrayList blockOffsets = new LongArrayList();
+    private final IntArrayList blockSizes = new IntArrayList();
+    private long offset;
+    private int numInBlock;
+    private long totalRecords;
+    private boolean closed;
+
+    public ColumnarRecordWriter(String filename) throws IOException {
+        this(filename, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param filename  name of the file to write, usually with the .sbc extension.
+     * @param blockSize number of records per block. Readers decode a block at a time.
+     */
+    public ColumnarRecordWriter(String filename, int blockSize) throws IOException {
+        this.output = new DataOutputStream(new FastBufferedOutputStream(new FileOutputStream(filename)));
+        this.blockSize = blockSize;
+        for (int i = 0; i < columns.length; i++) {
+            buffers[i] = new ColumnBuffer();
+        }
+        output.writeInt(MAGIC);
+        offset = 4;
+    }
+
+    public void writeRecord(BaseInformationRecords.BaseInformation record) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].encode(record, buffers[i]);
+        }
+        totalRecords++;
+        if (++numInBlock == blockSize) {
+            flushBlock();
+        }
+    }
+
+    public long getTotalRecords() {
+        return totalRecords;
+    }
+
+    private void flushBlock() throws IOException {
+        if (numInBlock == 0) {
+            return;
+        }
+        blockOffsets.add(offset);
+        blockSizes.add(numInBlock);
+        output.writeInt(numInBlock);
+        output.writeInt(columns.length);
+        offset += 8;
+        for (int i = 0; i < columns.length; i++) {
+            buffers[i].serialize(serialized);
+            final int compressedLength = compress(serialized.getBytes(), serialized.getLength());
+            output.writeByte(columns[i].id);
+            output.writeInt(compressedLength);
+            output.writeInt(serialized.getLength());
+            output.write(compressed, 0, compressedLength);
+            offset += 9 + compressedLength;
+            buffers[i].clear();
+        }
+        numInBlock = 0;
+    }
+
+    private int compress(byte[] bytes, int length) {
+        deflater.reset();
+        deflater.setInput(bytes, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            compressed = ByteArrays.grow(compressed, compressedLength + 1024);
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        return compressedLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushBlock();
+        final long footerOffset = offset;
+        output.writeInt(blockOffsets.size());
+        for (int i = 0; i < blockOffsets.size(); i++) {
+            output.writeLong(blockOffsets.getLong(i));
+            output.writeInt(blockSizes.getInt(i));
+        }
+        output.writeLong(totalRecords);
+        output.writeLong(footerOffset);
+        output.writeInt(MAGIC);
+        output.close();
+        deflater.end();
+    }
+}
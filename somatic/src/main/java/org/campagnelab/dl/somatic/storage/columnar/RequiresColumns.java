@@ -0,0 +1,16 @@
+package org.campagnelab.dl.somatic.storage.columnar;
+
+import java.util.Set;
+
+/**
+ * Implemented by mappers that read only some fields of records. When all the mappers of a domain implement this
+ * interface, columnar files are read with a projection, and fields that no mapper needs are not decoded.
+ *
+ * @author Fabien Campagne
+ */
+public interface RequiresColumns {
+    /**
+     * @return the columns that hold every field this mapper reads.
+     */
+    Set<Column> requiredColumns();
+}
@@ -0,0 +1,134 @@
+package org.campagnelab.dl.somatic.tools;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.framework.mappers.ConcatFeatureMapper;
+import org.campagnelab.dl.framework.mappers.FeatureMapper;
+import org.campagnelab.dl.framework.mappers.OneHotBaseFeatureMapper;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.somatic.mappers.GenomicContextEncoder;
+import org.campagnelab.dl.somatic.mappers.GenomicContextMapper;
+import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Micro-benchmark for the genomic context encoder. Records are loaded in memory, then mapped with a chain of
+ * one-hot mappers over trimmed contexts (one OneHotBaseFeatureMapper per base of each window, as GenomicContextMapper
+ * was previously built) and with a single GenomicContextEncoder that encodes all window sizes. Features produced by
+ * both are checked to be identical.
+ *
+ * @author Fabien Campagne
+ */
+public class BenchmarkGenomicContext extends AbstractTool<BenchmarkGenomicContextArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(BenchmarkGenomicContext.class);
+
+    public static void main(String[] args) {
+
+        BenchmarkGenomicContext tool = new BenchmarkGenomicContext();
+        tool.parseArguments(args, "BenchmarkGenomicContext", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public BenchmarkGenomicContextArguments createArguments() {
+        return new BenchmarkGenomicContextArguments();
+    }
+
+    @Override
+    public void execute() {
+        List<BaseInformationRecords.BaseInformation> records = new ObjectArrayList<>();
+        try (RecordReader reader = new RecordReader(args().inputFile)) {
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                if (records.size() >= args().numRecords) {
+                    break;
+                }
+                records.add(record);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read records from " + args().inputFile, e);
+        }
+        int[] sizes = new int[args().contextSizes.size()];
+        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>[] chain = new FeatureMapper[sizes.length];
+        for (int w = 0; w < sizes.length; w++) {
+            final int size = args().contextSizes.get(w);
+            sizes[w] = size;
+            chain[w] = trimmedOneHotMappers(size);
+        }
+        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> chainMapper = new ConcatFeatureMapper<>(chain);
+        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> encoder = new GenomicContextEncoder(sizes);
+
+        int numMismatches = compare(records, chainMapper, encoder);
+        if (numMismatches > 0) {
+            System.err.printf("The encoder produced different features for %d records.%n", numMismatches);
+        }
+        long chainTime = 0;
+        long encoderTime = 0;
+        INDArray inputs = Nd4j.zeros(1, encoder.numberOfFeatures());
+        for (int round = 0; round < args().repeat; round++) {
+            // alternate mappers so that both see the same machine state:
+            long chainRound = time(records, chainMapper, inputs);
+            long encoderRound = time(records, encoder, inputs);
+            if (round > 0 || args().repeat == 1) {
+                chainTime += chainRound;
+                encoderTime += encoderRound;
+            }
+        }
+        System.out.printf("Records: %d, features per record: %d%n", records.size(), encoder.numberOfFeatures());
+        System.out.printf("One-hot mapper chain: %.1f records/s, encoder: %.1f records/s, speedup: %.2fx%n",
+                recordsPerSecond(records.size(), chainTime, args().repeat),
+                recordsPerSecond(records.size(), encoderTime, args().repeat),
+                encoderTime == 0 ? 0 : ((double) chainTime) / encoderTime);
+    }
+
+    private int compare(List<BaseInformationRecords.BaseInformation> records,
+                        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> chainMapper,
+                        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> encoder) {
+        int numMismatches = 0;
+        INDArray expected = Nd4j.zeros(1, chainMapper.numberOfFeatures());
+        INDArray observed = Nd4j.zeros(1, encoder.numberOfFeatures());
+        for (BaseInformationRecords.BaseInformation record : records) {
+            chainMapper.prepareToNormalize(record, 0);
+            chainMapper.mapFeatures(record, expected, 0);
+            encoder.prepareToNormalize(record, 0);
+            encoder.mapFeatures(record, observed, 0);
+            if (!expected.equals(observed)) {
+                numMismatches++;
+            }
+        }
+        return numMismatches;
+    }
+
+    private long time(List<BaseInformationRecords.BaseInformation> records,
+                      FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> mapper, INDArray inputs) {
+        long start = System.nanoTime();
+        for (BaseInformationRecords.BaseInformation record : records) {
+            mapper.prepareToNormalize(record, 0);
+            mapper.mapFeatures(record, inputs, 0);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double recordsPerSecond(long numRecords, long nanoseconds, int repeat) {
+        int timedRounds = Math.max(1, repeat - 1);
+        return nanoseconds == 0 ? 0 : numRecords * timedRounds * 1E9 / nanoseconds;
+    }
+
+    /**
+     * Return one OneHotBaseFeatureMapper per base of the context trimmed to size, as GenomicContextMapper was built
+     * before it delegated to the encoder.
+     */
+    private static FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> trimmedOneHotMappers(final int size) {
+        OneHotBaseFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>[] mappers = new OneHotBaseFeatureMapper[size];
+        for (int i = 0; i < size; i++) {
+            mappers[i] = new OneHotBaseFeatureMapper<>(i,
+                    record -> GenomicContextMapper.trim(size, record.getGenomicSequenceContext()));
+        }
+        return new ConcatFeatureMapper<>(mappers);
+    }
+}
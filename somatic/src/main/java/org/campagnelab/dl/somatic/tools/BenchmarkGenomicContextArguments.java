@@ -0,0 +1,28 @@
+package org.campagnelab.dl.somatic.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arguments for the BenchmarkGenomicContext tool.
+ */
+@Parameters(commandDescription = "Compare the throughput of the genomic context encoder with the chain of one-hot mappers it replaces.")
+
+public class BenchmarkGenomicContextArguments implements ToolArguments {
+    @Parameter(required = true, names = {"-i", "--input-file"}, description = "Input file in .sbi/.sbip format.")
+    public String inputFile;
+
+    @Parameter(names = {"-n", "--num-records"}, description = "Number of records to load and map.")
+    public int numRecords = 100000;
+
+    @Parameter(names = {"--context-sizes"}, variableArity = true, description = "Sizes of the centered context windows to encode.")
+    public List<Integer> contextSizes = new ArrayList<>(Arrays.asList(21, 11, 7, 5, 3));
+
+    @Parameter(names = {"--repeat"}, description = "Number of timed rounds. The first round is used as warm-up when more than one round is run.")
+    public int repeat = 5;
+}
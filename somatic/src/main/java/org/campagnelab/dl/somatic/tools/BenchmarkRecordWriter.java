@@ -0,0 +1,150 @@
+package org.campagnelab.dl.somatic.tools;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.commons.io.FileUtils;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.somatic.storage.RecordWriter;
+import org.campagnelab.dl.somatic.storage.columnar.ColumnarRecordWriter;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Micro-benchmark for record writers. Records are loaded in memory, then written to .sbi files with chunks
+ * compressed on the writing thread or in background threads (see RecordWriter), and to columnar .sbc files, for
+ * each chunk size. Throughput and output size are reported for each configuration. Times are end-to-end: they
+ * include closing the writer, which for .sbi writers with compression threads appends the last pieces and merges
+ * their properties. The throughput of .sbi writers is also reported relative to the single-threaded writer with the
+ * same chunk size, which is always measured.
+ *
+ * @author Fabien Campagne
+ */
+public class BenchmarkRecordWriter extends AbstractTool<BenchmarkRecordWriterArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(BenchmarkRecordWriter.class);
+
+    public static void main(String[] args) {
+
+        BenchmarkRecordWriter tool = new BenchmarkRecordWriter();
+        tool.parseArguments(args, "BenchmarkRecordWriter", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public BenchmarkRecordWriterArguments createArguments() {
+        return new BenchmarkRecordWriterArguments();
+    }
+
+    @Override
+    public void execute() {
+        List<BaseInformationRecords.BaseInformation> records = new ObjectArrayList<>();
+        try (RecordReader reader = new RecordReader(args().inputFile)) {
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                if (records.size() >= args().numRecords) {
+                    break;
+                }
+                records.add(record);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read records from " + args().inputFile, e);
+        }
+        File directory = null;
+        try {
+            File parent = new File(args().outputDirectory);
+            FileUtils.forceMkdir(parent);
+            // only this private directory is deleted, never the directory given by the user:
+            directory = Files.createTempDirectory(parent.toPath(), "benchmark-").toFile();
+            System.out.printf("Records: %d%n", records.size());
+            System.out.println("Note: sbi writers with compression threads write each compressed chunk twice " +
+                    "(temporary piece, then output), since Goby's chunk codec is not exposed. Times include " +
+                    "closing writers; vsSingleThreaded compares to the single-threaded sbi writer.");
+            System.out.println("format\tchunkSize\tthreads\trecords/s\tbytes/record\tvsSingleThreaded");
+            for (String format : args().formats) {
+                for (int chunkSize : args().chunkSizes) {
+                    if ("sbc".equals(format)) {
+                        report(format, chunkSize, 0, benchmark(records, directory, format, chunkSize, 0), 0);
+                    } else {
+                        final double[] singleThreaded = benchmark(records, directory, format, chunkSize, 0);
+                        report(format, chunkSize, 0, singleThreaded, singleThreaded[0]);
+                        for (int numThreads : args().numThreads) {
+                            if (numThreads > 0) {
+                                report(format, chunkSize, numThreads,
+                                        benchmark(records, directory, format, chunkSize, numThreads), singleThreaded[0]);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write records to " + args().outputDirectory, e);
+        } finally {
+            if (directory != null) {
+                FileUtils.deleteQuietly(directory);
+            }
+        }
+    }
+
+    /**
+     * Time writing the records, closing the writer included, and return the throughput in records per second and
+     * the size of the output in bytes per record.
+     */
+    private double[] benchmark(List<BaseInformationRecords.BaseInformation> records, File directory, String format,
+                               int chunkSize, int numThreads) throws IOException {
+        final String basename = directory.getPath() + "/" + format + "-" + chunkSize + "-" + numThreads;
+        long time = 0;
+        long length = 0;
+        for (int round = 0; round < args().repeat; round++) {
+            long start = System.nanoTime();
+            final String filename = write(records, basename, format, chunkSize, numThreads);
+            long roundTime = System.nanoTime() - start;
+            if (round > 0 || args().repeat == 1) {
+                time += roundTime;
+            }
+            length = new File(filename).length();
+            FileUtils.deleteQuietly(new File(filename));
+            FileUtils.deleteQuietly(new File(basename + ".sbip"));
+        }
+        final int timedRounds = Math.max(1, args().repeat - 1);
+        return new double[]{time == 0 ? 0 : records.size() * timedRounds * 1E9 / time,
+                records.isEmpty() ? 0 : ((double) length) / records.size()};
+    }
+
+    /**
+     * @param singleThreaded throughput of the single-threaded .sbi writer with the same chunk size, or zero when
+     *                       there is nothing to compare to.
+     */
+    private void report(String format, int chunkSize, int numThreads, double[] result, double singleThreaded) {
+        System.out.printf("%s\t%d\t%d\t%.1f\t%.1f\t%s%n", format, chunkSize, numThreads, result[0], result[1],
+                singleThreaded == 0 ? "-" : String.format("%.2fx", result[0] / singleThreaded));
+    }
+
+    /**
+     * Write the records and return the name of the file written.
+     */
+    private String write(List<BaseInformationRecords.BaseInformation> records, String basename, String format,
+                         int chunkSize, int numThreads) throws IOException {
+        switch (format) {
+            case "sbi":
+                try (RecordWriter writer = new RecordWriter(basename, chunkSize, numThreads)) {
+                    for (BaseInformationRecords.BaseInformation record : records) {
+                        writer.writeRecord(record);
+                    }
+                }
+                return basename + ".sbi";
+            case "sbc":
+                try (ColumnarRecordWriter writer = new ColumnarRecordWriter(basename + ".sbc", chunkSize)) {
+                    for (BaseInformationRecords.BaseInformation record : records) {
+                        writer.writeRecord(record);
+                    }
+                }
+                return basename + ".sbc";
+            default:
+                throw new IllegalArgumentException("Unknown format " + format + ", use sbi or sbc.");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.campagnelab.dl.somatic.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arguments for the BenchmarkRecordWriter tool.
+ */
+@Parameters(commandDescription = "Measure the throughput of record writers for several chunk sizes, numbers of compression threads and formats.")
+
+public class BenchmarkRecordWriterArguments implements ToolArguments {
+    @Parameter(required = true, names = {"-i", "--input-file"}, description = "Input file in .sbi/.sbip format.")
+    public String inputFile;
+
+    @Parameter(names = {"-n", "--num-records"}, description = "Number of records to load and write.")
+    public int numRecords = 100000;
+
+    @Parameter(names = {"--chunk-sizes"}, variableArity = true, description = "Number of records per chunk (per block for the columnar format).")
+    public List<Integer> chunkSizes = new ArrayList<>(Arrays.asList(100, 1000, 10000));
+
+    @Parameter(names = {"--num-threads"}, variableArity = true, description = "Number of compression threads of the .sbi writer. 0 compresses chunks on the writing thread, and is always measured as the baseline.")
+    public List<Integer> numThreads = new ArrayList<>(Arrays.asList(0, 2, Runtime.getRuntime().availableProcessors()));
+
+    @Parameter(names = {"--formats"}, variableArity = true, description = "Formats to write: sbi (Goby chunk codec) and/or sbc (columnar, deflate).")
+    public List<String> formats = new ArrayList<>(Arrays.asList("sbi", "sbc"));
+
+    @Parameter(names = {"--output-directory"}, description = "Directory where a temporary sub-directory is created for benchmark files. Only the sub-directory is deleted.")
+    public String outputDirectory = System.getProperty("java.io.tmpdir");
+
+    @Parameter(names = {"--repeat"}, description = "Number of timed rounds. The first round is used as warm-up when more than one round is run.")
+    public int repeat = 3;
+}
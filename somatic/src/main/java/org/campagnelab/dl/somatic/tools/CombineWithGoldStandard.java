@@ -1,28 +1,25 @@
 package org.campagnelab.dl.somatic.tools;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
-import it.unimi.dsi.io.FastBufferedReader;
-import it.unimi.dsi.io.LineIterator;
-import it.unimi.dsi.lang.MutableString;
 import it.unimi.dsi.logging.ProgressLogger;
 import it.unimi.dsi.util.XorShift1024StarRandom;
 import org.apache.commons.compress.utils.IOUtils;
 import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.somatic.storage.GoldStandardAnnotations;
+import org.campagnelab.dl.somatic.storage.ParallelRecordIterator;
 import org.campagnelab.dl.somatic.storage.RecordReader;
 import org.campagnelab.dl.somatic.storage.RecordWriter;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Random;
 
 /**
  * Combine a raw SBI with gold standard annotations to set isMutated flag. TSV format is chromosome\tposition\t[toBases]
- * where toBases is optional and contain the mutated bases (SNP or indel genotype of the mutation).
+ * where toBases is optional and contain the mutated bases (SNP or indel genotype of the mutation). Annotations can also
+ * be provided in VCF or BED format (see GoldStandardAnnotations). Records are decoded in parallel threads and
+ * annotated in file order, in a single sweep over the annotations when the .sbi file is sorted by position.
  * Created by fac2003 on 11/22/16.
  */
 public class CombineWithGoldStandard extends AbstractTool<CombineWithGoldStandardArguments> {
@@ -41,15 +38,23 @@ public class CombineWithGoldStandard extends AbstractTool<CombineWithGoldStandar
 
     @Override
     public void execute() {
-        loadAnnotations(args().annotationFilename);
+        GoldStandardAnnotations annotations;
+        try {
+            annotations = GoldStandardAnnotations.load(args().annotationFilename);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to load annotations from " + args().annotationFilename, e);
+        }
+        LOG.info(String.format("Loaded %d annotated positions on %d chromosomes.", annotations.size(), annotations.numChromosomes()));
         RecordWriter outputWriters = null;
         try {
-            outputWriters = new RecordWriter(args().outputFilename);
+            outputWriters = new RecordWriter(args().outputFilename, RecordWriter.DEFAULT_ENTRIES_PER_CHUNK, args().numThreads);
         } catch (IOException e) {
             throw new RuntimeException("Unable to create output file+" + args().outputFilename, e);
         }
         Random rand = new XorShift1024StarRandom();
-        try (RecordReader reader = new RecordReader(args().sbiFilename)) {
+        GoldStandardAnnotations.Cursor cursor = annotations.cursor();
+        try (RecordReader reader = new RecordReader(args().sbiFilename);
+             ParallelRecordIterator records = reader.parallelIterator(args().numThreads, 2 * args().numThreads, true)) {
 
 
 //set up logger
@@ -60,22 +65,25 @@ public class CombineWithGoldStandard extends AbstractTool<CombineWithGoldStandar
             pgRead.start();
             long numWritten = 0;
             long numMutatedWritten = 0;
-            for (BaseInformationRecords.BaseInformation record : reader) {
-                record = annotate(record);
+            while (records.hasNext()) {
+                BaseInformationRecords.BaseInformation record = records.next();
+                if (cursor.find(record.getReferenceId(), record.getPosition())) {
+                    record = annotate(record, cursor.getMutatedBases());
+                }
                 double choice = rand.nextDouble();
                 if (choice < args().samplingFraction || record.getMutated()) {
                     outputWriters.writeRecord(record);
                     numWritten += 1;
                     if (record.getMutated()) {
                         numMutatedWritten++;
-                       /* System.out.printf("%s:%d\n\tnormal: %s\ttumor:  %s %n", record.getReferenceId(), record.getPosition(),
-                                record.getSamples(0).getFormattedCounts(),
-                                record.getSamples(1).getFormattedCounts());*/
                     }
                 }
                 pgRead.lightUpdate();
             }
             pgRead.stop();
+            if (cursor.getNumBacktracks() > 0) {
+                LOG.warn(String.format("Input records are not sorted by position, %d lookups used binary search.", cursor.getNumBacktracks()));
+            }
             System.out.printf("Wrote %d records (of which %d are mutated).", numWritten, numMutatedWritten);
         } catch (IOException e) {
             throw new RuntimeException("Unable to load or write files. Check command line arguments.",e);
@@ -84,57 +92,11 @@ public class CombineWithGoldStandard extends AbstractTool<CombineWithGoldStandar
         }
     }
 
-    class Mutation {
-        String from;
-        String to;
-        int position;
-    }
-
-    Object2ObjectArrayMap<String, Int2ObjectAVLTreeMap<Annotation>> annotations = new Object2ObjectArrayMap<>();
-
-    class Annotation {
-        int position;
-        String toBase;
-    }
-
-    private void loadAnnotations(String annotationFilename) {
-        try {
-            LineIterator lines = new LineIterator(new FastBufferedReader(new FileReader(annotationFilename)));
-            for (MutableString line : lines.allLines()) {
-               if (line.startsWith("#")) continue;
-                String tokens[] = line.toString().split("\t");
-                final String chromosome = tokens[0];
-                int position = Integer.parseInt(tokens[1]);
-                // convert to zero-based position used by goby/variationanalysis:
-                position -= 1;
-                Int2ObjectAVLTreeMap<Annotation> perPositionMap = annotations.getOrDefault(chromosome, new Int2ObjectAVLTreeMap<>());                Annotation a = new Annotation();
-                a.position = position;
-                a.toBase = tokens.length >= 3 ? tokens[2] : null;
-                perPositionMap.put(position, a);
-                annotations.put(chromosome, perPositionMap);
-            }
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException("Unable to find annotation filename:" + annotationFilename, e);
-
-        }
-    }
-
-    private BaseInformationRecords.BaseInformation annotate(BaseInformationRecords.BaseInformation record) {
-        if (!isAnnotated(record.getReferenceId(), record.getPosition())) {
-            return record;
-        }
+    private BaseInformationRecords.BaseInformation annotate(BaseInformationRecords.BaseInformation record, String mutatedBases) {
         final BaseInformationRecords.BaseInformation.Builder builder = record.toBuilder();
-        Annotation a=getAnnotation(record.getReferenceId(), record.getPosition());
-        if (a.toBase!=null) {
-            builder.setMutatedBase(a.toBase);
+        if (mutatedBases != null) {
+            builder.setMutatedBase(mutatedBases);
         }
         return builder.setMutated(true).build();
     }
-
-    private boolean isAnnotated(String referenceId, int position) {
-        return annotations.getOrDefault(referenceId, new Int2ObjectAVLTreeMap<Annotation>()).getOrDefault(position, null)!=null;
-    }
-    private Annotation getAnnotation(String referenceId, int position) {
-        return annotations.getOrDefault(referenceId, new Int2ObjectAVLTreeMap<Annotation>()).get(position);
-    }
 }
@@ -13,11 +13,14 @@ public class CombineWithGoldStandardArguments implements ToolArguments {
     @Parameter(required = true, names = {"-i", "--input-file"}, description = "Input file in .bsi/.bsip format.")
     String sbiFilename;
 
-    @Parameter(required = true, names = {"-a", "--annotations"}, description = "Annotations in TSV format: chromosome\tposition.")
+    @Parameter(required = true, names = {"-a", "--annotations"}, description = "Annotations in TSV format: chromosome\tposition[\ttoBases], or in VCF (.vcf, .vcf.gz) or BED (.bed, .bed.gz) format.")
     String annotationFilename;
     @Parameter(required = true, names = {"-o", "--output-file"}, description = "Output file in .bsi/.bsip format.")
     public String outputFilename;
 
     @Parameter( names = {"-f", "--sampling-fraction"}, description = "Fraction of the input file to write to the output. Annotated site are written irrespective of fraction.")
     float samplingFraction=1f;
+
+    @Parameter(names = {"--num-threads"}, description = "Number of threads used to decode the input file and to compress the output file.")
+    int numThreads = Runtime.getRuntime().availableProcessors();
 }
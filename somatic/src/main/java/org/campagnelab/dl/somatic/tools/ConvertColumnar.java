@@ -0,0 +1,104 @@
+package org.campagnelab.dl.somatic.tools;
+
+import it.unimi.dsi.logging.ProgressLogger;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.somatic.storage.ParallelRecordIterator;
+import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.somatic.storage.RecordWriter;
+import org.campagnelab.dl.somatic.storage.columnar.ColumnarRecordReader;
+import org.campagnelab.dl.somatic.storage.columnar.ColumnarRecordWriter;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * Converts records between the .sbi format and the columnar .sbc format (see ColumnarRecordWriter). Conversion is
+ * lossless in both directions. The properties of the input are copied to the .sbip file of the output.
+ */
+public class ConvertColumnar extends AbstractTool<ConvertColumnarArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(ConvertColumnar.class);
+
+    public static void main(String[] args) {
+        ConvertColumnar tool = new ConvertColumnar();
+        tool.parseArguments(args, "ConvertColumnar", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public ConvertColumnarArguments createArguments() {
+        return new ConvertColumnarArguments();
+    }
+
+    @Override
+    public void execute() {
+        try {
+            if (args().inputFile.endsWith(".sbc")) {
+                toSbi();
+            } else {
+                toColumnar();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to convert " + args().inputFile + " to " + args().outputFile, e);
+        }
+    }
+
+    private void toColumnar() throws IOException {
+        try (RecordReader reader = new RecordReader(args().inputFile);
+             ParallelRecordIterator records = reader.parallelIterator(args().numThreads, 2 * args().numThreads, true);
+             ColumnarRecordWriter writer = new ColumnarRecordWriter(args().outputFile, args().blockSize)) {
+            ProgressLogger pg = progressLogger(reader.numRecords());
+            while (records.hasNext()) {
+                writer.writeRecord(records.next());
+                pg.lightUpdate();
+            }
+            pg.done();
+            writer.close();
+            writeProperties(reader.getProperties(), ColumnarRecordReader.getBasename(args().outputFile),
+                    writer.getTotalRecords());
+        }
+    }
+
+    private void toSbi() throws IOException {
+        long numRecords = 0;
+        Properties properties;
+        try (ColumnarRecordReader reader = new ColumnarRecordReader(args().inputFile);
+             RecordWriter writer = new RecordWriter(args().outputFile, RecordWriter.DEFAULT_ENTRIES_PER_CHUNK, args().numThreads)) {
+            properties = reader.getProperties();
+            ProgressLogger pg = progressLogger(reader.numRecords());
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                writer.writeRecord(record);
+                numRecords++;
+                pg.lightUpdate();
+            }
+            pg.done();
+        }
+        // after the writer is closed, since it writes its own .sbip:
+        writeProperties(properties, SequenceBaseInformationReader.getBasename(args().outputFile), numRecords);
+    }
+
+    private ProgressLogger progressLogger(long numRecords) {
+        ProgressLogger pg = new ProgressLogger(LOG);
+        pg.itemsName = "records";
+        pg.expectedUpdates = numRecords;
+        pg.displayFreeMemory = true;
+        pg.start();
+        return pg;
+    }
+
+    private void writeProperties(Properties inputProperties, String basename, long numRecords) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(inputProperties);
+        properties.setProperty("numRecords", Long.toString(numRecords));
+        try (Writer writer = new FileWriter(basename + ".sbip")) {
+            properties.store(writer, new Date().toString());
+        }
+        System.out.printf("Converted %d records to %s%n", numRecords, args().outputFile);
+    }
+}
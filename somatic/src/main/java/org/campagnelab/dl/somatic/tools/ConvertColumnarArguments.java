@@ -0,0 +1,25 @@
+package org.campagnelab.dl.somatic.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+import org.campagnelab.dl.somatic.storage.columnar.ColumnarRecordWriter;
+
+/**
+ * Arguments for ConvertColumnar.
+ */
+@Parameters(commandDescription = "Convert records between the .sbi format and the columnar .sbc format, in either direction.")
+
+public class ConvertColumnarArguments implements ToolArguments {
+    @Parameter(required = true, names = {"-i", "--input-file"}, description = "Input file, in .sbi or .sbc format.")
+    public String inputFile;
+
+    @Parameter(required = true, names = {"-o", "--output-file"}, description = "Output file. An .sbi input is converted to .sbc, and an .sbc input to .sbi.")
+    public String outputFile;
+
+    @Parameter(required = false, names = {"--block-size"}, description = "Number of records per block of the .sbc output.")
+    public int blockSize = ColumnarRecordWriter.DEFAULT_BLOCK_SIZE;
+
+    @Parameter(required = false, names = {"--num-threads"}, description = "Number of threads used to decode an .sbi input, or to compress an .sbi output.")
+    public int numThreads = Runtime.getRuntime().availableProcessors();
+}
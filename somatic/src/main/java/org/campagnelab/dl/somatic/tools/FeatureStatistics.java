@@ -0,0 +1,191 @@
+package org.campagnelab.dl.somatic.tools;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.logging.ProgressLogger;
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.somatic.mappers.functional.FieldStatistics;
+import org.campagnelab.dl.somatic.mappers.functional.RecordTraversal;
+import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.somatic.storage.RecordReader;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.campagnelab.goby.baseinfo.SequenceBaseInformationReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Computes, in one pass over .sbi files, the statistics of the record fields that feature mappers use (min, max,
+ * mean, variance and optionally histograms), and stores them in the .sbip file of each input. DensityMapper reads
+ * stats.name.min and stats.name.max from these properties, so running this tool once makes any .sbi file usable to
+ * configure mappers, without re-running the tools that produced it.
+ * <p>
+ * Statistics are accumulated per thread and per file and merged at the end.
+ *
+ * @author Fabien Campagne
+ */
+public class FeatureStatistics extends AbstractTool<FeatureStatisticsArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(FeatureStatistics.class);
+
+    /**
+     * Fields for which statistics are computed, keyed by the name mappers use to find them in the properties.
+     * Values are collected over all the samples and genotypes of each record.
+     */
+    static final Map<String, RecordTraversal> FIELDS = new Object2ObjectLinkedOpenHashMap<>();
+
+    static {
+        FIELDS.put("baseQuality.forward", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+        FIELDS.put("baseQuality.reverse", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList));
+        FIELDS.put("readMappingQuality.forward", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityForwardStrandList));
+        FIELDS.put("readMappingQuality.reverse", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getReadMappingQualityReverseStrandList));
+        FIELDS.put("numVariationsInRead", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getNumVariationsInReadsList));
+        FIELDS.put("insertSizes", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getInsertSizesList));
+        FIELDS.put("pairFlag", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getPairFlagsList));
+        FIELDS.put("queryPosition", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQueryPositionsList));
+        FIELDS.put("queryAlignedLength", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQueryAlignedLengthsList));
+        FIELDS.put("targetAlignedLength", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getTargetAlignedLengthsList));
+        FIELDS.put("distanceToStartOfRead", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getDistanceToStartOfReadList));
+        FIELDS.put("distanceToEndOfRead", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getDistanceToEndOfReadList));
+        FIELDS.put("distancesToReadVariations.forward", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getDistancesToReadVariationsForwardStrandList));
+        FIELDS.put("distancesToReadVariations.reverse", TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getDistancesToReadVariationsReverseStrandList));
+        FIELDS.put("genomicContextSize", (record, visitor) -> visitor.visit(record.getGenomicSequenceContext().length(), 1));
+    }
+
+    public static void main(String[] args) {
+        FeatureStatistics tool = new FeatureStatistics();
+        tool.parseArguments(args, "FeatureStatistics", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public FeatureStatisticsArguments createArguments() {
+        return new FeatureStatisticsArguments();
+    }
+
+    @Override
+    public void execute() {
+        final List<String> inputs = args().inputFiles;
+        IntStream fileIndices = IntStream.range(0, inputs.size());
+        if (args().parallel) {
+            fileIndices = fileIndices.parallel();
+        }
+        final Statistics[] perFile = new Statistics[inputs.size()];
+        fileIndices.forEach(i -> perFile[i] = process(inputs.get(i)));
+
+        Statistics merged = new Statistics(args().histograms);
+        for (Statistics statistics : perFile) {
+            merged.merge(statistics);
+        }
+        for (String name : FIELDS.keySet()) {
+            System.out.printf("%s: %s%n", name, merged.get(name));
+        }
+        if (args().dryRun) {
+            return;
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            store(inputs.get(i), args().perFile ? perFile[i] : merged);
+        }
+    }
+
+    /**
+     * Accumulate the statistics of the records of one file. With --parallel, chunks of the file are decoded and
+     * traversed in parallel threads.
+     */
+    private Statistics process(String inputFilename) {
+        final boolean histograms = args().histograms;
+        try (RecordReader reader = new RecordReader(inputFilename);
+             Stream<BaseInformationRecords.BaseInformation> stream = reader.stream(args().parallel)) {
+            ProgressLogger recordLogger = new ProgressLogger(LOG);
+            recordLogger.expectedUpdates = Math.min(args().readN, reader.numRecords());
+            recordLogger.itemsName = "records";
+            recordLogger.start();
+            Stream<BaseInformationRecords.BaseInformation> records = stream;
+            if (args().readN < Long.MAX_VALUE) {
+                records = records.limit(args().readN);
+            }
+            // records are counted by the threads that traverse chunks:
+            Statistics statistics = records.peek(record -> {
+                synchronized (recordLogger) {
+                    recordLogger.lightUpdate();
+                }
+            }).collect(() -> new Statistics(histograms), Statistics::accept, Statistics::merge);
+            recordLogger.done();
+            LOG.info("Processed " + inputFilename);
+            return statistics;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read " + inputFilename, e);
+        }
+    }
+
+    /**
+     * Add the statistics to the properties of an sbi file, and write the properties back to its .sbip file.
+     */
+    private void store(String inputFilename, Statistics statistics) {
+        Properties properties = new Properties();
+        try (RecordReader reader = new RecordReader(inputFilename)) {
+            properties.putAll(reader.getProperties());
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read properties of " + inputFilename, e);
+        }
+        statistics.store(properties);
+        final String sbipFilename = SequenceBaseInformationReader.getBasename(inputFilename) + ".sbip";
+        try (Writer writer = new FileWriter(sbipFilename)) {
+            properties.store(writer, new Date().toString());
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write " + sbipFilename, e);
+        }
+        System.out.println("Statistics stored in " + sbipFilename);
+    }
+
+    /**
+     * One accumulator per field.
+     */
+    static class Statistics {
+        private final FieldStatistics[] fields = new FieldStatistics[FIELDS.size()];
+        private final RecordTraversal[] traversals = FIELDS.values().toArray(new RecordTraversal[FIELDS.size()]);
+
+        Statistics(boolean histograms) {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new FieldStatistics(histograms);
+            }
+        }
+
+        void accept(BaseInformationRecords.BaseInformationOrBuilder record) {
+            for (int i = 0; i < fields.length; i++) {
+                traversals[i].forEachValue(record, fields[i]);
+            }
+        }
+
+        void merge(Statistics other) {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].merge(other.fields[i]);
+            }
+        }
+
+        FieldStatistics get(String name) {
+            int i = 0;
+            for (String fieldName : FIELDS.keySet()) {
+                if (fieldName.equals(name)) {
+                    return fields[i];
+                }
+                i++;
+            }
+            return null;
+        }
+
+        void store(Properties properties) {
+            int i = 0;
+            for (String name : FIELDS.keySet()) {
+                fields[i++].store(properties, name);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.campagnelab.dl.somatic.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arguments for FeatureStatistics.
+ */
+@Parameters(commandDescription = "Compute the statistics of the record fields that feature mappers use, and store them in the .sbip file of each input.")
+
+public class FeatureStatisticsArguments implements ToolArguments {
+    @Parameter(required = true, variableArity = true, names = {"-i", "--input-files"}, description = "Input files in .sbi/.sbip format.")
+    public List<String> inputFiles = new ArrayList<>();
+
+    @Parameter(required = false, names = {"--per-file"}, description = "When provided, store in each .sbip the statistics of this file only. By default, the statistics of all the input files are stored in each .sbip, so that mappers configured with any of the files use the same bins.")
+    public boolean perFile = false;
+
+    @Parameter(required = false, names = {"--histograms"}, description = "When provided, also store the histogram of the values of each field (stats.name.histogram).")
+    public boolean histograms = false;
+
+    @Parameter(required = false, names = {"--dry-run"}, description = "When provided, print the statistics but leave the .sbip files unchanged.")
+    public boolean dryRun = false;
+
+    @Parameter(required = false, names = {"--parallel"}, description = "When provided, process files and chunks of records in parallel threads.")
+    public boolean parallel = false;
+
+    @Parameter(required = false, names = {"-n", "--num-records"}, description = "Process at most n records of each file.")
+    public long readN = Long.MAX_VALUE;
+}
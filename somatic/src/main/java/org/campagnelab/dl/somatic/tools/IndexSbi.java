@@ -0,0 +1,47 @@
+package org.campagnelab.dl.somatic.tools;
+
+import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
+import org.campagnelab.dl.somatic.storage.SbiIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Writes the position index (.sbii) of .sbi files. Readers such as RegionRecordReader use the index to decode only
+ * the chunks that contain records of a region.
+ */
+public class IndexSbi extends AbstractTool<IndexSbiArguments> {
+    static private Logger LOG = LoggerFactory.getLogger(IndexSbi.class);
+
+    public static void main(String[] args) {
+        IndexSbi tool = new IndexSbi();
+        tool.parseArguments(args, "IndexSbi", tool.createArguments());
+        tool.execute();
+    }
+
+    @Override
+    public IndexSbiArguments createArguments() {
+        return new IndexSbiArguments();
+    }
+
+    @Override
+    public void execute() {
+        for (String inputFile : args().inputFiles) {
+            try {
+                if (!args().force && SbiIndex.load(inputFile) != null) {
+                    System.out.println("Index is up to date for " + inputFile);
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                SbiIndex index = SbiIndex.build(inputFile, args().parallel);
+                index.save(inputFile);
+                LOG.info(String.format("Indexed %d records in %d chunks (%s) in %d ms: %s", index.numRecords(),
+                        index.numChunks(), index.isSorted() ? "sorted" : "not sorted",
+                        System.currentTimeMillis() - start, SbiIndex.indexFilename(inputFile)));
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to index " + inputFile, e);
+            }
+        }
+    }
+}
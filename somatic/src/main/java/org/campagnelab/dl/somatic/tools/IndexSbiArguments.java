@@ -0,0 +1,24 @@
+package org.campagnelab.dl.somatic.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.campagnelab.dl.framework.tools.arguments.ToolArguments;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arguments for IndexSbi.
+ */
+@Parameters(commandDescription = "Index .sbi files by genomic position, so that the records of a region can be read without decoding the whole file.")
+
+public class IndexSbiArguments implements ToolArguments {
+    @Parameter(required = true, variableArity = true, names = {"-i", "--input-files"}, description = "Input files in .sbi/.sbip format.")
+    public List<String> inputFiles = new ArrayList<>();
+
+    @Parameter(required = false, names = {"--parallel"}, description = "When provided, decode the chunks of each file in parallel threads.")
+    public boolean parallel = false;
+
+    @Parameter(required = false, names = {"--force"}, description = "When provided, rebuild indices that are already up to date.")
+    public boolean force = false;
+}
@@ -77,7 +77,7 @@ public class Mutate extends AbstractTool<MutateArguments> {
     public void execute() {
         try {
             RecordReader reader = new RecordReader(args().inputFile);
-            RecordWriter writer = new RecordWriter(args().outputFile);
+            RecordWriter writer = new RecordWriter(args().outputFile, RecordWriter.DEFAULT_ENTRIES_PER_CHUNK, args().numThreads);
 
             //set up logger
             ProgressLogger pgReadWrite = new ProgressLogger(LOG);
@@ -33,4 +33,7 @@ public class MutateArguments implements ToolArguments {
 
     @Parameter( names = { "--random-seed"}, description = "Random seed.")
     public long seed= 2398823;
+
+    @Parameter(required = false, names = {"--num-threads"}, description = "Number of threads that compress chunks of the output. 0 compresses chunks on the thread that writes records.")
+    public int numThreads = Runtime.getRuntime().availableProcessors();
 }
@@ -57,7 +57,7 @@ public class Randomize extends AbstractTool<RandomizerArguments> {
             for (int i = 0; i < numBuckets; i++) {
                 bucketWriters.add(new RecordWriter(workingDir + "/tmp/bucket" + i, arguments.chunkSizePerWriter));
             }
-            RecordWriter allWriter = new RecordWriter(args().outputFile);
+            RecordWriter allWriter = new RecordWriter(args().outputFile, RecordWriter.DEFAULT_ENTRIES_PER_CHUNK, args().numThreads);
             Random rand = new XoRoShiRo128PlusRandom(args().randomSeed);
 
             //set up logger
@@ -27,5 +27,8 @@ public class RandomizerArguments implements ToolArguments {
 
     @Parameter(required=false, names = { "--random-seed"}, description = "Seed for random generator used to randomizing entries.")
     long randomSeed=232323;
+
+    @Parameter(required = false, names = {"--num-threads"}, description = "Number of threads that compress chunks of the output file (bucket writers compress on the thread that writes records). 0 compresses chunks on the thread that writes records.")
+    public int numThreads = Runtime.getRuntime().availableProcessors();
 }
 
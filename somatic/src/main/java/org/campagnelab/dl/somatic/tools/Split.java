@@ -6,11 +6,9 @@ import it.unimi.dsi.fastutil.ints.IntArraySet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.objects.Object2IntArrayMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.logging.ProgressLogger;
-import it.unimi.dsi.util.XoRoShiRo128PlusRandom;
 import org.campagnelab.dl.framework.tools.arguments.AbstractTool;
-import org.campagnelab.dl.somatic.storage.RecordReader;
-import org.campagnelab.dl.somatic.storage.RecordWriter;
+import org.campagnelab.dl.somatic.storage.ChunkSplitter;
+import org.campagnelab.dl.somatic.storage.SbiIndex;
 import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +18,7 @@ import java.util.Random;
 
 /**
  * Split a BSI file into several parts. Useful for creating training/validation/test splits of a large dataset.split
+ * Chunks are decoded and routed in parallel threads (see ChunkSplitter).
  * Created by fac2003 on 9/2/16.
  */
 public class Split extends AbstractTool<SplitArguments> {
@@ -37,7 +36,6 @@ public class Split extends AbstractTool<SplitArguments> {
         tool.execute();
     }
 
-    Random rand;
     Object2IntMap<String> chomosomeToSuffixIndex;
 
     @Override
@@ -73,51 +71,47 @@ public class Split extends AbstractTool<SplitArguments> {
             System.err.println("Splitting a file into one fraction is not useful. Aborting.");
             System.exit(1);
         }
-        RecordWriter outputWriters[] = new RecordWriter[numOutputs];
-
-        try (RecordReader reader = new RecordReader(args().inputFile)) {
-            fractions = new double[numOutputs];
-            double sumFractions = 0;
-            for (int i = 0; i < numOutputs; i++) {
-                outputWriters[i] = new RecordWriter(args().outputFile + args().suffixes.get(i));
-                fractions[i] = args().fractions.get(i);
-                sumFractions += fractions[i];
-            }
-            // normalize fractions:
-            for (int i = 0; i < numOutputs; i++) {
-                fractions[i] /= sumFractions;
-            }
+        fractions = new double[numOutputs];
+        double sumFractions = 0;
+        String[] outputFilenames = new String[numOutputs];
+        for (int i = 0; i < numOutputs; i++) {
+            outputFilenames[i] = args().outputFile + args().suffixes.get(i);
+            fractions[i] = args().fractions.get(i);
+            sumFractions += fractions[i];
+        }
+        // normalize fractions:
+        for (int i = 0; i < numOutputs; i++) {
+            fractions[i] /= sumFractions;
+        }
+        ChunkSplitter splitter = new ChunkSplitter(args().inputFile, outputFilenames);
+        splitter.setSeed(args().randomSeed);
+        splitter.setNumThreads(args().numThreads);
+        splitter.setMaxRecords(args().writeN);
+        try {
+            splitter.split(new ChunkSplitter.Router() {
+                @Override
+                public int chunkDestination(SbiIndex index, int chunkIndex) {
+                    // a chunk of a single overridden chromosome goes to its destination without being decoded:
+                    final int referenceIndex = index.minReferenceIndex(chunkIndex);
+                    if (args().destinationOverride == null || referenceIndex != index.maxReferenceIndex(chunkIndex)) {
+                        return -1;
+                    }
+                    final String chromosome = index.referenceName(referenceIndex);
+                    return chromosome == null ? -1 : chomosomeToSuffixIndex.getInt(chromosome);
+                }
 
-            rand = new XoRoShiRo128PlusRandom(args().randomSeed);
-            //set up logger
-            ProgressLogger pgRead = new ProgressLogger(LOG);
-            pgRead.itemsName = "records";
-            pgRead.expectedUpdates = Math.min(reader.getTotalRecords(), args().writeN);
-            pgRead.displayFreeMemory = true;
-            pgRead.start();
-            long numWritten = 0;
-            for (BaseInformationRecords.BaseInformation record : reader) {
-                int index = recorgBelongsTo(record);
-
-                outputWriters[index].writeRecord(record);
-                pgRead.update();
-                numWritten += 1;
-                if (numWritten > args().writeN) {
-                    break;
+                @Override
+                public int destination(BaseInformationRecords.BaseInformation record, Random random) {
+                    return recorgBelongsTo(record, random);
                 }
-            }
-            pgRead.stop();
-            for (int i = 0; i < numOutputs; i++) {
-                outputWriters[i].close();
-            }
-            reader.close();
+            });
         } catch (IOException e) {
             System.err.println("Unable to load or write files. Check command line arguments.");
         }
     }
 
 
-    private int recorgBelongsTo(BaseInformationRecords.BaseInformation record) {
+    private int recorgBelongsTo(BaseInformationRecords.BaseInformation record, Random rand) {
         final String chromosome = record.getReferenceId();
         //      System.out.println(chromosome);
         // find the index that override wants to put the record into:
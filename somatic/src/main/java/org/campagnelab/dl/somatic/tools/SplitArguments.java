@@ -34,5 +34,8 @@ public class SplitArguments implements ToolArguments {
     @Parameter(required=false, names = { "--random-seed"}, description = "Seed for random generator used to determine in which file to output a site.")
     long randomSeed=232323;
 
+    @Parameter(required=false, names = { "--num-threads"}, description = "Number of threads that decode and route chunks of the input.")
+    int numThreads=Runtime.getRuntime().availableProcessors();
+
 }
 
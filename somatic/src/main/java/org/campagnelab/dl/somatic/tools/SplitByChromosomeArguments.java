@@ -26,5 +26,8 @@ public class SplitByChromosomeArguments implements ToolArguments {
     @Parameter(required=true, names = {"-o", "--output-prefix"}, description = "Prefix for the output filenames.")
     public String outputFile;
 
+    @Parameter(required=false, names = { "--num-threads"}, description = "Number of threads that decode and route chunks of the input.")
+    int numThreads=Runtime.getRuntime().availableProcessors();
+
 }
 
@@ -0,0 +1,85 @@
+package org.campagnelab.dl.somatic.mappers;
+
+import org.campagnelab.dl.framework.mappers.ConcatFeatureMapper;
+import org.campagnelab.dl.framework.mappers.FeatureMapper;
+import org.campagnelab.dl.framework.mappers.OneHotBaseFeatureMapper;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that GenomicContextEncoder produces exactly the features of one-hot mappers over trimmed contexts.
+ */
+public class GenomicContextEncoderTest {
+
+    @Test
+    public void sameFeaturesAsTrimmedOneHotMappers() {
+        int[] sizes = {21, 11, 6, 3, 1};
+        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>[] chain = new FeatureMapper[sizes.length];
+        for (int w = 0; w < sizes.length; w++) {
+            final int size = sizes[w];
+            chain[w] = trimmedOneHotMappers(size);
+        }
+        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> expectedMapper = new ConcatFeatureMapper<>(chain);
+        GenomicContextEncoder encoder = new GenomicContextEncoder(sizes);
+        assertEquals(expectedMapper.numberOfFeatures(), encoder.numberOfFeatures());
+
+        for (String context : new String[]{"ATCGNOAAAAAAAAAAAAAAA", "acgtnACGTN-xyzTTGCAaT"}) {
+            BaseInformationRecords.BaseInformation.Builder record = BaseInformationRecords.BaseInformation.newBuilder();
+            record.setGenomicSequenceContext(context);
+            INDArray expected = Nd4j.zeros(1, expectedMapper.numberOfFeatures());
+            INDArray dense = Nd4j.zeros(1, encoder.numberOfFeatures());
+            INDArray sparse = Nd4j.zeros(1, encoder.numberOfFeatures());
+            expectedMapper.prepareToNormalize(record, 0);
+            expectedMapper.mapFeatures(record, expected, 0);
+            encoder.prepareToNormalize(record, 0);
+            encoder.mapFeatures(record, dense, 0);
+            encoder.mapFeaturesToZeroed(record, sparse, 0);
+            assertEquals(expected.toString(), dense.toString());
+            assertEquals(expected.toString(), sparse.toString());
+            for (int i = 0; i < encoder.numberOfFeatures(); i++) {
+                assertEquals(expectedMapper.produceFeature(record, i), encoder.produceFeature(record, i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void functionContextSameFeaturesAsOneHotMappers() {
+        final int size = 4;
+        OneHotBaseFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>[] mappers = new OneHotBaseFeatureMapper[size];
+        for (int i = 0; i < size; i++) {
+            mappers[i] = new OneHotBaseFeatureMapper<>(i, BaseInformationRecords.BaseInformationOrBuilder::getReferenceBase);
+        }
+        FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> expectedMapper = new ConcatFeatureMapper<>(mappers);
+        GenomicContextMapper mapper = new GenomicContextMapper(size, BaseInformationRecords.BaseInformationOrBuilder::getReferenceBase);
+        assertEquals(expectedMapper.numberOfFeatures(), mapper.numberOfFeatures());
+
+        for (String context : new String[]{"ATCG", "nN-x"}) {
+            BaseInformationRecords.BaseInformation.Builder record = BaseInformationRecords.BaseInformation.newBuilder();
+            record.setReferenceBase(context);
+            INDArray expected = Nd4j.zeros(1, expectedMapper.numberOfFeatures());
+            INDArray actual = Nd4j.zeros(1, mapper.numberOfFeatures());
+            expectedMapper.prepareToNormalize(record, 0);
+            expectedMapper.mapFeatures(record, expected, 0);
+            mapper.prepareToNormalize(record, 0);
+            mapper.mapFeaturesToZeroed(record, actual, 0);
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    /**
+     * Return one OneHotBaseFeatureMapper per base of the context trimmed to size, as GenomicContextMapper was built
+     * before it delegated to the encoder.
+     */
+    private static FeatureMapper<BaseInformationRecords.BaseInformationOrBuilder> trimmedOneHotMappers(final int size) {
+        OneHotBaseFeatureMapper<BaseInformationRecords.BaseInformationOrBuilder>[] mappers = new OneHotBaseFeatureMapper[size];
+        for (int i = 0; i < size; i++) {
+            mappers[i] = new OneHotBaseFeatureMapper<>(i,
+                    record -> GenomicContextMapper.trim(size, record.getGenomicSequenceContext()));
+        }
+        return new ConcatFeatureMapper<>(mappers);
+    }
+}
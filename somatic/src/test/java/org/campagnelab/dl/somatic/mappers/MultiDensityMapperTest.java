@@ -0,0 +1,81 @@
+package org.campagnelab.dl.somatic.mappers;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.campagnelab.dl.somatic.mappers.functional.TraversalHelper;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.campagnelab.goby.predictions.ProtoHelper;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that MultiDensityMapper produces exactly the features of the equivalent DensityMapper instances.
+ */
+public class MultiDensityMapperTest {
+
+    @Test
+    public void sameFeaturesAsDensityMappers() {
+        Properties properties = new Properties();
+        properties.setProperty("stats.baseQuality.forward.min", "0");
+        properties.setProperty("stats.baseQuality.forward.max", "40");
+        properties.setProperty("stats.insertSizes.min", "1");
+        properties.setProperty("stats.insertSizes.max", "1000");
+
+        DensityMapper quality = new DensityMapper("baseQuality.forward", 10, properties, record ->
+                TraversalHelper.forAllSampleCounts(record, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+        DensityMapper insertSizes = new DensityMapper("insertSizes", 10, properties, record ->
+                TraversalHelper.forAllSampleCounts(record, BaseInformationRecords.CountInfo::getInsertSizesList),
+                insertSize -> (float) Math.log10(insertSize));
+        MultiDensityMapper multi = new MultiDensityMapper(properties)
+                .add("baseQuality.forward", 10, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList)
+                .add("insertSizes", 10, BaseInformationRecords.CountInfo::getInsertSizesList,
+                        insertSize -> (float) Math.log10(insertSize));
+
+        assertEquals(quality.numberOfFeatures() + insertSizes.numberOfFeatures(), multi.numberOfFeatures());
+        BaseInformationRecords.BaseInformation record = prepareRecord();
+        quality.prepareToNormalize(record, 0);
+        insertSizes.prepareToNormalize(record, 0);
+        multi.prepareToNormalize(record, 0);
+        for (int i = 0; i < quality.numberOfFeatures(); i++) {
+            assertEquals(Float.floatToIntBits(quality.produceFeature(record, i)),
+                    Float.floatToIntBits(multi.produceFeature(record, i)));
+            assertEquals(quality.getFeatureName(i), multi.getFeatureName(i));
+        }
+        final int offset = quality.numberOfFeatures();
+        for (int i = 0; i < insertSizes.numberOfFeatures(); i++) {
+            assertEquals(Float.floatToIntBits(insertSizes.produceFeature(record, i)),
+                    Float.floatToIntBits(multi.produceFeature(record, offset + i)));
+            assertEquals(insertSizes.getFeatureName(i), multi.getFeatureName(offset + i));
+        }
+    }
+
+    private BaseInformationRecords.BaseInformation prepareRecord() {
+        BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+        builder.setPosition(1);
+        builder.setReferenceIndex(0);
+        builder.setReferenceBase("A");
+        int[][] qualities = {{5, 15, 15, 40, 41}, {0, 20, 1, 25, 39, 39}};
+        int[][] sizes = {{1, 250, 300, 300, 999}, {1000, 1001, 0, 120}};
+        for (int sampleIndex = 0; sampleIndex < 2; sampleIndex++) {
+            BaseInformationRecords.SampleInfo.Builder sampleBuilder = BaseInformationRecords.SampleInfo.newBuilder();
+            for (String to : new String[]{"A", "C"}) {
+                BaseInformationRecords.CountInfo.Builder builderInfo = BaseInformationRecords.CountInfo.newBuilder();
+                builderInfo.setFromSequence("A");
+                builderInfo.setToSequence(to);
+                builderInfo.setMatchesReference(to.equals("A"));
+                builderInfo.setGenotypeCountForwardStrand(10);
+                builderInfo.setGenotypeCountReverseStrand(10);
+                List<Integer> qualityList = new IntArrayList(qualities[sampleIndex]);
+                List<Integer> sizeList = new IntArrayList(sizes[sampleIndex]);
+                builderInfo.addAllQualityScoresForwardStrand(ProtoHelper.compressFreq(qualityList));
+                builderInfo.addAllInsertSizes(ProtoHelper.compressFreq(sizeList));
+                sampleBuilder.addCounts(builderInfo.build());
+            }
+            builder.addSamples(sampleBuilder.build());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,117 @@
+package org.campagnelab.dl.somatic.mappers;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.campagnelab.dl.somatic.utils.ProtoPredictor;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that quantities shared through SomaticFeatureContext are those previously computed by each mapper.
+ */
+public class SomaticFeatureContextTest {
+
+    @Test
+    public void sameOrderAsSortedGenotypeCounts() {
+        // ties on germline counts, more genotypes than MAX_GENOTYPES:
+        checkRecord(record(new int[]{3, 0, 10, 3, 7, 10, 1}, new int[]{1, 2, 3, 4, 5, 6, 7}));
+        // fewer genotypes than MAX_GENOTYPES, padded with N genotypes:
+        checkRecord(record(new int[]{0, 4}, new int[]{6, 0}));
+    }
+
+    @Test
+    public void resetForEachRecord() {
+        BaseInformationRecords.BaseInformation first = record(new int[]{1, 5}, new int[]{2, 2}).build();
+        BaseInformationRecords.BaseInformation second = record(new int[]{5, 1}, new int[]{2, 2}).build();
+        assertEquals(1, SomaticFeatureContext.of(first).countOrder(true)[0]);
+        assertEquals(0, SomaticFeatureContext.of(second).countOrder(true)[0]);
+        assertEquals(1, SomaticFeatureContext.of(first).countOrder(true)[0]);
+    }
+
+    private void checkRecord(BaseInformationRecords.BaseInformation.Builder builder) {
+        BaseInformationRecords.BaseInformation record = builder.build();
+        SomaticFeatureContext context = SomaticFeatureContext.of(record);
+        for (boolean sort : new boolean[]{false, true}) {
+            for (int sampleIndex = 0; sampleIndex < 2; sampleIndex++) {
+                ObjectArrayList<GenotypeCount> expected = sortedCounts(record, sampleIndex, sort);
+                ObjectArrayList<GenotypeCount> observed = context.counts(sampleIndex, sort);
+                int expectedTotal = 0;
+                for (int k = 0; k < AbstractFeatureMapper.MAX_GENOTYPES; k++) {
+                    assertEquals(expected.get(k).toString(), observed.get(k).toString());
+                    assertEquals(expected.get(k).genotypeIndex, observed.get(k).genotypeIndex);
+                    assertEquals(expected.get(k).getCompareCount(), observed.get(k).getCompareCount());
+                    final int countIndex = context.countOrder(sort)[k];
+                    assertEquals(countIndex < 0 ? AbstractFeatureMapper.N_GENOTYPE_INDEX : countIndex,
+                            expected.get(k).genotypeIndex);
+                    expectedTotal += expected.get(k).totalCount();
+                }
+                assertEquals(expectedTotal, context.totalCount(sampleIndex, sort));
+            }
+        }
+        for (int sampleIndex = 0; sampleIndex < 2; sampleIndex++) {
+            for (int i = 0; i < record.getSamples(sampleIndex).getCountsCount(); i++) {
+                ReadIndexWithCounts expected = new ReadIndexWithCounts();
+                BaseInformationRecords.CountInfo countInfo = record.getSamples(sampleIndex).getCounts(i);
+                expected.set(ProtoPredictor.expandFreq(countInfo.getReadIndicesForwardStrandList()),
+                        ProtoPredictor.expandFreq(countInfo.getReadIndicesReverseStrandList()));
+                assertEquals(expected.getDistinctReadIndices(), context.distinctReadIndices(sampleIndex, i), 0);
+            }
+        }
+    }
+
+    /**
+     * Counts as previously sorted by AbstractFeatureMapper.
+     */
+    private ObjectArrayList<GenotypeCount> sortedCounts(BaseInformationRecords.BaseInformation record, int sampleIndex,
+                                                        boolean sort) {
+        ObjectArrayList<GenotypeCount> list = new ObjectArrayList<>();
+        for (int i = 0; i < record.getSamples(0).getCountsCount(); i++) {
+            BaseInformationRecords.CountInfo germline = record.getSamples(0).getCounts(i);
+            BaseInformationRecords.CountInfo genoInfo = record.getSamples(sampleIndex).getCounts(i);
+            list.add(new GenotypeCount(genoInfo.getGenotypeCountForwardStrand(), genoInfo.getGenotypeCountReverseStrand(),
+                    genoInfo.getToSequence(), i,
+                    germline.getGenotypeCountForwardStrand() + germline.getGenotypeCountReverseStrand()));
+        }
+        while (list.size() < AbstractFeatureMapper.MAX_GENOTYPES) {
+            list.add(new GenotypeCount(0, 0, "N", AbstractFeatureMapper.N_GENOTYPE_INDEX, 0));
+        }
+        if (sort) {
+            Collections.sort(list);
+        }
+        list.trim(AbstractFeatureMapper.MAX_GENOTYPES);
+        return list;
+    }
+
+    private BaseInformationRecords.BaseInformation.Builder record(int[] germlineCounts, int[] tumorCounts) {
+        BaseInformationRecords.BaseInformation.Builder record = BaseInformationRecords.BaseInformation.newBuilder();
+        record.setReferenceIndex(0);
+        record.setPosition(0);
+        record.setMutated(false);
+        record.addSamples(sample(germlineCounts, false));
+        record.addSamples(sample(tumorCounts, true));
+        return record;
+    }
+
+    private BaseInformationRecords.SampleInfo.Builder sample(int[] counts, boolean isTumor) {
+        BaseInformationRecords.SampleInfo.Builder sample = BaseInformationRecords.SampleInfo.newBuilder();
+        sample.setIsTumor(isTumor);
+        for (int i = 0; i < counts.length; i++) {
+            BaseInformationRecords.CountInfo.Builder count = BaseInformationRecords.CountInfo.newBuilder();
+            count.setMatchesReference(i == 0);
+            count.setFromSequence("A");
+            count.setToSequence(Character.toString("ACGTNAC".charAt(i)));
+            count.setGenotypeCountForwardStrand(counts[i] / 2);
+            count.setGenotypeCountReverseStrand(counts[i] - counts[i] / 2);
+            count.setIsIndel(false);
+            for (int readIndex = 0; readIndex < counts[i]; readIndex++) {
+                count.addReadIndicesForwardStrand(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                        .setNumber(readIndex % 3).setFrequency(readIndex == 0 ? 0 : 1));
+            }
+            sample.addCounts(count);
+        }
+        return sample;
+    }
+}
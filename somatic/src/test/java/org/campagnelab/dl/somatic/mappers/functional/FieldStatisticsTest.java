@@ -0,0 +1,67 @@
+package org.campagnelab.dl.somatic.mappers.functional;
+
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Check that merged statistics are those of the union of the values.
+ */
+public class FieldStatisticsTest {
+
+    @Test
+    public void mergeMatchesSinglePass() {
+        Random random = new Random(12);
+        FieldStatistics all = new FieldStatistics(true);
+        FieldStatistics[] parts = new FieldStatistics[4];
+        for (int p = 0; p < parts.length; p++) {
+            parts[p] = new FieldStatistics(true);
+        }
+        double sum = 0;
+        long count = 0;
+        for (int i = 0; i < 1000; i++) {
+            final int number = random.nextInt(200) - 50;
+            final int frequency = random.nextInt(4);
+            all.visit(number, frequency);
+            // leave the last part empty:
+            parts[random.nextInt(parts.length - 1)].visit(number, frequency);
+            sum += (double) number * frequency;
+            count += frequency;
+        }
+        FieldStatistics merged = new FieldStatistics(true);
+        for (FieldStatistics part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(count, merged.getCount());
+        assertEquals(sum / count, merged.getMean(), 1e-9);
+        assertEquals(all.getMean(), merged.getMean(), 1e-9);
+        assertEquals(all.getVariance(), merged.getVariance(), 1e-6);
+        assertEquals(all.getMin(), merged.getMin());
+        assertEquals(all.getMax(), merged.getMax());
+        for (int value = -50; value < 150; value++) {
+            assertEquals(all.getFrequency(value), merged.getFrequency(value));
+        }
+    }
+
+    @Test
+    public void storeForDensityMapper() {
+        FieldStatistics statistics = new FieldStatistics();
+        statistics.visit(3, 2);
+        statistics.visit(7, 2);
+        statistics.visit(100, 0);
+        Properties properties = new Properties();
+        statistics.store(properties, "baseQuality.forward");
+        assertEquals(3, Float.parseFloat(properties.getProperty("stats.baseQuality.forward.min")), 0);
+        assertEquals(7, Float.parseFloat(properties.getProperty("stats.baseQuality.forward.max")), 0);
+        assertEquals(5, Double.parseDouble(properties.getProperty("stats.baseQuality.forward.mean")), 1e-9);
+        assertEquals(4, Double.parseDouble(properties.getProperty("stats.baseQuality.forward.variance")), 1e-9);
+
+        Properties empty = new Properties();
+        new FieldStatistics().store(empty, "insertSizes");
+        assertFalse(empty.containsKey("stats.insertSizes.min"));
+    }
+}
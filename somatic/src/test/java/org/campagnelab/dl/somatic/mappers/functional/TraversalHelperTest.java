@@ -0,0 +1,107 @@
+package org.campagnelab.dl.somatic.mappers.functional;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that traversals visit the values that list-returning methods collect.
+ */
+public class TraversalHelperTest {
+
+    @Test
+    public void traversalsMatchLists() {
+        BaseInformationRecords.BaseInformation record = record();
+        check(TraversalHelper.forAllSampleCounts(record, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList),
+                TraversalHelper.allSampleCounts(BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList), record);
+        check(TraversalHelper.forSampleCounts(1, record, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList),
+                TraversalHelper.sampleCounts(1, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList), record);
+        check(TraversalHelper.forNSampleCounts(new IntOpenHashSet(new int[]{0, 2}), record, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList),
+                TraversalHelper.nSampleCounts(new IntOpenHashSet(new int[]{0, 2}), BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList), record);
+        check(TraversalHelper.forOneSampleGenotype(2, 1, record, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList),
+                TraversalHelper.oneSampleGenotype(2, 1, BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList), record);
+        check(TraversalHelper.forOneSampleGenotypeBothStrands(1, 0, record,
+                BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList,
+                BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList),
+                TraversalHelper.oneSampleGenotypeBothStrands(1, 0,
+                        BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList,
+                        BaseInformationRecords.CountInfo::getQualityScoresReverseStrandList), record);
+    }
+
+    @Test
+    public void reducers() {
+        BaseInformationRecords.BaseInformation record = record();
+        List<BaseInformationRecords.NumberWithFrequency> values = TraversalHelper.forAllSampleCounts(record,
+                BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList);
+        long sum = 0;
+        long count = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (BaseInformationRecords.NumberWithFrequency value : values) {
+            sum += (long) value.getNumber() * value.getFrequency();
+            count += value.getFrequency();
+            if (value.getFrequency() > 0) {
+                min = Math.min(min, value.getNumber());
+                max = Math.max(max, value.getNumber());
+            }
+        }
+        assertEquals(sum, TraversalHelper.sumOfValues(record, TraversalHelper.ALL_SAMPLES,
+                BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+        assertEquals(count, TraversalHelper.numberOfValues(record, TraversalHelper.ALL_SAMPLES,
+                BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+        assertEquals(min, TraversalHelper.minValue(record, TraversalHelper.ALL_SAMPLES,
+                BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+        assertEquals(max, TraversalHelper.maxValue(record, TraversalHelper.ALL_SAMPLES,
+                BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+        // no value observed in sample 3:
+        assertEquals(Integer.MAX_VALUE, TraversalHelper.minValue(record, sampleIndex -> sampleIndex == 3,
+                BaseInformationRecords.CountInfo::getQualityScoresForwardStrandList));
+    }
+
+    private void check(List<BaseInformationRecords.NumberWithFrequency> expected, RecordTraversal traversal,
+                       BaseInformationRecords.BaseInformation record) {
+        IntArrayList expectedValues = new IntArrayList();
+        for (BaseInformationRecords.NumberWithFrequency value : expected) {
+            expectedValues.add(value.getNumber());
+            expectedValues.add(value.getFrequency());
+        }
+        IntArrayList visited = new IntArrayList();
+        traversal.forEachValue(record, (number, frequency) -> {
+            visited.add(number);
+            visited.add(frequency);
+        });
+        assertEquals(expectedValues, visited);
+    }
+
+    private BaseInformationRecords.BaseInformation record() {
+        BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+        builder.setPosition(1);
+        builder.setReferenceIndex(0);
+        builder.setReferenceBase("A");
+        for (int sampleIndex = 0; sampleIndex < 4; sampleIndex++) {
+            BaseInformationRecords.SampleInfo.Builder sample = BaseInformationRecords.SampleInfo.newBuilder();
+            for (int countIndex = 0; countIndex < 3 && sampleIndex < 3; countIndex++) {
+                BaseInformationRecords.CountInfo.Builder count = BaseInformationRecords.CountInfo.newBuilder();
+                count.setFromSequence("A");
+                count.setToSequence("C");
+                count.setMatchesReference(countIndex == 0);
+                count.setGenotypeCountForwardStrand(countIndex);
+                count.setGenotypeCountReverseStrand(sampleIndex);
+                for (int v = 0; v < countIndex + sampleIndex + 1; v++) {
+                    count.addQualityScoresForwardStrand(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                            .setNumber(10 * sampleIndex + v).setFrequency(v % 3));
+                    count.addQualityScoresReverseStrand(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                            .setNumber(-v).setFrequency(1));
+                }
+                sample.addCounts(count);
+            }
+            builder.addSamples(sample);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,87 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.commons.io.FileUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.IntPredicate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that files are aligned by site when some sites are missing from some files.
+ */
+public class AlignedReaderTest {
+    private static final String DIRECTORY = "test-results/aligned-reader";
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(new File(DIRECTORY));
+        FileUtils.forceMkdir(new File(DIRECTORY));
+        write("all", i -> true);
+        write("even", i -> i % 2 == 0);
+        write("triples", i -> i % 3 == 0);
+    }
+
+    @Test
+    public void aligned() throws IOException {
+        try (AlignedReader reader = new AlignedReader(2, file("all"), file("all"))) {
+            IntArrayList positions = positions(reader);
+            assertEquals(1000, positions.size());
+            assertEquals(0, reader.getNumUnmatched(0));
+            assertEquals(0, reader.getNumUnmatched(1));
+        }
+    }
+
+    @Test
+    public void mergeJoin() throws IOException {
+        try (AlignedReader reader = new AlignedReader(file("all"), file("even"), file("triples"))) {
+            IntArrayList positions = positions(reader);
+            // sites 0, 6, .. 996:
+            assertEquals(167, positions.size());
+            for (int i = 0; i < positions.size(); i++) {
+                assertEquals(i * 6, positions.getInt(i));
+            }
+            assertEquals(1000 - 167, reader.getNumUnmatched(0));
+            assertEquals(500 - 167, reader.getNumUnmatched(1));
+            assertEquals(334 - 167, reader.getNumUnmatched(2));
+        }
+    }
+
+    private IntArrayList positions(AlignedReader reader) {
+        IntArrayList positions = new IntArrayList();
+        while (reader.hasNext()) {
+            BaseInformationRecords.BaseInformation[] records = reader.next();
+            for (BaseInformationRecords.BaseInformation record : records) {
+                assertEquals(records[0].getReferenceIndex(), record.getReferenceIndex());
+                assertEquals(records[0].getPosition(), record.getPosition());
+            }
+            positions.add(records[0].getReferenceIndex() * 300 + records[0].getPosition());
+        }
+        return positions;
+    }
+
+    private void write(String name, IntPredicate keep) throws IOException {
+        try (RecordWriter writer = new RecordWriter(file(name), 50)) {
+            for (int i = 0; i < 1000; i++) {
+                if (keep.test(i)) {
+                    BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+                    builder.setReferenceIndex(i / 300);
+                    builder.setReferenceId("chr" + (i / 300));
+                    builder.setPosition(i % 300);
+                    builder.setReferenceBase("A");
+                    builder.setMutated(false);
+                    writer.writeRecord(builder.build());
+                }
+            }
+        }
+    }
+
+    private String file(String name) {
+        return DIRECTORY + "/" + name + ".sbi";
+    }
+}
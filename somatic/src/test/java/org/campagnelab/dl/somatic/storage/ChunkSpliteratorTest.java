@@ -0,0 +1,124 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.apache.commons.io.FileUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that chunk-parallel reading returns the records of a sequential scan.
+ */
+public class ChunkSpliteratorTest {
+    private static final String FILENAME = "test-results/chunk-spliterator/records.sbi";
+    private static final int NUM_RECORDS = 1000;
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(new File("test-results/chunk-spliterator"));
+        FileUtils.forceMkdir(new File("test-results/chunk-spliterator"));
+        try (RecordWriter writer = new RecordWriter(FILENAME, 37)) {
+            for (int i = 0; i < NUM_RECORDS; i++) {
+                BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+                builder.setReferenceIndex(0);
+                builder.setPosition(i);
+                builder.setReferenceBase("A");
+                builder.setMutated(false);
+                writer.writeRecord(builder.build());
+            }
+        }
+    }
+
+    @Test
+    public void withoutIndex() throws IOException {
+        check(false);
+    }
+
+    @Test
+    public void withIndex() throws IOException {
+        SbiIndex.build(FILENAME, false).save(FILENAME);
+        check(true);
+    }
+
+    @Test
+    public void abandonedSplitsAreClosed() throws IOException {
+        SbiChunks chunks = SbiChunks.of(FILENAME, 0, Long.MAX_VALUE, NUM_RECORDS);
+        Set<RecordReader> openReaders = ConcurrentHashMap.newKeySet();
+        Spliterator<BaseInformationRecords.BaseInformation> spliterator = new ChunkSpliterator(chunks, openReaders);
+        Spliterator<BaseInformationRecords.BaseInformation> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertTrue(prefix.tryAdvance(record -> {
+        }));
+        assertEquals(1, openReaders.size());
+        spliterator.forEachRemaining(record -> {
+        });
+        // the traversed split closed its reader, the abandoned prefix still holds one:
+        assertEquals(1, openReaders.size());
+        ChunkSpliterator.closeReaders(openReaders);
+        assertTrue(openReaders.isEmpty());
+
+        try (RecordReader reader = new RecordReader(FILENAME)) {
+            try (Stream<BaseInformationRecords.BaseInformation> stream = reader.stream(false)) {
+                assertEquals(10, stream.limit(10).count());
+            }
+        }
+    }
+
+    private void check(boolean sized) throws IOException {
+        try (RecordReader reader = new RecordReader(FILENAME)) {
+            Spliterator<BaseInformationRecords.BaseInformation> spliterator = reader.spliterator();
+            assertEquals(sized, spliterator.hasCharacteristics(Spliterator.SIZED));
+            if (sized) {
+                assertEquals(NUM_RECORDS, spliterator.estimateSize());
+                Spliterator<BaseInformationRecords.BaseInformation> prefix = spliterator.trySplit();
+                assertNotNull(prefix);
+                assertEquals(NUM_RECORDS, prefix.estimateSize() + spliterator.estimateSize());
+            }
+            assertEquals(sequence(), reader.stream(true).map(BaseInformationRecords.BaseInformation::getPosition)
+                    .collect(Collectors.toList()));
+            final IntArrayList forEach = new IntArrayList();
+            reader.forEach(record -> forEach.add(record.getPosition()));
+            assertEquals(sequence(), forEach);
+        }
+        try (RecordReader reader = new RecordReader(FILENAME)) {
+            IntArrayList ordered = new IntArrayList();
+            ParallelRecordIterator iterator = reader.parallelIterator(4, 3, true);
+            iterator.forEachRemaining(record -> ordered.add(record.getPosition()));
+            assertEquals(sequence(), ordered);
+
+            IntArrayList unordered = new IntArrayList();
+            iterator = reader.parallelIterator(4, 3, false);
+            iterator.forEachRemaining(record -> unordered.add(record.getPosition()));
+            int[] positions = unordered.toIntArray();
+            IntArrays.quickSort(positions);
+            assertEquals(sequence(), IntArrayList.wrap(positions));
+        }
+        // a range reader only splits its own chunks:
+        SbiChunks chunks = SbiChunks.of(FILENAME, 0, Long.MAX_VALUE, NUM_RECORDS);
+        assertTrue(chunks.size() > 2);
+        try (RecordReader reader = new RecordReader(FILENAME, chunks.start(1), chunks.end(1))) {
+            assertEquals(37, reader.stream(true).count());
+        }
+    }
+
+    private IntArrayList sequence() {
+        IntArrayList positions = new IntArrayList();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            positions.add(i);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,109 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.commons.io.FileUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that split outputs hold the records routed to them, in input order, whether chunks are copied or encoded.
+ */
+public class ChunkSplitterTest {
+    private static final String DIRECTORY = "test-results/chunk-splitter";
+    private static final String INPUT = DIRECTORY + "/input.sbi";
+
+    private static final ChunkSplitter.Router BY_CHROMOSOME = new ChunkSplitter.Router() {
+        @Override
+        public int chunkDestination(SbiIndex index, int chunkIndex) {
+            final int referenceIndex = index.minReferenceIndex(chunkIndex);
+            return referenceIndex == index.maxReferenceIndex(chunkIndex) ? referenceIndex % 2 : -1;
+        }
+
+        @Override
+        public int destination(BaseInformationRecords.BaseInformation record, Random random) {
+            return record.getReferenceIndex() % 2;
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(new File(DIRECTORY));
+        FileUtils.forceMkdir(new File(DIRECTORY));
+        try (RecordWriter writer = new RecordWriter(INPUT, 50)) {
+            for (int i = 0; i < 1000; i++) {
+                // chromosomes of 230 records, so that some chunks hold two chromosomes:
+                BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+                builder.setReferenceIndex(i / 230);
+                builder.setReferenceId("chr" + (i / 230));
+                builder.setPosition(i);
+                builder.setReferenceBase("A");
+                builder.setMutated(false);
+                writer.writeRecord(builder.build());
+            }
+        }
+    }
+
+    @Test
+    public void byChromosomeWithoutIndex() throws IOException {
+        checkByChromosome();
+    }
+
+    @Test
+    public void byChromosomeWithIndex() throws IOException {
+        SbiIndex.build(INPUT, false).save(INPUT);
+        checkByChromosome();
+    }
+
+    @Test
+    public void randomSplitDoesNotDependOnThreads() throws IOException {
+        ChunkSplitter.Router random = (record, generator) -> generator.nextDouble() < 0.3 ? 0 : 1;
+        IntArrayList[] single = split(random, 1, "single");
+        IntArrayList[] parallel = split(random, 4, "parallel");
+        assertEquals(single[0], parallel[0]);
+        assertEquals(single[1], parallel[1]);
+        assertEquals(1000, single[0].size() + single[1].size());
+    }
+
+    private void checkByChromosome() throws IOException {
+        ChunkSplitter splitter = new ChunkSplitter(INPUT, DIRECTORY + "/even", DIRECTORY + "/odd");
+        splitter.setNumThreads(3);
+        ChunkSplitter.Result result = splitter.split(BY_CHROMOSOME);
+        assertTrue(result.numCopiedChunks > 0);
+        assertTrue(result.numEncodedChunks > 0);
+        IntArrayList even = new IntArrayList();
+        IntArrayList odd = new IntArrayList();
+        for (int i = 0; i < 1000; i++) {
+            ((i / 230) % 2 == 0 ? even : odd).add(i);
+        }
+        assertEquals(even, positions(DIRECTORY + "/even"));
+        assertEquals(odd, positions(DIRECTORY + "/odd"));
+        assertEquals(even.size(), result.numRecords[0]);
+        assertEquals(230, result.countsByReference[1].getLong("chr1"));
+    }
+
+    private IntArrayList[] split(ChunkSplitter.Router router, int numThreads, String name) throws IOException {
+        ChunkSplitter splitter = new ChunkSplitter(INPUT, DIRECTORY + "/" + name + "-a", DIRECTORY + "/" + name + "-b");
+        splitter.setNumThreads(numThreads);
+        splitter.setSeed(12);
+        splitter.split(router);
+        return new IntArrayList[]{positions(DIRECTORY + "/" + name + "-a"), positions(DIRECTORY + "/" + name + "-b")};
+    }
+
+    private IntArrayList positions(String basename) throws IOException {
+        IntArrayList positions = new IntArrayList();
+        try (RecordReader reader = new RecordReader(basename)) {
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                positions.add(record.getPosition());
+            }
+        }
+        return positions;
+    }
+}
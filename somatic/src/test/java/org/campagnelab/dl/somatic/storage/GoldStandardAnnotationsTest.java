@@ -0,0 +1,110 @@
+package org.campagnelab.dl.somatic.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check annotation lookups for sorted and unsorted sweeps, and the supported formats.
+ */
+public class GoldStandardAnnotationsTest {
+    private static final String DIRECTORY = "test-results/gold-standard";
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(new File(DIRECTORY));
+        FileUtils.forceMkdir(new File(DIRECTORY));
+    }
+
+    @Test
+    public void tsv() throws IOException {
+        // unsorted, with a duplicate position (the last annotation wins):
+        GoldStandardAnnotations annotations = load("annotations.tsv",
+                "#chromosome\tposition\ttoBases\nchr2\t30\nchr1\t20\tT\nchr1\t11\tG\nchr1\t20\tC\nchr1\t1000\n");
+        assertEquals(4, annotations.size());
+        GoldStandardAnnotations.Cursor cursor = annotations.cursor();
+        assertFalse(cursor.find("chr1", 1));
+        assertTrue(cursor.find("chr1", 10));
+        assertEquals("G", cursor.getMutatedBases());
+        assertFalse(cursor.find("chr1", 11));
+        assertTrue(cursor.find("chr1", 19));
+        assertEquals("C", cursor.getMutatedBases());
+        assertTrue(cursor.find("chr1", 999));
+        assertNull(cursor.getMutatedBases());
+        assertFalse(cursor.find("chr1", 5000));
+        assertFalse(cursor.find("chr3", 29));
+        assertTrue(cursor.find("chr2", 29));
+        assertEquals(0, cursor.getNumBacktracks());
+
+        // records that go backwards are found with binary search:
+        assertTrue(cursor.find("chr1", 999));
+        assertTrue(cursor.find("chr1", 19));
+        assertTrue(cursor.find("chr1", 10));
+        assertFalse(cursor.find("chr1", 9));
+        assertEquals(3, cursor.getNumBacktracks());
+    }
+
+    @Test
+    public void vcfAndBed() throws IOException {
+        GoldStandardAnnotations vcf = load("annotations.vcf",
+                "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\nchr1\t100\t.\tA\tAT\t50\n");
+        GoldStandardAnnotations.Cursor cursor = vcf.cursor();
+        assertTrue(cursor.find("chr1", 99));
+        assertEquals("AT", cursor.getMutatedBases());
+
+        GoldStandardAnnotations bed = load("annotations.bed", "track name=test\nchr1\t10\t13\tname\n");
+        assertEquals(3, bed.size());
+        cursor = bed.cursor();
+        assertFalse(cursor.find("chr1", 9));
+        assertTrue(cursor.find("chr1", 10));
+        assertTrue(cursor.find("chr1", 12));
+        assertFalse(cursor.find("chr1", 13));
+    }
+
+    @Test
+    public void bedIntervalsAreMerged() throws IOException {
+        // overlapping and adjacent intervals, out of order, and a chromosome-sized interval:
+        GoldStandardAnnotations bed = load("intervals.bed",
+                "chr1\t100\t200\nchr1\t10\t20\nchr1\t150\t250\nchr1\t20\t30\nchr2\t0\t200000000\n");
+        assertEquals(20 + 150 + 200000000L, bed.size());
+        GoldStandardAnnotations.Cursor cursor = bed.cursor();
+        assertFalse(cursor.find("chr1", 9));
+        assertTrue(cursor.find("chr1", 10));
+        assertTrue(cursor.find("chr1", 29));
+        assertNull(cursor.getMutatedBases());
+        assertFalse(cursor.find("chr1", 30));
+        assertTrue(cursor.find("chr1", 249));
+        assertFalse(cursor.find("chr1", 250));
+        assertEquals(0, cursor.getNumBacktracks());
+        assertTrue(cursor.find("chr1", 15));
+        assertFalse(cursor.find("chr1", 50));
+        assertEquals(1, cursor.getNumBacktracks());
+        assertTrue(cursor.find("chr2", 199999999));
+        assertFalse(cursor.find("chr2", 200000000));
+    }
+
+    @Test(expected = IOException.class)
+    public void headerLinesAreRejected() throws IOException {
+        load("header.bed", "chrom\tstart\tend\nchr1\t10\t20\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void nonDigitPositionsAreRejected() throws IOException {
+        load("typo.tsv", "chr1\t1O\n");
+    }
+
+    private GoldStandardAnnotations load(String name, String content) throws IOException {
+        File file = new File(DIRECTORY, name);
+        FileUtils.write(file, content, StandardCharsets.UTF_8);
+        return GoldStandardAnnotations.load(file.getPath());
+    }
+}
@@ -7,6 +7,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 
 /**
@@ -71,5 +75,43 @@ public class RecordWriterTest {
 
     }
 
+    @Test
+    public void backgroundCompression() throws IOException {
+        final String parallelFilename = "test-results/background-compression.sbi";
+        try (RecordWriter parallel = new RecordWriter(parallelFilename, 100, 3)) {
+            for (int i = 0; i < 1234; i++) {
+                parallel.writeRecord(record(i));
+            }
+        }
+        assertEquals(13, SbiIndex.chunkOffsets(parallelFilename).size());
+        try (RecordReader reader = new RecordReader(parallelFilename)) {
+            assertEquals(1234, reader.getTotalRecords());
+            int i = 0;
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                assertEquals(record(i++), record);
+            }
+            assertEquals(1234, i);
+        }
+    }
+
+    @Test
+    public void backgroundCompressionOfEmptyFile() throws IOException {
+        final String parallelFilename = "test-results/background-compression-empty.sbi";
+        new RecordWriter(parallelFilename, 100, 2).close();
+        try (RecordReader reader = new RecordReader(parallelFilename)) {
+            assertEquals(0, reader.getTotalRecords());
+            assertFalse(reader.iterator().hasNext());
+        }
+    }
 
-}
\ No newline at end of file
+    private BaseInformationRecords.BaseInformation record(int i) {
+        BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+        builder.setReferenceIndex(i / 500);
+        builder.setReferenceId("chr" + (i / 500));
+        builder.setPosition(i);
+        builder.setReferenceBase("A");
+        builder.setGenomicSequenceContext("ACGTA");
+        builder.setMutated(i % 3 == 0);
+        return builder.build();
+    }
+}
@@ -0,0 +1,118 @@
+package org.campagnelab.dl.somatic.storage;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.commons.io.FileUtils;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that region queries return the records a full scan would select.
+ */
+public class SbiIndexTest {
+    private static final String DIRECTORY = "test-results/sbi-index";
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(new File(DIRECTORY));
+        FileUtils.forceMkdir(new File(DIRECTORY));
+    }
+
+    @Test
+    public void sortedFile() throws Exception {
+        final String filename = write("sorted", false);
+        SbiIndex index = SbiIndex.build(filename, true);
+        index.save(filename);
+        index = SbiIndex.load(filename);
+        assertNotNull(index);
+        assertTrue(index.isSorted());
+        assertEquals(3000, index.numRecords());
+        assertTrue(index.numChunks() > 1);
+        assertEquals(index.numChunks() - 1, index.chunkOfRecord(2999));
+        checkRegion(filename, "chr2");
+        checkRegion(filename, "chr1:1500-1600");
+        checkRegion(filename, "chr3:0-10");
+        checkRegion(filename, "chr3:4000");
+        checkRegion(filename, "1:2990-3500");
+    }
+
+    @Test
+    public void unsortedFile() throws Exception {
+        final String filename = write("unsorted", true);
+        SbiIndex.build(filename, false).save(filename);
+        assertTrue(!SbiIndex.load(filename).isSorted());
+        checkRegion(filename, "chr2:100-200");
+        checkRegion(filename, "chr1");
+    }
+
+    @Test
+    public void staleIndexIsIgnored() throws Exception {
+        final String filename = write("stale", false);
+        SbiIndex.build(filename, false).save(filename);
+        assertNotNull(SbiIndex.load(filename));
+        // a file rewritten in place with the same length:
+        File sbi = new File(filename);
+        assertTrue(sbi.setLastModified(sbi.lastModified() + 10000));
+        assertNull(SbiIndex.load(filename));
+    }
+
+    private void checkRegion(String filename, String regionText) throws IOException {
+        IntArrayList expected = new IntArrayList();
+        IntArrayList observed = new IntArrayList();
+        try (RegionRecordReader regionReader = new RegionRecordReader(filename, regionText);
+             RecordReader reader = new RecordReader(filename)) {
+            GenomicRegion region = regionReader.getRegion();
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                if (region.contains(record)) {
+                    expected.add(record.getReferenceIndex());
+                    expected.add(record.getPosition());
+                }
+            }
+            for (BaseInformationRecords.BaseInformation record : regionReader) {
+                observed.add(record.getReferenceIndex());
+                observed.add(record.getPosition());
+            }
+        }
+        assertEquals(regionText, expected, observed);
+    }
+
+    private String write(String name, boolean shuffle) throws IOException {
+        final String filename = DIRECTORY + "/" + name + ".sbi";
+        IntArrayList positions = new IntArrayList();
+        for (int i = 0; i < 3000; i++) {
+            positions.add(i);
+        }
+        if (shuffle) {
+            Random random = new Random(23);
+            for (int i = positions.size() - 1; i > 0; i--) {
+                final int j = random.nextInt(i + 1);
+                final int swap = positions.getInt(i);
+                positions.set(i, positions.getInt(j));
+                positions.set(j, swap);
+            }
+        }
+        try (RecordWriter writer = new RecordWriter(filename, 128)) {
+            for (int i : positions) {
+                // 1000 records on each of three chromosomes, two positions apart:
+                final int referenceIndex = i / 1000;
+                BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+                builder.setReferenceIndex(referenceIndex);
+                builder.setReferenceId("chr" + (referenceIndex + 1));
+                builder.setPosition((i % 1000) * 2 + 1000 * referenceIndex);
+                builder.setReferenceBase("A");
+                builder.setMutated(false);
+                writer.writeRecord(builder.build());
+            }
+        }
+        return filename;
+    }
+}
@@ -0,0 +1,159 @@
+package org.campagnelab.dl.somatic.storage.columnar;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.commons.io.FileUtils;
+import org.campagnelab.dl.somatic.learning.architecture.graphs.SixDenseLayersNarrower2;
+import org.campagnelab.dl.somatic.learning.domains.SomaticMutationDomainDescriptor;
+import org.campagnelab.dl.somatic.mappers.FeatureMapperV18;
+import org.campagnelab.dl.varanalysis.protobuf.BaseInformationRecords;
+import org.junit.Before;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the columnar format stores records without loss, and that projections decode only their columns.
+ */
+public class ColumnarRecordTest {
+    private static final String FILENAME = "test-results/columnar/records.sbc";
+    private final List<BaseInformationRecords.BaseInformation> records = new ObjectArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteQuietly(new File("test-results/columnar"));
+        FileUtils.forceMkdir(new File("test-results/columnar"));
+        for (int i = 0; i < 250; i++) {
+            records.add(record(i));
+        }
+        try (ColumnarRecordWriter writer = new ColumnarRecordWriter(FILENAME, 100)) {
+            for (BaseInformationRecords.BaseInformation record : records) {
+                writer.writeRecord(record);
+            }
+        }
+    }
+
+    @Test
+    public void allColumns() throws IOException {
+        try (ColumnarRecordReader reader = new ColumnarRecordReader(FILENAME)) {
+            assertEquals(250, reader.numRecords());
+            assertEquals(3, reader.numBlocks());
+            int i = 0;
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                assertEquals(records.get(i++), record);
+            }
+            assertEquals(250, i);
+        }
+    }
+
+    @Test
+    public void projection() throws IOException {
+        try (ColumnarRecordReader reader = new ColumnarRecordReader(FILENAME, EnumSet.of(Column.POSITION, Column.COUNT_TOTALS))) {
+            int i = 0;
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                BaseInformationRecords.BaseInformation expected = records.get(i++);
+                assertEquals(expected.getPosition(), record.getPosition());
+                assertEquals(expected.getReferenceIndex(), record.getReferenceIndex());
+                assertFalse(record.hasReferenceId());
+                assertFalse(record.hasGenomicSequenceContext());
+                assertEquals(2, record.getSamplesCount());
+                assertFalse(record.getSamples(1).hasFormattedCounts());
+                BaseInformationRecords.CountInfo count = record.getSamples(1).getCounts(1);
+                assertEquals(expected.getSamples(1).getCounts(1).getGenotypeCountForwardStrand(), count.getGenotypeCountForwardStrand());
+                assertFalse(count.hasToSequence());
+                assertEquals(0, count.getQualityScoresForwardStrandCount());
+            }
+        }
+    }
+
+    @Test
+    public void requiredColumns() {
+        List<Object> mappers = new ObjectArrayList<>();
+        mappers.add((RequiresColumns) () -> EnumSet.of(Column.MUTATED));
+        assertEquals(EnumSet.of(Column.MUTATED), Column.requiredBy(mappers));
+        mappers.add(new Object());
+        assertTrue(Column.requiredBy(mappers).contains(Column.REST));
+    }
+
+    @Test
+    public void somaticDomainProjection() throws IOException {
+        Properties domainProperties = new Properties();
+        domainProperties.setProperty("net.architecture.classname", SixDenseLayersNarrower2.class.getCanonicalName());
+        domainProperties.setProperty("input.featureMapper", FeatureMapperV18.class.getCanonicalName());
+        SomaticMutationDomainDescriptor domain = new SomaticMutationDomainDescriptor(domainProperties, new Properties());
+        EnumSet<Column> projection = Column.requiredBy(domain);
+        assertFalse(projection.contains(Column.REST));
+        assertTrue(projection.contains(Column.READ_INDICES_FORWARD));
+        assertTrue(projection.contains(Column.MUTATED));
+
+        // the features of projected records must be those of complete records:
+        FeatureMapperV18 mapper = new FeatureMapperV18();
+        try (ColumnarRecordReader reader = new ColumnarRecordReader(FILENAME, projection)) {
+            int i = 0;
+            for (BaseInformationRecords.BaseInformation record : reader) {
+                assertFalse(record.getSamples(0).hasFormattedCounts());
+                assertEquals(features(mapper, records.get(i++)), features(mapper, record));
+            }
+            assertEquals(250, i);
+        }
+    }
+
+    private static INDArray features(FeatureMapperV18 mapper, BaseInformationRecords.BaseInformation record) {
+        INDArray features = Nd4j.zeros(1, mapper.numberOfFeatures());
+        mapper.prepareToNormalize(record, 0);
+        mapper.mapFeatures(record, features, 0);
+        return features;
+    }
+
+    private BaseInformationRecords.BaseInformation record(int i) {
+        BaseInformationRecords.BaseInformation.Builder builder = BaseInformationRecords.BaseInformation.newBuilder();
+        builder.setReferenceIndex(i / 100);
+        builder.setReferenceId("chr" + (i / 100));
+        builder.setPosition(i * 3 - (i % 7 == 0 ? 10 : 0));
+        builder.setReferenceBase(i % 2 == 0 ? "A" : "CT");
+        builder.setGenomicSequenceContext("ACGT" + i);
+        builder.setMutated(i % 5 == 0);
+        if (i % 5 == 0) {
+            builder.setMutatedBase("T");
+            builder.setFrequencyOfMutation(0.25f);
+        }
+        for (int s = 0; s < 2; s++) {
+            BaseInformationRecords.SampleInfo.Builder sample = BaseInformationRecords.SampleInfo.newBuilder();
+            sample.setIsTumor(s == 1);
+            sample.setFormattedCounts("counts " + i);
+            sample.setIsVariant(i % 5 == 0 && s == 1);
+            for (int c = 0; c < 3; c++) {
+                BaseInformationRecords.CountInfo.Builder count = BaseInformationRecords.CountInfo.newBuilder();
+                count.setFromSequence("A");
+                count.setToSequence(c == 0 ? "A" : c == 1 ? "T" : "A--");
+                count.setMatchesReference(c == 0);
+                count.setIsIndel(c == 2);
+                count.setGenotypeCountForwardStrand(i + c);
+                count.setGenotypeCountReverseStrand(c);
+                count.setIsCalled(c != 1);
+                for (int q = 0; q < c; q++) {
+                    count.addQualityScoresForwardStrand(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                            .setNumber(30 + q).setFrequency(q + 1));
+                    count.addInsertSizes(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                            .setNumber(-200 * q).setFrequency(1));
+                    count.addReadIndicesForwardStrand(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                            .setNumber(10 + i % 50).setFrequency(q + 1));
+                    count.addReadIndicesReverseStrand(BaseInformationRecords.NumberWithFrequency.newBuilder()
+                            .setNumber(90 - q).setFrequency(1));
+                }
+                sample.addCounts(count);
+            }
+            builder.addSamples(sample);
+        }
+        return builder.build();
+    }
+}